@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ * 
+ */
+package com.mysema.rdfbean.annotations;
+
+import static java.lang.annotation.ElementType.TYPE;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * &#64;Cacheable marks a mapped class as read-mostly data, whose properties may
+ * be shared between sessions of the same SessionFactory.
+ * <p>
+ * The properties of cacheable instances are kept in the entity cache of the
+ * SessionFactory and are evicted when a session flushes statements about them.
+ * Changes which are not made via sessions of the same SessionFactory are
+ * visible only after the cached entries have expired.
+ * </p>
+ * <p>
+ * For example
+ * 
+ * <pre>
+ * &#64;ClassMapping(ns=TEST.NS)
+ * &#64;Cacheable
+ * public class Category {
+ * ...
+ * }
+ * </pre>
+ * 
+ * </p>
+ * 
+ * @author tiwe
+ */
+@Documented
+@Target({ TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+}
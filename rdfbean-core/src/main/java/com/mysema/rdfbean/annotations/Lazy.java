@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ * 
+ */
+package com.mysema.rdfbean.annotations;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * &#64;Lazy marks references to mapped classes to be bound as proxies, which
+ * are loaded on first method invocation.
+ * <p>
+ * If applied to a property, the references of the property are bound lazily.
+ * If applied to a mapped class, all references to instances of the class are
+ * bound lazily. Unloaded proxies of the same class are loaded together, when
+ * the first of them is accessed.
+ * </p>
+ * <p>
+ * Proxies are subclasses of the referenced class, so the class needs to be
+ * non-final with a non-private default constructor, and the state of the
+ * referenced instance is available only via its methods. References to other
+ * classes are bound eagerly.
+ * </p>
+ * <p>
+ * For example
+ * 
+ * <pre>
+ * &#64;ClassMapping(ns=TEST.NS)
+ * public class Person {
+ * 
+ *     &#64;Predicate
+ *     &#64;Lazy
+ *     private Company employer;
+ * ...
+ * }
+ * </pre>
+ * 
+ * </p>
+ * 
+ * @author tiwe
+ */
+@Documented
+@Target({ TYPE, METHOD, FIELD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Lazy {
+
+}
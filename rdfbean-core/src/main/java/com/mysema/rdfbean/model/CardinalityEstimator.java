@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import javax.annotation.Nullable;
+
+/**
+ * CardinalityEstimator provides statement counts for query planning
+ *
+ * @author tiwe
+ */
+public interface CardinalityEstimator {
+
+    long UNKNOWN = -1;
+
+    /**
+     * Estimate the amount of statements matching the given pattern
+     *
+     * <p>
+     * The estimate is an upper bound, the parts of the pattern which are not
+     * covered by indexes may be ignored.
+     * </p>
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param context
+     * @return estimated count or UNKNOWN, if no estimate is available
+     */
+    long estimateCount(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context);
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.QueryMetadata;
+
+/**
+ * ConcurrentMiniConnection is an RDFConnection implementation for the
+ * ConcurrentMiniRepository
+ *
+ * <p>
+ * Connections are not meant to be shared between threads, but any number of
+ * connections can be used concurrently against the same repository. Inside a
+ * transaction reads are served from the snapshot taken at transaction start
+ * together with the transaction's own changes.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class ConcurrentMiniConnection implements RDFConnection, CardinalityEstimator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentMiniConnection.class);
+
+    private final ConcurrentMiniRepository repository;
+
+    @Nullable
+    private ConcurrentMiniTransaction transaction;
+
+    public ConcurrentMiniConnection(ConcurrentMiniRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public RDFBeanTransaction beginTransaction(boolean readOnly, int txTimeout, int isolationLevel) {
+        if (transaction != null) {
+            throw new RepositoryException("Transaction already active");
+        }
+        transaction = new ConcurrentMiniTransaction(this, repository.getSnapshot(), readOnly);
+        return transaction;
+    }
+
+    void cleanUpAfterCommit() {
+        transaction = null;
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public void close() {
+        if (transaction != null) {
+            transaction.rollback();
+        }
+    }
+
+    @Override
+    public BID createBNode() {
+        return new BID();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <D, Q> Q createQuery(QueryLanguage<D, Q> queryLanguage, D definition) {
+        if (queryLanguage == QueryLanguage.TUPLE
+                || queryLanguage == QueryLanguage.GRAPH
+                || queryLanguage == QueryLanguage.BOOLEAN) {
+            if (logger.isDebugEnabled()) {
+                QueryMetadata metadata = (QueryMetadata) definition;
+                logger.debug(queryLanguage + " : " + metadata.getWhere().toString());
+            }
+            QueryRDFVisitor visitor = new QueryRDFVisitor(this);
+            return (Q) visitor.visit((QueryMetadata) definition, queryLanguage);
+
+        } else {
+            throw new UnsupportedOperationException(queryLanguage.toString());
+        }
+    }
+
+    @Override
+    public <D, Q> Q createUpdate(UpdateLanguage<D, Q> updateLanguage, D definition) {
+        throw new UnsupportedOperationException(updateLanguage.toString());
+    }
+
+    @Override
+    public boolean exists(ID subject, UID predicate, NODE object, UID context, boolean includeInferred) {
+        CloseableIterator<STMT> stmts = findStatements(subject, predicate, object, context, includeInferred);
+        try {
+            return stmts.hasNext();
+        } finally {
+            stmts.close();
+        }
+    }
+
+    @Override
+    public CloseableIterator<STMT> findStatements(ID subject, UID predicate, NODE object, UID context,
+            boolean includeInferred) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("find " + subject + " " + predicate + " " + object + " " + context);
+        }
+        if (transaction != null) {
+            return transaction.findStatements(subject, predicate, object, context, includeInferred);
+        } else {
+            return repository.findStatements(subject, predicate, object, context, includeInferred);
+        }
+    }
+
+    @Override
+    public InferenceOptions getInferenceOptions() {
+        return InferenceOptions.DEFAULT;
+    }
+
+    @Override
+    public long estimateCount(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return repository.getSnapshot().estimateCount(subject, object);
+    }
+
+    @Override
+    public long getNextLocalId() {
+        return repository.getNextLocalId();
+    }
+
+    @Override
+    public QueryOptions getQueryOptions() {
+        return QueryOptions.PRESERVE_STRING_OPS;
+    }
+
+    public ConcurrentMiniRepository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public void remove(ID subject, UID predicate, NODE object, UID context) {
+        if (transaction != null) {
+            CloseableIterator<STMT> stmts = findStatements(subject, predicate, object, context, true);
+            transaction.update(IteratorAdapter.asList(stmts), null);
+        } else {
+            repository.remove(subject, predicate, object, context);
+        }
+    }
+
+    @Override
+    public void update(Collection<STMT> removedStatements, Collection<STMT> addedStatements) {
+        if (transaction != null) {
+            transaction.update(removedStatements, addedStatements);
+        } else {
+            repository.update(removedStatements, addedStatements);
+        }
+    }
+
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.Namespaces;
+import com.mysema.rdfbean.model.io.ParserUtils;
+import com.mysema.rdfbean.model.io.RDFWriter;
+import com.mysema.rdfbean.model.io.STMTHandler;
+import com.mysema.rdfbean.model.io.WriterUtils;
+
+/**
+ * ConcurrentMiniRepository is a thread-safe variant of {@link MiniRepository}
+ *
+ * <p>
+ * The statements are kept in immutable snapshots which are split into hash
+ * segments by subject (and object for the inverse index). Each segment is a
+ * persistent hash trie. Readers work on the snapshot that is current when the
+ * read starts and never block. Writers are serialized, copy only the trie
+ * paths they touch and publish the new snapshot atomically, so each
+ * {@link #update(Collection, Collection)} batch becomes visible as a whole.
+ * </p>
+ *
+ * @author tiwe
+ */
+@ThreadSafe
+public final class ConcurrentMiniRepository implements Repository {
+
+    private static final Function<STMT[], Iterator<STMT>> arrayIterator = new Function<STMT[], Iterator<STMT>>() {
+        @Override
+        public Iterator<STMT> apply(STMT[] input) {
+            return Iterators.forArray(input);
+        }
+    };
+
+    private static final STMT[] EMPTY = new STMT[0];
+
+    /**
+     * Leaf is an immutable trie entry list
+     */
+    @Immutable
+    private static final class Leaf {
+
+        private final ID[] keys;
+
+        private final STMT[][] values;
+
+        Leaf(ID[] keys, STMT[][] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        int indexOf(ID key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Nullable
+        Leaf with(ID key, @Nullable STMT[] value) {
+            int i = indexOf(key);
+            if (value == null) {
+                if (i < 0) {
+                    return this;
+                } else if (keys.length == 1) {
+                    return null;
+                }
+                ID[] k = new ID[keys.length - 1];
+                STMT[][] v = new STMT[keys.length - 1][];
+                System.arraycopy(keys, 0, k, 0, i);
+                System.arraycopy(keys, i + 1, k, i, k.length - i);
+                System.arraycopy(values, 0, v, 0, i);
+                System.arraycopy(values, i + 1, v, i, v.length - i);
+                return new Leaf(k, v);
+            } else if (i < 0) {
+                ID[] k = Arrays.copyOf(keys, keys.length + 1);
+                STMT[][] v = Arrays.copyOf(values, values.length + 1);
+                k[keys.length] = key;
+                v[values.length] = value;
+                return new Leaf(k, v);
+            } else {
+                STMT[][] v = values.clone();
+                v[i] = value;
+                return new Leaf(keys, v);
+            }
+        }
+
+    }
+
+    /**
+     * Trie is a persistent hash trie node with {@link Leaf} and Trie children
+     *
+     * <p>
+     * Updates copy the path to the changed entry. Nodes created within the
+     * same update share the update token and are modified in place, so large
+     * batches copy each node only once. Once a snapshot is published, its
+     * nodes are not modified anymore.
+     * </p>
+     */
+    private static final class Trie {
+
+        private static final int BITS = 5;
+
+        private static final int MASK = (1 << BITS) - 1;
+
+        private static final int LEAF_SIZE = 8;
+
+        private static final Function<Object, Iterator<STMT[]>> values = new Function<Object, Iterator<STMT[]>>() {
+            @Override
+            public Iterator<STMT[]> apply(Object input) {
+                return values(input);
+            }
+        };
+
+        private final Object edit;
+
+        private final Object[] children;
+
+        Trie(Object edit, Object[] children) {
+            this.edit = edit;
+            this.children = children;
+        }
+
+        @Nullable
+        static STMT[] get(@Nullable Object node, ID key, int hash, int shift) {
+            while (node instanceof Trie) {
+                node = ((Trie) node).children[(hash >>> shift) & MASK];
+                shift += BITS;
+            }
+            if (node != null) {
+                Leaf leaf = (Leaf) node;
+                int i = leaf.indexOf(key);
+                return i > -1 ? leaf.values[i] : null;
+            } else {
+                return null;
+            }
+        }
+
+        /**
+         * Set the value of the given key
+         *
+         * @param node trie node, leaf or null
+         * @param key key
+         * @param hash hash of the key
+         * @param shift bit position of the node in the hash
+         * @param value new value or null to remove the key
+         * @param edit update token
+         * @return the new node
+         */
+        @Nullable
+        static Object put(@Nullable Object node, ID key, int hash, int shift, @Nullable STMT[] value, Object edit) {
+            if (node == null) {
+                return value != null ? new Leaf(new ID[] { key }, new STMT[][] { value }) : null;
+            } else if (node instanceof Leaf) {
+                Leaf leaf = ((Leaf) node).with(key, value);
+                if (leaf != null && leaf.keys.length > LEAF_SIZE && shift < Integer.SIZE) {
+                    // split into a trie node, keys with equal hashes stay together
+                    Object trie = new Trie(edit, new Object[MASK + 1]);
+                    for (int i = 0; i < leaf.keys.length; i++) {
+                        ID k = leaf.keys[i];
+                        trie = put(trie, k, NodeDictionary.smear(k.hashCode()), shift, leaf.values[i], edit);
+                    }
+                    return trie;
+                }
+                return leaf;
+            }
+            Trie trie = (Trie) node;
+            int i = (hash >>> shift) & MASK;
+            Object child = put(trie.children[i], key, hash, shift + BITS, value, edit);
+            if (child == trie.children[i]) {
+                return trie;
+            }
+            if (trie.edit != edit) {
+                trie = new Trie(edit, trie.children.clone());
+            }
+            trie.children[i] = child;
+            if (child == null) {
+                for (Object c : trie.children) {
+                    if (c != null) {
+                        return trie;
+                    }
+                }
+                return null;
+            }
+            return trie;
+        }
+
+        static Iterator<STMT[]> values(@Nullable Object node) {
+            if (node == null) {
+                return Iterators.emptyIterator();
+            } else if (node instanceof Leaf) {
+                return Iterators.forArray(((Leaf) node).values);
+            } else {
+                return Iterators.concat(Iterators.transform(Iterators.forArray(((Trie) node).children), values));
+            }
+        }
+
+    }
+
+    /**
+     * Snapshot is an immutable view of the repository contents
+     */
+    @Immutable
+    static final class Snapshot {
+
+        private final Object[] subjects;
+
+        @Nullable
+        private final Object[] objects;
+
+        Snapshot(Object[] subjects, @Nullable Object[] objects) {
+            this.subjects = subjects;
+            this.objects = objects;
+        }
+
+        boolean contains(STMT stmt) {
+            for (STMT s : get(subjects, stmt.getSubject())) {
+                if (s.equals(stmt)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long estimateCount(@Nullable ID subject, @Nullable NODE object) {
+            if (subject != null) {
+                return get(subjects, subject).length;
+            } else if (objects != null && object != null && object.isResource()) {
+                return get(objects, object.asResource()).length;
+            } else {
+                return CardinalityEstimator.UNKNOWN;
+            }
+        }
+
+        Iterator<STMT> iterator(@Nullable final ID subject, @Nullable final UID predicate, @Nullable final NODE object,
+                @Nullable final UID context, final boolean includeInferred) {
+            Iterator<STMT> iterator;
+            if (subject != null) {
+                iterator = Iterators.forArray(get(subjects, subject));
+            } else if (objects != null && object != null && object.isResource()) {
+                iterator = Iterators.forArray(get(objects, object.asResource()));
+            } else {
+                List<Iterator<STMT[]>> values = new ArrayList<Iterator<STMT[]>>(subjects.length);
+                for (Object segment : subjects) {
+                    values.add(Trie.values(segment));
+                }
+                iterator = Iterators.concat(Iterators.transform(Iterators.concat(values.iterator()), arrayIterator));
+            }
+            return Iterators.filter(iterator, new Predicate<STMT>() {
+                @Override
+                public boolean apply(STMT stmt) {
+                    return STMTMatcher.matches(stmt, subject, predicate, object, context, includeInferred);
+                }
+            });
+        }
+
+    }
+
+    private final Lock writeLock = new ReentrantLock();
+
+    private final AtomicLong localId = new AtomicLong();
+
+    private final MiniDialect dialect = new MiniDialect();
+
+    private final boolean inverseIndex;
+
+    private final int segments;
+
+    private final int segmentBits;
+
+    private volatile Snapshot snapshot;
+
+    public ConcurrentMiniRepository() {
+        this(256, true);
+    }
+
+    /**
+     * Create a new ConcurrentMiniRepository
+     *
+     * @param segments
+     *            amount of hash segments per index, rounded up to a power of
+     *            two
+     * @param inverseIndex
+     *            whether to index statements by resource objects
+     */
+    public ConcurrentMiniRepository(int segments, boolean inverseIndex) {
+        int size = 1;
+        while (size < segments) {
+            size <<= 1;
+        }
+        this.segments = size;
+        this.segmentBits = Integer.numberOfTrailingZeros(size);
+        this.inverseIndex = inverseIndex;
+        this.snapshot = createSnapshot();
+    }
+
+    public ConcurrentMiniRepository(STMT... stmts) {
+        this();
+        add(stmts);
+    }
+
+    public void add(STMT... stmts) {
+        update(null, Arrays.asList(stmts));
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            snapshot = createSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    private Snapshot createSnapshot() {
+        return new Snapshot(new Object[segments], inverseIndex ? new Object[segments] : null);
+    }
+
+    public boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return snapshot.iterator(subject, predicate, object, context, false).hasNext();
+    }
+
+    @Override
+    public <RT> RT execute(RDFConnectionCallback<RT> operation) {
+        RDFConnection connection = openConnection();
+        try {
+            try {
+                return operation.doInConnection(connection);
+            } finally {
+                connection.close();
+            }
+        } catch (IOException io) {
+            throw new RepositoryException(io);
+        }
+    }
+
+    @Override
+    public void export(Format format, Map<String, String> ns2prefix, @Nullable UID context, OutputStream out) {
+        RDFWriter writer = WriterUtils.createWriter(format, out, ns2prefix);
+        Iterator<STMT> stmts = snapshot.iterator(null, null, null, context, false);
+        writer.begin();
+        while (stmts.hasNext()) {
+            writer.handle(stmts.next());
+        }
+        writer.end();
+    }
+
+    @Override
+    public void export(Format format, @Nullable UID context, OutputStream out) {
+        export(format, Namespaces.DEFAULT, context, out);
+    }
+
+    public CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+            @Nullable UID context, boolean includeInferred) {
+        return new IteratorAdapter<STMT>(snapshot.iterator(subject, predicate, object, context, includeInferred));
+    }
+
+    public MiniDialect getDialect() {
+        return dialect;
+    }
+
+    public long getNextLocalId() {
+        return localId.incrementAndGet();
+    }
+
+    /**
+     * Get the current snapshot
+     *
+     * @return
+     */
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void load(Format format, InputStream is, @Nullable UID context, boolean replace) {
+        if (context != null) {
+            if (replace) {
+                remove(null, null, null, context);
+            } else if (exists(null, null, null, context)) {
+                return;
+            }
+        }
+        ParserUtils.parse(format, is, context, context != null ? context.getId() : null, new STMTHandler() {
+            @Override
+            public void handle(List<STMT> stmts) {
+                update(null, stmts);
+            }
+        });
+    }
+
+    @Override
+    public ConcurrentMiniConnection openConnection() {
+        return new ConcurrentMiniConnection(this);
+    }
+
+    public void remove(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        writeLock.lock();
+        try {
+            if (subject == null && predicate == null && object == null && context == null) {
+                snapshot = createSnapshot();
+            } else {
+                Iterator<STMT> stmts = snapshot.iterator(subject, predicate, object, context, true);
+                update(IteratorAdapter.asList(stmts), null);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the given statements and add the given statements as one atomic
+     * change
+     *
+     * @param removedStatements
+     * @param addedStatements
+     */
+    public void update(@Nullable Collection<STMT> removedStatements, @Nullable Collection<STMT> addedStatements) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            Object[] subjects = current.subjects.clone();
+            Object[] objects = current.objects != null ? current.objects.clone() : null;
+            Object edit = new Object();
+
+            Map<ID, Set<STMT>> bySubject = new LinkedHashMap<ID, Set<STMT>>();
+            Map<ID, Set<STMT>> byObject = new LinkedHashMap<ID, Set<STMT>>();
+            if (removedStatements != null) {
+                for (STMT stmt : removedStatements) {
+                    group(bySubject, byObject, stmt);
+                }
+                apply(subjects, bySubject, false, edit);
+                if (objects != null) {
+                    apply(objects, byObject, false, edit);
+                }
+                bySubject.clear();
+                byObject.clear();
+            }
+            if (addedStatements != null) {
+                for (STMT stmt : addedStatements) {
+                    group(bySubject, byObject, stmt);
+                }
+                apply(subjects, bySubject, true, edit);
+                if (objects != null) {
+                    apply(objects, byObject, true, edit);
+                }
+            }
+            snapshot = new Snapshot(subjects, objects);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void group(Map<ID, Set<STMT>> bySubject, Map<ID, Set<STMT>> byObject, STMT stmt) {
+        put(bySubject, stmt.getSubject(), stmt);
+        if (inverseIndex && stmt.getObject().isResource()) {
+            put(byObject, stmt.getObject().asResource(), stmt);
+        }
+    }
+
+    private void apply(Object[] index, Map<ID, Set<STMT>> changes, boolean add, Object edit) {
+        for (Map.Entry<ID, Set<STMT>> entry : changes.entrySet()) {
+            ID key = entry.getKey();
+            int hash = NodeDictionary.smear(key.hashCode());
+            int i = hash & (segments - 1);
+            STMT[] stmts = Trie.get(index[i], key, hash, segmentBits);
+            Set<STMT> merged = new LinkedHashSet<STMT>(stmts != null ? Arrays.asList(stmts) : Collections.<STMT> emptyList());
+            boolean modified = add ? merged.addAll(entry.getValue()) : merged.removeAll(entry.getValue());
+            if (modified) {
+                STMT[] value = merged.isEmpty() ? null : merged.toArray(new STMT[merged.size()]);
+                index[i] = Trie.put(index[i], key, hash, segmentBits, value, edit);
+            }
+        }
+    }
+
+    private static STMT[] get(Object[] index, ID key) {
+        int hash = NodeDictionary.smear(key.hashCode());
+        STMT[] stmts = Trie.get(index[hash & (index.length - 1)], key, hash,
+                Integer.numberOfTrailingZeros(index.length));
+        return stmts != null ? stmts : EMPTY;
+    }
+
+    private static void put(Map<ID, Set<STMT>> map, ID key, STMT stmt) {
+        Set<STMT> stmts = map.get(key);
+        if (stmts == null) {
+            stmts = new LinkedHashSet<STMT>();
+            map.put(key, stmts);
+        }
+        stmts.add(stmt);
+    }
+
+}
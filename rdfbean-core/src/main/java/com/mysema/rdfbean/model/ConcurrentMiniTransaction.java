@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterators;
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+
+/**
+ * ConcurrentMiniTransaction is an RDFBeanTransaction implementation for the
+ * ConcurrentMiniRepository
+ *
+ * <p>
+ * Changes are buffered until commit and then applied as one atomic update.
+ * Reads see the snapshot taken at transaction start and the buffered changes
+ * of the transaction. The additions and removals are tracked independently of
+ * the snapshot and applied to the repository contents current at commit time.
+ * Concurrent transactions are not checked for conflicts, for each statement
+ * the last commit wins.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class ConcurrentMiniTransaction implements RDFBeanTransaction {
+
+    private final ConcurrentMiniConnection connection;
+
+    private final ConcurrentMiniRepository.Snapshot snapshot;
+
+    private final boolean readOnly;
+
+    private final Set<STMT> added = new LinkedHashSet<STMT>();
+
+    private final Set<STMT> removed = new LinkedHashSet<STMT>();
+
+    private boolean active = true;
+
+    private boolean rollbackOnly;
+
+    ConcurrentMiniTransaction(ConcurrentMiniConnection connection, ConcurrentMiniRepository.Snapshot snapshot,
+            boolean readOnly) {
+        this.connection = connection;
+        this.snapshot = snapshot;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public void commit() {
+        if (rollbackOnly) {
+            throw new RepositoryException("Transaction is rollBackOnly");
+        }
+        try {
+            if (!added.isEmpty() || !removed.isEmpty()) {
+                // rebased onto the current contents, since the sets are disjoint
+                connection.getRepository().update(removed, added);
+            }
+        } finally {
+            active = false;
+            connection.cleanUpAfterCommit();
+        }
+    }
+
+    CloseableIterator<STMT> findStatements(@Nullable final ID subject, @Nullable final UID predicate,
+            @Nullable final NODE object, @Nullable final UID context, final boolean includeInferred) {
+        Iterator<STMT> stmts = snapshot.iterator(subject, predicate, object, context, includeInferred);
+        if (!removed.isEmpty()) {
+            stmts = Iterators.filter(stmts, Predicates.not(Predicates.in(removed)));
+        }
+        if (!added.isEmpty()) {
+            Iterator<STMT> addedStmts = Iterators.filter(added.iterator(), new Predicate<STMT>() {
+                @Override
+                public boolean apply(STMT stmt) {
+                    return STMTMatcher.matches(stmt, subject, predicate, object, context, includeInferred)
+                        && !snapshot.contains(stmt);
+                }
+            });
+            // copy to allow modifications during iteration
+            stmts = Iterators.concat(stmts, IteratorAdapter.asList(addedStmts).iterator());
+        }
+        return new IteratorAdapter<STMT>(stmts);
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    @Override
+    public void prepare() {
+
+    }
+
+    @Override
+    public void rollback() {
+        added.clear();
+        removed.clear();
+        active = false;
+        connection.cleanUpAfterCommit();
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    void update(@Nullable Collection<STMT> removedStatements, @Nullable Collection<STMT> addedStatements) {
+        if (readOnly) {
+            throw new RepositoryException("Transaction is readOnly");
+        }
+        if (removedStatements != null) {
+            for (STMT stmt : removedStatements) {
+                added.remove(stmt);
+                removed.add(stmt);
+            }
+        }
+        if (addedStatements != null) {
+            for (STMT stmt : addedStatements) {
+                removed.remove(stmt);
+                added.add(stmt);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,587 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * EncodedSTMTStore is a dictionary encoded statement store
+ *
+ * <p>
+ * Nodes are interned into int ids via a {@link NodeDictionary} and statements
+ * are stored as rows of four ints (subject, predicate, object, context) in a
+ * single primitive array. Subject and (optionally) object, predicate and
+ * context lookups go through posting lists of row numbers, and the shortest
+ * applicable posting list is used for each pattern. STMT instances are only
+ * created when results are read.
+ * </p>
+ *
+ * <p>
+ * Removed rows are only marked as deleted and the store is compacted once the
+ * majority of the rows are deleted.
+ * </p>
+ *
+ * @author tiwe
+ */
+public final class EncodedSTMTStore {
+
+    /**
+     * Posting lists of row numbers indexed by node id
+     */
+    static final class Postings {
+
+        private int[][] lists;
+
+        private int[] sizes;
+
+        Postings(int initialCapacity) {
+            lists = new int[initialCapacity][];
+            sizes = new int[initialCapacity];
+        }
+
+        Postings(int[][] lists, int[] sizes) {
+            this.lists = lists;
+            this.sizes = sizes;
+        }
+
+        void add(int key, int row) {
+            if (key >= lists.length) {
+                int capacity = Math.max(key + 1, lists.length * 2);
+                lists = Arrays.copyOf(lists, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            int[] list = lists[key];
+            int size = sizes[key];
+            if (list == null) {
+                list = new int[2];
+                lists[key] = list;
+            } else if (size == list.length) {
+                list = Arrays.copyOf(list, size + (size >> 1) + 1);
+                lists[key] = list;
+            }
+            list[size] = row;
+            sizes[key] = size + 1;
+        }
+
+        @Nullable
+        int[] get(int key) {
+            return key < lists.length ? lists[key] : null;
+        }
+
+        int size(int key) {
+            return key < sizes.length ? sizes[key] : 0;
+        }
+
+        /**
+         * Get the amount of keys including keys without rows
+         *
+         * @return
+         */
+        int length() {
+            return lists.length;
+        }
+
+    }
+
+    private static final int INFERRED = 0x80000000;
+
+    private static final int MIN_COMPACTION = 1024;
+
+    private static final int EMPTY = 0;
+
+    private final boolean objectIndex, predicateIndex, contextIndex;
+
+    private NodeDictionary dictionary;
+
+    private int[] quads;
+
+    private int rows, deleted;
+
+    private int[] table;
+
+    private Postings subjects;
+
+    @Nullable
+    private Postings objects, predicates, contexts;
+
+    public EncodedSTMTStore(int initialCapacity, boolean objectIndex) {
+        this(initialCapacity, objectIndex, false, false);
+    }
+
+    public EncodedSTMTStore(int initialCapacity, boolean objectIndex, boolean predicateIndex, boolean contextIndex) {
+        this.objectIndex = objectIndex;
+        this.predicateIndex = predicateIndex;
+        this.contextIndex = contextIndex;
+        init(initialCapacity);
+    }
+
+    private void init(int capacity) {
+        capacity = Math.max(capacity, 16);
+        dictionary = new NodeDictionary(capacity);
+        quads = new int[capacity * 4];
+        rows = 0;
+        deleted = 0;
+        int tableSize = 16;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        table = new int[tableSize];
+        subjects = new Postings(capacity);
+        objects = objectIndex ? new Postings(capacity) : null;
+        predicates = predicateIndex ? new Postings(64) : null;
+        contexts = contextIndex ? new Postings(64) : null;
+    }
+
+    /**
+     * Add the given statement
+     *
+     * @param stmt
+     * @return true, if the statement was not yet contained
+     */
+    public boolean add(STMT stmt) {
+        int s = dictionary.intern(stmt.getSubject());
+        int p = dictionary.intern(stmt.getPredicate());
+        int o = dictionary.intern(stmt.getObject());
+        int c = stmt.getContext() != null ? dictionary.intern(stmt.getContext()) : EMPTY;
+        if (!stmt.isAsserted()) {
+            c |= INFERRED;
+        }
+        return insert(s, p, o, c, stmt.getObject().isResource());
+    }
+
+    private boolean insert(int s, int p, int o, int c, boolean resourceObject) {
+        int mask = table.length - 1;
+        int i = hash(s, p, o, c) & mask;
+        while (table[i] != EMPTY) {
+            if (equals(table[i] - 1, s, p, o, c)) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        int row = rows++;
+        if (row * 4 == quads.length) {
+            quads = Arrays.copyOf(quads, quads.length * 2);
+        }
+        int base = row * 4;
+        quads[base] = s;
+        quads[base + 1] = p;
+        quads[base + 2] = o;
+        quads[base + 3] = c;
+        table[i] = row + 1;
+        subjects.add(s, row);
+        if (objects != null && resourceObject) {
+            objects.add(o, row);
+        }
+        if (predicates != null) {
+            predicates.add(p, row);
+        }
+        if (contexts != null && (c & ~INFERRED) != EMPTY) {
+            contexts.add(c & ~INFERRED, row);
+        }
+        if ((rows - deleted) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    public void clear() {
+        init(16);
+    }
+
+    /**
+     * Find the statements matching the given pattern
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param context
+     * @param includeInferred
+     * @return
+     */
+    public Iterator<STMT> iterator(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+            @Nullable UID context, boolean includeInferred) {
+        int s = EMPTY, p = EMPTY, o = EMPTY, c = EMPTY;
+        if ((subject != null && (s = dictionary.getId(subject)) == EMPTY)
+                || (predicate != null && (p = dictionary.getId(predicate)) == EMPTY)
+                || (object != null && (o = dictionary.getId(object)) == EMPTY)
+                || (context != null && (c = dictionary.getId(context)) == EMPTY)) {
+            return Collections.<STMT> emptyList().iterator();
+        }
+        // pick the shortest posting list
+        Postings postings = null;
+        int key = EMPTY, size = rows;
+        if (s != EMPTY && subjects.size(s) < size) {
+            postings = subjects;
+            key = s;
+            size = subjects.size(s);
+        }
+        if (o != EMPTY && objects != null && object.isResource() && objects.size(o) < size) {
+            postings = objects;
+            key = o;
+            size = objects.size(o);
+        }
+        if (p != EMPTY && predicates != null && predicates.size(p) < size) {
+            postings = predicates;
+            key = p;
+            size = predicates.size(p);
+        }
+        if (c != EMPTY && contexts != null && contexts.size(c) < size) {
+            postings = contexts;
+            key = c;
+            size = contexts.size(c);
+        }
+        if (postings != null) {
+            return new RowIterator(postings.get(key), size, s, p, o, c, includeInferred);
+        } else {
+            return new RowIterator(null, rows, s, p, o, c, includeInferred);
+        }
+    }
+
+    /**
+     * Get an upper bound for the amount of statements matching the given
+     * pattern based on the posting list sizes
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param context
+     * @return
+     */
+    public int estimate(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        int size = rows - deleted;
+        if (subject != null) {
+            size = Math.min(size, subjects.size(dictionary.getId(subject)));
+        }
+        if (predicate != null && predicates != null) {
+            size = Math.min(size, predicates.size(dictionary.getId(predicate)));
+        }
+        if (object != null && objects != null && object.isResource()) {
+            size = Math.min(size, objects.size(dictionary.getId(object)));
+        }
+        if (context != null && contexts != null) {
+            size = Math.min(size, contexts.size(dictionary.getId(context)));
+        }
+        return size;
+    }
+
+    /**
+     * Remove the given statement
+     *
+     * @param stmt
+     * @return true, if the statement was contained
+     */
+    public boolean remove(STMT stmt) {
+        int s = dictionary.getId(stmt.getSubject());
+        int p = dictionary.getId(stmt.getPredicate());
+        int o = dictionary.getId(stmt.getObject());
+        int c = stmt.getContext() != null ? dictionary.getId(stmt.getContext()) : EMPTY;
+        if (s == EMPTY || p == EMPTY || o == EMPTY || (c == EMPTY && stmt.getContext() != null)) {
+            return false;
+        }
+        if (!stmt.isAsserted()) {
+            c |= INFERRED;
+        }
+
+        int mask = table.length - 1;
+        int i = hash(s, p, o, c) & mask;
+        while (table[i] != EMPTY) {
+            int row = table[i] - 1;
+            if (equals(row, s, p, o, c)) {
+                delete(i);
+                quads[row * 4] = EMPTY;
+                deleted++;
+                if (deleted >= MIN_COMPACTION && deleted * 2 > rows) {
+                    compact();
+                }
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return rows - deleted;
+    }
+
+    public NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Get the raw rows of this store, deleted rows have an EMPTY subject
+     *
+     * @return
+     */
+    int[] getQuads() {
+        return quads;
+    }
+
+    /**
+     * Get the amount of rows including deleted ones
+     *
+     * @return
+     */
+    int getRowCount() {
+        return rows;
+    }
+
+    int getDeletedCount() {
+        return deleted;
+    }
+
+    /**
+     * Get the hash table of row numbers plus one
+     *
+     * @return
+     */
+    int[] getTable() {
+        return table;
+    }
+
+    Postings getSubjects() {
+        return subjects;
+    }
+
+    @Nullable
+    Postings getObjects() {
+        return objects;
+    }
+
+    @Nullable
+    Postings getPredicates() {
+        return predicates;
+    }
+
+    @Nullable
+    Postings getContexts() {
+        return contexts;
+    }
+
+    /**
+     * Replace the contents of this store with the given encoded state without
+     * rehashing. Indexes which are enabled for this store but not given are
+     * rebuilt from the rows, and given indexes which are not enabled are
+     * dropped.
+     *
+     * @param dictionary
+     * @param quads
+     *            rows as encoded by {@link #getQuads()}
+     * @param rows
+     * @param deleted
+     * @param table
+     *            hash table as encoded by {@link #getTable()}
+     * @param subjects
+     * @param objects
+     * @param predicates
+     * @param contexts
+     */
+    void restore(NodeDictionary dictionary, int[] quads, int rows, int deleted, int[] table,
+            Postings subjects, @Nullable Postings objects, @Nullable Postings predicates,
+            @Nullable Postings contexts) {
+        this.dictionary = dictionary;
+        this.quads = quads;
+        this.rows = rows;
+        this.deleted = deleted;
+        this.table = table;
+        this.subjects = subjects;
+        this.objects = objectIndex ? objects : null;
+        this.predicates = predicateIndex ? predicates : null;
+        this.contexts = contextIndex ? contexts : null;
+        boolean rebuildObjects = objectIndex && objects == null;
+        boolean rebuildPredicates = predicateIndex && predicates == null;
+        boolean rebuildContexts = contextIndex && contexts == null;
+        if (rebuildObjects) {
+            this.objects = new Postings(dictionary.size() + 1);
+        }
+        if (rebuildPredicates) {
+            this.predicates = new Postings(64);
+        }
+        if (rebuildContexts) {
+            this.contexts = new Postings(64);
+        }
+        if (rebuildObjects || rebuildPredicates || rebuildContexts) {
+            for (int row = 0; row < rows; row++) {
+                int base = row * 4;
+                if (quads[base] == EMPTY) {
+                    continue;
+                }
+                if (rebuildObjects && dictionary.getNode(quads[base + 2]).isResource()) {
+                    this.objects.add(quads[base + 2], row);
+                }
+                if (rebuildPredicates) {
+                    this.predicates.add(quads[base + 1], row);
+                }
+                int context = quads[base + 3] & ~INFERRED;
+                if (rebuildContexts && context != EMPTY) {
+                    this.contexts.add(context, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuild the rows, indexes and the dictionary without the deleted rows
+     */
+    private void compact() {
+        NodeDictionary oldDictionary = dictionary;
+        int[] oldQuads = quads;
+        int oldRows = rows;
+        init(size());
+        for (int row = 0; row < oldRows; row++) {
+            int base = row * 4;
+            if (oldQuads[base] != EMPTY) {
+                NODE object = oldDictionary.getNode(oldQuads[base + 2]);
+                int c = oldQuads[base + 3];
+                int context = c & ~INFERRED;
+                insert(
+                        dictionary.intern(oldDictionary.getNode(oldQuads[base])),
+                        dictionary.intern(oldDictionary.getNode(oldQuads[base + 1])),
+                        dictionary.intern(object),
+                        (context != EMPTY ? dictionary.intern(oldDictionary.getNode(context)) : EMPTY) | (c & INFERRED),
+                        object.isResource());
+            }
+        }
+    }
+
+    private void delete(int slot) {
+        // backward shift deletion for linear probing
+        int mask = table.length - 1;
+        int i = slot;
+        int j = slot;
+        table[i] = EMPTY;
+        while (true) {
+            j = (j + 1) & mask;
+            int entry = table[j];
+            if (entry == EMPTY) {
+                return;
+            }
+            int base = (entry - 1) * 4;
+            int k = hash(quads[base], quads[base + 1], quads[base + 2], quads[base + 3]) & mask;
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+                continue;
+            }
+            table[i] = entry;
+            table[j] = EMPTY;
+            i = j;
+        }
+    }
+
+    private boolean equals(int row, int s, int p, int o, int c) {
+        int base = row * 4;
+        return quads[base] == s && quads[base + 1] == p && quads[base + 2] == o && quads[base + 3] == c;
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int row = 0; row < rows; row++) {
+            int base = row * 4;
+            if (quads[base] != EMPTY) {
+                int i = hash(quads[base], quads[base + 1], quads[base + 2], quads[base + 3]) & mask;
+                while (newTable[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = row + 1;
+            }
+        }
+        table = newTable;
+    }
+
+    private static int hash(int s, int p, int o, int c) {
+        int h = s;
+        h = 31 * h + p;
+        h = 31 * h + o;
+        h = 31 * h + c;
+        return NodeDictionary.smear(h);
+    }
+
+    /**
+     * RowIterator iterates over the matching rows of either a posting list or
+     * all rows and creates STMT instances lazily
+     */
+    private final class RowIterator implements Iterator<STMT> {
+
+        private final NodeDictionary dict = dictionary;
+
+        private final int[] data = quads;
+
+        @Nullable
+        private final int[] candidates;
+
+        private final int size;
+
+        private final int s, p, o, c;
+
+        private final boolean includeInferred;
+
+        private int index = 0;
+
+        private int next = -1;
+
+        RowIterator(@Nullable int[] candidates, int size, int s, int p, int o, int c, boolean includeInferred) {
+            this.candidates = candidates;
+            this.size = size;
+            this.s = s;
+            this.p = p;
+            this.o = o;
+            this.c = c;
+            this.includeInferred = includeInferred;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next < 0 && index < size) {
+                int row = candidates != null ? candidates[index] : index;
+                index++;
+                if (matches(row)) {
+                    next = row;
+                }
+            }
+            return next >= 0;
+        }
+
+        private boolean matches(int row) {
+            int base = row * 4;
+            int context = data[base + 3];
+            return data[base] != EMPTY
+                    && (s == EMPTY || data[base] == s)
+                    && (p == EMPTY || data[base + 1] == p)
+                    && (o == EMPTY || data[base + 2] == o)
+                    && (c == EMPTY || (context & ~INFERRED) == c)
+                    && (includeInferred || (context & INFERRED) == 0);
+        }
+
+        @Override
+        public STMT next() {
+            if (hasNext()) {
+                int base = next * 4;
+                next = -1;
+                int context = data[base + 3] & ~INFERRED;
+                return new STMT(
+                        (ID) dict.getNode(data[base]),
+                        (UID) dict.getNode(data[base + 1]),
+                        dict.getNode(data[base + 2]),
+                        context != EMPTY ? (UID) dict.getNode(context) : null,
+                        (data[base + 3] & INFERRED) == 0);
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
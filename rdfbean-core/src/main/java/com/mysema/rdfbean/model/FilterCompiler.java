@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Operation;
+import com.mysema.query.types.Operator;
+import com.mysema.query.types.Ops;
+import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
+
+/**
+ * FilterCompiler compiles filter and value expressions into predicates and
+ * functions over query rows
+ *
+ * <p>
+ * Variables are resolved to row slots and constant sub expressions are
+ * evaluated once at compile time. LIKE patterns and regular expressions with
+ * constant arguments are compiled once per query, other patterns are taken
+ * from a bounded cache which is shared by all queries.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class FilterCompiler {
+
+    private static final int PATTERN_CACHE_SIZE = 1000;
+
+    private static final NODE[] EMPTY_ROW = new NODE[0];
+
+    private static final NODEComparator nodeComparator = new TypedNODEComparator();
+
+    private static final LoadingCache<String, Pattern> patterns = createCache(0);
+
+    private static final LoadingCache<String, Pattern> caseInsensitivePatterns = createCache(Pattern.CASE_INSENSITIVE);
+
+    private static final LoadingCache<String, Pattern> likePatterns = CacheBuilder.newBuilder()
+            .maximumSize(PATTERN_CACHE_SIZE)
+            .build(new CacheLoader<String, Pattern>() {
+                @Override
+                public Pattern load(String like) {
+                    return Pattern.compile(toRegex(like));
+                }
+            });
+
+    private static LoadingCache<String, Pattern> createCache(final int flags) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(PATTERN_CACHE_SIZE)
+                .build(new CacheLoader<String, Pattern>() {
+                    @Override
+                    public Pattern load(String regex) {
+                        return Pattern.compile(regex, flags);
+                    }
+                });
+    }
+
+    private final VariableSlots slots;
+
+    FilterCompiler(VariableSlots slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Convert the given constant into a NODE
+     *
+     * @param expr
+     * @return
+     */
+    public static NODE toNODE(Constant<?> expr) {
+        return toNODE(expr.getType(), expr.getConstant());
+    }
+
+    private static NODE toNODE(Class<?> type, Object constant) {
+        if (type.equals(String.class)) {
+            return new LIT(constant.toString());
+        } else if (NODE.class.isAssignableFrom(type)) {
+            return (NODE) constant;
+        } else {
+            UID datatype = ConverterRegistryImpl.DEFAULT.getDatatype(type);
+            String value = ConverterRegistryImpl.DEFAULT.toString(constant);
+            return new LIT(value, datatype);
+        }
+    }
+
+    /**
+     * Compile the given boolean expression into a predicate
+     *
+     * @param expr
+     * @return
+     */
+    public Predicate<NODE[]> compilePredicate(Expression<?> expr) {
+        if (!(expr instanceof Operation<?>)) {
+            throw new IllegalArgumentException(expr.toString());
+        }
+        Operation<?> operation = (Operation<?>) expr;
+        Operator<?> op = operation.getOperator();
+        if (op == Ops.AND || op == Ops.OR) {
+            return createJunction(operation, op == Ops.AND);
+        } else if (op == Ops.NOT) {
+            Predicate<NODE[]> arg = compilePredicate(operation.getArg(0));
+            return isConstant(arg) ? constant(!arg.apply(EMPTY_ROW)) : Predicates.not(arg);
+        } else if (op == Ops.IN) {
+            return createInPredicate(operation);
+        }
+
+        List<Function<NODE[], NODE>> args = new ArrayList<Function<NODE[], NODE>>(operation.getArgs().size());
+        boolean constantArgs = true;
+        for (Expression<?> arg : operation.getArgs()) {
+            Function<NODE[], NODE> function = compileValue(arg);
+            constantArgs &= function instanceof ConstantValue;
+            args.add(function);
+        }
+        Predicate<NODE[]> predicate = createPredicate(operation, args);
+        // fold predicates of constants
+        return constantArgs ? constant(predicate.apply(EMPTY_ROW)) : predicate;
+    }
+
+    /**
+     * Compile the given expression into a function from rows to values
+     *
+     * @param expr
+     * @return
+     */
+    public Function<NODE[], NODE> compileValue(Expression<?> expr) {
+        String variable = VariableSlots.getVariable(expr);
+        if (variable != null) {
+            return new SlotValue(slots.getSlot(variable));
+        } else if (expr instanceof Constant<?>) {
+            return new ConstantValue(toNODE((Constant<?>) expr));
+        } else if (expr instanceof Operation<?>) {
+            Operation<?> operation = (Operation<?>) expr;
+            final Function<NODE[], NODE>[] args = compileArgs(operation);
+            Function<NODE[], NODE> function = createValue(operation, args);
+            for (Function<NODE[], NODE> arg : args) {
+                if (!(arg instanceof ConstantValue)) {
+                    return function;
+                }
+            }
+            // fold operations on constants
+            return new ConstantValue(function.apply(EMPTY_ROW));
+        } else {
+            throw new IllegalArgumentException(expr.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<NODE[], NODE>[] compileArgs(Operation<?> operation) {
+        Function<NODE[], NODE>[] args = new Function[operation.getArgs().size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = compileValue(operation.getArg(i));
+        }
+        return args;
+    }
+
+    private Predicate<NODE[]> createJunction(Operation<?> operation, final boolean and) {
+        List<Predicate<NODE[]>> components = new ArrayList<Predicate<NODE[]>>();
+        if (flatten(operation, operation.getOperator(), components, and)) {
+            return constant(!and);
+        } else if (components.isEmpty()) {
+            return constant(and);
+        } else if (components.size() == 1) {
+            return components.get(0);
+        }
+        @SuppressWarnings("unchecked")
+        final Predicate<NODE[]>[] predicates = components.toArray(new Predicate[components.size()]);
+        return new Predicate<NODE[]>() {
+            @Override
+            public boolean apply(NODE[] row) {
+                for (Predicate<NODE[]> predicate : predicates) {
+                    if (predicate.apply(row) != and) {
+                        return !and;
+                    }
+                }
+                return and;
+            }
+        };
+    }
+
+    /**
+     * Collect the components of nested AND or OR operations
+     *
+     * @return true, if a constant component decides the result
+     */
+    private boolean flatten(Expression<?> expr, Operator<?> op, List<Predicate<NODE[]>> components, boolean and) {
+        if (expr instanceof Operation<?> && ((Operation<?>) expr).getOperator() == op) {
+            for (Expression<?> arg : ((Operation<?>) expr).getArgs()) {
+                if (flatten(arg, op, components, and)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Predicate<NODE[]> predicate = compilePredicate(expr);
+        if (isConstant(predicate)) {
+            // true for AND and false for OR can be omitted
+            return predicate.apply(EMPTY_ROW) != and;
+        }
+        components.add(predicate);
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<NODE[]> createInPredicate(Operation<?> operation) {
+        final Function<NODE[], NODE> value = compileValue(operation.getArg(0));
+        final Set<NODE> nodes = new HashSet<NODE>();
+        for (Object o : ((Constant<Collection<?>>) operation.getArg(1)).getConstant()) {
+            nodes.add(toNODE(o.getClass(), o));
+        }
+        Predicate<NODE[]> predicate = new Predicate<NODE[]>() {
+            @Override
+            public boolean apply(NODE[] row) {
+                return nodes.contains(value.apply(row));
+            }
+        };
+        return value instanceof ConstantValue ? constant(predicate.apply(EMPTY_ROW)) : predicate;
+    }
+
+    private Predicate<NODE[]> createPredicate(Operation<?> operation, List<Function<NODE[], NODE>> args) {
+        final Operator<?> op = operation.getOperator();
+        final Function<NODE[], NODE> lhs = args.get(0);
+        final Function<NODE[], NODE> rhs = args.size() > 1 ? args.get(1) : null;
+        if (op == Ops.EQ || op == Ops.NE) {
+            final boolean eq = op == Ops.EQ;
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    return Objects.equal(lhs.apply(row), rhs.apply(row)) == eq;
+                }
+            };
+
+        } else if (op == Ops.IS_NULL || op == Ops.IS_NOT_NULL) {
+            final boolean isNull = op == Ops.IS_NULL;
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    return (lhs.apply(row) == null) == isNull;
+                }
+            };
+
+        } else if (op == Ops.LT || op == Ops.GT || op == Ops.LOE || op == Ops.GOE) {
+            return createComparePredicate(op, lhs, rhs);
+
+        } else if (op == Ops.MATCHES || op == Ops.MATCHES_IC) {
+            return createMatchesPredicate(lhs, rhs, op == Ops.MATCHES ? patterns : caseInsensitivePatterns);
+
+        } else if (op == Ops.LIKE) {
+            if (rhs instanceof ConstantValue && rhs.apply(EMPTY_ROW) != null) {
+                return createLikePredicate(lhs, rhs.apply(EMPTY_ROW).getValue());
+            } else {
+                return createMatchesPredicate(lhs, rhs, likePatterns);
+            }
+
+        } else if (op == Ops.STARTS_WITH || op == Ops.ENDS_WITH || op == Ops.STRING_CONTAINS
+                || op == Ops.STARTS_WITH_IC || op == Ops.ENDS_WITH_IC || op == Ops.STRING_CONTAINS_IC) {
+            return createStringMatchPredicate(op, lhs, rhs);
+
+        } else if (op == Ops.EQ_IGNORE_CASE) {
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    NODE l = lhs.apply(row);
+                    NODE r = rhs.apply(row);
+                    if (l != null && r != null) {
+                        return l.getValue().equalsIgnoreCase(r.getValue());
+                    } else {
+                        return l == r;
+                    }
+                }
+            };
+
+        } else if (op == Ops.STRING_IS_EMPTY) {
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    NODE l = lhs.apply(row);
+                    return l != null ? l.getValue().isEmpty() : false;
+                }
+            };
+
+        } else {
+            throw new IllegalArgumentException(operation.toString());
+        }
+    }
+
+    private Predicate<NODE[]> createComparePredicate(final Operator<?> op, final Function<NODE[], NODE> lhs,
+            final Function<NODE[], NODE> rhs) {
+        final boolean lt = op == Ops.LT || op == Ops.LOE;
+        final boolean eq = op == Ops.LOE || op == Ops.GOE;
+        final boolean gt = op == Ops.GT || op == Ops.GOE;
+        return new Predicate<NODE[]>() {
+            @Override
+            public boolean apply(NODE[] row) {
+                int rv = nodeComparator.compare(lhs.apply(row), rhs.apply(row));
+                return rv < 0 ? lt : (rv == 0 ? eq : gt);
+            }
+        };
+    }
+
+    private Predicate<NODE[]> createMatchesPredicate(final Function<NODE[], NODE> lhs,
+            final Function<NODE[], NODE> rhs, final LoadingCache<String, Pattern> cache) {
+        if (rhs instanceof ConstantValue) {
+            NODE regex = rhs.apply(EMPTY_ROW);
+            if (regex == null) {
+                return constant(false);
+            }
+            final Pattern pattern = cache.getUnchecked(regex.getValue());
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    NODE l = lhs.apply(row);
+                    return l != null && pattern.matcher(l.getValue()).matches();
+                }
+            };
+        } else {
+            return new Predicate<NODE[]>() {
+                @Override
+                public boolean apply(NODE[] row) {
+                    NODE l = lhs.apply(row);
+                    NODE r = rhs.apply(row);
+                    return l != null && r != null && cache.getUnchecked(r.getValue()).matcher(l.getValue()).matches();
+                }
+            };
+        }
+    }
+
+    private Predicate<NODE[]> createLikePredicate(final Function<NODE[], NODE> lhs, String like) {
+        String inner = like.length() > 1 ? like.substring(1, like.length() - 1) : "";
+        final Operator<?> op;
+        final String str;
+        if (like.indexOf('_') > -1) {
+            op = null;
+            str = null;
+        } else if (like.indexOf('%') == -1) {
+            op = Ops.EQ;
+            str = like;
+        } else if (like.length() > 1 && like.startsWith("%") && like.endsWith("%") && inner.indexOf('%') == -1) {
+            op = Ops.STRING_CONTAINS;
+            str = inner;
+        } else if (like.startsWith("%") && like.indexOf('%', 1) == -1) {
+            op = Ops.ENDS_WITH;
+            str = like.substring(1);
+        } else if (like.endsWith("%") && like.indexOf('%') == like.length() - 1) {
+            op = Ops.STARTS_WITH;
+            str = like.substring(0, like.length() - 1);
+        } else {
+            op = null;
+            str = null;
+        }
+        if (op == null) {
+            return createMatchesPredicate(lhs, new ConstantValue(new LIT(like)), likePatterns);
+        }
+        return new Predicate<NODE[]>() {
+            @Override
+            public boolean apply(NODE[] row) {
+                NODE l = lhs.apply(row);
+                if (l == null) {
+                    return false;
+                } else if (op == Ops.EQ) {
+                    return l.getValue().equals(str);
+                } else if (op == Ops.STARTS_WITH) {
+                    return l.getValue().startsWith(str);
+                } else if (op == Ops.ENDS_WITH) {
+                    return l.getValue().endsWith(str);
+                } else {
+                    return l.getValue().contains(str);
+                }
+            }
+        };
+    }
+
+    private Predicate<NODE[]> createStringMatchPredicate(final Operator<?> op, final Function<NODE[], NODE> lhs,
+            final Function<NODE[], NODE> rhs) {
+        return new Predicate<NODE[]>() {
+            @Override
+            public boolean apply(NODE[] row) {
+                NODE l = lhs.apply(row);
+                NODE r = rhs.apply(row);
+                if (l == null || r == null) {
+                    return false;
+                }
+                String str = l.getValue();
+                String other = r.getValue();
+                if (op == Ops.STARTS_WITH) {
+                    return str.startsWith(other);
+                } else if (op == Ops.STARTS_WITH_IC) {
+                    return str.regionMatches(true, 0, other, 0, other.length());
+                } else if (op == Ops.ENDS_WITH) {
+                    return str.endsWith(other);
+                } else if (op == Ops.ENDS_WITH_IC) {
+                    int offset = str.length() - other.length();
+                    return offset >= 0 && str.regionMatches(true, offset, other, 0, other.length());
+                } else if (op == Ops.STRING_CONTAINS) {
+                    return str.contains(other);
+                } else {
+                    return containsIgnoreCase(str, other);
+                }
+            }
+        };
+    }
+
+    private Function<NODE[], NODE> createValue(Operation<?> operation, final Function<NODE[], NODE>[] args) {
+        final Operator<?> op = operation.getOperator();
+        if (op != Ops.CONCAT && op != Ops.LOWER && op != Ops.UPPER && op != Ops.TRIM && op != Ops.SUBSTR_1ARG
+                && op != Ops.SUBSTR_2ARGS && op != Ops.CHAR_AT && op != Ops.STRING_CAST) {
+            throw new IllegalArgumentException(operation.toString());
+        }
+        return new Function<NODE[], NODE>() {
+            @Override
+            @Nullable
+            public NODE apply(NODE[] row) {
+                NODE lhs = args[0].apply(row);
+                NODE rhs = args.length > 1 ? args[1].apply(row) : null;
+                if (lhs == null || (args.length > 1 && rhs == null)) {
+                    return null;
+                } else if (op == Ops.CONCAT) {
+                    return new LIT(lhs.getValue() + rhs.getValue());
+                } else if (op == Ops.LOWER) {
+                    return new LIT(lhs.getValue().toLowerCase());
+                } else if (op == Ops.UPPER) {
+                    return new LIT(lhs.getValue().toUpperCase());
+                } else if (op == Ops.TRIM) {
+                    return new LIT(lhs.getValue().trim());
+                } else if (op == Ops.SUBSTR_1ARG) {
+                    return new LIT(lhs.getValue().substring(Integer.parseInt(rhs.getValue())));
+                } else if (op == Ops.SUBSTR_2ARGS) {
+                    NODE end = args[2].apply(row);
+                    return end != null ? new LIT(lhs.getValue().substring(
+                            Integer.parseInt(rhs.getValue()),
+                            Integer.parseInt(end.getValue()))) : null;
+                } else if (op == Ops.CHAR_AT) {
+                    return new LIT(String.valueOf(lhs.getValue().charAt(Integer.parseInt(rhs.getValue()))));
+                } else {
+                    return lhs.isResource() ? new LIT(lhs.getValue()) : lhs;
+                }
+            }
+        };
+    }
+
+    private static boolean containsIgnoreCase(String str, String other) {
+        int max = str.length() - other.length();
+        for (int i = 0; i <= max; i++) {
+            if (str.regionMatches(true, i, other, 0, other.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toRegex(String like) {
+        StringBuilder regex = new StringBuilder(like.length() + 16);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    private static boolean isConstant(Predicate<NODE[]> predicate) {
+        return predicate == Predicates.<NODE[]> alwaysTrue() || predicate == Predicates.<NODE[]> alwaysFalse();
+    }
+
+    private static Predicate<NODE[]> constant(boolean value) {
+        return value ? Predicates.<NODE[]> alwaysTrue() : Predicates.<NODE[]> alwaysFalse();
+    }
+
+    /**
+     * SlotValue provides the value of a row slot
+     */
+    private static final class SlotValue implements Function<NODE[], NODE> {
+
+        private final int slot;
+
+        SlotValue(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        @Nullable
+        public NODE apply(NODE[] row) {
+            return row[slot];
+        }
+
+    }
+
+    /**
+     * ConstantValue provides a value which doesn't depend on the row
+     */
+    private static final class ConstantValue implements Function<NODE[], NODE> {
+
+        @Nullable
+        private final NODE value;
+
+        ConstantValue(@Nullable NODE value) {
+            this.value = value;
+        }
+
+        @Override
+        @Nullable
+        public NODE apply(NODE[] row) {
+            return value;
+        }
+
+    }
+
+}
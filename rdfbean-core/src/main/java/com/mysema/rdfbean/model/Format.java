@@ -13,6 +13,10 @@ public enum Format {
      * 
      */
     N3("application/n3"),
+    /**
+     * 
+     */
+    NQUADS("text/x-nquads"),
     /**
      * 
      */
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.query.types.Path;
+
+/**
+ * JoinPlanner orders the pattern blocks of a group by estimated selectivity and
+ * decides between bind joins and hash joins
+ *
+ * <p>
+ * The estimates are based on the statement counts of a
+ * {@link CardinalityEstimator} for the constant parts of a pattern, reduced
+ * by fixed factors for the variables which are bound by preceding blocks. If
+ * no counts are available, fixed default counts are used. Consecutive pattern
+ * blocks are ordered greedily, cheapest connected pattern first; other blocks
+ * keep their position.
+ * </p>
+ *
+ * @author tiwe
+ */
+public final class JoinPlanner {
+
+    /**
+     * assumed store size, if the store provides no counts
+     */
+    private static final double DEFAULT_SIZE = 100000;
+
+    /**
+     * cost of a single lookup relative to the cost of one result row
+     */
+    private static final double LOOKUP_COST = 10;
+
+    /**
+     * minimum amount of estimated outer rows for hash joins
+     */
+    private static final double MIN_HASH_JOIN_ROWS = 100;
+
+    /**
+     * maximum amount of estimated rows to be kept in a hash join table
+     */
+    private static final double MAX_HASH_JOIN_ROWS = 1000000;
+
+    @Nullable
+    private final CardinalityEstimator estimator;
+
+    public JoinPlanner(@Nullable CardinalityEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * Order the given blocks
+     *
+     * @param blocks
+     * @param bound
+     *            variables which are bound before the blocks are evaluated
+     * @return
+     */
+    public List<Block> order(List<Block> blocks, Collection<String> bound) {
+        List<Block> rv = new ArrayList<Block>(blocks.size());
+        Set<String> vars = new HashSet<String>(bound);
+        List<PatternBlock> run = new ArrayList<PatternBlock>();
+        for (Block block : blocks) {
+            if (block instanceof PatternBlock) {
+                run.add((PatternBlock) block);
+            } else {
+                orderPatterns(run, vars, rv);
+                rv.add(block);
+            }
+        }
+        orderPatterns(run, vars, rv);
+        return rv;
+    }
+
+    private void orderPatterns(List<PatternBlock> patterns, Set<String> bound, List<Block> target) {
+        while (!patterns.isEmpty()) {
+            PatternBlock best = null;
+            boolean bestConnected = false;
+            double bestCost = 0;
+            for (PatternBlock pattern : patterns) {
+                boolean connected = isConnected(pattern, bound);
+                double cost = estimate(pattern, null, bound);
+                if (best == null || (connected && !bestConnected) || (connected == bestConnected && cost < bestCost)) {
+                    best = pattern;
+                    bestConnected = connected;
+                    bestCost = cost;
+                }
+            }
+            patterns.remove(best);
+            target.add(best);
+            bound.addAll(getVariables(best, null));
+        }
+    }
+
+    /**
+     * Estimate the amount of rows the given pattern produces for each input
+     * row
+     *
+     * @param pattern
+     * @param context
+     *            context of the enclosing graph block
+     * @param bound
+     *            variables which are bound by the preceding blocks
+     * @return
+     */
+    public double estimate(PatternBlock pattern, @Nullable Expression<UID> context, Collection<String> bound) {
+        Expression<UID> c = pattern.getContext() != null ? pattern.getContext() : context;
+        double size = count(pattern, c);
+        // reduce by the positions which are bound, but whose values are not known yet
+        if (isBoundWithoutValue(pattern.getSubject(), bound)) {
+            size = Math.min(size, isBound(pattern.getPredicate(), bound) ? 2 : 20);
+        }
+        if (isBoundWithoutValue(pattern.getPredicate(), bound)) {
+            size = size / 10;
+        }
+        if (isBoundWithoutValue(pattern.getObject(), bound)) {
+            size = size / 100;
+        }
+        if (c != null && isBoundWithoutValue(c, bound)) {
+            size = size / 10;
+        }
+        return Math.max(size, 1.0);
+    }
+
+    /**
+     * Get whether the given pattern should be joined via a hash join instead
+     * of a lookup per input row
+     *
+     * @param outerRows
+     *            estimated amount of input rows
+     * @param pattern
+     * @param context
+     *            context of the enclosing graph block
+     * @param bound
+     *            variables which are bound by the preceding blocks
+     * @return
+     */
+    public boolean isHashJoin(double outerRows, PatternBlock pattern, @Nullable Expression<UID> context,
+            Collection<String> bound) {
+        if (outerRows < MIN_HASH_JOIN_ROWS) {
+            return false;
+        }
+        double buildRows = estimate(pattern, context, Collections.<String> emptySet());
+        if (buildRows > MAX_HASH_JOIN_ROWS) {
+            return false;
+        }
+        double bindJoinCost = outerRows * (LOOKUP_COST + estimate(pattern, context, bound));
+        double hashJoinCost = LOOKUP_COST + buildRows + outerRows;
+        return hashJoinCost < bindJoinCost;
+    }
+
+    /**
+     * Get the variables of the given pattern
+     *
+     * @param pattern
+     * @param context
+     *            context of the enclosing graph block
+     * @return
+     */
+    public static Set<String> getVariables(PatternBlock pattern, @Nullable Expression<UID> context) {
+        Set<String> vars = new HashSet<String>();
+        addVariable(pattern.getSubject(), vars);
+        addVariable(pattern.getPredicate(), vars);
+        addVariable(pattern.getObject(), vars);
+        addVariable(pattern.getContext() != null ? pattern.getContext() : context, vars);
+        return vars;
+    }
+
+    private static void addVariable(@Nullable Expression<?> expr, Set<String> vars) {
+        String var = getVariable(expr);
+        if (var != null) {
+            vars.add(var);
+        }
+    }
+
+    /**
+     * Get the variable name of the given expression
+     *
+     * @param expr
+     * @return the variable name or null, if the expression is not a variable
+     */
+    @Nullable
+    public static String getVariable(@Nullable Expression<?> expr) {
+        if (expr instanceof Path<?>) {
+            return expr.toString();
+        } else if (expr instanceof ParamExpression<?>) {
+            return ((ParamExpression<?>) expr).getName();
+        } else {
+            return null;
+        }
+    }
+
+    private double count(PatternBlock pattern, @Nullable Expression<UID> context) {
+        ID s = (ID) getConstant(pattern.getSubject());
+        UID p = (UID) getConstant(pattern.getPredicate());
+        NODE o = getConstant(pattern.getObject());
+        UID c = context != null ? (UID) getConstant(context) : null;
+        if (estimator != null) {
+            long count = estimator.estimateCount(s, p, o, c);
+            if (count != CardinalityEstimator.UNKNOWN) {
+                // literal objects are not covered by all indexes
+                return o != null && o.isLiteral() ? Math.min(count, heuristic(s, p, o, c)) : count;
+            }
+        }
+        return heuristic(s, p, o, c);
+    }
+
+    private static double heuristic(@Nullable ID s, @Nullable UID p, @Nullable NODE o, @Nullable UID c) {
+        double size = DEFAULT_SIZE;
+        if (s != null) {
+            size = p != null ? 2 : 20;
+        } else if (p != null) {
+            size = o != null ? 10 : DEFAULT_SIZE / 10;
+        }
+        if (o != null) {
+            size = Math.min(size, s != null ? 1 : 50);
+        }
+        if (c != null) {
+            size = size / 10;
+        }
+        return size;
+    }
+
+    private static boolean isConnected(PatternBlock pattern, Set<String> bound) {
+        if (bound.isEmpty()) {
+            return true;
+        }
+        Set<String> vars = getVariables(pattern, null);
+        if (vars.isEmpty()) {
+            return true;
+        }
+        for (String var : vars) {
+            if (bound.contains(var)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBound(Expression<?> expr, Collection<String> bound) {
+        String var = getVariable(expr);
+        return var == null || bound.contains(var);
+    }
+
+    private static boolean isBoundWithoutValue(Expression<?> expr, Collection<String> bound) {
+        return getConstant(expr) == null && isBound(expr, bound);
+    }
+
+    @Nullable
+    private static NODE getConstant(Expression<?> expr) {
+        if (expr instanceof Constant<?> && ((Constant<?>) expr).getConstant() instanceof NODE) {
+            return (NODE) ((Constant<?>) expr).getConstant();
+        } else {
+            return null;
+        }
+    }
+
+}
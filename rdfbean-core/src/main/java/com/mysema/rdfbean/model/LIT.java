@@ -31,6 +31,12 @@ public final class LIT extends NODE {
 
     private final UID datatype;
 
+    /**
+     * parsed value for typed comparisons, computed lazily
+     */
+    @Nullable
+    private transient TypedValue typedValue;
+
     public LIT(String value, UID datatype) {
         this.value = Assert.notNull(value, "value");
         this.datatype = Assert.notNull(datatype, "datatype");
@@ -64,6 +70,15 @@ public final class LIT extends NODE {
         return datatype;
     }
 
+    TypedValue getTypedValue() {
+        TypedValue rv = typedValue;
+        if (rv == null) {
+            rv = lang == null ? TypedValue.parse(this) : TypedValue.UNTYPED;
+            typedValue = rv;
+        }
+        return rv;
+    }
+
     @Override
     public NodeType getNodeType() {
         return NodeType.LITERAL;
@@ -19,7 +19,7 @@ import com.mysema.query.QueryMetadata;
  * @author sasa
  * 
  */
-public class MiniConnection implements RDFConnection {
+public class MiniConnection implements RDFConnection, CardinalityEstimator {
 
     private static final Logger logger = LoggerFactory.getLogger(MiniConnection.class);
 
@@ -33,6 +33,11 @@ public class MiniConnection implements RDFConnection {
         this.repository.add(stmts);
     }
 
+    @Override
+    public long estimateCount(ID subject, UID predicate, NODE object, UID context) {
+        return repository.estimateCount(subject, predicate, object, context);
+    }
+
     @Override
     public RDFBeanTransaction beginTransaction(boolean readOnly, int txTimeout, int isolationLevel) {
         throw new UnsupportedOperationException();
@@ -67,6 +72,7 @@ public class MiniConnection implements RDFConnection {
                 logger.debug(queryLanguage + " : " + metadata.getWhere().toString());
             }
             QueryRDFVisitor visitor = new QueryRDFVisitor(this);
+            visitor.setSortMemoryBudget(repository.getSortMemoryBudget());
             return (Q) visitor.visit((QueryMetadata) definition, queryLanguage);
 
         } else {
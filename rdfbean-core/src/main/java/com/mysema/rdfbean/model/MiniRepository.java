@@ -5,9 +5,11 @@
  */
 package com.mysema.rdfbean.model;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,17 +24,27 @@ import com.google.common.collect.Lists;
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
 import com.mysema.rdfbean.Namespaces;
+import com.mysema.rdfbean.model.io.ParserUtils;
+import com.mysema.rdfbean.model.io.RDFSource;
 import com.mysema.rdfbean.model.io.RDFWriter;
+import com.mysema.rdfbean.model.io.STMTHandler;
 import com.mysema.rdfbean.model.io.WriterUtils;
 
 /**
  * MiniRepository is a lightweight implementation of the Repository interface
  * for use in local cacheing of statements and tests
  * 
+ * <p>
+ * Dictionary encoded repositories can be made persistent by setting a data
+ * directory before initialization. Changes are then appended to a log, which
+ * is compacted into a snapshot of the encoded arrays once it exceeds the
+ * snapshot threshold and when the repository is closed.
+ * </p>
+ * 
  * @author sasa
  * 
  */
-public final class MiniRepository implements Repository {
+public final class MiniRepository implements Repository, CardinalityEstimator {
 
     private final MiniDialect dialect = new MiniDialect();
 
@@ -41,8 +53,39 @@ public final class MiniRepository implements Repository {
     @Nullable
     private final Map<ID, PredicateCache> objects;
 
+    @Nullable
     private final Map<ID, PredicateCache> subjects;
 
+    @Nullable
+    private final Map<UID, ObjectCache> predicates;
+
+    @Nullable
+    private final Map<UID, STMTCache> contexts;
+
+    @Nullable
+    private final EncodedSTMTStore store;
+
+    private final STMTHandler loadHandler = new STMTHandler() {
+        @Override
+        public void handle(List<STMT> stmts) {
+            add(stmts.toArray(new STMT[stmts.size()]));
+        }
+    };
+
+    private RDFSource[] sources = new RDFSource[0];
+
+    @Nullable
+    private File dataDir;
+
+    @Nullable
+    private MiniStorage storage;
+
+    private long snapshotThreshold = 64 * 1024 * 1024;
+
+    private boolean syncWrites;
+
+    private long sortMemoryBudget = QueryRDFVisitor.DEFAULT_SORT_MEMORY_BUDGET;
+
     public MiniRepository() {
         this(1024);
     }
@@ -52,11 +95,53 @@ public final class MiniRepository implements Repository {
     }
 
     public MiniRepository(int initialCapacity, boolean inverseIndex) {
-        subjects = new HashMap<ID, PredicateCache>(initialCapacity);
-        if (inverseIndex) {
-            objects = new HashMap<ID, PredicateCache>(initialCapacity);
-        } else {
+        this(initialCapacity, inverseIndex, false);
+    }
+
+    /**
+     * Create a new MiniRepository
+     * 
+     * @param initialCapacity
+     *            initial capacity of the indexes
+     * @param inverseIndex
+     *            whether to index statements by resource objects
+     * @param dictionaryEncoded
+     *            whether to store statements as dictionary encoded int rows
+     *            instead of STMT instances
+     */
+    public MiniRepository(int initialCapacity, boolean inverseIndex, boolean dictionaryEncoded) {
+        this(initialCapacity, inverseIndex, false, false, dictionaryEncoded);
+    }
+
+    /**
+     * Create a new MiniRepository
+     * 
+     * @param initialCapacity
+     *            initial capacity of the indexes
+     * @param inverseIndex
+     *            whether to index statements by resource objects
+     * @param predicateIndex
+     *            whether to index statements by predicate and object
+     * @param contextIndex
+     *            whether to index statements by context
+     * @param dictionaryEncoded
+     *            whether to store statements as dictionary encoded int rows
+     *            instead of STMT instances
+     */
+    public MiniRepository(int initialCapacity, boolean inverseIndex, boolean predicateIndex,
+            boolean contextIndex, boolean dictionaryEncoded) {
+        if (dictionaryEncoded) {
+            store = new EncodedSTMTStore(initialCapacity, inverseIndex, predicateIndex, contextIndex);
+            subjects = null;
             objects = null;
+            predicates = null;
+            contexts = null;
+        } else {
+            store = null;
+            subjects = new HashMap<ID, PredicateCache>(initialCapacity);
+            objects = inverseIndex ? new HashMap<ID, PredicateCache>(initialCapacity) : null;
+            predicates = predicateIndex ? new HashMap<UID, ObjectCache>() : null;
+            contexts = contextIndex ? new HashMap<UID, STMTCache>() : null;
         }
     }
 
@@ -66,29 +151,118 @@ public final class MiniRepository implements Repository {
     }
 
     public void add(STMT... stmts) {
+        if (store != null) {
+            if (storage != null) {
+                append(MiniStorage.ADD, Arrays.asList(stmts));
+            }
+            for (STMT stmt : stmts) {
+                store.add(stmt);
+            }
+            checkLogSize();
+            return;
+        }
         for (STMT stmt : stmts) {
             index(stmt.getSubject(), stmt, subjects);
             if (objects != null && stmt.getObject().isResource()) {
                 index((ID) stmt.getObject(), stmt, objects);
             }
+            if (predicates != null) {
+                ObjectCache objectCache = predicates.get(stmt.getPredicate());
+                if (objectCache == null) {
+                    objectCache = new ObjectCache();
+                    predicates.put(stmt.getPredicate(), objectCache);
+                }
+                objectCache.add(stmt);
+            }
+            if (contexts != null && stmt.getContext() != null) {
+                STMTCache stmtCache = contexts.get(stmt.getContext());
+                if (stmtCache == null) {
+                    contexts.put(stmt.getContext(), new STMTCache(stmt));
+                } else {
+                    stmtCache.add(stmt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the current contents into a new snapshot and truncate the log
+     */
+    public void checkpoint() {
+        if (storage == null) {
+            throw new IllegalStateException("Repository is not persistent");
+        }
+        try {
+            storage.writeSnapshot(store, localId);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    private void append(byte operation, Collection<STMT> stmts) {
+        if (stmts.isEmpty() && operation != MiniStorage.CLEAR) {
+            return;
+        }
+        try {
+            storage.append(operation, stmts, localId);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    private void checkLogSize() {
+        if (storage != null && storage.getLogSize() > snapshotThreshold) {
+            checkpoint();
         }
     }
 
     public void clear() {
+        if (store != null) {
+            if (storage != null) {
+                append(MiniStorage.CLEAR, Collections.<STMT> emptyList());
+            }
+            store.clear();
+            return;
+        }
         subjects.clear();
         if (objects != null) {
             objects.clear();
         }
+        if (predicates != null) {
+            predicates.clear();
+        }
+        if (contexts != null) {
+            contexts.clear();
+        }
     }
 
     @Override
     public void close() {
-
+        if (storage != null) {
+            try {
+                // local ids may have been handed out after the last write
+                if (storage.getLogSize() > 0 || localId > storage.getPersistedLocalId()) {
+                    storage.writeSnapshot(store, localId);
+                }
+                storage.close();
+            } catch (IOException e) {
+                throw new RepositoryException(e);
+            } finally {
+                storage = null;
+            }
+        }
     }
 
     @Override
     public void load(Format format, InputStream is, @Nullable UID context, boolean replace) {
-        throw new UnsupportedOperationException();
+        if (context != null) {
+            if (replace) {
+                remove(null, null, null, context);
+            } else if (exists(null, null, null, context)) {
+                return;
+            }
+        }
+        ParserUtils.parse(format, is, context, context != null ? context.getId() : null, loadHandler);
     }
 
     @Override
@@ -119,11 +293,25 @@ public final class MiniRepository implements Repository {
 
     @SuppressWarnings("unchecked")
     public CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context, boolean includeInferred) {
+        if (store != null) {
+            return new IteratorAdapter<STMT>(store.iterator(subject, predicate, object, context, includeInferred));
+        }
         Iterator<STMT> iterator = null;
         if (subject != null) {
             iterator = getIndexed(subject, predicate, subjects);
+        } else if (predicates != null && predicate != null && object != null) {
+            iterator = getIndexed(predicate, object);
         } else if (objects != null && object != null && object.isResource()) {
             iterator = getIndexed(object.asResource(), predicate, objects);
+        } else if (predicates != null && predicate != null) {
+            iterator = getIndexed(predicate, null);
+        } else if (contexts != null && context != null) {
+            STMTCache stmtCache = contexts.get(context);
+            if (stmtCache != null) {
+                iterator = stmtCache.iterator();
+            } else {
+                iterator = Collections.<STMT> emptyList().iterator();
+            }
         } else {
             List<Iterator<STMT>> iterators = Lists.newArrayList();
             for (PredicateCache stmtCache : subjects.values()) {
@@ -134,6 +322,27 @@ public final class MiniRepository implements Repository {
         return new ResultIterator(iterator, subject, predicate, object, context, includeInferred);
     }
 
+    @Override
+    public long estimateCount(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        if (store != null) {
+            return store.estimate(subject, predicate, object, context);
+        } else if (subject != null) {
+            PredicateCache stmts = subjects.get(subject);
+            return stmts != null ? stmts.size(predicate) : 0;
+        } else if (predicates != null && predicate != null) {
+            ObjectCache stmts = predicates.get(predicate);
+            return stmts != null ? stmts.size(object) : 0;
+        } else if (objects != null && object != null && object.isResource()) {
+            PredicateCache stmts = objects.get(object);
+            return stmts != null ? stmts.size(predicate) : 0;
+        } else if (contexts != null && context != null) {
+            STMTCache stmts = contexts.get(context);
+            return stmts != null ? stmts.size() : 0;
+        } else {
+            return UNKNOWN;
+        }
+    }
+
     public boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
         return findStatements(subject, predicate, object, context, false).hasNext();
     }
@@ -151,6 +360,15 @@ public final class MiniRepository implements Repository {
         }
     }
 
+    private Iterator<STMT> getIndexed(UID predicate, @Nullable NODE object) {
+        ObjectCache objectCache = predicates.get(predicate);
+        if (objectCache != null) {
+            return objectCache.iterator(object);
+        } else {
+            return Collections.<STMT> emptyList().iterator();
+        }
+    }
+
     public synchronized long getNextLocalId() {
         return ++localId;
     }
@@ -166,6 +384,68 @@ public final class MiniRepository implements Repository {
 
     @Override
     public void initialize() {
+        try {
+            if (dataDir != null && storage == null) {
+                if (store == null) {
+                    throw new IllegalStateException("Persistence is only supported for dictionary encoded repositories");
+                }
+                storage = new MiniStorage(dataDir, syncWrites);
+                localId = storage.open(store);
+            }
+            for (RDFSource source : sources) {
+                remove(null, null, null, new UID(source.getContext()));
+                source.parse(ParserUtils.DEFAULT_BATCH_SIZE, loadHandler);
+            }
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    public void setSources(RDFSource... sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Set the directory for the snapshot and log files. Needs to be set before
+     * {@link #initialize()} is called.
+     * 
+     * @param dataDir
+     */
+    public void setDataDir(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    /**
+     * Set the log size in bytes after which a new snapshot is written
+     * 
+     * @param snapshotThreshold
+     */
+    public void setSnapshotThreshold(long snapshotThreshold) {
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    /**
+     * Set whether log writes are forced to the storage device before
+     * returning
+     * 
+     * @param syncWrites
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    /**
+     * Set the memory budget in bytes for sorted query results without limit,
+     * larger results are sorted via temporary files
+     * 
+     * @param sortMemoryBudget
+     */
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        this.sortMemoryBudget = sortMemoryBudget;
     }
 
     public MiniConnection openConnection() {
@@ -175,35 +455,11 @@ public final class MiniRepository implements Repository {
     public void remove(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
         // remove all
         if (subject == null && predicate == null && object == null && context == null) {
-            subjects.clear();
-            if (objects != null) {
-                objects.clear();
-            }
+            clear();
 
-            // subject given
-        } else if (subject != null) {
-            PredicateCache cache = subjects.get(subject);
-            if (cache != null) {
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
-
-            }
-
-            // object given
-        } else if (object != null && object.isResource() && objects != null) {
-            PredicateCache cache = objects.get(object.asResource());
-            if (cache != null) {
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
-            }
-
-            // predicate or context given
+            // pattern given, use the most selective index
         } else {
-            for (Map.Entry<ID, PredicateCache> entry : subjects.entrySet()) {
-                PredicateCache cache = entry.getValue();
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
-            }
+            removeStatements(IteratorAdapter.asList(findStatements(subject, predicate, object, context, true)));
         }
     }
 
@@ -217,11 +473,33 @@ public final class MiniRepository implements Repository {
     }
 
     public void removeStatements(Collection<STMT> stmts) {
+        if (store != null) {
+            if (storage != null) {
+                append(MiniStorage.REMOVE, stmts);
+            }
+            for (STMT stmt : stmts) {
+                store.remove(stmt);
+            }
+            checkLogSize();
+            return;
+        }
         for (STMT stmt : stmts) {
             if (removeIndexed(stmt.getSubject(), stmt, subjects)) {
                 if (objects != null && stmt.getObject().isResource()) {
                     removeIndexed((ID) stmt.getObject(), stmt, objects);
                 }
+                if (predicates != null) {
+                    ObjectCache objectCache = predicates.get(stmt.getPredicate());
+                    if (objectCache != null) {
+                        objectCache.remove(stmt);
+                    }
+                }
+                if (contexts != null && stmt.getContext() != null) {
+                    STMTCache stmtCache = contexts.get(stmt.getContext());
+                    if (stmtCache != null) {
+                        stmtCache.remove(stmt);
+                    }
+                }
             }
         }
     }
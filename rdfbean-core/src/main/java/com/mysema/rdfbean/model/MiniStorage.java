@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+
+/**
+ * MiniStorage persists the contents of an {@link EncodedSTMTStore} as a
+ * snapshot file and an append-only log of changes
+ *
+ * <p>
+ * The snapshot contains the node dictionary in id order followed by the
+ * encoded arrays of the store, i.e. the dictionary hash table, the statement
+ * rows as int quads, the row hash table and the posting lists, so that
+ * reopening only needs to create the nodes and bulk read the arrays. The log
+ * contains records of added and removed statements, each with a length prefix
+ * and a CRC32 checksum. An incomplete or corrupt record at the end of the log,
+ * e.g. after a crash, is truncated on replay.
+ * </p>
+ *
+ * <p>
+ * Snapshots are written alternately into two files with increasing
+ * generations and a CRC32 checksum, and the newest complete one is used on
+ * open. The previous snapshot stays intact until the new one has been
+ * written, so no file needs to be renamed or deleted. Replaying the log is
+ * idempotent, so a crash between writing a new snapshot and truncating the log
+ * only causes redundant work on the next open.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class MiniStorage implements Closeable {
+
+    static final byte ADD = 1, REMOVE = 2, CLEAR = 3;
+
+    private static final int MAGIC = 0x4d494e49;
+
+    private static final int VERSION = 2;
+
+    private static final int CHUNK_SIZE = 65536;
+
+    private static final byte URI = 0, BLANK = 1, TYPED_LITERAL = 2, LANG_LITERAL = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] SNAPSHOTS = { "snapshot-0.bin", "snapshot-1.bin" };
+
+    private static final String LOG = "log.bin";
+
+    private final File dataDir;
+
+    private final boolean syncWrites;
+
+    @Nullable
+    private FileChannel log;
+
+    private long logSize;
+
+    private long generation;
+
+    private long persistedLocalId;
+
+    /**
+     * Create a new MiniStorage
+     *
+     * @param dataDir
+     *            directory of the snapshot and log files
+     * @param syncWrites
+     *            whether log writes are forced to the storage device
+     */
+    MiniStorage(File dataDir, boolean syncWrites) {
+        this.dataDir = dataDir;
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * Restore the given store from the snapshot and the log
+     *
+     * @param store
+     * @return the last persisted local id
+     * @throws IOException
+     */
+    long open(EncodedSTMTStore store) throws IOException {
+        if (!dataDir.exists() && !dataDir.mkdirs()) {
+            throw new IOException("Creation of " + dataDir.getPath() + " failed");
+        }
+        long localId = readSnapshot(store);
+        File logFile = new File(dataDir, LOG);
+        logSize = 0;
+        if (logFile.exists()) {
+            localId = Math.max(localId, replay(logFile, store));
+        }
+        log = new RandomAccessFile(logFile, "rw").getChannel();
+        // drop a possibly incomplete last record
+        log.truncate(logSize);
+        log.position(logSize);
+        persistedLocalId = localId;
+        return localId;
+    }
+
+    /**
+     * Append a change record to the log
+     *
+     * @param operation
+     *            ADD, REMOVE or CLEAR
+     * @param stmts
+     * @param localId
+     *            current local id of the repository
+     * @throws IOException
+     */
+    void append(byte operation, Collection<STMT> stmts, long localId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + stmts.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(localId);
+        out.writeByte(operation);
+        out.writeInt(stmts.size());
+        for (STMT stmt : stmts) {
+            writeNode(out, stmt.getSubject());
+            writeNode(out, stmt.getPredicate());
+            writeNode(out, stmt.getObject());
+            out.writeBoolean(stmt.getContext() != null);
+            if (stmt.getContext() != null) {
+                writeNode(out, stmt.getContext());
+            }
+            out.writeBoolean(stmt.isAsserted());
+        }
+        out.flush();
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length);
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        if (syncWrites) {
+            log.force(false);
+        }
+        logSize += payload.length + 8;
+        persistedLocalId = Math.max(persistedLocalId, localId);
+    }
+
+    /**
+     * Write the contents of the given store into a new snapshot and truncate
+     * the log
+     *
+     * @param store
+     * @param localId
+     *            current local id of the repository
+     * @throws IOException
+     */
+    void writeSnapshot(EncodedSTMTStore store, long localId) throws IOException {
+        long nextGeneration = generation + 1;
+        // overwrite the older of the two snapshots
+        File file = new File(dataDir, SNAPSHOTS[(int) (nextGeneration % 2)]);
+        FileOutputStream fileOut = new FileOutputStream(file);
+        try {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(fileOut, CHUNK_SIZE), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextGeneration);
+            out.writeLong(localId);
+            NodeDictionary dictionary = store.getDictionary();
+            out.writeInt(dictionary.size());
+            for (int id = 1; id <= dictionary.size(); id++) {
+                writeNode(out, dictionary.getNode(id));
+            }
+            out.writeInt(dictionary.getTable().length);
+            writeInts(out, dictionary.getTable(), dictionary.getTable().length);
+            out.writeInt(store.getRowCount());
+            out.writeInt(store.getDeletedCount());
+            writeInts(out, store.getQuads(), store.getRowCount() * 4);
+            out.writeInt(store.getTable().length);
+            writeInts(out, store.getTable(), store.getTable().length);
+            writePostings(out, store.getSubjects());
+            writePostings(out, store.getObjects());
+            writePostings(out, store.getPredicates());
+            writePostings(out, store.getContexts());
+            out.flush();
+            // the checksum itself is not part of the checksum
+            int checksum = (int) checked.getChecksum().getValue();
+            out.writeInt(checksum);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+        generation = nextGeneration;
+        persistedLocalId = Math.max(persistedLocalId, localId);
+        log.truncate(0);
+        log.position(0);
+        logSize = 0;
+    }
+
+    long getLogSize() {
+        return logSize;
+    }
+
+    /**
+     * Get the highest local id which has been written into the snapshot or
+     * the log
+     *
+     * @return
+     */
+    long getPersistedLocalId() {
+        return persistedLocalId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Restore the given store from the newest complete snapshot or clear it,
+     * if no snapshot exists
+     *
+     * @param store
+     * @return the local id of the snapshot
+     * @throws IOException
+     */
+    private long readSnapshot(EncodedSTMTStore store) throws IOException {
+        File[] files = new File[SNAPSHOTS.length];
+        long[] generations = new long[SNAPSHOTS.length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dataDir, SNAPSHOTS[i]);
+            generations[i] = files[i].exists() ? readGeneration(files[i]) : -1;
+        }
+        int newest = generations[0] >= generations[1] ? 0 : 1;
+        IOException failure = null;
+        for (int i : new int[] { newest, 1 - newest }) {
+            if (generations[i] < 0) {
+                continue;
+            }
+            try {
+                long localId = readSnapshot(files[i], store);
+                generation = generations[i];
+                return localId;
+            } catch (IOException e) {
+                // an incomplete snapshot, e.g. after a crash, the other one is still valid
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        generation = 0;
+        store.clear();
+        return 0;
+    }
+
+    private static long readGeneration(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            return in.readLong();
+        } catch (EOFException e) {
+            return -1;
+        } finally {
+            in.close();
+        }
+    }
+
+    private long readSnapshot(File file, EncodedSTMTStore store) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported snapshot format in " + file.getPath());
+            }
+            in.readLong();
+            long localId = in.readLong();
+            Map<String, UID> datatypes = new HashMap<String, UID>();
+            int size = in.readInt();
+            NODE[] nodes = new NODE[Math.max(size, 4) + 1];
+            for (int id = 1; id <= size; id++) {
+                nodes[id] = readNode(in, datatypes);
+            }
+            int[] nodeTable = new int[in.readInt()];
+            readInts(in, nodeTable, nodeTable.length);
+            int rows = in.readInt();
+            int deleted = in.readInt();
+            int[] quads = new int[Math.max(rows, 16) * 4];
+            readInts(in, quads, rows * 4);
+            int[] table = new int[in.readInt()];
+            readInts(in, table, table.length);
+            EncodedSTMTStore.Postings subjects = readPostings(in);
+            EncodedSTMTStore.Postings objects = readPostings(in);
+            EncodedSTMTStore.Postings predicates = readPostings(in);
+            EncodedSTMTStore.Postings contexts = readPostings(in);
+            int checksum = (int) checked.getChecksum().getValue();
+            if (in.readInt() != checksum || subjects == null) {
+                throw new IOException("Corrupt snapshot " + file.getPath());
+            }
+
+            NodeDictionary dictionary = new NodeDictionary();
+            dictionary.restore(nodes, size, nodeTable);
+            store.restore(dictionary, quads, rows, deleted, table, subjects, objects, predicates, contexts);
+            return localId;
+        } catch (EOFException e) {
+            throw new IOException("Incomplete snapshot " + file.getPath(), e);
+        } catch (RuntimeException e) {
+            // e.g. illegal lengths or node types in a partially written snapshot
+            throw new IOException("Corrupt snapshot " + file.getPath(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writePostings(DataOutputStream out, @Nullable EncodedSTMTStore.Postings postings)
+            throws IOException {
+        if (postings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int length = postings.length();
+        int[] sizes = new int[length];
+        for (int key = 0; key < length; key++) {
+            sizes[key] = postings.size(key);
+        }
+        out.writeInt(length);
+        writeInts(out, sizes, length);
+        for (int key = 0; key < length; key++) {
+            if (sizes[key] > 0) {
+                writeInts(out, postings.get(key), sizes[key]);
+            }
+        }
+    }
+
+    @Nullable
+    private static EncodedSTMTStore.Postings readPostings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        int[] sizes = new int[length];
+        readInts(in, sizes, length);
+        int[][] lists = new int[length][];
+        for (int key = 0; key < length; key++) {
+            if (sizes[key] > 0) {
+                lists[key] = new int[sizes[key]];
+                readInts(in, lists[key], sizes[key]);
+            }
+        }
+        return new EncodedSTMTStore.Postings(lists, sizes);
+    }
+
+    /**
+     * Write the first length values of the given array in chunks
+     */
+    private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, CHUNK_SIZE / 4) * 4);
+        for (int offset = 0; offset < length; offset += buffer.capacity() / 4) {
+            int count = Math.min(length - offset, buffer.capacity() / 4);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, offset, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    private static void readInts(DataInputStream in, int[] values, int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, CHUNK_SIZE / 4) * 4];
+        for (int offset = 0; offset < length; offset += bytes.length / 4) {
+            int count = Math.min(length - offset, bytes.length / 4);
+            in.readFully(bytes, 0, count * 4);
+            ByteBuffer.wrap(bytes, 0, count * 4).asIntBuffer().get(values, offset, count);
+        }
+    }
+
+    private long replay(File file, EncodedSTMTStore store) throws IOException {
+        long localId = 0;
+        Map<String, UID> datatypes = new HashMap<String, UID>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > file.length() - logSize - 8) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                localId = Math.max(localId, record.readLong());
+                byte operation = record.readByte();
+                int count = record.readInt();
+                if (operation == CLEAR) {
+                    store.clear();
+                }
+                for (int i = 0; i < count; i++) {
+                    ID subject = (ID) readNode(record, datatypes);
+                    UID predicate = (UID) readNode(record, datatypes);
+                    NODE object = readNode(record, datatypes);
+                    UID context = record.readBoolean() ? (UID) readNode(record, datatypes) : null;
+                    STMT stmt = new STMT(subject, predicate, object, context, record.readBoolean());
+                    if (operation == ADD) {
+                        store.add(stmt);
+                    } else if (operation == REMOVE) {
+                        store.remove(stmt);
+                    }
+                }
+                logSize += payload.length + 8;
+            }
+        } finally {
+            in.close();
+        }
+        return localId;
+    }
+
+    private static void writeNode(DataOutputStream out, NODE node) throws IOException {
+        if (node.isURI()) {
+            out.writeByte(URI);
+            writeString(out, node.getValue());
+        } else if (node.isBNode()) {
+            out.writeByte(BLANK);
+            writeString(out, node.getValue());
+        } else {
+            LIT literal = node.asLiteral();
+            if (literal.getLang() != null) {
+                out.writeByte(LANG_LITERAL);
+                writeString(out, literal.getValue());
+                writeString(out, LocaleUtil.toLang(literal.getLang()));
+            } else {
+                out.writeByte(TYPED_LITERAL);
+                writeString(out, literal.getValue());
+                writeString(out, literal.getDatatype().getId());
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static NODE readNode(DataInput in, Map<String, UID> datatypes) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case URI:
+            return new UID(readString(in));
+        case BLANK:
+            return new BID(readString(in));
+        case LANG_LITERAL:
+            return new LIT(readString(in), readString(in));
+        case TYPED_LITERAL:
+            String value = readString(in);
+            String datatype = readString(in);
+            UID uid = datatypes.get(datatype);
+            if (uid == null) {
+                uid = new UID(datatype);
+                datatypes.put(datatype, uid);
+            }
+            return new LIT(value, uid);
+        default:
+            throw new IOException("Illegal node type " + type);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+}
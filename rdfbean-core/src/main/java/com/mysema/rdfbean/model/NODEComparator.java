@@ -2,7 +2,6 @@ package com.mysema.rdfbean.model;
 
 import java.io.Serializable;
 import java.util.Comparator;
-import java.util.Locale;
 
 /**
  * @author tiwe
@@ -37,9 +36,9 @@ public class NODEComparator implements Comparator<NODE>, Serializable {
                 return compare(l1.getDatatype(), l2.getDatatype());
             }
             // locale
-            Locale loc1 = l1.getLang() == null ? new Locale("") : l1.getLang();
-            Locale loc2 = l2.getLang() == null ? new Locale("") : l2.getLang();
-            return loc1.toString().compareTo(loc2.toString());
+            String loc1 = l1.getLang() == null ? "" : l1.getLang().toString();
+            String loc2 = l2.getLang() == null ? "" : l2.getLang().toString();
+            return loc1.compareTo(loc2);
         }
         return 0;
     }
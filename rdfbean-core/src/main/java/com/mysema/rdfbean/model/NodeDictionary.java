@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Arrays;
+
+/**
+ * NodeDictionary interns NODE instances into dense positive int ids
+ *
+ * <p>
+ * Ids start from 1, 0 is reserved for unknown/unbound nodes. The reverse
+ * mapping is kept in an open addressing table of ids, so that no boxed keys or
+ * map entries are allocated per node.
+ * </p>
+ *
+ * @author tiwe
+ */
+public final class NodeDictionary {
+
+    public static final int NONE = 0;
+
+    private NODE[] nodes;
+
+    private int[] table;
+
+    private int size;
+
+    public NodeDictionary() {
+        this(16);
+    }
+
+    public NodeDictionary(int initialCapacity) {
+        nodes = new NODE[Math.max(initialCapacity, 4) + 1];
+        table = new int[tableSize(initialCapacity)];
+    }
+
+    public void clear() {
+        Arrays.fill(nodes, null);
+        Arrays.fill(table, NONE);
+        size = 0;
+    }
+
+    /**
+     * Get the id of the given node
+     *
+     * @param node
+     * @return id or NONE, if the node has not been interned
+     */
+    public int getId(NODE node) {
+        int mask = table.length - 1;
+        int i = smear(node.hashCode()) & mask;
+        while (true) {
+            int id = table[i];
+            if (id == NONE) {
+                return NONE;
+            } else if (nodes[id].equals(node)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public NODE getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Get the id of the given node and create a new id if the node has not yet
+     * been interned
+     *
+     * @param node
+     * @return
+     */
+    public int intern(NODE node) {
+        int mask = table.length - 1;
+        int i = smear(node.hashCode()) & mask;
+        while (true) {
+            int id = table[i];
+            if (id == NONE) {
+                break;
+            } else if (nodes[id].equals(node)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+        }
+        int id = ++size;
+        if (id == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        nodes[id] = node;
+        table[i] = id;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int[] newTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 1; id <= size; id++) {
+            int i = smear(nodes[id].hashCode()) & mask;
+            while (newTable[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            newTable[i] = id;
+        }
+        table = newTable;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the hash table of ids
+     *
+     * @return
+     */
+    int[] getTable() {
+        return table;
+    }
+
+    /**
+     * Replace the contents of this dictionary without rehashing
+     *
+     * @param nodes
+     *            nodes indexed by id, index 0 is unused
+     * @param size
+     *            amount of nodes
+     * @param table
+     *            hash table as encoded by {@link #getTable()}
+     */
+    void restore(NODE[] nodes, int size, int[] table) {
+        this.nodes = nodes;
+        this.size = size;
+        this.table = table;
+    }
+
+    static int smear(int hashCode) {
+        hashCode ^= (hashCode >>> 20) ^ (hashCode >>> 12);
+        return hashCode ^ (hashCode >>> 7) ^ (hashCode >>> 4);
+    }
+
+    private static int tableSize(int capacity) {
+        int size = 16;
+        while (size < capacity * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+/**
+ * ObjectCache groups the statements of a predicate by object
+ *
+ * @author tiwe
+ */
+public final class ObjectCache {
+
+    private final Map<NODE, STMTCache> objects = new LinkedHashMap<NODE, STMTCache>();
+
+    public void add(STMT stmt) {
+        STMTCache stmts = objects.get(stmt.getObject());
+        if (stmts == null) {
+            objects.put(stmt.getObject(), new STMTCache(stmt));
+        } else {
+            stmts.add(stmt);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Iterator<STMT> iterator(@Nullable NODE object) {
+        if (object == null) {
+            List<Iterator<STMT>> iterators = Lists.newArrayListWithCapacity(objects.size());
+            for (STMTCache stmts : objects.values()) {
+                iterators.add(stmts.iterator());
+            }
+            return Iterators.concat(iterators.toArray(new Iterator[iterators.size()]));
+        } else {
+            STMTCache stmts = objects.get(object);
+            if (stmts != null) {
+                return stmts.iterator();
+            } else {
+                return Collections.<STMT> emptyList().iterator();
+            }
+        }
+    }
+
+    public boolean remove(STMT stmt) {
+        STMTCache stmts = objects.get(stmt.getObject());
+        if (stmts != null) {
+            return stmts.remove(stmt);
+        } else {
+            return false;
+        }
+    }
+
+    public int size(@Nullable NODE object) {
+        if (object == null) {
+            int size = 0;
+            for (STMTCache stmts : objects.values()) {
+                size += stmts.size();
+            }
+            return size;
+        } else {
+            STMTCache stmts = objects.get(object);
+            return stmts != null ? stmts.size() : 0;
+        }
+    }
+
+    public String toString() {
+        return objects.toString();
+    }
+
+}
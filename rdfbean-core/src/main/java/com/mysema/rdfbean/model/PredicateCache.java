@@ -90,6 +90,28 @@ public final class PredicateCache {
         return false;
     }
 
+    public int size(@Nullable UID predicate) {
+        int size = 0;
+        if (predicate == null || RDF.isContainerMembershipProperty(predicate)) {
+            if (containerProperties != null) {
+                size += containerProperties.size();
+            }
+        }
+        if (predicates != null) {
+            if (predicate == null) {
+                for (STMTCache stmts : predicates.values()) {
+                    size += stmts.size();
+                }
+            } else {
+                STMTCache stmts = predicates.get(predicate);
+                if (stmts != null) {
+                    size += stmts.size();
+                }
+            }
+        }
+        return size;
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         if (predicates != null) {
@@ -1,192 +1,128 @@
 package com.mysema.rdfbean.model;
 
+import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Function;
-import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
-import com.mysema.commons.lang.Pair;
 import com.mysema.query.BooleanBuilder;
 import com.mysema.query.JoinExpression;
 import com.mysema.query.QueryMetadata;
 import com.mysema.query.types.Constant;
 import com.mysema.query.types.Expression;
-import com.mysema.query.types.ExpressionUtils;
 import com.mysema.query.types.FactoryExpression;
 import com.mysema.query.types.Operation;
-import com.mysema.query.types.Operator;
-import com.mysema.query.types.Ops;
+import com.mysema.query.types.Order;
+import com.mysema.query.types.OrderSpecifier;
 import com.mysema.query.types.ParamExpression;
 import com.mysema.query.types.Path;
 import com.mysema.query.types.SubQueryExpression;
 import com.mysema.query.types.TemplateExpression;
-import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
 import com.mysema.util.LimitingIterable;
 import com.mysema.util.PairIterator;
 
 /**
+ * QueryRDFVisitor evaluates queries against the statements of an RDFConnection
+ *
+ * <p>
+ * The variables of a query are compiled into slots of a single NODE array
+ * which is shared by all blocks of the query. Result rows are copied only when
+ * they leave the evaluation, e.g. as map views of TupleQuery results.
+ * </p>
+ *
  * @author tiwe
  * 
  */
-public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
+public class QueryRDFVisitor implements RDFVisitor<Object, NODE[]> {
 
-    private static final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+    /**
+     * default memory budget for sorts without limit in bytes
+     */
+    public static final long DEFAULT_SORT_MEMORY_BUDGET = 32 * 1024 * 1024;
 
-    private static final Map<String, Pattern> caseInsensitivePatterns = new HashMap<String, Pattern>();
-
-    private static final NODEComparator nodeComparator = new NODEComparator();
+    private static final NODEComparator nodeComparator = new TypedNODEComparator();
 
     private final RDFConnection connection;
 
+    private final JoinPlanner planner;
+
+    private final List<HashJoinIterable> hashJoins = new ArrayList<HashJoinIterable>();
+
     @Nullable
     private Expression<UID> context;
 
-    public QueryRDFVisitor(RDFConnection connection) {
-        this.connection = connection;
-    }
+    /**
+     * variables which are bound by the blocks visited so far
+     */
+    private Set<String> bound = new HashSet<String>();
 
-    private void bind(Bindings bindings, String key, NODE value) {
-        if (key != null && bindings.get(key) == null) {
-            bindings.put(key, value);
-        }
-    }
+    /**
+     * variables which are bound by query parameters
+     */
+    private final Set<String> params = new HashSet<String>();
 
-    @SuppressWarnings("unchecked")
-    private Predicate<Bindings> createAndPredicate(final Operation<?> expr, Bindings bindings) {
-        return Predicates.and(
-                (Predicate) expr.getArg(0).accept(this, bindings),
-                (Predicate) expr.getArg(1).accept(this, bindings));
-    }
+    private long sortMemoryBudget = DEFAULT_SORT_MEMORY_BUDGET;
 
-    private Function<STMT, Bindings> createBindingsFunction(PatternBlock expr, @Nullable Expression<UID> context, final Bindings bindings) {
-        final String s = getKey(expr.getSubject());
-        final String p = getKey(expr.getPredicate());
-        final String o = getKey(expr.getObject());
-        final String c = getKey(expr.getContext() != null ? expr.getContext() : context);
+    /**
+     * slots of the variables of the current query
+     */
+    private final VariableSlots slots = new VariableSlots();
 
-        return new Function<STMT, Bindings>() {
-            @Override
-            public Bindings apply(STMT input) {
-                bindings.clear();
-                bind(bindings, s, input.getSubject());
-                bind(bindings, p, input.getPredicate());
-                bind(bindings, o, input.getObject());
-                bind(bindings, c, input.getContext());
-                // System.err.println(bindings);
-                return bindings;
-            }
-        };
-    }
+    private final FilterCompiler compiler = new FilterCompiler(slots);
 
-    private BooleanQuery createBooleanQuery(final Iterable<Bindings> iterable) {
-        return new BooleanQuery() {
-            @Override
-            public boolean getBoolean() {
-                return iterable.iterator().hasNext();
-            }
-        };
-    }
-
-    private Predicate<Bindings> createBoundPredicate(final Operation<?> expr, final Operator<?> op) {
-        final String key = getKey(expr.getArg(0));
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                boolean rv = bindings.get(key) != null;
-                return op == Ops.IS_NOT_NULL ? rv : !rv;
-            }
-        };
-    }
-
-    private Predicate<Bindings> createComparePredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                int rv = nodeComparator.compare(lhs, rhs);
-                if (rv < 0) {
-                    return op == Ops.LT || op == Ops.LOE;
-                } else if (rv == 0) {
-                    return op == Ops.LOE || op == Ops.GOE;
-                } else {
-                    return op == Ops.GT || op == Ops.GOE;
-                }
-            }
-        };
-    }
+    /**
+     * row of the current query, shared by all blocks
+     */
+    private NODE[] row = new NODE[0];
 
-    private Predicate<Bindings> createEqPredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                return Objects.equal(
-                        expr.getArg(0).accept(QueryRDFVisitor.this, bindings),
-                        expr.getArg(1).accept(QueryRDFVisitor.this, bindings));
-            }
-        };
+    public QueryRDFVisitor(RDFConnection connection) {
+        this.connection = connection;
+        this.planner = new JoinPlanner(connection instanceof CardinalityEstimator ? (CardinalityEstimator) connection : null);
     }
 
-    private Predicate<Bindings> createLikePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    Pattern pattern;
-                    Map<String, Pattern> cache = patterns;
-                    pattern = cache.get(rhs.getValue());
-                    if (pattern == null) {
-                        String regex = rhs.getValue().replace("%", ".*").replaceAll("_", ".");
-                        pattern = Pattern.compile(regex);
-                        cache.put(rhs.getValue(), pattern);
-                    }
-                    return pattern.matcher(lhs.getValue()).matches();
-                } else {
-                    return false;
-                }
-            }
-        };
+    /**
+     * Set the memory budget for sorts without limit, larger results are
+     * sorted via temporary files
+     *
+     * @param sortMemoryBudget
+     *            estimated size in bytes
+     */
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        this.sortMemoryBudget = sortMemoryBudget;
     }
 
-    private Predicate<Bindings> createMatchesPredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
+    private BooleanQuery createBooleanQuery(final Iterable<NODE[]> iterable) {
+        return new BooleanQuery() {
             @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    Pattern pattern;
-                    Map<String, Pattern> cache = op == Ops.MATCHES ? patterns : caseInsensitivePatterns;
-                    pattern = cache.get(rhs.getValue());
-                    if (pattern == null) {
-                        pattern = Pattern.compile(rhs.getValue(), op == Ops.MATCHES ? 0 : Pattern.CASE_INSENSITIVE);
-                        cache.put(rhs.getValue(), pattern);
-                    }
-                    return pattern.matcher(lhs.getValue()).matches();
-                } else {
-                    return false;
+            public boolean getBoolean() {
+                Iterator<NODE[]> rows = iterable.iterator();
+                try {
+                    return rows.hasNext();
+                } finally {
+                    close(rows);
                 }
             }
         };
     }
 
-    private GraphQuery createGraphQuery(QueryMetadata md, final Iterable<Bindings> iterable) {
+    private GraphQuery createGraphQuery(QueryMetadata md, final Iterable<NODE[]> iterable) {
         List<PatternBlock> patternBlocks = new ArrayList<PatternBlock>();
         for (Expression<?> e : md.getProjection()) {
             if (e instanceof PatternBlock) {
@@ -198,7 +134,7 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
             }
         }
 
-        final List<Function<Bindings, STMT>> transformers = new ArrayList<Function<Bindings, STMT>>(patternBlocks.size());
+        final List<Function<NODE[], STMT>> transformers = new ArrayList<Function<NODE[], STMT>>(patternBlocks.size());
         for (PatternBlock pb : patternBlocks) {
             transformers.add(createStatementFunction(pb));
         }
@@ -208,88 +144,123 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
             @Override
             public CloseableIterator<STMT> getTriples() {
                 List<Iterator<STMT>> iterators = new ArrayList<Iterator<STMT>>(transformers.size());
-                for (Function<Bindings, STMT> transformer : transformers) {
-                    iterators.add(Iterators.transform(iterable.iterator(), transformer));
+                final List<Iterator<NODE[]>> rows = new ArrayList<Iterator<NODE[]>>(transformers.size());
+                for (Function<NODE[], STMT> transformer : transformers) {
+                    rows.add(iterable.iterator());
+                    iterators.add(Iterators.transform(rows.get(rows.size() - 1), transformer));
                 }
-                return new IteratorAdapter<STMT>(Iterators.concat(iterators.toArray(new Iterator[iterators.size()])));
+                return new IteratorAdapter<STMT>(Iterators.concat(iterators.toArray(new Iterator[iterators.size()])),
+                        new Closeable() {
+                            @Override
+                            public void close() {
+                                for (Iterator<NODE[]> iterator : rows) {
+                                    QueryRDFVisitor.close(iterator);
+                                }
+                            }
+                        });
             }
         };
     }
 
-    private Predicate<Bindings> createNePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                return !Objects.equal(
-                        expr.getArg(0).accept(QueryRDFVisitor.this, bindings),
-                        expr.getArg(1).accept(QueryRDFVisitor.this, bindings));
-            }
-        };
-    }
-
-    @SuppressWarnings("unchecked")
-    private Predicate<Bindings> createOrPredicate(final Operation<?> expr, Bindings bindings) {
-        return Predicates.or(
-                (Predicate) expr.getArg(0).accept(this, bindings),
-                (Predicate) expr.getArg(1).accept(this, bindings));
+    private static void close(Iterator<?> iterator) {
+        // sorted rows may hold temporary files
+        if (iterator instanceof CloseableIterator) {
+            ((CloseableIterator<?>) iterator).close();
+        }
     }
 
-    private Function<Bindings, STMT> createQuadFunction(final PatternBlock expr) {
-        return new Function<Bindings, STMT>() {
+    private Comparator<NODE[]> createOrderComparator(List<OrderSpecifier<?>> orderBy) {
+        final List<Function<NODE[], NODE>> targets = new ArrayList<Function<NODE[], NODE>>(orderBy.size());
+        final boolean[] descending = new boolean[orderBy.size()];
+        final OrderSpecifier.NullHandling[] nullHandling = new OrderSpecifier.NullHandling[orderBy.size()];
+        for (int i = 0; i < descending.length; i++) {
+            targets.add(compiler.compileValue(orderBy.get(i).getTarget()));
+            descending[i] = orderBy.get(i).getOrder() == Order.DESC;
+            nullHandling[i] = orderBy.get(i).getNullHandling();
+        }
+        return new Comparator<NODE[]>() {
             @Override
-            public STMT apply(Bindings input) {
-                return new STMT(
-                        (ID) expr.getSubject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getPredicate().accept(QueryRDFVisitor.this, input),
-                        (NODE) expr.getObject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getContext().accept(QueryRDFVisitor.this, input));
+            public int compare(NODE[] b1, NODE[] b2) {
+                for (int i = 0; i < descending.length; i++) {
+                    NODE n1 = targets.get(i).apply(b1);
+                    NODE n2 = targets.get(i).apply(b2);
+                    if ((n1 == null) != (n2 == null) && nullHandling[i] != OrderSpecifier.NullHandling.Default) {
+                        return (n1 == null) == (nullHandling[i] == OrderSpecifier.NullHandling.NullsFirst) ? -1 : 1;
+                    }
+                    int rv = nodeComparator.compare(n1, n2);
+                    if (rv != 0) {
+                        return descending[i] ? -rv : rv;
+                    }
+                }
+                return 0;
             }
         };
     }
 
-    private Function<Bindings, STMT> createStatementFunction(final PatternBlock expr) {
+    private Function<NODE[], STMT> createStatementFunction(final PatternBlock expr) {
+        final Function<NODE[], NODE> subject = compiler.compileValue(expr.getSubject());
+        final Function<NODE[], NODE> predicate = compiler.compileValue(expr.getPredicate());
+        final Function<NODE[], NODE> object = compiler.compileValue(expr.getObject());
         if (expr.getContext() != null) {
-            return createQuadFunction(expr);
+            final Function<NODE[], NODE> context = compiler.compileValue(expr.getContext());
+            return new Function<NODE[], STMT>() {
+                @Override
+                public STMT apply(NODE[] input) {
+                    return new STMT(
+                            (ID) subject.apply(input),
+                            (UID) predicate.apply(input),
+                            object.apply(input),
+                            (UID) context.apply(input));
+                }
+            };
         } else {
-            return createTripleFunction(expr);
+            return new Function<NODE[], STMT>() {
+                @Override
+                public STMT apply(NODE[] input) {
+                    return new STMT(
+                            (ID) subject.apply(input),
+                            (UID) predicate.apply(input),
+                            object.apply(input));
+                }
+            };
         }
     }
 
-    private Function<Bindings, STMT> createTripleFunction(final PatternBlock expr) {
-        return new Function<Bindings, STMT>() {
-            @Override
-            public STMT apply(Bindings input) {
-                return new STMT(
-                        (ID) expr.getSubject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getPredicate().accept(QueryRDFVisitor.this, input),
-                        (NODE) expr.getObject().accept(QueryRDFVisitor.this, input));
-            }
-        };
-    }
-
-    private TupleQuery createTupleQuery(QueryMetadata md, final Iterable<Bindings> iterable) {
+    private TupleQuery createTupleQuery(QueryMetadata md, final Iterable<NODE[]> iterable) {
         final List<String> variables = new ArrayList<String>(md.getProjection().size());
         for (Expression<?> expr : md.getProjection()) {
-            String key = getKey(expr);
+            String key = VariableSlots.getVariable(expr);
             variables.add(key != null ? key : expr.toString());
         }
 
-        final Function<Bindings, Map<String, NODE>> bindingsToMap = new Function<Bindings, Map<String, NODE>>() {
+        // the values of the projected variables are copied into map views
+        final List<String> names = variables.isEmpty() ? new ArrayList<String>(slots.getNames()) : variables;
+        final int[] projection = new int[names.size()];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = slots.getSlot(names.get(i));
+        }
+        final Function<NODE[], Map<String, NODE>> rowToMap = new Function<NODE[], Map<String, NODE>>() {
             @Override
-            public Map<String, NODE> apply(Bindings input) {
-                if (variables.isEmpty()) {
-                    return input.toMap();
-                } else {
-                    return input.toMap(variables);
+            public Map<String, NODE> apply(NODE[] input) {
+                NODE[] values = new NODE[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    values[i] = input[projection[i]];
                 }
+                return new RowMap(names, values);
             }
         };
 
         return new TupleQuery() {
             @Override
             public CloseableIterator<Map<String, NODE>> getTuples() {
-                Iterator<Map<String, NODE>> it = Iterators.transform(iterable.iterator(), bindingsToMap);
-                return new IteratorAdapter<Map<String, NODE>>(it);
+                final Iterator<NODE[]> rows = iterable.iterator();
+                Iterator<Map<String, NODE>> it = Iterators.transform(rows, rowToMap);
+                return new IteratorAdapter<Map<String, NODE>>(it, new Closeable() {
+                    @Override
+                    public void close() {
+                        QueryRDFVisitor.close(rows);
+                    }
+                });
             }
 
             @Override
@@ -299,302 +270,147 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
         };
     }
 
-    @Nullable
-    private String getKey(Expression<?> expr) {
-        if (expr instanceof Path<?>) {
-            return expr.toString();
-        } else if (expr instanceof ParamExpression<?>) {
-            return ((ParamExpression<?>) expr).getName();
-        } else {
-            return null;
-        }
-    }
-
     @Override
-    public NODE visit(Constant<?> expr, Bindings bindings) {
-        if (expr.getType().equals(String.class)) {
-            return new LIT(expr.getConstant().toString());
-        } else if (NODE.class.isAssignableFrom(expr.getType())) {
-            return (NODE) expr.getConstant();
-        } else {
-            UID datatype = ConverterRegistryImpl.DEFAULT.getDatatype(expr.getType());
-            String value = ConverterRegistryImpl.DEFAULT.toString(expr.getConstant());
-            return new LIT(value, datatype);
-        }
-
+    public NODE visit(Constant<?> expr, NODE[] bindings) {
+        return FilterCompiler.toNODE(expr);
     }
 
-    @SuppressWarnings("unchecked")
-    private Pair<Iterable<Bindings>, Bindings> visit(ContainerBlock expr, Bindings bindings) {
-        final List<Iterable<Bindings>> iterables = new ArrayList<Iterable<Bindings>>(expr.getBlocks().size());
-        Bindings previous = null;
-        for (Block block : expr.getBlocks()) {
-            Bindings input = previous != null ? new Bindings(previous) : bindings;
-            Pair<Iterable<Bindings>, Bindings> iterableAndBindings = (Pair) block.accept(this, input);
-            iterables.add(iterableAndBindings.getFirst());
-            previous = iterableAndBindings.getSecond();
+    private BlockIterable visit(ContainerBlock expr) {
+        Set<String> outerBound = bound;
+        bound = new HashSet<String>(outerBound);
+        final List<RowIterable> iterables = new ArrayList<RowIterable>(expr.getBlocks().size());
+        try {
+            double rows = 1.0;
+            for (Block block : planner.order(expr.getBlocks(), bound)) {
+                if (block instanceof PatternBlock) {
+                    PatternBlock pattern = (PatternBlock) block;
+                    if (!iterables.isEmpty() && planner.isHashJoin(rows, pattern, context, bound)) {
+                        HashJoinIterable hashJoin = new HashJoinIterable(pattern, context);
+                        hashJoins.add(hashJoin);
+                        iterables.add(hashJoin);
+                    } else {
+                        iterables.add(new PatternIterable(pattern, context));
+                    }
+                    rows = rows * planner.estimate(pattern, context, bound);
+                    bound.addAll(JoinPlanner.getVariables(pattern, context));
+                } else {
+                    iterables.add((RowIterable) block.accept(this, null));
+                }
+            }
+            // variables of optional blocks are not guaranteed to be bound
+            if (!(expr instanceof OptionalBlock)) {
+                outerBound.addAll(bound);
+            }
+        } finally {
+            bound = outerBound;
         }
 
         // merge
-        Iterable<Bindings> iterable;
-        if (iterables.size() == 1) {
-            iterable = iterables.get(0);
-        } else {
-            iterable = iterables.get(0);
-            for (int i = 1; i < iterables.size(); i++) {
-                final Iterable<Bindings> pr = iterable, next = iterables.get(i);
-                iterable = new Iterable<Bindings>() {
-                    @Override
-                    public Iterator<Bindings> iterator() {
-                        return new PairIterator<Bindings>(pr, next);
-                    }
-                };
-            }
+        Iterable<NODE[]> iterable = iterables.get(0);
+        for (int i = 1; i < iterables.size(); i++) {
+            final Iterable<NODE[]> pr = iterable, next = iterables.get(i);
+            iterable = new Iterable<NODE[]>() {
+                @Override
+                public Iterator<NODE[]> iterator() {
+                    return new PairIterator<NODE[]>(pr, next);
+                }
+            };
         }
 
         // filter
         if (expr.getFilters() != null) {
-            Predicate<Bindings> predicate = (Predicate) expr.getFilters().accept(this, previous);
-            iterable = Iterables.filter(iterable, predicate);
+            Predicate<NODE[]> predicate = compiler.compilePredicate(expr.getFilters());
+            if (predicate == Predicates.<NODE[]> alwaysFalse()) {
+                iterable = Collections.emptyList();
+            } else if (predicate != Predicates.<NODE[]> alwaysTrue()) {
+                iterable = Iterables.filter(iterable, predicate);
+            }
         }
 
-        return Pair.of(iterable, bindings);
+        return new BlockIterable(iterable, iterables);
     }
 
     @Override
-    public Object visit(FactoryExpression<?> expr, Bindings bindings) {
+    public Object visit(FactoryExpression<?> expr, NODE[] bindings) {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Pair<Iterable<Bindings>, Bindings> visit(GraphBlock expr, Bindings bindings) {
+    public Iterable<NODE[]> visit(GraphBlock expr, NODE[] bindings) {
         try {
             context = expr.getContext();
-            return visit((ContainerBlock) expr, bindings);
+            return visit((ContainerBlock) expr);
         } finally {
             context = null;
         }
     }
 
     @Override
-    public Pair<Iterable<Bindings>, Bindings> visit(GroupBlock expr, Bindings bindings) {
-        return visit((ContainerBlock) expr, bindings);
+    public Iterable<NODE[]> visit(GroupBlock expr, NODE[] bindings) {
+        return visit((ContainerBlock) expr);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Object visit(final Operation<?> expr, Bindings bindings) {
-        final Operator<?> op = expr.getOperator();
-        if (op == Ops.EQ) {
-            return createEqPredicate(expr);
-
-        } else if (op == Ops.NE) {
-            return createNePredicate(expr);
-
-        } else if (op == Ops.AND) {
-            return createAndPredicate(expr, bindings);
-
-        } else if (op == Ops.IN) {
-            // expand IN to OR/EQ
-            BooleanBuilder builder = new BooleanBuilder();
-            for (Object o : ((Constant<Collection>) expr.getArg(1)).getConstant()) {
-                builder.or(ExpressionUtils.eqConst((Expression) expr.getArg(0), o));
-            }
-            return builder.getValue().accept(this, bindings);
-
-        } else if (op == Ops.OR) {
-            return createOrPredicate(expr, bindings);
-
-        } else if (op == Ops.NOT) {
-            return Predicates.not((Predicate) expr.getArg(0).accept(this, bindings));
-
-        } else if (op == Ops.IS_NULL || op == Ops.IS_NOT_NULL) {
-            return createBoundPredicate(expr, op);
-
-        } else if (op == Ops.LT || op == Ops.GT || op == Ops.LOE || op == Ops.GOE) {
-            return createComparePredicate(expr, op);
-
-        } else if (op == Ops.MATCHES || op == Ops.MATCHES_IC) {
-            return createMatchesPredicate(expr, op);
-
-        } else if (op == Ops.STARTS_WITH || op == Ops.ENDS_WITH || op == Ops.STRING_CONTAINS
-                || op == Ops.STARTS_WITH_IC || op == Ops.ENDS_WITH_IC || op == Ops.STRING_CONTAINS_IC) {
-            return createStringMatchPredicate(expr, op);
-
-        } else if (op == Ops.LIKE) {
-            return createLikePredicate(expr);
-
-        } else if (op == Ops.EQ_IGNORE_CASE) {
-            return createEqIgnoreCasePredicate(expr);
-
-        } else if (op == Ops.STRING_IS_EMPTY) {
-            return createStringIsEmptyPredicate(expr);
-
-        } else if (op == Ops.CONCAT) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(lhs.getValue() + rhs.getValue());
-
-        } else if (op == Ops.LOWER) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().toLowerCase());
-
-        } else if (op == Ops.UPPER) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().toUpperCase());
-
-        } else if (op == Ops.TRIM) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().trim());
-
-        } else if (op == Ops.SUBSTR_1ARG) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(lhs.getValue().substring(Integer.parseInt(rhs.getValue())));
-
-        } else if (op == Ops.SUBSTR_2ARGS) {
-            NODE arg0 = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE arg1 = (NODE) expr.getArg(1).accept(this, bindings);
-            NODE arg2 = (NODE) expr.getArg(2).accept(this, bindings);
-            return new LIT(arg0.getValue().substring(
-                    Integer.parseInt(arg1.getValue()),
-                    Integer.parseInt(arg2.getValue())));
-
-        } else if (op == Ops.CHAR_AT) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(String.valueOf(lhs.getValue().charAt(Integer.parseInt(rhs.getValue()))));
-
-        } else if (op == Ops.STRING_CAST) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return (lhs.isResource()) ? new LIT(lhs.getValue()) : lhs;
-
+    public Object visit(Operation<?> expr, NODE[] bindings) {
+        if (Boolean.class.equals(expr.getType())) {
+            return compiler.compilePredicate(expr);
         } else {
-            throw new IllegalArgumentException(expr.toString());
+            return compiler.compileValue(expr).apply(bindings);
         }
     }
 
-    private Predicate<Bindings> createStringMatchPredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs == null || rhs == null) {
-                    return false;
-                } else if (op == Ops.STARTS_WITH) {
-                    return lhs.getValue().startsWith(rhs.getValue());
-                } else if (op == Ops.STARTS_WITH_IC) {
-                    return lhs.getValue().toLowerCase().startsWith(rhs.getValue().toLowerCase());
-                } else if (op == Ops.ENDS_WITH) {
-                    return lhs.getValue().endsWith(rhs.getValue());
-                } else if (op == Ops.ENDS_WITH_IC) {
-                    return lhs.getValue().toLowerCase().endsWith(rhs.getValue().toLowerCase());
-                } else if (op == Ops.STRING_CONTAINS) {
-                    return lhs.getValue().contains(rhs.getValue());
-                } else if (op == Ops.STRING_CONTAINS_IC) {
-                    return lhs.getValue().toLowerCase().contains(rhs.getValue().toLowerCase());
-                } else {
-                    throw new IllegalArgumentException(op.toString());
-                }
-            }
-        };
-    }
-
-    private Predicate<Bindings> createEqIgnoreCasePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    return lhs.getValue().equalsIgnoreCase(rhs.getValue());
-                } else {
-                    return lhs == rhs;
-                }
-
-            }
-        };
-    }
-
-    private Predicate<Bindings> createStringIsEmptyPredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                return lhs != null ? lhs.getValue().isEmpty() : false;
-            }
-        };
-    }
-
     @Override
-    public Pair<Iterable<Bindings>, Bindings> visit(OptionalBlock expr, final Bindings bindings) {
-        // FIXME
-        final Pair<Iterable<Bindings>, Bindings> pair = visit((ContainerBlock) expr, bindings);
-        Iterable<Bindings> iterable = new Iterable<Bindings>() {
+    public RowIterable visit(OptionalBlock expr, NODE[] bindings) {
+        final BlockIterable block = visit((ContainerBlock) expr);
+        return new RowIterable() {
             @Override
-            public Iterator<Bindings> iterator() {
-                Iterator<Bindings> iterator = pair.getFirst().iterator();
+            public Iterator<NODE[]> iterator() {
+                Iterator<NODE[]> iterator = block.iterator();
                 if (iterator.hasNext()) {
                     return iterator;
                 } else {
-                    pair.getSecond().clear();
-                    return Collections.singleton(bindings).iterator();
+                    block.clear();
+                    return Collections.singleton(row).iterator();
                 }
             }
 
+            @Override
+            void clear() {
+                block.clear();
+            }
         };
-        return Pair.of(iterable, pair.getSecond());
-
     }
 
     @Override
-    public NODE visit(ParamExpression<?> expr, Bindings bindings) {
-        return bindings.get(expr.getName());
+    public NODE visit(ParamExpression<?> expr, NODE[] bindings) {
+        int slot = slots.findSlot(expr.getName());
+        return slot > -1 ? bindings[slot] : null;
     }
 
     @Override
-    public NODE visit(Path<?> expr, Bindings bindings) {
-        return bindings.get(expr.getMetadata().getElement().toString());
+    public NODE visit(Path<?> expr, NODE[] bindings) {
+        int slot = slots.findSlot(expr.getMetadata().getElement().toString());
+        return slot > -1 ? bindings[slot] : null;
     }
 
     @Override
-    public Pair<Iterable<Bindings>, Bindings> visit(final PatternBlock expr, final Bindings bindings) {
-        final Function<STMT, Bindings> transformer = createBindingsFunction(expr, context, bindings);
-        final Expression<UID> _context = context;
-        Iterable<Bindings> iterable = new Iterable<Bindings>() {
-            @Override
-            public Iterator<Bindings> iterator() {
-                Bindings parent = bindings.getParent();
-                ID s = (ID) expr.getSubject().accept(QueryRDFVisitor.this, parent);
-                UID p = (UID) expr.getPredicate().accept(QueryRDFVisitor.this, parent);
-                NODE o = (NODE) expr.getObject().accept(QueryRDFVisitor.this, parent);
-                UID c = null;
-                if (expr.getContext() != null) {
-                    c = (UID) expr.getContext().accept(QueryRDFVisitor.this, parent);
-                } else if (_context != null) {
-                    c = (UID) _context.accept(QueryRDFVisitor.this, parent);
-                }
-                bindings.clear();
-                return Iterators.transform(connection.findStatements(s, p, o, c, false), transformer);
-            }
-
-            @Override
-            public String toString() {
-                return expr.toString();
-            }
-
-        };
-        return Pair.of(iterable, bindings);
+    public RowIterable visit(PatternBlock expr, NODE[] bindings) {
+        return new PatternIterable(expr, context);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Object visit(QueryMetadata md, QueryLanguage<?, ?> queryType) {
-        Bindings initialBindings = new Bindings();
+        slots.clear();
+        bound.clear();
+        params.clear();
+        hashJoins.clear();
+        final Map<Integer, NODE> initialBindings = new HashMap<Integer, NODE>();
         for (Map.Entry<ParamExpression<?>, Object> entry : md.getParams().entrySet()) {
-            initialBindings.put(entry.getKey().getName(), (NODE) entry.getValue());
+            initialBindings.put(slots.getSlot(entry.getKey().getName()), (NODE) entry.getValue());
+            params.add(entry.getKey().getName());
         }
+        bound.addAll(params);
 
         com.mysema.query.types.Predicate where = md.getWhere();
         List<Constant<UID>> uids = new ArrayList<Constant<UID>>();
@@ -612,50 +428,357 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
             where = Blocks.graphFilter(g, (Block) where, b.getValue());
         }
 
-        Bindings whereBindings = new Bindings(initialBindings);
-        Iterable<Bindings> iterable = (Iterable<Bindings>) ((Pair) where.accept(this, whereBindings)).getFirst();
+        final Iterable<NODE[]> joined = (Iterable<NODE[]>) where.accept(this, null);
 
-        // TODO : sort
+        // the row and the hash join tables are reset per evaluation
+        final List<HashJoinIterable> tables = new ArrayList<HashJoinIterable>(hashJoins);
+        Iterable<NODE[]> iterable = new Iterable<NODE[]>() {
+            @Override
+            public Iterator<NODE[]> iterator() {
+                Arrays.fill(row, null);
+                for (Map.Entry<Integer, NODE> entry : initialBindings.entrySet()) {
+                    row[entry.getKey().intValue()] = entry.getValue();
+                }
+                for (HashJoinIterable table : tables) {
+                    table.reset();
+                }
+                return joined.iterator();
+            }
+        };
 
-        // paging
-        if (md.getModifiers().isRestricting()) {
-            iterable = new LimitingIterable<Bindings>(iterable, md.getModifiers());
+        // sort and paging
+        if (!md.getOrderBy().isEmpty()) {
+            iterable = new SortingIterable(iterable, createOrderComparator(md.getOrderBy()), md.getModifiers(),
+                    sortMemoryBudget);
+        } else if (md.getModifiers().isRestricting()) {
+            iterable = new LimitingIterable<NODE[]>(iterable, md.getModifiers());
         }
 
+        Object rv;
         if (queryType == QueryLanguage.GRAPH) {
-            return createGraphQuery(md, iterable);
+            rv = createGraphQuery(md, iterable);
 
         } else if (queryType == QueryLanguage.TUPLE) {
-            return createTupleQuery(md, iterable);
+            rv = createTupleQuery(md, iterable);
 
         } else if (queryType == QueryLanguage.BOOLEAN) {
-            return createBooleanQuery(iterable);
+            rv = createBooleanQuery(iterable);
 
         } else {
             throw new IllegalArgumentException(queryType.toString());
         }
+        // all slots are known after compilation
+        row = new NODE[slots.size()];
+        return rv;
     }
 
     @Override
-    public Object visit(SubQueryExpression<?> expr, Bindings bindings) {
+    public Object visit(SubQueryExpression<?> expr, NODE[] bindings) {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public Object visit(TemplateExpression<?> expr, Bindings bindings) {
+    public Object visit(TemplateExpression<?> expr, NODE[] bindings) {
         throw new UnsupportedOperationException();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Pair<? extends Iterable<Bindings>, Bindings> visit(UnionBlock expr, Bindings bindings) {
-        // TODO : make sure this works
-        List<Iterable<Bindings>> iterables = new ArrayList<Iterable<Bindings>>();
+    public RowIterable visit(UnionBlock expr, NODE[] bindings) {
+        final List<RowIterable> branches = new ArrayList<RowIterable>(expr.getBlocks().size());
         for (Block block : expr.getBlocks()) {
-            Pair<Iterable<Bindings>, Bindings> iterableAndBindings = (Pair) block.accept(this, bindings);
-            iterables.add(iterableAndBindings.getFirst());
+            branches.add((RowIterable) block.accept(this, null));
+        }
+        return new RowIterable() {
+            @Override
+            public Iterator<NODE[]> iterator() {
+                List<Iterator<NODE[]>> iterators = new ArrayList<Iterator<NODE[]>>(branches.size());
+                for (final RowIterable branch : branches) {
+                    // the bindings of the previous branches are cleared lazily
+                    iterators.add(new AbstractIterator<NODE[]>() {
+                        @Nullable
+                        private Iterator<NODE[]> iterator;
+
+                        @Override
+                        protected NODE[] computeNext() {
+                            if (iterator == null) {
+                                clear();
+                                iterator = branch.iterator();
+                            }
+                            return iterator.hasNext() ? iterator.next() : endOfData();
+                        }
+                    });
+                }
+                return Iterators.concat(iterators.iterator());
+            }
+
+            @Override
+            void clear() {
+                for (RowIterable branch : branches) {
+                    branch.clear();
+                }
+            }
+        };
+    }
+
+    /**
+     * RowIterable provides the rows of a block by binding the slots of the
+     * shared row
+     */
+    private abstract class RowIterable implements Iterable<NODE[]> {
+
+        /**
+         * Clear the slots bound by the last evaluation
+         */
+        abstract void clear();
+
+    }
+
+    /**
+     * BlockIterable provides the rows of a container block
+     */
+    private final class BlockIterable extends RowIterable {
+
+        private final Iterable<NODE[]> iterable;
+
+        private final List<RowIterable> children;
+
+        BlockIterable(Iterable<NODE[]> iterable, List<RowIterable> children) {
+            this.iterable = iterable;
+            this.children = children;
+        }
+
+        @Override
+        public Iterator<NODE[]> iterator() {
+            clear();
+            return iterable.iterator();
+        }
+
+        @Override
+        void clear() {
+            for (RowIterable child : children) {
+                child.clear();
+            }
+        }
+
+    }
+
+    /**
+     * PatternIterable provides the matches of a pattern block for the current
+     * row
+     */
+    private class PatternIterable extends RowIterable {
+
+        protected final PatternBlock expr;
+
+        /**
+         * variable names of the positions
+         */
+        protected final String[] keys = new String[4];
+
+        /**
+         * slots of the positions or -1 for constants
+         */
+        protected final int[] positions = new int[4];
+
+        /**
+         * values of the constant positions
+         */
+        protected final NODE[] constants = new NODE[4];
+
+        /**
+         * positions which are bound by the current evaluation
+         */
+        private final boolean[] binds = new boolean[4];
+
+        private final Function<STMT, NODE[]> transformer = new Function<STMT, NODE[]>() {
+            @Override
+            public NODE[] apply(STMT input) {
+                bind(0, input.getSubject());
+                bind(1, input.getPredicate());
+                bind(2, input.getObject());
+                bind(3, input.getContext());
+                return row;
+            }
+        };
+
+        PatternIterable(PatternBlock expr, @Nullable Expression<UID> context) {
+            this.expr = expr;
+            Expression<?>[] exprs = new Expression<?>[] { expr.getSubject(), expr.getPredicate(), expr.getObject(),
+                    expr.getContext() != null ? expr.getContext() : context };
+            for (int i = 0; i < exprs.length; i++) {
+                keys[i] = VariableSlots.getVariable(exprs[i]);
+                if (keys[i] != null) {
+                    positions[i] = slots.getSlot(keys[i]);
+                } else {
+                    positions[i] = -1;
+                    constants[i] = exprs[i] != null ? compiler.compileValue(exprs[i]).apply(row) : null;
+                }
+            }
+        }
+
+        private void bind(int position, NODE value) {
+            if (binds[position]) {
+                row[positions[position]] = value;
+            }
+        }
+
+        @Override
+        void clear() {
+            for (int i = 0; i < positions.length; i++) {
+                if (binds[i]) {
+                    row[positions[i]] = null;
+                    binds[i] = false;
+                }
+            }
         }
-        return Pair.<Iterable<Bindings>, Bindings> of(Iterables.<Bindings> concat(iterables.toArray(new Iterable[iterables.size()])), bindings);
+
+        /**
+         * Clear the slots bound by the last evaluation and get the values of
+         * the positions for the current row
+         *
+         * @return
+         */
+        protected final NODE[] prepare() {
+            clear();
+            NODE[] values = new NODE[4];
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] < 0) {
+                    values[i] = constants[i];
+                } else {
+                    values[i] = row[positions[i]];
+                    // the first unbound occurrence of a variable is bound
+                    binds[i] = values[i] == null && !isRepeated(i);
+                }
+            }
+            return values;
+        }
+
+        private boolean isRepeated(int position) {
+            for (int i = 0; i < position; i++) {
+                if (positions[i] == positions[position]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected final Iterator<NODE[]> transform(Iterator<STMT> stmts) {
+            return Iterators.transform(stmts, transformer);
+        }
+
+        @Override
+        public Iterator<NODE[]> iterator() {
+            NODE[] values = prepare();
+            return transform(connection.findStatements((ID) values[0], (UID) values[1], values[2],
+                    (UID) values[3], false));
+        }
+
+        @Override
+        public String toString() {
+            return expr.toString();
+        }
+
+    }
+
+    /**
+     * HashJoinIterable evaluates a pattern once without the join variables and
+     * serves the matches for each input row from a hash table
+     */
+    private final class HashJoinIterable extends PatternIterable {
+
+        private final boolean[] join = new boolean[4];
+
+        private final boolean[] constant = new boolean[4];
+
+        private final int[] joinPositions;
+
+        @Nullable
+        private Map<Object, List<STMT>> table;
+
+        HashJoinIterable(PatternBlock expr, @Nullable Expression<UID> context) {
+            super(expr, context);
+            int count = 0;
+            for (int i = 0; i < positions.length; i++) {
+                constant[i] = keys[i] == null || params.contains(keys[i]);
+                join[i] = !constant[i] && bound.contains(keys[i]);
+                count += join[i] ? 1 : 0;
+            }
+            joinPositions = new int[count];
+            for (int i = 0, j = 0; i < positions.length; i++) {
+                if (join[i]) {
+                    joinPositions[j++] = i;
+                }
+            }
+        }
+
+        void reset() {
+            table = null;
+        }
+
+        @Override
+        public Iterator<NODE[]> iterator() {
+            NODE[] values = prepare();
+            boolean lookup = false;
+            for (int i = 0; i < positions.length; i++) {
+                // fall back to a lookup, if the bound variables differ from the plan
+                if (join[i] ? values[i] == null : (!constant[i] && values[i] != null)) {
+                    lookup = true;
+                }
+            }
+            Iterator<STMT> stmts;
+            if (lookup) {
+                stmts = connection.findStatements((ID) values[0], (UID) values[1], values[2], (UID) values[3], false);
+            } else {
+                if (table == null) {
+                    table = createTable(values);
+                }
+                List<STMT> matches = table.get(getJoinKey(values));
+                stmts = matches != null ? matches.iterator() : Collections.<STMT> emptyList().iterator();
+            }
+            return transform(stmts);
+        }
+
+        private Map<Object, List<STMT>> createTable(NODE[] values) {
+            NODE[] scan = new NODE[4];
+            for (int i = 0; i < positions.length; i++) {
+                if (constant[i]) {
+                    scan[i] = values[i];
+                }
+            }
+            Map<Object, List<STMT>> rv = new HashMap<Object, List<STMT>>();
+            CloseableIterator<STMT> stmts = connection.findStatements(
+                    (ID) scan[0], (UID) scan[1], scan[2], (UID) scan[3], false);
+            try {
+                while (stmts.hasNext()) {
+                    STMT stmt = stmts.next();
+                    Object key = getJoinKey(new NODE[] { stmt.getSubject(), stmt.getPredicate(), stmt.getObject(),
+                            stmt.getContext() });
+                    List<STMT> matches = rv.get(key);
+                    if (matches == null) {
+                        matches = new ArrayList<STMT>(2);
+                        rv.put(key, matches);
+                    }
+                    matches.add(stmt);
+                }
+            } finally {
+                stmts.close();
+            }
+            return rv;
+        }
+
+        @Nullable
+        private Object getJoinKey(NODE[] nodes) {
+            if (joinPositions.length == 1) {
+                return nodes[joinPositions[0]];
+            } else {
+                NODE[] key = new NODE[joinPositions.length];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = nodes[joinPositions[i]];
+                }
+                return Arrays.asList(key);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * RowMap is a read-only Map view of a query result row, unbound variables are
+ * not contained
+ *
+ * @author tiwe
+ */
+final class RowMap extends AbstractMap<String, NODE> {
+
+    private final List<String> variables;
+
+    private final NODE[] values;
+
+    private final int size;
+
+    /**
+     * Create a new RowMap
+     *
+     * @param variables
+     *            variable names
+     * @param values
+     *            values of the variables, null for unbound variables
+     */
+    RowMap(List<String> variables, NODE[] values) {
+        this.variables = variables;
+        this.values = values;
+        int count = 0;
+        for (NODE value : values) {
+            if (value != null) {
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @Nullable
+    public NODE get(Object key) {
+        int index = variables.indexOf(key);
+        return index > -1 ? values[index] : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, NODE>> entrySet() {
+        return new AbstractSet<Map.Entry<String, NODE>>() {
+            @Override
+            public Iterator<Map.Entry<String, NODE>> iterator() {
+                return new Iterator<Map.Entry<String, NODE>>() {
+                    private int index = advance(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, NODE> next() {
+                        if (index >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, NODE> entry = new SimpleImmutableEntry<String, NODE>(
+                                variables.get(index), values[index]);
+                        index = advance(index + 1);
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int advance(int index) {
+        while (index < values.length && values[index] == null) {
+            index++;
+        }
+        return index;
+    }
+
+}
@@ -67,6 +67,14 @@ public final class STMTCache {
         }
     }
 
+    public int size() {
+        if (multi != null) {
+            return multi.size();
+        } else {
+            return single != null ? 1 : 0;
+        }
+    }
+
     public String toString() {
         if (multi != null) {
             return multi.toString();
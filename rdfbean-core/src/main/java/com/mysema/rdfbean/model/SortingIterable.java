@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.QueryModifiers;
+import com.mysema.util.LimitingIterator;
+
+/**
+ * SortingIterable sorts the rows of the given Iterable and applies the limit
+ * and offset of the given modifiers
+ *
+ * <p>
+ * If a limit is given, only the first offset + limit rows are kept in a
+ * bounded priority queue. Otherwise all rows are sorted in memory, and if
+ * their estimated size exceeds the memory budget, sorted runs are written to
+ * temporary files and merged. The run files are deleted when the merge
+ * completes or the iterator is closed.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class SortingIterable implements Iterable<NODE[]> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = -1, URI = 0, BLANK = 1, TYPED_LITERAL = 2, LANG_LITERAL = 3;
+
+    private final Iterable<NODE[]> iterable;
+
+    private final Comparator<NODE[]> comparator;
+
+    private final QueryModifiers modifiers;
+
+    private final long memoryBudget;
+
+    /**
+     * Create a new SortingIterable
+     *
+     * @param iterable
+     *            rows to be sorted
+     * @param comparator
+     *            row order
+     * @param modifiers
+     *            limit and offset
+     * @param memoryBudget
+     *            maximum estimated size of the rows kept in memory in bytes
+     */
+    SortingIterable(Iterable<NODE[]> iterable, Comparator<NODE[]> comparator, QueryModifiers modifiers,
+            long memoryBudget) {
+        this.iterable = iterable;
+        this.comparator = comparator;
+        this.modifiers = modifiers;
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public CloseableIterator<NODE[]> iterator() {
+        Long limit = modifiers.getLimit();
+        long offset = modifiers.getOffset() != null ? modifiers.getOffset().longValue() : 0l;
+        if (limit != null && limit.longValue() + offset < Integer.MAX_VALUE) {
+            return new IteratorAdapter<NODE[]>(topK(iterable.iterator(), (int) (limit.longValue() + offset),
+                    (int) offset));
+        } else {
+            CloseableIterator<NODE[]> sorted = sort(iterable.iterator());
+            return new IteratorAdapter<NODE[]>(LimitingIterator.create(sorted, modifiers), sorted);
+        }
+    }
+
+    private Iterator<NODE[]> topK(Iterator<NODE[]> rows, int size, int offset) {
+        if (size == 0) {
+            return Collections.<NODE[]> emptyList().iterator();
+        }
+        // the head of the queue is the greatest of the kept rows
+        PriorityQueue<NODE[]> queue = new PriorityQueue<NODE[]>(Math.min(size, 1024), Collections
+                .reverseOrder(comparator));
+        while (rows.hasNext()) {
+            NODE[] row = rows.next();
+            if (queue.size() < size) {
+                queue.add(row.clone());
+            } else if (comparator.compare(row, queue.peek()) < 0) {
+                queue.poll();
+                queue.add(row.clone());
+            }
+        }
+        NODE[][] sorted = new NODE[queue.size()][];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = queue.poll();
+        }
+        List<NODE[]> rv = new ArrayList<NODE[]>(sorted.length);
+        for (int i = offset; i < sorted.length; i++) {
+            rv.add(sorted[i]);
+        }
+        return rv.iterator();
+    }
+
+    private CloseableIterator<NODE[]> sort(Iterator<NODE[]> rows) {
+        List<NODE[]> chunk = new ArrayList<NODE[]>();
+        List<File> runs = new ArrayList<File>();
+        long bytes = 0;
+        try {
+            while (rows.hasNext()) {
+                NODE[] row = rows.next().clone();
+                chunk.add(row);
+                bytes += estimateSize(row);
+                if (bytes > memoryBudget) {
+                    runs.add(writeRun(chunk));
+                    chunk.clear();
+                    bytes = 0;
+                }
+            }
+            if (runs.isEmpty()) {
+                Collections.sort(chunk, comparator);
+                return new IteratorAdapter<NODE[]>(chunk.iterator());
+            }
+            if (!chunk.isEmpty()) {
+                runs.add(writeRun(chunk));
+            }
+            return new MergeIterator(runs);
+        } catch (IOException e) {
+            for (File run : runs) {
+                run.delete();
+            }
+            throw new RepositoryException(e);
+        }
+    }
+
+    private File writeRun(List<NODE[]> chunk) throws IOException {
+        Collections.sort(chunk, comparator);
+        File file = File.createTempFile("rdfbean-sort", ".run");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        try {
+            for (NODE[] row : chunk) {
+                out.writeInt(row.length);
+                for (NODE node : row) {
+                    writeNode(out, node);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static long estimateSize(NODE[] row) {
+        long size = 16 + row.length * 4;
+        for (NODE node : row) {
+            if (node != null) {
+                size += 96 + node.getValue().length() * 2;
+            }
+        }
+        return size;
+    }
+
+    private static void writeNode(DataOutputStream out, @Nullable NODE node) throws IOException {
+        if (node == null) {
+            out.writeByte(NULL);
+        } else if (node.isURI()) {
+            out.writeByte(URI);
+            writeString(out, node.getValue());
+        } else if (node.isBNode()) {
+            out.writeByte(BLANK);
+            writeString(out, node.getValue());
+        } else {
+            LIT literal = node.asLiteral();
+            if (literal.getLang() != null) {
+                out.writeByte(LANG_LITERAL);
+                writeString(out, literal.getValue());
+                writeString(out, LocaleUtil.toLang(literal.getLang()));
+            } else {
+                out.writeByte(TYPED_LITERAL);
+                writeString(out, literal.getValue());
+                writeString(out, literal.getDatatype().getId());
+            }
+        }
+    }
+
+    @Nullable
+    private static NODE readNode(DataInputStream in, Map<String, UID> uids) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case URI:
+            return getUID(readString(in), uids);
+        case BLANK:
+            return new BID(readString(in));
+        case LANG_LITERAL:
+            return new LIT(readString(in), readString(in));
+        case TYPED_LITERAL:
+            String value = readString(in);
+            return new LIT(value, getUID(readString(in), uids));
+        default:
+            throw new IOException("Illegal node type " + type);
+        }
+    }
+
+    private static UID getUID(String id, Map<String, UID> uids) {
+        UID uid = uids.get(id);
+        if (uid == null) {
+            uid = new UID(id);
+            uids.put(id, uid);
+        }
+        return uid;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Run provides the rows of a sorted run file
+     */
+    private static final class Run {
+
+        private final File file;
+
+        private final DataInputStream in;
+
+        private final Map<String, UID> uids = new HashMap<String, UID>();
+
+        @Nullable
+        private NODE[] current;
+
+        Run(File file) throws IOException {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        }
+
+        boolean advance() throws IOException {
+            int size;
+            try {
+                size = in.readInt();
+            } catch (EOFException e) {
+                close();
+                return false;
+            }
+            current = new NODE[size];
+            for (int i = 0; i < size; i++) {
+                current[i] = readNode(in, uids);
+            }
+            return true;
+        }
+
+        void close() throws IOException {
+            current = null;
+            try {
+                in.close();
+            } finally {
+                file.delete();
+            }
+        }
+
+    }
+
+    /**
+     * MergeIterator merges sorted runs and deletes them when exhausted or
+     * closed
+     */
+    private final class MergeIterator implements CloseableIterator<NODE[]> {
+
+        private final PriorityQueue<Run> queue;
+
+        MergeIterator(List<File> files) throws IOException {
+            queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run r1, Run r2) {
+                    return comparator.compare(r1.current, r2.current);
+                }
+            });
+            try {
+                for (File file : files) {
+                    Run run = new Run(file);
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            IOException failure = null;
+            for (Run run : queue) {
+                try {
+                    run.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            queue.clear();
+            if (failure != null) {
+                throw new RepositoryException(failure);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public NODE[] next() {
+            Run run = queue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            NODE[] rv = run.current;
+            try {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            } catch (IOException e) {
+                try {
+                    run.close();
+                } catch (IOException e2) {
+                    // the original failure is reported
+                }
+                close();
+                throw new RepositoryException(e);
+            }
+            return rv;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+/**
+ * TypedNODEComparator extends the lexical order of {@link NODEComparator} by
+ * comparing numeric literals by their numeric value and date and dateTime
+ * literals chronologically
+ *
+ * <p>
+ * Literals are ordered first by category: numeric literals before date and
+ * dateTime literals before all other literals. Inside the numeric and temporal
+ * categories literals are compared by their typed value. Literals with equal
+ * typed values, e.g. "1"^^xsd:int and "01"^^xsd:int, and literals of the last
+ * category are ordered lexically to keep the order total.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class TypedNODEComparator extends NODEComparator {
+
+    private static final long serialVersionUID = 2836524937437208446L;
+
+    @Override
+    public int compare(NODE o1, NODE o2) {
+        if (o1 != null && o2 != null && o1.isLiteral() && o2.isLiteral()) {
+            TypedValue v1 = ((LIT) o1).getTypedValue();
+            TypedValue v2 = ((LIT) o2).getTypedValue();
+            int c1 = v1.getCategory(), c2 = v2.getCategory();
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : 1;
+            } else if (v1.kind != TypedValue.NONE) {
+                int rv = v1.compareTo(v2);
+                if (rv != 0) {
+                    return rv;
+                }
+            }
+        }
+        return super.compare(o1, o2);
+    }
+
+}
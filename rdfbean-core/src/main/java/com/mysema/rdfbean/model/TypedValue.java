@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+import com.mysema.rdfbean.xsd.ConverterRegistry;
+import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
+
+/**
+ * TypedValue is the parsed value of a numeric, date or dateTime literal
+ *
+ * <p>
+ * Values are parsed once per LIT via {@link ConverterRegistryImpl#DEFAULT}
+ * and cached on the literal, so that comparisons are done on primitives.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class TypedValue {
+
+    static final int NONE = 0, INTEGER = 1, FLOATING = 2, DECIMAL = 3, TIME = 4;
+
+    static final TypedValue UNTYPED = new TypedValue(NONE, 0l, 0.0, null);
+
+    private static final ConverterRegistry converters = ConverterRegistryImpl.DEFAULT;
+
+    final int kind;
+
+    /**
+     * value of INTEGER values and milliseconds of TIME values
+     */
+    final long longValue;
+
+    final double doubleValue;
+
+    /**
+     * value of DECIMAL values
+     */
+    final BigDecimal decimalValue;
+
+    private TypedValue(int kind, long longValue, double doubleValue, BigDecimal decimalValue) {
+        this.kind = kind;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.decimalValue = decimalValue;
+    }
+
+    static TypedValue parse(LIT literal) {
+        UID datatype = literal.getDatatype();
+        if (!isSupported(datatype)) {
+            return UNTYPED;
+        }
+        Object value;
+        try {
+            value = converters.fromString(literal.getValue().trim(), converters.getClass(datatype));
+        } catch (RuntimeException e) {
+            // malformed literals are compared lexically
+            return UNTYPED;
+        }
+        if (value instanceof Date) {
+            return new TypedValue(TIME, ((Date) value).getTime(), 0.0, null);
+        } else if (value instanceof Double || value instanceof Float) {
+            return new TypedValue(FLOATING, 0l, ((Number) value).doubleValue(), null);
+        } else if (value instanceof BigDecimal) {
+            return new TypedValue(DECIMAL, 0l, ((BigDecimal) value).doubleValue(), (BigDecimal) value);
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() > 63) {
+            BigDecimal decimal = new BigDecimal((BigInteger) value);
+            return new TypedValue(DECIMAL, 0l, decimal.doubleValue(), decimal);
+        } else if (value instanceof Number) {
+            long longValue = ((Number) value).longValue();
+            return new TypedValue(INTEGER, longValue, longValue, null);
+        } else {
+            return UNTYPED;
+        }
+    }
+
+    private static boolean isSupported(UID datatype) {
+        return datatype.equals(XSD.intType)
+                || datatype.equals(XSD.longType)
+                || datatype.equals(XSD.integerType)
+                || datatype.equals(XSD.doubleType)
+                || datatype.equals(XSD.decimalType)
+                || datatype.equals(XSD.dateTime)
+                || datatype.equals(XSD.date)
+                || datatype.equals(XSD.floatType)
+                || datatype.equals(XSD.shortType)
+                || datatype.equals(XSD.byteType);
+    }
+
+    boolean isNumeric() {
+        return kind == INTEGER || kind == FLOATING || kind == DECIMAL;
+    }
+
+    /**
+     * @return 0 for numeric values, 1 for date and dateTime values and 2 for
+     *         all other values
+     */
+    int getCategory() {
+        if (isNumeric()) {
+            return 0;
+        } else if (kind == TIME) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    /**
+     * Compare to the given value of the same category
+     *
+     * <p>
+     * Mixed numeric values are compared exactly instead of via double
+     * precision to keep the comparison transitive.
+     * </p>
+     *
+     * @param other
+     * @return
+     */
+    int compareTo(TypedValue other) {
+        if (kind == TIME || (kind == INTEGER && other.kind == INTEGER)) {
+            return longValue < other.longValue ? -1 : (longValue == other.longValue ? 0 : 1);
+        } else if (kind == FLOATING && other.kind == FLOATING) {
+            return compare(doubleValue, other.doubleValue);
+        }
+        int r1 = getRank(), r2 = other.getRank();
+        if (r1 != r2) {
+            return r1 < r2 ? -1 : 1;
+        } else if (r1 != 0) {
+            return 0;
+        } else {
+            return toDecimal().compareTo(other.toDecimal());
+        }
+    }
+
+    /**
+     * @return the position of infinite and NaN values relative to finite
+     *         values, which have rank 0
+     */
+    private int getRank() {
+        if (kind != FLOATING || !(Double.isNaN(doubleValue) || Double.isInfinite(doubleValue))) {
+            return 0;
+        } else if (Double.isNaN(doubleValue)) {
+            return 2;
+        } else {
+            return doubleValue > 0 ? 1 : -1;
+        }
+    }
+
+    private BigDecimal toDecimal() {
+        if (decimalValue != null) {
+            return decimalValue;
+        } else if (kind == FLOATING) {
+            return new BigDecimal(doubleValue);
+        } else {
+            return BigDecimal.valueOf(longValue);
+        }
+    }
+
+    private static int compare(double d1, double d2) {
+        if (d1 < d2) {
+            return -1;
+        } else if (d1 > d2) {
+            return 1;
+        } else if (d1 == d2) {
+            // 0.0 and -0.0 are equal like in the exact comparison
+            return 0;
+        } else {
+            // NaN is ordered after all other values
+            return Double.isNaN(d1) ? (Double.isNaN(d2) ? 0 : 1) : -1;
+        }
+    }
+
+}
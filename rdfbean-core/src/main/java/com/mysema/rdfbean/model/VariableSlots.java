@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.query.types.Path;
+
+/**
+ * VariableSlots assigns the variables of a query to positions of a NODE array
+ * row
+ *
+ * @author tiwe
+ */
+final class VariableSlots {
+
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * Get the slot of the given variable, a new slot is assigned if the
+     * variable has none yet
+     *
+     * @param variable
+     * @return
+     */
+    public int getSlot(String variable) {
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+            slot = Integer.valueOf(names.size());
+            slots.put(variable, slot);
+            names.add(variable);
+        }
+        return slot.intValue();
+    }
+
+    /**
+     * Get the slot of the given variable without assigning one
+     *
+     * @param variable
+     * @return the slot or -1, if the variable has no slot
+     */
+    public int findSlot(String variable) {
+        Integer slot = slots.get(variable);
+        return slot != null ? slot.intValue() : -1;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public void clear() {
+        slots.clear();
+        names.clear();
+    }
+
+    /**
+     * Get the variable name of the given expression
+     *
+     * @param expr
+     * @return the variable name or null, if the expression is not a variable
+     */
+    @Nullable
+    public static String getVariable(@Nullable Expression<?> expr) {
+        if (expr instanceof Path<?>) {
+            return expr.toString();
+        } else if (expr instanceof ParamExpression<?>) {
+            return ((ParamExpression<?>) expr).getName();
+        } else {
+            return null;
+        }
+    }
+
+}
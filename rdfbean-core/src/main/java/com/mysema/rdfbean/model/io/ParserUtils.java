@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+
+import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * @author tiwe
+ *
+ */
+public final class ParserUtils {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Get whether the given format can be parsed via {@link #createParser(Format)}
+     *
+     * @param format
+     * @return
+     */
+    public static boolean isSupported(Format format) {
+        return format == Format.N3 || format == Format.TURTLE || format == Format.NTRIPLES || format == Format.NQUADS;
+    }
+
+    public static TurtleParser createParser(Format format) {
+        if (format == Format.NQUADS) {
+            return new TurtleParser(true);
+        } else if (isSupported(format)) {
+            return new TurtleParser(false);
+        } else {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    public static void parse(Format format, InputStream in, @Nullable UID context, @Nullable String baseURI,
+            STMTHandler handler) {
+        parse(format, in, context, baseURI, DEFAULT_BATCH_SIZE, handler);
+    }
+
+    public static void parse(Format format, InputStream in, @Nullable UID context, @Nullable String baseURI,
+            int batchSize, STMTHandler handler) {
+        try {
+            createParser(format).parse(in, context, baseURI, batchSize, handler);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    private ParserUtils() {
+    }
+
+}
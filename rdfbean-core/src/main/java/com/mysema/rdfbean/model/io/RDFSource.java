@@ -14,6 +14,7 @@ import javax.annotation.concurrent.Immutable;
 
 import com.mysema.commons.lang.Assert;
 import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.UID;
 
 /**
  * @author tiwe
@@ -74,4 +75,24 @@ public class RDFSource {
         }
     }
 
+    /**
+     * Parse the statements of this source into the given handler. Only the
+     * formats supported by {@link ParserUtils} can be parsed.
+     * 
+     * @param batchSize
+     * @param handler
+     * @throws IOException
+     */
+    public void parse(int batchSize, STMTHandler handler) throws IOException {
+        InputStream in = openStream();
+        if (in == null) {
+            throw new IOException("Resource " + resource + " not found");
+        }
+        try {
+            ParserUtils.createParser(format).parse(in, new UID(context), context, batchSize, handler);
+        } finally {
+            in.close();
+        }
+    }
+
 }
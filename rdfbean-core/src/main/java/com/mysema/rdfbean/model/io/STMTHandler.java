@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model.io;
+
+import java.util.List;
+
+import com.mysema.rdfbean.model.STMT;
+
+/**
+ * STMTHandler receives parsed statements in batches
+ *
+ * @author tiwe
+ */
+public interface STMTHandler {
+
+    /**
+     * Handle the given batch of statements
+     *
+     * @param stmts
+     */
+    void handle(List<STMT> stmts);
+
+}
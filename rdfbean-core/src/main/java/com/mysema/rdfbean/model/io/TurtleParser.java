@@ -0,0 +1,758 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+/**
+ * TurtleParser is a streaming parser for Turtle, N-Triples and N-Quads
+ *
+ * <p>
+ * The input is read through a fixed size character buffer and the parsed
+ * statements are handed to a {@link STMTHandler} in batches, so the memory
+ * usage doesn't depend on the size of the input. Repeated URIs are resolved
+ * via a bounded cache to avoid creating a new UID for each occurrence.
+ * </p>
+ *
+ * <p>
+ * N-Triples is parsed as a subset of Turtle. In N-Quads mode an optional
+ * fourth term is accepted as the context of the statement.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe, but can be reused for consecutive parses.
+ * </p>
+ *
+ * @author tiwe
+ */
+public final class TurtleParser {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int CACHE_SIZE = 4096;
+
+    private static final int EOF = -1;
+
+    private final boolean nquads;
+
+    private final UID[] uriCache = new UID[CACHE_SIZE];
+
+    private final Map<String, Locale> locales = new HashMap<String, Locale>();
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private final StringBuilder sb = new StringBuilder();
+
+    private final Map<String, String> prefixes = new HashMap<String, String>();
+
+    private Reader reader;
+
+    private int pos, limit, line;
+
+    @Nullable
+    private String base;
+
+    @Nullable
+    private UID context;
+
+    private String bnodePrefix;
+
+    private int bnodes;
+
+    private int batchSize;
+
+    private STMTHandler handler;
+
+    private List<STMT> batch;
+
+    public TurtleParser() {
+        this(false);
+    }
+
+    /**
+     * Create a new TurtleParser
+     *
+     * @param nquads
+     *            whether to accept a context term after the object
+     */
+    public TurtleParser(boolean nquads) {
+        this.nquads = nquads;
+    }
+
+    /**
+     * Parse the given UTF-8 encoded input
+     *
+     * @param in
+     * @param context
+     *            context of the statements, in N-Quads mode the default
+     *            context
+     * @param baseURI
+     *            base URI for relative URIs
+     * @param batchSize
+     *            maximum amount of statements per batch
+     * @param handler
+     */
+    public void parse(InputStream in, @Nullable UID context, @Nullable String baseURI, int batchSize,
+            STMTHandler handler) throws IOException {
+        parse(new InputStreamReader(in, UTF8), context, baseURI, batchSize, handler);
+    }
+
+    /**
+     * Parse the given input
+     *
+     * @param reader
+     * @param context
+     *            context of the statements, in N-Quads mode the default
+     *            context
+     * @param baseURI
+     *            base URI for relative URIs
+     * @param batchSize
+     *            maximum amount of statements per batch
+     * @param handler
+     */
+    public void parse(Reader reader, @Nullable UID context, @Nullable String baseURI, int batchSize,
+            STMTHandler handler) throws IOException {
+        this.reader = reader;
+        this.context = context;
+        this.base = baseURI;
+        this.batchSize = batchSize;
+        this.handler = handler;
+        this.batch = new ArrayList<STMT>(batchSize);
+        this.bnodePrefix = "b" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        this.bnodes = 0;
+        this.pos = 0;
+        this.limit = 0;
+        this.line = 1;
+        try {
+            skipWS();
+            while (peek() != EOF) {
+                parseStatement();
+                skipWS();
+            }
+            if (!batch.isEmpty()) {
+                handler.handle(batch);
+            }
+        } finally {
+            this.reader = null;
+            this.handler = null;
+            this.batch = null;
+            prefixes.clear();
+        }
+    }
+
+    private void parseStatement() throws IOException {
+        int c = peek();
+        if (c == '@') {
+            read();
+            String keyword = readName();
+            skipWS();
+            if (keyword.equals("prefix")) {
+                parsePrefix();
+            } else if (keyword.equals("base")) {
+                parseBase();
+            } else {
+                throw error("Unknown directive @" + keyword);
+            }
+            skipWS();
+            expect('.');
+        } else if (isKeyword("PREFIX", true)) {
+            pos += 6;
+            skipWS();
+            parsePrefix();
+        } else if (isKeyword("BASE", true)) {
+            pos += 4;
+            skipWS();
+            parseBase();
+        } else {
+            parseTriples();
+            skipWS();
+            expect('.');
+        }
+    }
+
+    private void parsePrefix() throws IOException {
+        String prefix = readName();
+        expect(':');
+        skipWS();
+        String ns = parseURI().getId();
+        prefixes.put(prefix, ns);
+    }
+
+    private void parseBase() throws IOException {
+        base = parseURI().getId();
+    }
+
+    private void parseTriples() throws IOException {
+        ID subject;
+        int c = peek();
+        if (c == '[') {
+            subject = parseBlankNodePropertyList();
+            skipWS();
+            if (peek() == '.') {
+                return;
+            }
+        } else if (c == '<') {
+            subject = parseURI();
+        } else if (c == '_') {
+            subject = parseBlankNode();
+        } else if (c == '(') {
+            subject = parseCollection();
+        } else {
+            subject = parsePrefixedName();
+        }
+        skipWS();
+        parsePredicateObjectList(subject);
+    }
+
+    private void parsePredicateObjectList(ID subject) throws IOException {
+        while (true) {
+            UID predicate = parseVerb();
+            skipWS();
+            parseObjectList(subject, predicate);
+            skipWS();
+            if (peek() != ';') {
+                return;
+            }
+            while (peek() == ';') {
+                read();
+                skipWS();
+            }
+            int c = peek();
+            if (c == '.' || c == ']' || c == EOF) {
+                return;
+            }
+        }
+    }
+
+    private void parseObjectList(ID subject, UID predicate) throws IOException {
+        while (true) {
+            NODE object = parseObject();
+            UID ctx = context;
+            if (nquads) {
+                skipWS();
+                int c = peek();
+                if (c == '<') {
+                    ctx = parseURI();
+                } else if (c == '_') {
+                    throw error("Blank node contexts are not supported");
+                }
+            }
+            emit(subject, predicate, object, ctx);
+            skipWS();
+            if (peek() != ',') {
+                return;
+            }
+            read();
+            skipWS();
+        }
+    }
+
+    private UID parseVerb() throws IOException {
+        if (peek() == 'a' && (ensure(2) == 1 || isTokenEnd(buffer[pos + 1]))) {
+            read();
+            return RDF.type;
+        } else if (peek() == '<') {
+            return parseURI();
+        } else {
+            return parsePrefixedName();
+        }
+    }
+
+    private NODE parseObject() throws IOException {
+        int c = peek();
+        switch (c) {
+        case '<':
+            return parseURI();
+        case '_':
+            return parseBlankNode();
+        case '[':
+            return parseBlankNodePropertyList();
+        case '(':
+            return parseCollection();
+        case '"':
+        case '\'':
+            return parseLiteral();
+        case '+':
+        case '-':
+        case '.':
+        case '0':
+        case '1':
+        case '2':
+        case '3':
+        case '4':
+        case '5':
+        case '6':
+        case '7':
+        case '8':
+        case '9':
+            return parseNumber();
+        default:
+            if (isKeyword("true", false)) {
+                pos += 4;
+                return new LIT("true", XSD.booleanType);
+            } else if (isKeyword("false", false)) {
+                pos += 5;
+                return new LIT("false", XSD.booleanType);
+            } else {
+                return parsePrefixedName();
+            }
+        }
+    }
+
+    private BID parseBlankNodePropertyList() throws IOException {
+        expect('[');
+        skipWS();
+        BID node = new BID(bnodePrefix + "a" + (++bnodes));
+        if (peek() != ']') {
+            parsePredicateObjectList(node);
+            skipWS();
+        }
+        expect(']');
+        return node;
+    }
+
+    private ID parseCollection() throws IOException {
+        expect('(');
+        skipWS();
+        if (peek() == ')') {
+            read();
+            return RDF.nil;
+        }
+        BID head = new BID(bnodePrefix + "a" + (++bnodes));
+        BID current = head;
+        while (true) {
+            emit(current, RDF.first, parseObject(), context);
+            skipWS();
+            if (peek() == ')') {
+                read();
+                emit(current, RDF.rest, RDF.nil, context);
+                return head;
+            }
+            BID next = new BID(bnodePrefix + "a" + (++bnodes));
+            emit(current, RDF.rest, next, context);
+            current = next;
+        }
+    }
+
+    private BID parseBlankNode() throws IOException {
+        expect('_');
+        expect(':');
+        String label = readName();
+        if (label.length() == 0) {
+            throw error("Empty blank node label");
+        }
+        return new BID(bnodePrefix + "l" + label);
+    }
+
+    private UID parseURI() throws IOException {
+        expect('<');
+        sb.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '>') {
+                break;
+            } else if (c == '\\') {
+                readEscape(sb);
+            } else if (c == EOF || c == '\n') {
+                throw error("Unterminated URI");
+            } else {
+                sb.append((char) c);
+            }
+        }
+        if (!isAbsolute(sb)) {
+            if (base == null) {
+                throw error("Relative URI <" + sb + "> without base URI");
+            }
+            String resolved = resolve(base, sb.toString());
+            sb.setLength(0);
+            sb.append(resolved);
+        }
+        return createURI();
+    }
+
+    private UID parsePrefixedName() throws IOException {
+        String prefix = readName();
+        if (peek() != ':') {
+            throw error("Unexpected token '" + prefix + "'");
+        }
+        read();
+        String ns = prefixes.get(prefix);
+        if (ns == null) {
+            throw error("Unknown prefix '" + prefix + "'");
+        }
+        sb.setLength(0);
+        sb.append(ns);
+        while (true) {
+            int c = peek();
+            if (c == '\\') {
+                read();
+                c = read();
+                if (c == EOF) {
+                    throw error("Unterminated local name");
+                }
+                sb.append((char) c);
+            } else if (c == ':' || c == '%' || (c != '.' && isNameChar(c)) || (c == '.' && isNameCharAt(1))) {
+                sb.append((char) read());
+            } else {
+                break;
+            }
+        }
+        return createURI();
+    }
+
+    private LIT parseLiteral() throws IOException {
+        int quote = read();
+        boolean longString = false;
+        if (peek() == quote) {
+            if (ensure(2) >= 2 && buffer[pos + 1] == quote) {
+                pos += 2;
+                longString = true;
+            } else {
+                read();
+                return parseLiteralSuffix("");
+            }
+        }
+        sb.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == EOF) {
+                throw error("Unterminated literal");
+            } else if (c == '\\') {
+                readEscape(sb);
+            } else if (c == quote) {
+                if (!longString) {
+                    break;
+                } else if (ensure(2) >= 2 && buffer[pos] == quote && buffer[pos + 1] == quote) {
+                    pos += 2;
+                    // at most two additional quotes can belong to the content
+                    while (peek() == quote) {
+                        sb.append((char) read());
+                    }
+                    break;
+                } else {
+                    sb.append((char) c);
+                }
+            } else if (!longString && (c == '\n' || c == '\r')) {
+                throw error("Line break in short literal");
+            } else {
+                sb.append((char) c);
+            }
+        }
+        return parseLiteralSuffix(sb.toString());
+    }
+
+    private LIT parseLiteralSuffix(String value) throws IOException {
+        int c = peek();
+        if (c == '@') {
+            read();
+            sb.setLength(0);
+            while (true) {
+                c = peek();
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-') {
+                    sb.append((char) read());
+                } else {
+                    break;
+                }
+            }
+            String tag = sb.toString();
+            Locale locale = locales.get(tag);
+            if (locale == null) {
+                locale = LocaleUtil.parseLocale(tag);
+                locales.put(tag, locale);
+            }
+            return new LIT(value, locale);
+        } else if (c == '^') {
+            read();
+            expect('^');
+            UID datatype = peek() == '<' ? parseURI() : parsePrefixedName();
+            return new LIT(value, datatype);
+        } else {
+            return new LIT(value);
+        }
+    }
+
+    private LIT parseNumber() throws IOException {
+        sb.setLength(0);
+        UID datatype = XSD.integerType;
+        int c = peek();
+        if (c == '+' || c == '-') {
+            sb.append((char) read());
+        }
+        readDigits();
+        if (peek() == '.' && ensure(2) >= 2 && isDigit(buffer[pos + 1])) {
+            datatype = XSD.decimalType;
+            sb.append((char) read());
+            readDigits();
+        }
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            datatype = XSD.doubleType;
+            sb.append((char) read());
+            c = peek();
+            if (c == '+' || c == '-') {
+                sb.append((char) read());
+            }
+            readDigits();
+        }
+        if (sb.length() == 0 || !isDigit(sb.charAt(sb.length() - 1))) {
+            throw error("Illegal number '" + sb + "'");
+        }
+        return new LIT(sb.toString(), datatype);
+    }
+
+    private void readDigits() throws IOException {
+        while (isDigit(peek())) {
+            sb.append((char) read());
+        }
+    }
+
+    private void readEscape(StringBuilder target) throws IOException {
+        int c = read();
+        switch (c) {
+        case 't':
+            target.append('\t');
+            break;
+        case 'b':
+            target.append('\b');
+            break;
+        case 'n':
+            target.append('\n');
+            break;
+        case 'r':
+            target.append('\r');
+            break;
+        case 'f':
+            target.append('\f');
+            break;
+        case '"':
+        case '\'':
+        case '\\':
+        case '>':
+            target.append((char) c);
+            break;
+        case 'u':
+            target.appendCodePoint(readHex(4));
+            break;
+        case 'U':
+            target.appendCodePoint(readHex(8));
+            break;
+        default:
+            throw error("Illegal escape sequence \\" + (char) c);
+        }
+    }
+
+    private int readHex(int length) throws IOException {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("Illegal unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Read a blank node label, prefix or keyword
+     */
+    private String readName() throws IOException {
+        sb.setLength(0);
+        while (true) {
+            int c = peek();
+            if ((c != '.' && isNameChar(c)) || (c == '.' && sb.length() > 0 && isNameCharAt(1))) {
+                sb.append((char) read());
+            } else {
+                return sb.toString();
+            }
+        }
+    }
+
+    private UID createURI() {
+        int h = 0;
+        for (int i = 0; i < sb.length(); i++) {
+            h = 31 * h + sb.charAt(i);
+        }
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        int index = h & (CACHE_SIZE - 1);
+        UID uid = uriCache[index];
+        if (uid == null || !uid.getId().contentEquals(sb)) {
+            try {
+                uid = new UID(sb.toString());
+            } catch (IllegalArgumentException e) {
+                throw error("Illegal URI <" + sb + ">");
+            }
+            uriCache[index] = uid;
+        }
+        return uid;
+    }
+
+    private void emit(ID subject, UID predicate, NODE object, @Nullable UID ctx) {
+        batch.add(new STMT(subject, predicate, object, ctx));
+        if (batch.size() >= batchSize) {
+            handler.handle(batch);
+            batch = new ArrayList<STMT>(batchSize);
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = read();
+        if (c != expected) {
+            throw error("Expected '" + expected + "', got " + (c == EOF ? "EOF" : "'" + (char) c + "'"));
+        }
+    }
+
+    /**
+     * @param keyword
+     * @param ignoreCase
+     *            true for the SPARQL style directives, false for the boolean
+     *            literals
+     * @return
+     * @throws IOException
+     */
+    private boolean isKeyword(String keyword, boolean ignoreCase) throws IOException {
+        int length = keyword.length();
+        if (ensure(length + 1) < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = buffer[pos + i];
+            if (ignoreCase ? Character.toUpperCase(c) != keyword.charAt(i) : c != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return pos + length == limit || isTokenEnd(buffer[pos + length]);
+    }
+
+    private boolean isNameCharAt(int offset) throws IOException {
+        return ensure(offset + 1) > offset && isNameChar(buffer[pos + offset]);
+    }
+
+    private void skipWS() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                read();
+            } else if (c == '#') {
+                while (c != EOF && c != '\n') {
+                    c = read();
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && ensure(1) == 0) {
+            return EOF;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            pos++;
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Make at least the given amount of characters available in the buffer
+     *
+     * @param length
+     * @return available characters
+     */
+    private int ensure(int length) throws IOException {
+        if (limit - pos < length) {
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            while (limit < length) {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    break;
+                }
+                limit += read;
+            }
+        }
+        return limit - pos;
+    }
+
+    private RepositoryException error(String message) {
+        return new RepositoryException("Parse error on line " + line + " : " + message);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.' || c > 0x7F;
+    }
+
+    private static boolean isTokenEnd(char c) {
+        return c != ':' && (c == '.' || !isNameChar(c));
+    }
+
+    private static boolean isAbsolute(CharSequence uri) {
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == ':') {
+                return i > 0;
+            } else if (c == '/' || c == '?' || c == '#') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String resolve(String base, String relative) {
+        if (relative.length() == 0) {
+            return base;
+        } else if (relative.charAt(0) == '#') {
+            int index = base.indexOf('#');
+            return (index > -1 ? base.substring(0, index) : base) + relative;
+        } else {
+            return URI.create(base).resolve(relative).toString();
+        }
+    }
+
+}
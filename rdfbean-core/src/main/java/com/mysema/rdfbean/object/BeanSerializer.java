@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Multimap;
+import com.mysema.rdfbean.annotations.ContainerType;
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.IDType;
+import com.mysema.rdfbean.model.Identifier;
+import com.mysema.rdfbean.model.LID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.util.BeanMap;
+
+/**
+ * BeanSerializer converts the properties of mapped instances into statements
+ *
+ * <p>
+ * It is shared by {@link SessionImpl} and {@link StatelessSessionImpl}, which
+ * decide how the statements are recorded and how referenced instances are
+ * resolved.
+ * </p>
+ *
+ * @author tiwe
+ */
+abstract class BeanSerializer {
+
+    private final Configuration configuration;
+
+    private final RDFConnection connection;
+
+    private final IdentityService identityService;
+
+    private final ErrorHandler errorHandler = new DefaultErrorHandler();
+
+    BeanSerializer(Configuration configuration, RDFConnection connection, IdentityService identityService) {
+        this.configuration = configuration;
+        this.connection = connection;
+        this.identityService = identityService;
+    }
+
+    /**
+     * Record the given statement
+     *
+     * @return the recorded statement
+     */
+    protected abstract STMT add(ID subject, UID predicate, NODE object, @Nullable UID context);
+
+    /**
+     * @return the locale of localized String properties
+     */
+    protected abstract Locale getLocale();
+
+    /**
+     * Get the subject of the given referenced instance
+     *
+     * @param instance mapped instance or lazy reference
+     * @param context context of the referencing statement
+     * @return the subject of the instance
+     */
+    protected abstract ID toRDF(Object instance, @Nullable UID context);
+
+    /**
+     * Write the properties of the given mixin of the given subject
+     */
+    protected abstract void toRDFMixin(Object mixin, ID subject, @Nullable UID context, MappedClass mappedClass,
+            boolean update);
+
+    @Nullable
+    ID getId(MappedClass mappedClass, BeanMap instance) {
+        MappedProperty<?> idProperty = mappedClass.getIdProperty();
+        if (idProperty != null) {
+            // Assigned id
+            Object id = idProperty.getValue(instance);
+            if (id != null) {
+                if (idProperty.getIDType() == IDType.LOCAL) {
+                    LID lid = id instanceof LID ? (LID) id : new LID(id.toString());
+                    return identityService.getID(lid);
+                } else if (id instanceof UID) {
+                    return (UID) id;
+                } else if (idProperty.getIDType() == IDType.URI) {
+                    if (idProperty.getIDNamespace().isEmpty()) {
+                        return new UID(id.toString());
+                    } else {
+                        return new UID(idProperty.getIDNamespace(), id.toString());
+                    }
+                } else {
+                    return (ID) id;
+                }
+            }
+        }
+        return null;
+    }
+
+    void setId(MappedClass mappedClass, ID subject, BeanMap instance) {
+        MappedProperty<?> idProperty = mappedClass.getIdProperty();
+        if (idProperty != null && !mappedClass.isEnum() && !idProperty.isVirtual()) {
+            Object id = null;
+            Identifier identifier;
+            Class<?> type = idProperty.getType();
+            IDType idType = idProperty.getIDType();
+            if (idType == IDType.LOCAL) {
+                identifier = identityService.getLID(subject);
+            } else if (idType == IDType.URI) {
+                identifier = subject.isURI() ? subject : null;
+            } else {
+                identifier = subject;
+            }
+            if (identifier != null) {
+                if (String.class.isAssignableFrom(type)) {
+                    String ns = idProperty.getIDNamespace();
+                    if (ns.isEmpty()) {
+                        id = identifier.getId();
+                    } else {
+                        UID uid = (UID) identifier;
+                        if (uid.ns().equals(ns)) {
+                            id = uid.ln();
+                        } else {
+                            errorHandler.namespaceMismatch(ns, uid.ns());
+                        }
+                    }
+                } else if (Identifier.class.isAssignableFrom(type)) {
+                    id = identifier;
+                } else {
+                    throw new BindException("Cannot assign id of " + mappedClass + " into " + type);
+                }
+            }
+            idProperty.setValue(instance, id);
+        }
+
+        for (MappedProperty<?> mixinProperty : mappedClass.getMixinProperties()) {
+            Object mixinValue = mixinProperty.getValue(instance);
+            if (mixinValue != null) {
+                MappedClass mixinClass = configuration.getMappedClass(mixinProperty.getTargetType());
+                setId(mixinClass, subject, toBeanMap(mixinValue));
+            }
+        }
+    }
+
+    /**
+     * Write the type and the property values of the given instance
+     *
+     * @param beanMap instance
+     * @param subject subject of the instance
+     * @param parentContext default context of the statements
+     * @param mappedClass mapped class of the instance
+     * @param current direct statements of the instance, gets the written
+     *            statements added, or null
+     * @param update true, if the instance exists already, then the type is
+     *            not written
+     */
+    @SuppressWarnings("unchecked")
+    void toRDF(BeanMap beanMap, ID subject, @Nullable UID parentContext, MappedClass mappedClass,
+            @Nullable Multimap<UID, STMT> current, boolean update) {
+        UID uri = mappedClass.getUID();
+        UID context = parentContext;
+        if (!update && uri != null) {
+            put(current, RDF.type, add(subject, RDF.type, uri, context));
+        }
+
+        for (MappedPath path : mappedClass.getProperties()) {
+            MappedProperty<?> property = path.getMappedProperty();
+            if (path.isSimpleProperty()) {
+                MappedPredicate mappedPredicate = path.get(0);
+                UID predicate = mappedPredicate.getUID();
+                context = mappedPredicate.getContext() != null ? mappedPredicate.getContext() : parentContext;
+
+                Object object = property.getValue(beanMap);
+                if (object == null) {
+                    continue;
+                }
+                if (property.isArray()) {
+                    if (object.getClass().getComponentType().isPrimitive()) {
+                        int size = Array.getLength(object);
+                        List<Object> list = new ArrayList<Object>(size);
+                        for (int i = 0; i < size; i++) {
+                            list.add(Array.get(object, i));
+                        }
+                        object = list;
+                    } else {
+                        object = Arrays.asList((Object[]) object);
+                    }
+                }
+
+                if (property.isList()) {
+                    ID first = toRDFList((List<?>) object, context);
+                    if (first != null) {
+                        put(current, predicate, add(subject, predicate, first, context));
+                    }
+                } else if (property.isContainer()) {
+                    ID container = toRDFContainer((Collection<?>) object, context, property.getContainerType());
+                    put(current, predicate, add(subject, predicate, container, context));
+                } else if (property.isCollection() || property.isArray()) {
+                    for (Object o : (Collection<?>) object) {
+                        NODE value = toRDFValue(o, context);
+                        if (value != null) {
+                            put(current, predicate, add(subject, predicate, value, context));
+                        }
+                    }
+                } else if (property.isLocalized()) {
+                    if (property.isMap()) {
+                        for (Map.Entry<Locale, String> entry : ((Map<Locale, String>) object).entrySet()) {
+                            if (entry.getValue() != null) {
+                                LIT literal = new LIT(entry.getValue(), entry.getKey());
+                                put(current, predicate, add(subject, predicate, literal, context));
+                            }
+                        }
+                    } else {
+                        LIT literal = new LIT(object.toString(), getLocale());
+                        put(current, predicate, add(subject, predicate, literal, context));
+                    }
+                } else if (!property.isMap()) {
+                    NODE value = toRDFValue(object, context);
+                    if (value != null) {
+                        put(current, predicate, add(subject, predicate, value, context));
+                    }
+                }
+
+            } else if (property.isMixin()) {
+                Object object = property.getValue(beanMap);
+                if (object != null) {
+                    MappedClass mixinClass = configuration.getMappedClass(object.getClass());
+                    UID subContext = mixinClass.getContext() != null ? mixinClass.getContext() : context;
+                    toRDFMixin(object, subject, subContext, mixinClass, update);
+                }
+            }
+        }
+
+        for (MappedProperty<?> property : mappedClass.getDynamicProperties()) {
+            Map<?, ?> properties = (Map<?, ?>) property.getValue(beanMap);
+            if (properties != null) {
+                context = property.getContext() != null ? property.getContext() : parentContext;
+                for (Map.Entry<?, ?> entry : properties.entrySet()) {
+                    UID predicate = toRDFValue(entry.getKey(), context).asURI();
+                    if (entry.getValue() instanceof Collection) {
+                        for (Object value : (Collection<?>) entry.getValue()) {
+                            put(current, predicate, add(subject, predicate, toRDFValue(value, context), context));
+                        }
+                    } else {
+                        put(current, predicate, add(subject, predicate, toRDFValue(entry.getValue(), context), context));
+                    }
+                }
+            }
+        }
+    }
+
+    ID toRDFContainer(Collection<?> collection, @Nullable UID context, ContainerType containerType) {
+        int i = 0;
+        ID container = connection.createBNode();
+        add(container, RDF.type, containerType.getUID(), context);
+        for (Object o : collection) {
+            i++;
+            if (o != null) {
+                add(container, RDF.getContainerMembershipProperty(i), toRDFValue(o, context), context);
+            }
+        }
+        return container;
+    }
+
+    @Nullable
+    ID toRDFList(List<?> list, @Nullable UID context) {
+        ID firstNode = null;
+        ID currentNode = null;
+        for (Object value : list) {
+            if (currentNode == null) {
+                currentNode = connection.createBNode();
+                firstNode = currentNode;
+            } else {
+                BID nextNode = connection.createBNode();
+                add(currentNode, RDF.rest, nextNode, context);
+                currentNode = nextNode;
+            }
+            add(currentNode, RDF.type, RDF.List, context);
+            add(currentNode, RDF.first, toRDFValue(value, context), context);
+        }
+        if (currentNode != null) {
+            add(currentNode, RDF.rest, RDF.nil, context);
+        }
+        return firstNode;
+    }
+
+    NODE toRDFValue(Object o, @Nullable UID context) {
+        if (o instanceof NODE) {
+            return (NODE) o;
+        } else if (LazyReference.get(o) != null || configuration.isMapped(o.getClass())) {
+            return toRDF(o, context);
+        } else {
+            UID dataType = configuration.getConverterRegistry().getDatatype(o.getClass());
+            return new LIT(configuration.getConverterRegistry().toString(o), dataType);
+        }
+    }
+
+    private static BeanMap toBeanMap(Object instance) {
+        return instance instanceof BeanMap ? (BeanMap) instance : new SimpleBeanMap(instance);
+    }
+
+    private static void put(@Nullable Multimap<UID, STMT> statements, UID predicate, STMT stmt) {
+        if (statements != null) {
+            statements.put(predicate, stmt);
+        }
+    }
+
+}
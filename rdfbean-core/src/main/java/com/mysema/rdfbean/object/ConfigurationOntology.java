@@ -27,19 +27,24 @@ public class ConfigurationOntology extends AbstractOntology {
         Multimap<UID, UID> directSubtypes = MultimapFactory.<UID, UID> createWithSet();
         Multimap<UID, UID> directSupertypes = MultimapFactory.<UID, UID> createWithSet();
 
-        for (MappedClass mappedClass : configuration.getMappedClasses()) {
-            types.add(mappedClass.getUID());
-            for (MappedClass superClass : mappedClass.getMappedSuperClasses()) {
-                directSupertypes.put(mappedClass.getUID(), superClass.getUID());
-                directSubtypes.put(superClass.getUID(), mappedClass.getUID());
+        if (configuration instanceof IndexedConfiguration) {
+            // avoid creating the mapped classes
+            ((IndexedConfiguration) configuration).collectTypes(types, directSubtypes, directSupertypes);
+        } else {
+            for (MappedClass mappedClass : configuration.getMappedClasses()) {
+                types.add(mappedClass.getUID());
+                for (MappedClass superClass : mappedClass.getMappedSuperClasses()) {
+                    directSupertypes.put(mappedClass.getUID(), superClass.getUID());
+                    directSubtypes.put(superClass.getUID(), mappedClass.getUID());
+                }
+                // ClassMapping classMapping =
+                // mappedClass.getJavaClass().getAnnotation(ClassMapping.class);
+                // if (!classMapping.parent().equals("")) {
+                // UID parent = new UID(classMapping.parent());
+                // directSupertypes.put(mappedClass.getUID(), parent);
+                // directSubtypes.put(parent, mappedClass.getUID());
+                // }
             }
-            // ClassMapping classMapping =
-            // mappedClass.getJavaClass().getAnnotation(ClassMapping.class);
-            // if (!classMapping.parent().equals("")) {
-            // UID parent = new UID(classMapping.parent());
-            // directSupertypes.put(mappedClass.getUID(), parent);
-            // directSubtypes.put(parent, mappedClass.getUID());
-            // }
         }
         initializeTypeHierarchy(types, directSubtypes, directSupertypes);
     }
@@ -8,13 +8,13 @@ package com.mysema.rdfbean.object;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.annotation.Nullable;
 
@@ -34,6 +34,11 @@ import com.mysema.util.ClassPathUtils;
 /**
  * Default implementation of the Configuration interface
  * 
+ * <p>
+ * DefaultConfiguration is thread-safe. The lookup methods don't lock and
+ * classes can be added while the configuration is in use.
+ * </p>
+ * 
  * @author sasa
  * 
  */
@@ -49,9 +54,9 @@ public class DefaultConfiguration implements Configuration {
         buildinNamespaces.add(CORE.NS);
     }
 
-    private final Set<MappedClass> mappedClasses = new LinkedHashSet<MappedClass>();
+    private final Set<MappedClass> mappedClasses = new CopyOnWriteArraySet<MappedClass>();
 
-    private final Set<Class<?>> polymorphicClasses = new HashSet<Class<?>>();
+    private final Set<Class<?>> polymorphicClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 
     private final ConverterRegistry converterRegistry = new ConverterRegistryImpl();
 
@@ -59,7 +64,7 @@ public class DefaultConfiguration implements Configuration {
 
     private final Set<String> restrictedResources = new HashSet<String>(buildinNamespaces);
 
-    private final Map<UID, List<MappedClass>> type2classes = new HashMap<UID, List<MappedClass>>();
+    private final Map<UID, List<MappedClass>> type2classes = new ConcurrentHashMap<UID, List<MappedClass>>();
 
     public DefaultConfiguration(@Nullable String defaultNamespace) {
         this.mappedClassFactory = new MappedClassFactory(defaultNamespace);
@@ -94,7 +99,7 @@ public class DefaultConfiguration implements Configuration {
         scanPackages(packages);
     }
 
-    public final void addClasses(Class<?>... classes) {
+    public final synchronized void addClasses(Class<?>... classes) {
         for (Class<?> clazz : classes) {
             if (clazz.getAnnotation(ClassMapping.class) != null) {
                 MappedClass mappedClass = mappedClassFactory.getMappedClass(clazz);
@@ -123,12 +128,19 @@ public class DefaultConfiguration implements Configuration {
     }
 
     private void addClass(UID uid, MappedClass mappedClass) {
+        // the lists are replaced instead of modified, since they are read
+        // without locking
         List<MappedClass> classList = type2classes.get(uid);
+        List<MappedClass> newList;
         if (classList == null) {
-            classList = new ArrayList<MappedClass>();
-            type2classes.put(uid, classList);
+            newList = Collections.singletonList(mappedClass);
+        } else {
+            newList = new ArrayList<MappedClass>(classList.size() + 1);
+            newList.addAll(classList);
+            newList.add(mappedClass);
+            newList = Collections.unmodifiableList(newList);
         }
-        classList.add(mappedClass);
+        type2classes.put(uid, newList);
     }
 
     public final void addPackages(Package... packages) {
@@ -181,8 +193,9 @@ public class DefaultConfiguration implements Configuration {
     }
 
     public List<MappedClass> getMappedClasses(UID uid) {
-        if (type2classes.containsKey(uid)) {
-            return type2classes.get(Assert.notNull(uid, "uid"));
+        List<MappedClass> classes = type2classes.get(Assert.notNull(uid, "uid"));
+        if (classes != null) {
+            return classes;
         } else {
             return Collections.emptyList();
         }
@@ -201,6 +214,29 @@ public class DefaultConfiguration implements Configuration {
         return restrictedResources.contains(uid.getId()) || restrictedResources.contains(uid.ns());
     }
 
+    /**
+     * Create the metadata of all mapped classes and their property accessors
+     * eagerly, so that the first sessions don't need to do it
+     */
+    public void warmUp() {
+        for (MappedClass mappedClass : getMappedClasses()) {
+            for (MappedPath path : mappedClass.getProperties()) {
+                warmUp(path.getMappedProperty());
+            }
+            for (MappedProperty<?> property : mappedClass.getDynamicProperties()) {
+                warmUp(property);
+            }
+        }
+    }
+
+    private void warmUp(MappedProperty<?> property) {
+        if (property instanceof FieldProperty) {
+            ((FieldProperty) property).getAccessor();
+        } else if (property instanceof MethodProperty) {
+            ((MethodProperty) property).getAccessor();
+        }
+    }
+
     public void scanPackages(Package... packages) {
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         for (Package pkg : packages) {
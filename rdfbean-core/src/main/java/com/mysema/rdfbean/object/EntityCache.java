@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimap;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * EntityCache holds the direct properties of cacheable instances, shared by
+ * the sessions of a SessionFactory
+ *
+ * <p>
+ * Entries are keyed by subject and mapped class, the size of the cache is
+ * bounded by the number of subjects and entries expire optionally after a
+ * given time. Every invalidation increments the version of the cache, so that
+ * properties which have been read before a concurrent invalidation are not
+ * cached.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class EntityCache {
+
+    private final Cache<ID, ConcurrentMap<MappedClass, Multimap<UID, STMT>>> cache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Create a new EntityCache
+     *
+     * @param maximumSize
+     *            maximum amount of cached subjects
+     * @param timeToLive
+     *            time to live of entries in milliseconds or 0 for no expiry
+     */
+    EntityCache(long maximumSize, long timeToLive) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize);
+        if (timeToLive > 0) {
+            builder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS);
+        }
+        cache = builder.build();
+    }
+
+    @Nullable
+    public Multimap<UID, STMT> get(MappedClass mappedClass, ID subject) {
+        ConcurrentMap<MappedClass, Multimap<UID, STMT>> entries = cache.getIfPresent(subject);
+        return entries != null ? entries.get(mappedClass) : null;
+    }
+
+    /**
+     * Get the version to be used for subsequent puts
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Cache the given properties, if the cache hasn't been invalidated since
+     * the given version was obtained
+     *
+     * @param mappedClass
+     * @param subject
+     * @param properties
+     * @param readVersion
+     */
+    public void put(MappedClass mappedClass, ID subject, Multimap<UID, STMT> properties, long readVersion) {
+        if (version.get() != readVersion) {
+            return;
+        }
+        ConcurrentMap<MappedClass, Multimap<UID, STMT>> entries = cache.getIfPresent(subject);
+        if (entries == null) {
+            entries = new ConcurrentHashMap<MappedClass, Multimap<UID, STMT>>(4);
+            ConcurrentMap<MappedClass, Multimap<UID, STMT>> existing = cache.asMap().putIfAbsent(subject, entries);
+            if (existing != null) {
+                entries = existing;
+            }
+        }
+        entries.put(mappedClass, ImmutableListMultimap.copyOf(properties));
+        // an invalidation may have happened concurrently
+        if (version.get() != readVersion) {
+            cache.invalidate(subject);
+        }
+    }
+
+    public void invalidate(Collection<ID> subjects) {
+        version.incrementAndGet();
+        cache.invalidateAll(subjects);
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.RDFBeanTransaction;
+
+/**
+ * EntityCacheTransaction tracks the subjects flushed during a transaction and
+ * evicts them from the entity cache again when the transaction ends, since
+ * other sessions may have cached the committed state in the meantime
+ *
+ * @author tiwe
+ */
+final class EntityCacheTransaction implements RDFBeanTransaction {
+
+    private final RDFBeanTransaction transaction;
+
+    private final EntityCache entityCache;
+
+    private final Set<ID> subjects = new HashSet<ID>();
+
+    EntityCacheTransaction(RDFBeanTransaction transaction, EntityCache entityCache) {
+        this.transaction = transaction;
+        this.entityCache = entityCache;
+    }
+
+    void addSubjects(Set<ID> ids) {
+        subjects.addAll(ids);
+    }
+
+    /**
+     * Get whether the given subject has been modified by this transaction
+     *
+     * @param subject
+     * @return
+     */
+    boolean isModified(ID subject) {
+        return !subjects.isEmpty() && subjects.contains(subject) && transaction.isActive();
+    }
+
+    @Override
+    public void prepare() {
+        transaction.prepare();
+    }
+
+    @Override
+    public void commit() {
+        try {
+            transaction.commit();
+        } finally {
+            entityCache.invalidate(subjects);
+            subjects.clear();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return transaction.isActive();
+    }
+
+    @Override
+    public boolean isRollbackOnly() {
+        return transaction.isRollbackOnly();
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            transaction.rollback();
+        } finally {
+            entityCache.invalidate(subjects);
+            subjects.clear();
+        }
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        transaction.setRollbackOnly();
+    }
+
+}
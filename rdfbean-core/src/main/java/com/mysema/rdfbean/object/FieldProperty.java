@@ -9,6 +9,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import com.mysema.util.BeanMap;
@@ -22,6 +23,9 @@ public final class FieldProperty extends MappedProperty<Field> {
 
     private final Field field;
 
+    @Nullable
+    private volatile PropertyAccessor accessor;
+
     public FieldProperty(Field field, MappedClass declaringClass) {
         this(field, field.getAnnotations(), declaringClass);
     }
@@ -47,25 +51,21 @@ public final class FieldProperty extends MappedProperty<Field> {
         return field.getGenericType();
     }
 
+    PropertyAccessor getAccessor() {
+        if (accessor == null) {
+            accessor = PropertyAccessors.forField(field);
+        }
+        return accessor;
+    }
+
     @Override
     public void setValue(BeanMap beanMap, Object value) {
-        if (value == null && field.getType().isPrimitive()) {
-            return;
-        }
-        try {
-            field.set(beanMap.getBean(), value);
-        } catch (IllegalAccessException e) {
-            throw new SessionException(e);
-        }
+        getAccessor().setValue(beanMap.getBean(), value);
     }
 
     @Override
     public Object getValue(BeanMap instance) {
-        try {
-            return field.get(instance.getBean());
-        } catch (Exception e) {
-            throw new SessionException(e);
-        }
+        return getAccessor().getValue(instance.getBean());
     }
 
     @Override
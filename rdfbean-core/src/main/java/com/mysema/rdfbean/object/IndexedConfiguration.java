@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Multimap;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * IndexedConfiguration is a Configuration which takes the mapped classes from
+ * a build-time {@link MappingIndex} instead of scanning the classpath
+ *
+ * <p>
+ * The type index, polymorphism and the type hierarchy are taken from the
+ * mapping index, and MappedClass instances are created only when they are
+ * first used. Classes can still be added via the methods of
+ * {@link DefaultConfiguration}.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class IndexedConfiguration extends DefaultConfiguration {
+
+    private static MappingIndex loadIndex(ClassLoader classLoader) {
+        try {
+            return MappingIndex.load(classLoader);
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private final ClassLoader classLoader;
+
+    @Nullable
+    private final String defaultNamespace;
+
+    private final MappingIndex index;
+
+    private final Set<String> polymorphicClasses = new HashSet<String>();
+
+    private final Map<UID, List<String>> type2classNames = new HashMap<UID, List<String>>();
+
+    private final Map<UID, List<MappedClass>> type2classes = new ConcurrentHashMap<UID, List<MappedClass>>();
+
+    @Nullable
+    private volatile Set<MappedClass> indexedClasses;
+
+    public IndexedConfiguration(@Nullable String defaultNamespace) {
+        this(defaultNamespace, Thread.currentThread().getContextClassLoader());
+    }
+
+    public IndexedConfiguration(@Nullable String defaultNamespace, ClassLoader classLoader) {
+        this(defaultNamespace, loadIndex(classLoader), classLoader);
+    }
+
+    public IndexedConfiguration(@Nullable String defaultNamespace, MappingIndex index, ClassLoader classLoader) {
+        super(defaultNamespace);
+        this.defaultNamespace = defaultNamespace;
+        this.index = index;
+        this.classLoader = classLoader;
+        for (MappingIndex.Entry entry : index.getEntries()) {
+            UID uid = getUID(entry);
+            if (entry.getParent() != null) {
+                for (String constant : entry.getEnumConstants()) {
+                    addClassName(new UID(uid.ns(), constant), entry.getParent());
+                }
+            }
+            addClassName(uid, entry.getClassName());
+            polymorphicClasses.addAll(entry.getSuperTypes());
+        }
+    }
+
+    private void addClassName(UID uid, String className) {
+        List<String> classNames = type2classNames.get(uid);
+        if (classNames == null) {
+            classNames = new ArrayList<String>();
+            type2classNames.put(uid, classNames);
+        }
+        classNames.add(className);
+    }
+
+    /**
+     * Collect the type hierarchy of the mapped classes without creating the
+     * MappedClass instances of indexed classes
+     *
+     * @param types
+     * @param directSubtypes
+     * @param directSupertypes
+     */
+    void collectTypes(Set<UID> types, Multimap<UID, UID> directSubtypes, Multimap<UID, UID> directSupertypes) {
+        for (MappingIndex.Entry entry : index.getEntries()) {
+            UID uid = getUID(entry);
+            types.add(uid);
+            for (String superType : entry.getSuperTypes()) {
+                UID superUid = getUID(superType);
+                if (superUid != null) {
+                    directSupertypes.put(uid, superUid);
+                    directSubtypes.put(superUid, uid);
+                }
+            }
+        }
+        for (MappedClass mappedClass : super.getMappedClasses()) {
+            types.add(mappedClass.getUID());
+            for (MappedClass superClass : mappedClass.getMappedSuperClasses()) {
+                directSupertypes.put(mappedClass.getUID(), superClass.getUID());
+                directSubtypes.put(superClass.getUID(), mappedClass.getUID());
+            }
+        }
+    }
+
+    public MappingIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public Set<MappedClass> getMappedClasses() {
+        Set<MappedClass> classes = indexedClasses;
+        if (classes == null) {
+            classes = new LinkedHashSet<MappedClass>();
+            for (MappingIndex.Entry entry : index.getEntries()) {
+                classes.add(getMappedClass(loadClass(entry.getClassName())));
+            }
+            indexedClasses = classes;
+        }
+        Set<MappedClass> added = super.getMappedClasses();
+        if (added.isEmpty()) {
+            return Collections.unmodifiableSet(classes);
+        } else {
+            Set<MappedClass> rv = new LinkedHashSet<MappedClass>(classes);
+            rv.addAll(added);
+            return rv;
+        }
+    }
+
+    @Override
+    public List<MappedClass> getMappedClasses(UID uid) {
+        List<MappedClass> classes = type2classes.get(uid);
+        if (classes == null) {
+            List<String> classNames = type2classNames.get(uid);
+            if (classNames != null) {
+                classes = new ArrayList<MappedClass>(classNames.size());
+                for (String className : classNames) {
+                    classes.add(getMappedClass(loadClass(className)));
+                }
+            } else {
+                classes = Collections.emptyList();
+            }
+            type2classes.put(uid, classes);
+        }
+        List<MappedClass> added = super.getMappedClasses(uid);
+        if (added.isEmpty()) {
+            return classes;
+        } else {
+            List<MappedClass> rv = new ArrayList<MappedClass>(classes);
+            for (MappedClass mappedClass : added) {
+                if (!rv.contains(mappedClass)) {
+                    rv.add(mappedClass);
+                }
+            }
+            return rv;
+        }
+    }
+
+    private UID getUID(MappingIndex.Entry entry) {
+        String ns = entry.getNs();
+        if (Strings.isNullOrEmpty(ns)) {
+            ns = defaultNamespace;
+        }
+        if (ns != null) {
+            return new UID(ns, entry.getLn());
+        } else {
+            throw new IllegalArgumentException("Namespace needs to be declared in ClassMapping or configuration.");
+        }
+    }
+
+    @Nullable
+    private UID getUID(String className) {
+        MappingIndex.Entry entry = index.getEntry(className);
+        if (entry != null) {
+            return getUID(entry);
+        }
+        // not indexed, use the annotation
+        Class<?> clazz = loadClass(className);
+        if (clazz.isAnnotationPresent(ClassMapping.class)) {
+            return getMappedClass(clazz).getUID();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isPolymorphic(Class<?> clazz) {
+        return polymorphicClasses.contains(clazz.getName()) || super.isPolymorphic(clazz);
+    }
+
+    @Override
+    public void warmUp() {
+        for (UID uid : type2classNames.keySet()) {
+            getMappedClasses(uid);
+        }
+        super.warmUp();
+    }
+
+    private Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className, true, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+}
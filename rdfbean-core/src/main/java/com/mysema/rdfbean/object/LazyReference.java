@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.MethodInterceptor;
+import net.sf.cglib.proxy.MethodProxy;
+
+import com.mysema.rdfbean.model.ID;
+
+/**
+ * LazyReference is the callback of a lazy reference proxy, which loads the
+ * referenced instance via the owning session on first method invocation
+ *
+ * <p>
+ * Unloaded proxies use identity semantics for equals and hashCode, unless the
+ * referenced class overrides them.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class LazyReference implements MethodInterceptor {
+
+    private static final ConcurrentMap<Class<?>, Boolean> proxyable = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * Get whether lazy reference proxies can be created for the given type
+     *
+     * @param type
+     * @return
+     */
+    static boolean canProxy(Class<?> type) {
+        Boolean rv = proxyable.get(type);
+        if (rv == null) {
+            rv = isProxyable(type);
+            proxyable.put(type, rv);
+        }
+        return rv.booleanValue();
+    }
+
+    private static boolean isProxyable(Class<?> type) {
+        if (type.isInterface()) {
+            return true;
+        } else if (Modifier.isFinal(type.getModifiers()) || type.isEnum() || type.isArray() || type.isPrimitive()) {
+            return false;
+        } else if (type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers())) {
+            return false;
+        }
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.getParameterTypes().length == 0 && !Modifier.isPrivate(constructor.getModifiers())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the LazyReference of the given proxy
+     *
+     * @param instance
+     * @return the LazyReference or null, if the instance is not a lazy
+     *         reference proxy
+     */
+    @Nullable
+    static LazyReference get(Object instance) {
+        if (instance instanceof Factory) {
+            Callback callback = ((Factory) instance).getCallback(0);
+            if (callback instanceof LazyReference) {
+                return (LazyReference) callback;
+            }
+        }
+        return null;
+    }
+
+    private final SessionImpl session;
+
+    private final ID subject;
+
+    private final Class<?> type;
+
+    private final boolean polymorphic;
+
+    @Nullable
+    private Object target;
+
+    LazyReference(SessionImpl session, ID subject, Class<?> type, boolean polymorphic) {
+        this.session = session;
+        this.subject = subject;
+        this.type = type;
+        this.polymorphic = polymorphic;
+    }
+
+    Object createProxy() {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(type);
+        enhancer.setCallback(this);
+        return enhancer.create();
+    }
+
+    public ID getSubject() {
+        return subject;
+    }
+
+    public Object getTarget() {
+        if (target == null) {
+            target = session.resolveLazyReference(this);
+        }
+        return target;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    @Override
+    public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+        if (method.getDeclaringClass().equals(Object.class)) {
+            String name = method.getName();
+            if (name.equals("finalize")) {
+                return null;
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+        }
+        return methodProxy.invoke(getTarget(), args);
+    }
+
+    public boolean isInitialized() {
+        return target != null;
+    }
+
+    public boolean isPolymorphic() {
+        return polymorphic;
+    }
+
+}
@@ -24,6 +24,8 @@ import java.util.Set;
 import javax.annotation.Nullable;
 
 import com.mysema.commons.lang.Assert;
+import com.mysema.rdfbean.annotations.Cacheable;
+import com.mysema.rdfbean.annotations.Lazy;
 import com.mysema.rdfbean.annotations.Mixin;
 import com.mysema.rdfbean.model.RDF;
 import com.mysema.rdfbean.model.UID;
@@ -67,11 +69,17 @@ public final class MappedClass {
     @Nullable
     private final UID context;
 
+    private final boolean cacheable;
+
+    private final boolean lazy;
+
     MappedClass(Class<?> clazz, @Nullable UID uid, @Nullable UID context, List<MappedClass> mappedSuperClasses) {
         this.clazz = Assert.notNull(clazz, "clazz");
         this.uid = uid;
         this.context = context;
         this.mappedSuperClasses = mappedSuperClasses;
+        this.cacheable = clazz.isAnnotationPresent(Cacheable.class);
+        this.lazy = clazz.isAnnotationPresent(Lazy.class);
         mappedPredicates.add(RDF.type);
     }
 
@@ -217,6 +225,25 @@ public final class MappedClass {
         return clazz.hashCode();
     }
 
+    /**
+     * Get whether the properties of instances of this class may be shared
+     * between sessions
+     * 
+     * @return
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Get whether references to instances of this class are bound lazily
+     * 
+     * @return
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
     public boolean isEnum() {
         return clazz.isEnum();
     }
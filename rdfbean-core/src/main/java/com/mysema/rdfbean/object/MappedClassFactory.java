@@ -13,9 +13,9 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
@@ -31,12 +31,19 @@ import com.mysema.rdfbean.model.UID;
 /**
  * MappedClassFactory provides a factory for MappedClass creation
  * 
+ * <p>
+ * MappedClassFactory is thread-safe. Lookups of created MappedClass instances
+ * don't lock, and the creation of new instances is serialized, so that each
+ * MappedClass is created only once and published only after it has been
+ * completed.
+ * </p>
+ * 
  * @author tiwe
  * @version $Id$
  */
 public class MappedClassFactory {
 
-    private final Map<Class<?>, MappedClass> mappedClasses = new LinkedHashMap<Class<?>, MappedClass>();
+    private final Map<Class<?>, MappedClass> mappedClasses = new ConcurrentHashMap<Class<?>, MappedClass>();
 
     @Nullable
     private final String defaultNamespace;
@@ -155,35 +162,44 @@ public class MappedClassFactory {
     }
 
     public MappedClass getMappedClass(Class<?> clazz) {
-        // NOTE: no need to further synchronize access to mappedPaths because
-        // result is immutable and deterministic, i.e. it does't really matter
-        // if it gets calculated multiple times
         MappedClass mappedClass = mappedClasses.get(clazz);
         if (mappedClass == null) {
-            UID uid = getUID(clazz);
-            Context context = clazz.getAnnotation(Context.class);
-            List<MappedClass> superclasses = getMappedSuperClasses(clazz);
-            mappedClass = new MappedClass(clazz, uid, context != null ? new UID(context.value()) : null, superclasses);
-            if (!clazz.isEnum()) {
-                for (MappedClass mappedSuperClass : mappedClass.getMappedSuperClasses()) {
-                    if (mappedSuperClass != null) {
-                        for (MappedPath path : mappedSuperClass.getProperties()) {
-                            MappedProperty<?> property = (MappedProperty<?>) path.getMappedProperty().clone();
-                            property.resolve(mappedClass);
-                            mappedClass.addMappedPath(new MappedPath(property,
-                                    path.getPredicatePath(), !mappedClass.equals(property.getDeclaringClass())));
-                        }
-                    }
+            // the lock is reentrant, so super classes can be created while it
+            // is held
+            synchronized (this) {
+                mappedClass = mappedClasses.get(clazz);
+                if (mappedClass == null) {
+                    mappedClass = createMappedClass(clazz);
+                    mappedClasses.put(clazz, mappedClass);
                 }
+            }
+        }
+        return mappedClass;
+    }
 
-                // Collect direct properties (merge with super properties)
-                collectFieldPaths(clazz, mappedClass);
-                collectMethodPaths(clazz, mappedClass);
-                collectDynamicFieldProperties(clazz, mappedClass);
-                assignConstructor(clazz, mappedClass);
-                mappedClass.close();
-                mappedClasses.put(clazz, mappedClass);
+    private MappedClass createMappedClass(Class<?> clazz) {
+        UID uid = getUID(clazz);
+        Context context = clazz.getAnnotation(Context.class);
+        List<MappedClass> superclasses = getMappedSuperClasses(clazz);
+        MappedClass mappedClass = new MappedClass(clazz, uid, context != null ? new UID(context.value()) : null, superclasses);
+        if (!clazz.isEnum()) {
+            for (MappedClass mappedSuperClass : mappedClass.getMappedSuperClasses()) {
+                if (mappedSuperClass != null) {
+                    for (MappedPath path : mappedSuperClass.getProperties()) {
+                        MappedProperty<?> property = (MappedProperty<?>) path.getMappedProperty().clone();
+                        property.resolve(mappedClass);
+                        mappedClass.addMappedPath(new MappedPath(property,
+                                path.getPredicatePath(), !mappedClass.equals(property.getDeclaringClass())));
+                    }
+                }
             }
+
+            // Collect direct properties (merge with super properties)
+            collectFieldPaths(clazz, mappedClass);
+            collectMethodPaths(clazz, mappedClass);
+            collectDynamicFieldProperties(clazz, mappedClass);
+            assignConstructor(clazz, mappedClass);
+            mappedClass.close();
         }
         return mappedClass;
     }
@@ -37,6 +37,7 @@ import com.mysema.rdfbean.annotations.Default;
 import com.mysema.rdfbean.annotations.Defaults;
 import com.mysema.rdfbean.annotations.Id;
 import com.mysema.rdfbean.annotations.InjectService;
+import com.mysema.rdfbean.annotations.Lazy;
 import com.mysema.rdfbean.annotations.Localized;
 import com.mysema.rdfbean.annotations.MapElements;
 import com.mysema.rdfbean.annotations.Mixin;
@@ -432,6 +433,10 @@ public abstract class MappedProperty<M extends Member & AnnotatedElement> implem
         return isAnnotationPresent(Required.class);
     }
 
+    public boolean isLazy() {
+        return isAnnotationPresent(Lazy.class);
+    }
+
     public abstract boolean isVirtual();
 
     public abstract void setValue(BeanMap beanWrapper, @Nullable Object value);
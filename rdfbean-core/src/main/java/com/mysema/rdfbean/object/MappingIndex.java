@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * MappingIndex is the build-time index of mapped classes, which is generated
+ * by {@link com.mysema.rdfbean.query.MappingIndexProcessor} and read by
+ * {@link IndexedConfiguration}
+ *
+ * <p>
+ * The index is stored as a text resource with one line per mapped class and
+ * the tab separated fields class name, namespace, local name, mapped super
+ * types, enum parent and enum constants.
+ * </p>
+ *
+ * @author tiwe
+ */
+public final class MappingIndex {
+
+    public static final String RESOURCE = "META-INF/rdfbean/mapping.index";
+
+    private static final Joiner listJoiner = Joiner.on(',');
+
+    private static final Splitter listSplitter = Splitter.on(',').omitEmptyStrings();
+
+    private static final Splitter fieldSplitter = Splitter.on('\t');
+
+    /**
+     * Entry is the index entry of a single mapped class
+     */
+    public static final class Entry {
+
+        private final String className;
+
+        private final String ns, ln;
+
+        private final List<String> superTypes;
+
+        @Nullable
+        private final String parent;
+
+        private final List<String> enumConstants;
+
+        public Entry(String className, String ns, String ln, List<String> superTypes,
+                @Nullable String parent, List<String> enumConstants) {
+            this.className = className;
+            this.ns = ns;
+            this.ln = ln;
+            this.superTypes = ImmutableList.copyOf(superTypes);
+            this.parent = parent;
+            this.enumConstants = ImmutableList.copyOf(enumConstants);
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the namespace of the ClassMapping or an empty string, if the
+         *         default namespace of the configuration is used
+         */
+        public String getNs() {
+            return ns;
+        }
+
+        public String getLn() {
+            return ln;
+        }
+
+        /**
+         * @return the names of the mapped super classes and interfaces
+         */
+        public List<String> getSuperTypes() {
+            return superTypes;
+        }
+
+        /**
+         * @return the name of the parent class of a mapped enum or null
+         */
+        @Nullable
+        public String getParent() {
+            return parent;
+        }
+
+        public List<String> getEnumConstants() {
+            return enumConstants;
+        }
+
+    }
+
+    /**
+     * Load and merge the index resources visible to the given class loader
+     *
+     * @param classLoader
+     * @return
+     * @throws IOException
+     */
+    public static MappingIndex load(ClassLoader classLoader) throws IOException {
+        MappingIndex index = new MappingIndex();
+        Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+        while (resources.hasMoreElements()) {
+            Reader reader = new InputStreamReader(resources.nextElement().openStream(), Charsets.UTF_8);
+            try {
+                index.read(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        return index;
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    public void add(Entry entry) {
+        entries.put(entry.getClassName(), entry);
+    }
+
+    @Nullable
+    public Entry getEntry(String className) {
+        return entries.get(className);
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = ImmutableList.copyOf(fieldSplitter.split(line));
+            if (fields.size() != 6) {
+                throw new IOException("Invalid index entry : " + line);
+            }
+            add(new Entry(
+                    fields.get(0),
+                    fields.get(1),
+                    fields.get(2),
+                    ImmutableList.copyOf(listSplitter.split(fields.get(3))),
+                    Strings.emptyToNull(fields.get(4)),
+                    ImmutableList.copyOf(listSplitter.split(fields.get(5)))));
+        }
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write("# generated mapping index, don't edit\n");
+        for (Entry entry : entries.values()) {
+            writer.write(Joiner.on('\t').join(Arrays.asList(
+                    entry.getClassName(),
+                    entry.getNs(),
+                    entry.getLn(),
+                    listJoiner.join(entry.getSuperTypes()),
+                    Strings.nullToEmpty(entry.getParent()),
+                    listJoiner.join(entry.getEnumConstants()))));
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+
+}
@@ -56,6 +56,14 @@ public final class MethodProperty extends MappedProperty<Method> {
 
     private final Method method;
 
+    /**
+     * mapped class of the property, the accessor methods are looked up from it
+     */
+    private Class<?> clazz;
+
+    @Nullable
+    private volatile PropertyAccessor accessor;
+
     public MethodProperty(Method method, MappedClass declaringClass) {
         this(method, method.getAnnotations(), declaringClass);
     }
@@ -63,6 +71,7 @@ public final class MethodProperty extends MappedProperty<Method> {
     public MethodProperty(Method method, Annotation[] annotations, MappedClass declaringClass) {
         super(getPropertyName(method), annotations, declaringClass);
         this.method = method;
+        this.clazz = declaringClass != null ? declaringClass.getJavaClass() : method.getDeclaringClass();
         if (method.getName().startsWith("set")) {
             getter = false;
         } else {
@@ -96,14 +105,60 @@ public final class MethodProperty extends MappedProperty<Method> {
         return gtype;
     }
 
+    @Override
+    void resolve(@Nullable MappedClass owner) {
+        super.resolve(owner);
+        if (owner != null && !owner.getJavaClass().equals(clazz)) {
+            clazz = owner.getJavaClass();
+            accessor = null;
+        }
+    }
+
+    PropertyAccessor getAccessor() {
+        if (accessor == null) {
+            accessor = PropertyAccessors.forMethods(getReadMethod(), getWriteMethod());
+        }
+        return accessor;
+    }
+
     @Override
     public void setValue(BeanMap beanMap, Object value) {
-        beanMap.put(getName(), value);
+        getAccessor().setValue(beanMap.getBean(), value);
     }
 
     @Override
     public Object getValue(BeanMap instance) {
-        return instance.get(getName());
+        return getAccessor().getValue(instance.getBean());
+    }
+
+    @Nullable
+    private Method getReadMethod() {
+        if (getter) {
+            return method;
+        }
+        Class<?> type = method.getParameterTypes()[0];
+        Method readMethod = getPublicMethod(clazz, "get" + capitalize(getName()));
+        if (readMethod == null && (boolean.class.equals(type) || Boolean.class.equals(type))) {
+            readMethod = getPublicMethod(clazz, "is" + capitalize(getName()));
+        }
+        return readMethod;
+    }
+
+    @Nullable
+    private Method getWriteMethod() {
+        if (!getter) {
+            return method;
+        }
+        return getPublicMethod(clazz, "set" + capitalize(getName()), method.getReturnType());
+    }
+
+    @Nullable
+    private static Method getPublicMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import javax.annotation.Nullable;
+
+/**
+ * PropertyAccessor reads and writes the value of a mapped property
+ *
+ * <p>
+ * Implementations are generated by {@link PropertyAccessors} and need to be
+ * public to be visible for the generated classes.
+ * </p>
+ *
+ * @author tiwe
+ */
+public interface PropertyAccessor {
+
+    /**
+     * Get the property value of the given bean
+     *
+     * @param bean
+     * @return
+     */
+    @Nullable
+    Object getValue(Object bean);
+
+    /**
+     * Set the property value of the given bean, null values of primitive
+     * properties are ignored
+     *
+     * @param bean
+     * @param value
+     */
+    void setValue(Object bean, @Nullable Object value);
+
+}
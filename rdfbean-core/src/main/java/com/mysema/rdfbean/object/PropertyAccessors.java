@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PropertyAccessors creates {@link PropertyAccessor} instances for fields and
+ * getter/setter pairs
+ *
+ * <p>
+ * Accessors are generated as classes in the package and class loader of the
+ * declaring class, which access the member directly. Private and final
+ * members and members which are not visible to the generated class are
+ * accessed via reflection.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class PropertyAccessors {
+
+    private static final Logger logger = LoggerFactory.getLogger(PropertyAccessors.class);
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private static final Type OBJECT = Type.getType(Object.class);
+
+    private static final org.objectweb.asm.commons.Method CONSTRUCTOR =
+            org.objectweb.asm.commons.Method.getMethod("void <init> ()");
+
+    private static final org.objectweb.asm.commons.Method GET_VALUE =
+            org.objectweb.asm.commons.Method.getMethod("Object getValue (Object)");
+
+    private static final org.objectweb.asm.commons.Method SET_VALUE =
+            org.objectweb.asm.commons.Method.getMethod("void setValue (Object, Object)");
+
+    @Nullable
+    private static final Method defineClass;
+
+    static {
+        Method method = null;
+        try {
+            method = ClassLoader.class.getDeclaredMethod("defineClass",
+                    String.class, byte[].class, int.class, int.class, ProtectionDomain.class);
+            method.setAccessible(true);
+        } catch (Exception e) {
+            logger.warn("Property accessors can't be generated, using reflection instead", e);
+        }
+        defineClass = method;
+    }
+
+    private PropertyAccessors() {}
+
+    /**
+     * Create an accessor for the given field
+     *
+     * @param field
+     * @return
+     */
+    static PropertyAccessor forField(Field field) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isFinal(modifiers) && !Modifier.isStatic(modifiers)
+                && isAccessible(field, field.getDeclaringClass())) {
+            PropertyAccessor accessor = generate(field.getDeclaringClass(), field, null, null);
+            if (accessor != null) {
+                return accessor;
+            }
+        }
+        return new FieldAccessor(field);
+    }
+
+    /**
+     * Create an accessor for the given getter and setter
+     *
+     * @param getter
+     * @param setter
+     * @return
+     */
+    static PropertyAccessor forMethods(@Nullable Method getter, @Nullable Method setter) {
+        Class<?> anchor = getter != null ? getter.getDeclaringClass() : setter.getDeclaringClass();
+        if ((getter == null || isAccessible(getter, anchor)) && (setter == null || isAccessible(setter, anchor))) {
+            PropertyAccessor accessor = generate(anchor, null, getter, setter);
+            if (accessor != null) {
+                return accessor;
+            }
+        }
+        return new MethodAccessor(getter, setter);
+    }
+
+    /**
+     * Get whether the given member can be accessed from a class in the
+     * package and class loader of the anchor class
+     */
+    private static boolean isAccessible(Member member, Class<?> anchor) {
+        Class<?> owner = member.getDeclaringClass();
+        int modifiers = member.getModifiers();
+        if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)
+                || anchor.getClassLoader() == null || anchor.getName().startsWith("java.")) {
+            return false;
+        } else if (owner.getClassLoader() == anchor.getClassLoader()
+                && getPackageName(owner).equals(getPackageName(anchor))) {
+            return true;
+        } else {
+            return Modifier.isPublic(modifiers) && Modifier.isPublic(owner.getModifiers());
+        }
+    }
+
+    private static String getPackageName(Class<?> clazz) {
+        String name = clazz.getName();
+        int index = name.lastIndexOf('.');
+        return index > -1 ? name.substring(0, index) : "";
+    }
+
+    @Nullable
+    private static PropertyAccessor generate(Class<?> anchor, @Nullable Field field,
+            @Nullable Method getter, @Nullable Method setter) {
+        if (defineClass == null) {
+            return null;
+        }
+        ClassLoader classLoader = anchor.getClassLoader();
+        String className = anchor.getName() + "$$PropertyAccessor$$" + counter.incrementAndGet();
+        try {
+            // the generated class needs to see this interface via the class loader of the bean
+            if (Class.forName(PropertyAccessor.class.getName(), false, classLoader) != PropertyAccessor.class) {
+                return null;
+            }
+            byte[] bytes = generateClass(className.replace('.', '/'), field, getter, setter);
+            Class<?> clazz = (Class<?>) defineClass.invoke(classLoader,
+                    className, bytes, 0, bytes.length, anchor.getProtectionDomain());
+            return (PropertyAccessor) clazz.newInstance();
+        } catch (Exception e) {
+            logger.debug("Generation of " + className + " failed", e);
+            return null;
+        } catch (LinkageError e) {
+            logger.debug("Generation of " + className + " failed", e);
+            return null;
+        }
+    }
+
+    private static byte[] generateClass(String internalName, @Nullable Field field,
+            @Nullable Method getter, @Nullable Method setter) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, internalName, null,
+                OBJECT.getInternalName(), new String[] { Type.getInternalName(PropertyAccessor.class) });
+
+        GeneratorAdapter constructor = new GeneratorAdapter(Opcodes.ACC_PUBLIC, CONSTRUCTOR, null, null, cw);
+        constructor.loadThis();
+        constructor.invokeConstructor(OBJECT, CONSTRUCTOR);
+        constructor.returnValue();
+        constructor.endMethod();
+
+        // getValue
+        GeneratorAdapter get = new GeneratorAdapter(Opcodes.ACC_PUBLIC, GET_VALUE, null, null, cw);
+        if (field != null) {
+            Type owner = Type.getType(field.getDeclaringClass());
+            Type type = Type.getType(field.getType());
+            get.loadArg(0);
+            get.checkCast(owner);
+            get.getField(owner, field.getName(), type);
+            get.box(type);
+        } else if (getter != null) {
+            Type type = Type.getType(getter.getReturnType());
+            get.loadArg(0);
+            invoke(get, getter);
+            get.box(type);
+        } else {
+            get.push((String) null);
+        }
+        get.returnValue();
+        get.endMethod();
+
+        // setValue
+        GeneratorAdapter set = new GeneratorAdapter(Opcodes.ACC_PUBLIC, SET_VALUE, null, null, cw);
+        Class<?> propertyType = field != null ? field.getType() : (setter != null ? setter.getParameterTypes()[0] : null);
+        if (propertyType == null) {
+            set.throwException(Type.getType(IllegalArgumentException.class), "Property has no setter");
+        } else {
+            Type type = Type.getType(propertyType);
+            if (propertyType.isPrimitive()) {
+                Label notNull = set.newLabel();
+                set.loadArg(1);
+                set.ifNonNull(notNull);
+                set.returnValue();
+                set.mark(notNull);
+            }
+            set.loadArg(0);
+            if (field != null) {
+                Type owner = Type.getType(field.getDeclaringClass());
+                set.checkCast(owner);
+                set.loadArg(1);
+                set.unbox(type);
+                set.putField(owner, field.getName(), type);
+            } else {
+                set.checkCast(Type.getType(setter.getDeclaringClass()));
+                set.loadArg(1);
+                set.unbox(type);
+                invokeOnly(set, setter);
+                // the return values of chained setters are discarded
+                Type returnType = Type.getType(setter.getReturnType());
+                if (returnType.getSort() == Type.LONG || returnType.getSort() == Type.DOUBLE) {
+                    set.pop2();
+                } else if (returnType.getSort() != Type.VOID) {
+                    set.pop();
+                }
+            }
+            set.returnValue();
+        }
+        set.endMethod();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * cast the receiver on top of the stack and invoke the given method
+     */
+    private static void invoke(GeneratorAdapter generator, Method method) {
+        generator.checkCast(Type.getType(method.getDeclaringClass()));
+        invokeOnly(generator, method);
+    }
+
+    private static void invokeOnly(GeneratorAdapter generator, Method method) {
+        Type owner = Type.getType(method.getDeclaringClass());
+        org.objectweb.asm.commons.Method asmMethod = new org.objectweb.asm.commons.Method(
+                method.getName(), Type.getMethodDescriptor(method));
+        if (method.getDeclaringClass().isInterface()) {
+            generator.invokeInterface(owner, asmMethod);
+        } else {
+            generator.invokeVirtual(owner, asmMethod);
+        }
+    }
+
+    /**
+     * Reflection based accessor for fields
+     */
+    static final class FieldAccessor implements PropertyAccessor {
+
+        private final Field field;
+
+        FieldAccessor(Field field) {
+            this.field = field;
+            this.field.setAccessible(true);
+        }
+
+        @Override
+        public Object getValue(Object bean) {
+            try {
+                return field.get(bean);
+            } catch (Exception e) {
+                throw new SessionException(e);
+            }
+        }
+
+        @Override
+        public void setValue(Object bean, @Nullable Object value) {
+            if (value == null && field.getType().isPrimitive()) {
+                return;
+            }
+            try {
+                field.set(bean, value);
+            } catch (IllegalAccessException e) {
+                throw new SessionException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Reflection based accessor for getter/setter pairs
+     */
+    static final class MethodAccessor implements PropertyAccessor {
+
+        @Nullable
+        private final Method getter, setter;
+
+        MethodAccessor(@Nullable Method getter, @Nullable Method setter) {
+            this.getter = getter;
+            this.setter = setter;
+            if (getter != null) {
+                getter.setAccessible(true);
+            }
+            if (setter != null) {
+                setter.setAccessible(true);
+            }
+        }
+
+        @Override
+        public Object getValue(Object bean) {
+            if (getter == null) {
+                return null;
+            }
+            try {
+                return getter.invoke(bean);
+            } catch (IllegalAccessException e) {
+                throw new SessionException(e);
+            } catch (InvocationTargetException e) {
+                throw new SessionException(e.getCause());
+            }
+        }
+
+        @Override
+        public void setValue(Object bean, @Nullable Object value) {
+            if (setter == null) {
+                throw new IllegalArgumentException("Property has no setter");
+            } else if (value == null && setter.getParameterTypes()[0].isPrimitive()) {
+                return;
+            }
+            try {
+                setter.invoke(bean, value);
+            } catch (IllegalAccessException e) {
+                throw new SessionException(e);
+            } catch (InvocationTargetException e) {
+                throw new SessionException(e.getCause());
+            }
+        }
+
+    }
+
+}
@@ -22,6 +22,13 @@ public interface SessionFactory {
      */
     Session openSession();
 
+    /**
+     * Create a backend connection and open a StatelessSession for it
+     * 
+     * @return
+     */
+    StatelessSession openStatelessSession();
+
     /**
      * Get the current session
      * 
@@ -9,6 +9,8 @@ import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import com.mysema.rdfbean.model.RDFConnection;
 import com.mysema.rdfbean.model.Repository;
 import com.mysema.rdfbean.ontology.Ontology;
@@ -23,8 +25,20 @@ import com.mysema.rdfbean.ontology.Ontology;
  */
 public class SessionFactoryImpl implements SessionFactory {
 
+    /**
+     * default maximum amount of subjects in the entity cache
+     */
+    public static final long DEFAULT_ENTITY_CACHE_SIZE = 10000;
+
     private Configuration configuration;
 
+    @Nullable
+    private EntityCache entityCache;
+
+    private long entityCacheSize = DEFAULT_ENTITY_CACHE_SIZE;
+
+    private long entityCacheTimeToLive;
+
     private Ontology ontology;
 
     private Iterable<Locale> locales;
@@ -83,6 +97,7 @@ public class SessionFactoryImpl implements SessionFactory {
     public Session openSession() {
         RDFConnection connection = repository.openConnection();
         SessionImpl session = new SessionImpl(configuration, ontology, connection, getLocales());
+        session.setEntityCache(getEntityCache());
         if (objectRepositories != null) {
             for (Map.Entry<String, ObjectRepository> entry : objectRepositories.entrySet()) {
                 session.addParent(entry.getKey(), entry.getValue());
@@ -91,6 +106,52 @@ public class SessionFactoryImpl implements SessionFactory {
         return session;
     }
 
+    @Override
+    public StatelessSession openStatelessSession() {
+        StatelessSessionImpl session = new StatelessSessionImpl(configuration, repository.openConnection(), getLocales());
+        session.setEntityCache(getEntityCache());
+        return session;
+    }
+
+    @Nullable
+    private synchronized EntityCache getEntityCache() {
+        if (entityCache == null && entityCacheSize > 0) {
+            entityCache = new EntityCache(entityCacheSize, entityCacheTimeToLive);
+        }
+        return entityCache;
+    }
+
+    /**
+     * Evict all instances of &#64;Cacheable classes from the entity cache
+     */
+    public synchronized void clearEntityCache() {
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Set the maximum amount of subjects in the entity cache, 0 disables the
+     * cache
+     * 
+     * @param entityCacheSize
+     */
+    public synchronized void setEntityCacheSize(long entityCacheSize) {
+        this.entityCacheSize = entityCacheSize;
+        this.entityCache = null;
+    }
+
+    /**
+     * Set the time to live of entity cache entries
+     * 
+     * @param entityCacheTimeToLive
+     *            time to live in milliseconds or 0 for no expiry
+     */
+    public synchronized void setEntityCacheTimeToLive(long entityCacheTimeToLive) {
+        this.entityCacheTimeToLive = entityCacheTimeToLive;
+        this.entityCache = null;
+    }
+
     public void setConfiguration(Configuration configuration) {
         this.configuration = configuration;
         this.ontology = new ConfigurationOntology(configuration);
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.mysema.commons.l10n.support.LocaleUtil;
@@ -37,12 +38,8 @@ import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
 import com.mysema.query.types.EntityPath;
 import com.mysema.rdfbean.CORE;
-import com.mysema.rdfbean.annotations.ContainerType;
-import com.mysema.rdfbean.model.BID;
 import com.mysema.rdfbean.model.Blocks;
 import com.mysema.rdfbean.model.ID;
-import com.mysema.rdfbean.model.IDType;
-import com.mysema.rdfbean.model.Identifier;
 import com.mysema.rdfbean.model.LID;
 import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.NODE;
@@ -83,6 +80,9 @@ public final class SessionImpl implements Session {
 
     private final RDFConnection connection;
 
+    @Nullable
+    private EntityCache entityCache;
+
     private final ErrorHandler errorHandler = new DefaultErrorHandler();
 
     private FlushMode flushMode = FlushMode.ALWAYS;
@@ -91,18 +91,38 @@ public final class SessionImpl implements Session {
 
     private Multimap<ID, Object> instanceCache;
 
+    /**
+     * unloaded subjects of lazy references by referenced type
+     */
+    private Map<Class<?>, Set<ID>> lazyReferences;
+
+    /**
+     * lazy reference proxies by subject
+     */
+    private Multimap<ID, Object> lazyProxies;
+
     private Map<ID, Map<String, NODE>> listCache;
 
+    private Map<ID, List<STMT>> containerCache;
+
     private final Iterable<Locale> locales;
 
     private final Ontology ontology;
 
+    private final BeanSerializer serializer;
+
     private final Map<String, ObjectRepository> parentRepositories = new HashMap<String, ObjectRepository>();
 
     private Set<STMT> removedStatements;
 
     private Map<Object, ID> resourceCache;
 
+    /**
+     * statements of loaded and saved instances, used to compute the changes
+     * of updated instances
+     */
+    private Map<Object, Snapshot> snapshots;
+
     @Nullable
     private Set<Object> seen;
 
@@ -115,6 +135,28 @@ public final class SessionImpl implements Session {
         this.connection = connection;
         this.locales = locales;
         this.identityService = new SessionIdentityService(connection);
+        this.serializer = new BeanSerializer(configuration, connection, identityService) {
+            @Override
+            protected STMT add(ID subject, UID predicate, NODE object, @Nullable UID context) {
+                return recordAddStatement(subject, predicate, object, context);
+            }
+
+            @Override
+            protected Locale getLocale() {
+                return getCurrentLocale();
+            }
+
+            @Override
+            protected ID toRDF(Object instance, @Nullable UID context) {
+                return SessionImpl.this.toRDF(instance, context);
+            }
+
+            @Override
+            protected void toRDFMixin(Object mixin, ID subject, @Nullable UID context, MappedClass mappedClass,
+                    boolean update) {
+                SessionImpl.this.toRDF(mixin, subject, context, mappedClass, update);
+            }
+        };
         clear();
     }
 
@@ -130,23 +172,25 @@ public final class SessionImpl implements Session {
     }
 
     private <T> T assertHasIdProperty(T instance) {
-        MappedClass mappedClass = configuration.getMappedClass(instance.getClass());
+        Class<?> clazz = getClass(instance);
+        MappedClass mappedClass = configuration.getMappedClass(clazz);
         if (mappedClass.getIdProperty() == null) {
-            throw new IllegalArgumentException(instance.getClass().getName() + " has no id property");
+            throw new IllegalArgumentException(clazz.getName() + " has no id property");
         }
         return instance;
     }
 
     private <T> T assertMapped(T instance) {
-        if (!configuration.isMapped(instance.getClass())) {
-            throw new IllegalArgumentException(instance.getClass().getName() + " is not mapped");
+        Class<?> clazz = getClass(instance);
+        if (!configuration.isMapped(clazz)) {
+            throw new IllegalArgumentException(clazz.getName() + " is not mapped");
         }
         return instance;
     }
 
     private ID assignId(MappedClass mappedClass, BeanMap instance) {
         ID subject = createResource(mappedClass.getUID(), instance);
-        setId(mappedClass, subject, instance);
+        serializer.setId(mappedClass, subject, instance);
         return subject;
     }
 
@@ -155,7 +199,7 @@ public final class SessionImpl implements Session {
         Assert.notNull(instance, "instance");
         BeanMap beanMap = toBeanMap(instance);
         MappedClass mappedClass = configuration.getMappedClass(getClass(instance));
-        bind(mappedClass, getId(mappedClass, beanMap), beanMap, new PropertiesMap());
+        bind(mappedClass, serializer.getId(mappedClass, beanMap), beanMap, new PropertiesMap());
     }
 
     @Override
@@ -168,7 +212,10 @@ public final class SessionImpl implements Session {
         if (transaction != null) {
             throw new IllegalStateException("Transaction exists already");
         }
-        transaction = connection.beginTransaction(readOnly, txTimeout, isolationLevel);
+        transaction = new SnapshotTransaction(connection.beginTransaction(readOnly, txTimeout, isolationLevel), this);
+        if (entityCache != null) {
+            transaction = new EntityCacheTransaction(transaction, entityCache);
+        }
         return transaction;
     }
 
@@ -181,8 +228,11 @@ public final class SessionImpl implements Session {
         BeanMap beanMap = toBeanMap(instance);
         // MappedClass mappedClass =
         // configuration.getMappedClass(getClass(instance));
-        setId(mappedClass, subject, beanMap);
+        serializer.setId(mappedClass, subject, beanMap);
         // loadStack.add(instance);
+        if (properties.getDirect() != null && !properties.getDirect().isEmpty()) {
+            snapshots.put(beanMap.getBean(), new Snapshot(subject, mappedClass, properties.getDirect()));
+        }
 
         if (!mappedClass.getDynamicProperties().isEmpty()) {
             bindDynamicProperties(subject, properties.getDirect(), beanMap, mappedClass);
@@ -296,9 +346,13 @@ public final class SessionImpl implements Session {
         // List<Object>>(DEFAULT_INITIAL_CAPACITY), LIST_FACTORY);
         instanceCache = HashMultimap.create();
         resourceCache = new IdentityHashMap<Object, ID>(DEFAULT_INITIAL_CAPACITY);
+        snapshots = new IdentityHashMap<Object, Snapshot>(DEFAULT_INITIAL_CAPACITY);
         addedStatements = new LinkedHashSet<STMT>(DEFAULT_INITIAL_CAPACITY);
         removedStatements = new LinkedHashSet<STMT>(DEFAULT_INITIAL_CAPACITY);
         listCache = new LinkedHashMap<ID, Map<String, NODE>>(DEFAULT_INITIAL_CAPACITY);
+        containerCache = new HashMap<ID, List<STMT>>();
+        lazyReferences = new HashMap<Class<?>, Set<ID>>();
+        lazyProxies = ArrayListMultimap.create();
         seen = null;
     }
 
@@ -393,7 +447,18 @@ public final class SessionImpl implements Session {
     }
 
     private Collection<NODE> convertContainer(ID node, UID context, boolean indexed) {
-        List<STMT> stmts = findStatements(node, null, null, context, false);
+        List<STMT> stmts = containerCache.get(node);
+        if (stmts == null) {
+            stmts = findStatements(node, null, null, context, false);
+        } else if (context != null) {
+            List<STMT> inContext = new ArrayList<STMT>(stmts.size());
+            for (STMT stmt : stmts) {
+                if (context.equals(stmt.getContext())) {
+                    inContext.add(stmt);
+                }
+            }
+            stmts = inContext;
+        }
         Map<Integer, NODE> values = new LinkedHashMap<Integer, NODE>();
         int maxIndex = 0;
         int i = 0;
@@ -525,6 +590,9 @@ public final class SessionImpl implements Session {
     private Object convertMappedClass(NODE value, Class<?> targetClass, MappedPath propertyPath,
             MappedProperty mappedProperty) {
         if (value instanceof ID) {
+            if (isLazy(mappedProperty, targetClass)) {
+                return getLazyReference((ID) value, targetClass, isPolymorphic(mappedProperty));
+            }
             return convertMappedObject((ID) value, targetClass, isPolymorphic(mappedProperty), mappedProperty.isInjection());
         } else {
             throw new BindException(propertyPath, value);
@@ -553,7 +621,15 @@ public final class SessionImpl implements Session {
             }
 
             MappedClass mappedClass = configuration.getMappedClass(requiredClass);
-            Multimap<UID, STMT> direct = getProperties(subject, mappedClass, polymorphic);
+            Multimap<UID, STMT> direct;
+            if (isCached(mappedClass, polymorphic)) {
+                direct = getPropertiesMap(mappedClass, Collections.singleton(subject), polymorphic).get(subject);
+                if (direct == null) {
+                    direct = MultimapFactory.<UID, STMT> create();
+                }
+            } else {
+                direct = getProperties(subject, mappedClass, polymorphic);
+            }
 
             if (!direct.isEmpty()) {
                 Multimap<UID, STMT> inverse = null;
@@ -797,13 +873,23 @@ public final class SessionImpl implements Session {
     }
 
     private void deleteInternal(Object instance) {
+        LazyReference reference = LazyReference.get(instance);
+        if (reference != null) {
+            if (!reference.isInitialized()) {
+                // no need to load the referenced instance
+                ID subject = reference.getSubject();
+                deleteResource(subject, getContext(reference.getType(), subject, null));
+                return;
+            }
+            instance = reference.getTarget();
+        }
         BeanMap beanMap = toBeanMap(instance);
         ID subject = resourceCache.get(instance);
         Class<?> clazz = getClass(instance);
         MappedClass mappedClass = configuration.getMappedClass(clazz);
 
         if (subject == null) {
-            subject = getId(mappedClass, beanMap);
+            subject = serializer.getId(mappedClass, beanMap);
         }
         if (subject != null) {
             UID context = getContext(clazz, subject, null);
@@ -830,6 +916,7 @@ public final class SessionImpl implements Session {
         if (instances != null) {
             for (Object obj : instances) {
                 resourceCache.remove(obj);
+                snapshots.remove(obj);
             }
         }
     }
@@ -916,6 +1003,7 @@ public final class SessionImpl implements Session {
 
         // load references
         loadReferences(mappedClass, directProps, directProps.keySet());
+        loadCollections(mappedClass, directProps);
 
         // bind
         for (Map.Entry<ID, Multimap<UID, STMT>> entry : directProps.entrySet()) {
@@ -1034,7 +1122,16 @@ public final class SessionImpl implements Session {
 
     public void flush() {
         if (!removedStatements.isEmpty() || !addedStatements.isEmpty()) {
-            connection.update(removedStatements, addedStatements);
+            try {
+                connection.update(removedStatements, addedStatements);
+            } catch (RuntimeException e) {
+                // the snapshots may contain statements which weren't written
+                discardSnapshots();
+                throw e;
+            }
+            if (entityCache != null) {
+                invalidateEntityCache();
+            }
         }
         removedStatements = new LinkedHashSet<STMT>();
         addedStatements = new LinkedHashSet<STMT>();
@@ -1083,11 +1180,7 @@ public final class SessionImpl implements Session {
             if (logger.isDebugEnabled()) {
                 logger.debug("query for " + clazz.getSimpleName() + " instance data");
             }
-            RDFQuery query = createQuery(mappedClass, null, polymorphic);
-            query.where(QNODE.s.in(ids));
-
-            CloseableIterator<STMT> stmts = query.construct(Blocks.SPOC);
-            Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(stmts, false);
+            Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(mappedClass, ids, polymorphic);
 
             // no results, return from cache
             if (directProps.isEmpty()) {
@@ -1104,6 +1197,7 @@ public final class SessionImpl implements Session {
 
             // load references
             loadReferences(mappedClass, directProps, directProps.keySet());
+            loadCollections(mappedClass, directProps);
 
             // bind
             for (ID subject : subjects) {
@@ -1169,7 +1263,12 @@ public final class SessionImpl implements Session {
     }
 
     private Class<?> getClass(Object object) {
-        return object instanceof BeanMap ? ((BeanMap) object).getBean().getClass() : object.getClass();
+        if (object instanceof BeanMap) {
+            return ((BeanMap) object).getBean().getClass();
+        }
+        // the proxy classes of lazy references are not mapped
+        LazyReference reference = LazyReference.get(object);
+        return reference != null ? reference.getType() : object.getClass();
     }
 
     @Override
@@ -1243,53 +1342,21 @@ public final class SessionImpl implements Session {
     }
 
     @Nullable
-    private ID getId(MappedClass mappedClass, Object instance) {
-        MappedProperty<?> idProperty = mappedClass.getIdProperty();
-        if (idProperty != null) {
-            // Assigned id
-            Object id = idProperty.getValue(toBeanMap(instance));
-            if (id != null) {
-                if (idProperty.getIDType() == IDType.LOCAL) {
-                    LID lid;
-                    if (id instanceof LID) {
-                        lid = (LID) id;
-                    } else {
-                        lid = new LID(id.toString());
-                    }
-                    return identityService.getID(lid);
-                } else {
-                    ID rid = null;
-                    if (id instanceof UID) {
-                        rid = (UID) id;
-                    } else if (idProperty.getIDType() == IDType.URI) {
-                        if (idProperty.getIDNamespace().isEmpty()) {
-                            rid = new UID(id.toString());
-                        } else {
-                            rid = new UID(idProperty.getIDNamespace(), id.toString());
-                        }
-
-                    } else {
-                        rid = (ID) id;
-                    }
-                    return rid;
-                }
-            }
-        }
-        return null;
-    }
-
     @Override
     @SuppressWarnings("unchecked")
     public ID getId(Object instance) {
+        LazyReference reference = LazyReference.get(instance);
         if (instance instanceof LID) {
             return identityService.getID((LID) instance);
+        } else if (reference != null) {
+            return reference.getSubject();
         } else {
             MappedClass mappedClass = configuration.getMappedClass(getClass(assertMapped(instance)));
             if (instance.getClass().isEnum()) {
                 return new UID(mappedClass.getUID().ns(), ((Enum) instance).name());
             } else {
                 BeanMap beanMap = toBeanMap(instance);
-                return getId(mappedClass, beanMap);
+                return serializer.getId(mappedClass, beanMap);
             }
         }
     }
@@ -1427,6 +1494,59 @@ public final class SessionImpl implements Session {
         return properties;
     }
 
+    /**
+     * Get the direct properties of the given subjects, cacheable properties
+     * are served from the entity cache
+     */
+    private Map<ID, Multimap<UID, STMT>> getPropertiesMap(MappedClass mappedClass, Collection<ID> ids,
+            boolean polymorphic) {
+        if (!isCached(mappedClass, polymorphic)) {
+            RDFQuery query = createQuery(mappedClass, null, polymorphic);
+            query.where(QNODE.s.in(ids));
+            return getPropertiesMap(query.construct(Blocks.SPOC), false);
+        }
+
+        Map<ID, Multimap<UID, STMT>> cached = new HashMap<ID, Multimap<UID, STMT>>();
+        List<ID> missing = new ArrayList<ID>(ids.size());
+        for (ID id : ids) {
+            Multimap<UID, STMT> properties = isModified(id) ? null : entityCache.get(mappedClass, id);
+            if (properties != null) {
+                cached.put(id, properties);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return cached;
+        }
+
+        long version = entityCache.getVersion();
+        RDFQuery query = createQuery(mappedClass, null, polymorphic);
+        if (missing.size() == 1) {
+            query.set(QNODE.s, missing.get(0));
+        } else {
+            query.where(QNODE.s.in(missing));
+        }
+        Map<ID, Multimap<UID, STMT>> propertiesMap = getPropertiesMap(query.construct(Blocks.SPOC), false);
+        for (Map.Entry<ID, Multimap<UID, STMT>> entry : propertiesMap.entrySet()) {
+            if (!isModified(entry.getKey())) {
+                entityCache.put(mappedClass, entry.getKey(), entry.getValue(), version);
+            }
+        }
+        propertiesMap.putAll(cached);
+        return propertiesMap;
+    }
+
+    @Nullable
+    private Snapshot getSnapshot(Object instance, ID subject, MappedClass mappedClass) {
+        Snapshot snapshot = snapshots.get(instance);
+        if (snapshot != null && snapshot.subject.equals(subject) && snapshot.mappedClass.equals(mappedClass)) {
+            return snapshot;
+        } else {
+            return null;
+        }
+    }
+
     private Map<ID, Multimap<UID, STMT>> getPropertiesMap(CloseableIterator<STMT> stmts, boolean inv) {
         Map<ID, Multimap<UID, STMT>> propertiesMap = new HashMap<ID, Multimap<UID, STMT>>();
         try {
@@ -1500,6 +1620,95 @@ public final class SessionImpl implements Session {
         return false;
     }
 
+    private boolean isCached(MappedClass mappedClass, boolean polymorphic) {
+        return entityCache != null && mappedClass.isCacheable() && polymorphic == isPolymorphic(mappedClass);
+    }
+
+    private boolean isModified(ID subject) {
+        return transaction instanceof EntityCacheTransaction
+                && ((EntityCacheTransaction) transaction).isModified(subject);
+    }
+
+    private void invalidateEntityCache() {
+        Set<ID> subjects = new HashSet<ID>();
+        for (STMT stmt : removedStatements) {
+            subjects.add(stmt.getSubject());
+        }
+        for (STMT stmt : addedStatements) {
+            subjects.add(stmt.getSubject());
+        }
+        entityCache.invalidate(subjects);
+        if (transaction instanceof EntityCacheTransaction && transaction.isActive()) {
+            ((EntityCacheTransaction) transaction).addSubjects(subjects);
+        }
+    }
+
+    private boolean isLazy(MappedProperty<?> mappedProperty, Class<?> targetClass) {
+        if (mappedProperty.isInjection() || !configuration.isMapped(targetClass) || !LazyReference.canProxy(targetClass)) {
+            return false;
+        } else {
+            return mappedProperty.isLazy() || configuration.getMappedClass(targetClass).isLazy();
+        }
+    }
+
+    private Object getLazyReference(ID subject, Class<?> type, boolean polymorphic) {
+        Object instance = getCached(subject, type);
+        if (instance == null) {
+            for (Object proxy : lazyProxies.get(subject)) {
+                if (LazyReference.get(proxy).getType().equals(type)) {
+                    return proxy;
+                }
+            }
+            Set<ID> pending = lazyReferences.get(type);
+            if (pending == null) {
+                pending = new HashSet<ID>();
+                lazyReferences.put(type, pending);
+            }
+            pending.add(subject);
+            instance = new LazyReference(this, subject, type, polymorphic).createProxy();
+            lazyProxies.put(subject, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Load the instance of the given lazy reference together with the other
+     * unloaded references of the same type
+     * 
+     * @param reference
+     * @return
+     */
+    Object resolveLazyReference(LazyReference reference) {
+        ID subject = reference.getSubject();
+        Class<?> type = reference.getType();
+        Object instance = getCached(subject, type);
+        if (instance == null) {
+            Set<ID> pending = lazyReferences.remove(type);
+            if (pending != null) {
+                Set<ID> ids = new HashSet<ID>(pending.size());
+                for (ID id : pending) {
+                    if (getCached(id, type) == null) {
+                        ids.add(id);
+                    }
+                }
+                if (!ids.isEmpty()) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("load " + ids.size() + " lazy references of " + type.getSimpleName());
+                    }
+                    loadAll(type, ids, new HashSet<ID>(ids));
+                }
+            }
+            instance = getCached(subject, type);
+            if (instance == null) {
+                instance = convertMappedObject(subject, type, reference.isPolymorphic(), false);
+            }
+        }
+        if (instance == null) {
+            throw new SessionException("No " + type.getName() + " instance for " + subject);
+        }
+        return instance;
+    }
+
     private boolean isPolymorphic(MappedClass mappedClass) {
         return configuration.isPolymorphic(mappedClass.getJavaClass());
     }
@@ -1520,10 +1729,7 @@ public final class SessionImpl implements Session {
         if (logger.isDebugEnabled()) {
             logger.debug("query for " + clazz.getSimpleName() + " instance data");
         }
-        RDFQuery query = createQuery(mappedClass, null, polymorphic);
-        query.where(QNODE.s.in(ids));
-        CloseableIterator<STMT> stmts = query.construct(Blocks.SPOC);
-        Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(stmts, false);
+        Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(mappedClass, ids, polymorphic);
 
         if (directProps.isEmpty()) {
             return;
@@ -1539,6 +1745,7 @@ public final class SessionImpl implements Session {
 
         // load references
         loadReferences(mappedClass, directProps, handled);
+        loadCollections(mappedClass, directProps);
 
         for (Map.Entry<ID, Multimap<UID, STMT>> entry : directProps.entrySet()) {
             T instance = getCached(entry.getKey(), clazz);
@@ -1550,6 +1757,97 @@ public final class SessionImpl implements Session {
         }
     }
 
+    /**
+     * Load the cells of the lists and the members of the containers which are
+     * referenced by the given properties, lists are loaded one level of cells
+     * at a time for all lists
+     */
+    private void loadCollections(MappedClass mappedClass, Map<ID, Multimap<UID, STMT>> directProps) {
+        Set<UID> listPredicates = new HashSet<UID>();
+        Set<UID> containerPredicates = new HashSet<UID>();
+        for (MappedPath mappedPath : mappedClass.getProperties()) {
+            MappedProperty<?> property = mappedPath.getMappedProperty();
+            if (mappedPath.isSimpleProperty() && property.isList()) {
+                listPredicates.add(mappedPath.get(0).getUID());
+            } else if (mappedPath.isSimpleProperty() && property.isContainer()) {
+                containerPredicates.add(mappedPath.get(0).getUID());
+            }
+        }
+        if (listPredicates.isEmpty() && containerPredicates.isEmpty()) {
+            return;
+        }
+
+        Set<ID> lists = new HashSet<ID>();
+        Set<ID> containers = new HashSet<ID>();
+        for (Multimap<UID, STMT> properties : directProps.values()) {
+            for (UID predicate : listPredicates) {
+                for (STMT stmt : properties.get(predicate)) {
+                    NODE object = stmt.getObject();
+                    if (object.isResource() && !object.equals(RDF.nil) && !listCache.containsKey(object)) {
+                        lists.add(object.asResource());
+                    }
+                }
+            }
+            for (UID predicate : containerPredicates) {
+                for (STMT stmt : properties.get(predicate)) {
+                    if (stmt.getObject().isResource() && !containerCache.containsKey(stmt.getObject())) {
+                        containers.add(stmt.getObject().asResource());
+                    }
+                }
+            }
+        }
+
+        // expand the frontier of unloaded list cells
+        while (!lists.isEmpty()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("query for " + lists.size() + " list cells");
+            }
+            RDFQuery query = new RDFQueryImpl(connection).where(
+                    Blocks.SPOC,
+                    QNODE.s.in(lists),
+                    QNODE.p.in(RDF.first, RDF.rest));
+            Map<ID, Multimap<UID, STMT>> cells = getPropertiesMap(query.construct(Blocks.SPOC), false);
+            Set<ID> next = new HashSet<ID>();
+            for (Map.Entry<ID, Multimap<UID, STMT>> entry : cells.entrySet()) {
+                Collection<STMT> rest = entry.getValue().get(RDF.rest);
+                if (rest.isEmpty()) {
+                    continue;
+                }
+                Map<String, NODE> values = new HashMap<String, NODE>(4);
+                NODE restNode = rest.iterator().next().getObject();
+                values.put(RDF.rest.ln(), restNode);
+                Collection<STMT> first = entry.getValue().get(RDF.first);
+                if (!first.isEmpty()) {
+                    values.put(RDF.first.ln(), first.iterator().next().getObject());
+                }
+                listCache.put(entry.getKey(), values);
+                if (restNode.isResource() && !restNode.equals(RDF.nil) && !listCache.containsKey(restNode)) {
+                    next.add(restNode.asResource());
+                }
+            }
+            lists = next;
+        }
+
+        if (!containers.isEmpty()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("query for members of " + containers.size() + " containers");
+            }
+            RDFQuery query = new RDFQueryImpl(connection).where(Blocks.SPOC, QNODE.s.in(containers));
+            CloseableIterator<STMT> stmts = query.construct(Blocks.SPOC);
+            try {
+                for (ID container : containers) {
+                    containerCache.put(container, new ArrayList<STMT>());
+                }
+                while (stmts.hasNext()) {
+                    STMT stmt = stmts.next();
+                    containerCache.get(stmt.getSubject()).add(stmt);
+                }
+            } finally {
+                stmts.close();
+            }
+        }
+    }
+
     private void loadReferences(MappedClass mappedClass, Map<ID, Multimap<UID, STMT>> directProps, Set<ID> handled) {
         Map<UID, Class<?>> directToType = new HashMap<UID, Class<?>>();
         for (MappedPath mappedPath : mappedClass.getProperties()) {
@@ -1560,7 +1858,7 @@ public final class SessionImpl implements Session {
                     if (property.isCollection() || property.isMap()) {
                         type = property.getComponentType();
                     }
-                    if (!type.isEnum() && !mappedPath.isInverse(0)) {
+                    if (!type.isEnum() && !mappedPath.isInverse(0) && !isLazy(property, type)) {
                         directToType.put(mappedPath.get(0).getUID(), type);
                     }
                 }
@@ -1629,11 +1927,12 @@ public final class SessionImpl implements Session {
         resourceCache.put(value, resource);
     }
 
-    private void recordAddStatement(ID subject, UID predicate, NODE object, UID context) {
+    private STMT recordAddStatement(ID subject, UID predicate, NODE object, UID context) {
         STMT statement = new STMT(subject, predicate, object, context, true);
         if (!removedStatements.remove(statement)) {
             addedStatements.add(statement);
         }
+        return statement;
     }
 
     private void recordRemoveStatement(STMT statement) {
@@ -1643,6 +1942,7 @@ public final class SessionImpl implements Session {
     }
 
     private void removeContainer(ID node, UID context) {
+        containerCache.remove(node);
         if (isContainer(node, context)) {
             for (STMT stmt : findStatements(node, null, null, context, false)) {
                 recordRemoveStatement(stmt);
@@ -1657,6 +1957,7 @@ public final class SessionImpl implements Session {
     }
 
     private void removeListInternal(ID node, UID context) {
+        listCache.remove(node);
         for (STMT statement : findStatements(node, null, null, context, false)) {
             recordRemoveStatement(statement);
             NODE object = statement.getObject();
@@ -1700,220 +2001,95 @@ public final class SessionImpl implements Session {
         return ids;
     }
 
-    @Override
-    public void setFlushMode(FlushMode flushMode) {
-        this.flushMode = flushMode;
+    void setEntityCache(@Nullable EntityCache entityCache) {
+        this.entityCache = entityCache;
     }
 
-    private <T> void setId(MappedClass mappedClass, ID subject, BeanMap instance) {
-        MappedProperty<?> idProperty = mappedClass.getIdProperty();
-        if (idProperty != null && !mappedClass.isEnum() && !idProperty.isVirtual()) {
-            Object id = null;
-            Identifier identifier;
-            Class<?> type = idProperty.getType();
-            IDType idType = idProperty.getIDType();
-            if (idType == IDType.LOCAL) {
-                identifier = getLID(subject);
-            } else if (idType == IDType.URI) {
-                if (subject.isURI()) {
-                    identifier = subject;
-                } else {
-                    identifier = null;
-                }
-            } else {
-                identifier = subject;
-            }
-            if (identifier != null) {
-                if (String.class.isAssignableFrom(type)) {
-                    String ns = idProperty.getIDNamespace();
-                    if (ns.isEmpty()) {
-                        id = identifier.getId();
-                    } else {
-                        UID uid = (UID) identifier;
-                        if (uid.ns().equals(ns)) {
-                            id = uid.ln();
-                        } else {
-                            errorHandler.namespaceMismatch(ns, uid.ns());
-                        }
-                    }
-                } else if (Identifier.class.isAssignableFrom(type)) {
-                    id = identifier;
-                } else {
-                    throw new BindException("Cannot assign id of " + mappedClass + " into " + type);
-                }
-            }
-            idProperty.setValue(instance, id);
-        }
+    /**
+     * Discard the property snapshots, so that the next save of loaded or
+     * saved instances reads their properties from the repository
+     */
+    void discardSnapshots() {
+        snapshots = new IdentityHashMap<Object, Snapshot>(DEFAULT_INITIAL_CAPACITY);
+    }
 
-        for (MappedProperty<?> mixinProperty : mappedClass.getMixinProperties()) {
-            Object mixinValue = mixinProperty.getValue(instance);
-            if (mixinValue != null) {
-                MappedClass mixinClass = configuration.getMappedClass(mixinProperty.getTargetType());
-                // if (mixinClass == null) {
-                // throw new IllegalStateException("Got no mapped class for " +
-                // mixinProperty.getTargetType().getName());
-                // }
-                setId(mixinClass, subject, new BeanMap(mixinValue));
-            }
-        }
+    @Override
+    public void setFlushMode(FlushMode flushMode) {
+        this.flushMode = flushMode;
     }
 
     private BeanMap toBeanMap(Object instance) {
-        return instance instanceof BeanMap ? (BeanMap) instance : new BeanMap(instance);
+        return instance instanceof BeanMap ? (BeanMap) instance : new SimpleBeanMap(instance);
     }
 
-    @SuppressWarnings("unchecked")
     private void toRDF(Object instance, ID subject, UID parentContext, MappedClass mappedClass, boolean update) {
-        UID uri = mappedClass.getUID();
-        UID context = parentContext;
-        if (!update && uri != null) {
-            recordAddStatement(subject, RDF.type, uri, context);
-        }
         BeanMap beanMap = toBeanMap(instance);
 
-        Multimap<UID, STMT> statements = getProperties(subject, mappedClass, true);
+        // the statements of loaded or saved instances are taken from the snapshot
+        Multimap<UID, STMT> statements;
+        if (!update) {
+            statements = MultimapFactory.<UID, STMT> create();
+        } else {
+            Snapshot snapshot = getSnapshot(beanMap.getBean(), subject, mappedClass);
+            statements = snapshot != null ? snapshot.properties : getProperties(subject, mappedClass, true);
+        }
+        Multimap<UID, STMT> current = MultimapFactory.<UID, STMT> create();
+        current.putAll(statements);
 
-        for (MappedPath path : mappedClass.getProperties()) {
-            MappedProperty<?> property = path.getMappedProperty();
-            if (path.isSimpleProperty()) {
+        // the previous values are removed before the current ones are written
+        if (update) {
+            for (MappedPath path : mappedClass.getProperties()) {
+                if (!path.isSimpleProperty() || !statements.containsKey(path.get(0).getUID())) {
+                    continue;
+                }
+                MappedProperty<?> property = path.getMappedProperty();
                 MappedPredicate mappedPredicate = path.get(0);
                 UID predicate = mappedPredicate.getUID();
-                if (mappedPredicate.getContext() != null) {
-                    context = mappedPredicate.getContext();
-                } else {
-                    context = parentContext;
-                }
-
-                if (update) {
-                    if (statements.containsKey(predicate)) {
-                        for (STMT statement : statements.get(predicate)) {
-                            if (property.isLocalized() && String.class.equals(property.getType())) {
-                                LIT lit = (LIT) statement.getObject();
-                                if (Objects.equal(getCurrentLocale(), lit.getLang())) {
-                                    recordRemoveStatement(statement);
-                                }
-                            } else {
-                                recordRemoveStatement(statement);
-                                NODE object = statement.getObject();
-                                if (object.isResource()) {
-                                    if (property.isList()) {
-                                        removeList((ID) object, context);
-                                    } else if (property.isContainer()) {
-                                        removeContainer((ID) object, context);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-
-                Object object = property.getValue(beanMap);
-                if (object != null) {
-                    if (property.isArray()) {
-                        if (object.getClass().getComponentType().isPrimitive()) {
-                            int size = Array.getLength(object);
-                            List<Object> list = new ArrayList<Object>(size);
-                            for (int i = 0; i < size; i++) {
-                                list.add(Array.get(object, i));
-                            }
-                            object = list;
-                        } else {
-                            object = Arrays.asList((Object[]) object);
-                        }
-                    }
-
-                    if (property.isList()) {
-                        ID first = toRDFList((List<?>) object, context);
-                        if (first != null) {
-                            recordAddStatement(subject, predicate, first, context);
-                        }
-
-                    } else if (property.isContainer()) {
-                        ID container = toRDFContainer((Collection<?>) object, context, property.getContainerType());
-                        if (container != null) {
-                            recordAddStatement(subject, predicate, container, context);
+                UID context = mappedPredicate.getContext() != null ? mappedPredicate.getContext() : parentContext;
+                for (STMT statement : statements.get(predicate)) {
+                    if (property.isLocalized() && String.class.equals(property.getType())) {
+                        LIT lit = (LIT) statement.getObject();
+                        if (Objects.equal(getCurrentLocale(), lit.getLang())) {
+                            recordRemoveStatement(statement);
+                            current.remove(predicate, statement);
                         }
-
-                    } else if (property.isCollection()) {
-                        for (Object o : (Collection<?>) object) {
-                            NODE value = toRDFValue(o, context);
-                            if (value != null) {
-                                recordAddStatement(subject, predicate, value, context);
-                            }
-                        }
-
-                    } else if (property.isArray()) { // array, but not List or
-                                                     // Container
-                        for (Object o : (Collection<?>) object) {
-                            NODE value = toRDFValue(o, context);
-                            if (value != null) {
-                                recordAddStatement(subject, predicate, value, context);
-                            }
-                        }
-
-                    } else if (property.isLocalized()) {
-                        if (property.isMap()) {
-                            for (Map.Entry<Locale, String> entry : ((Map<Locale, String>) object).entrySet()) {
-                                if (entry.getValue() != null) {
-                                    LIT literal = new LIT(entry.getValue(), entry.getKey());
-                                    recordAddStatement(subject, predicate, literal, context);
-                                }
+                    } else {
+                        recordRemoveStatement(statement);
+                        current.remove(predicate, statement);
+                        NODE object = statement.getObject();
+                        if (object.isResource()) {
+                            if (property.isList()) {
+                                removeList((ID) object, context);
+                            } else if (property.isContainer()) {
+                                removeContainer((ID) object, context);
                             }
-                        } else {
-                            LIT literal = new LIT(object.toString(), getCurrentLocale());
-                            recordAddStatement(subject, predicate, literal, context);
-                        }
-                    } else if (!property.isMap()) {
-                        NODE value = toRDFValue(object, context);
-                        if (value != null) {
-                            recordAddStatement(subject, predicate, value, context);
                         }
                     }
                 }
-
-            } else if (property.isMixin()) {
-                Object object = property.getValue(beanMap);
-                if (object != null) {
-                    UID subContext = getContext(object, subject, context);
-                    toRDF(object, subject, subContext, configuration.getMappedClass(getClass(object)), update);
-                }
             }
         }
 
-        for (MappedProperty<?> property : mappedClass.getDynamicProperties()) {
-            Map<?, ?> properties = (Map) property.getValue(beanMap);
-            if (properties != null) {
-                if (property.getContext() != null) {
-                    context = property.getContext();
-                } else {
-                    context = parentContext;
-                }
-                for (Map.Entry<?, ?> entry : properties.entrySet()) {
-                    UID predicate = toRDF(entry.getKey(), context).asURI();
-                    if (entry.getValue() instanceof Collection) {
-                        for (Object value : ((Collection) entry.getValue())) {
-                            NODE object = toRDFValue(value, context);
-                            recordAddStatement(subject, predicate, object, context);
-                        }
-                    } else {
-                        NODE object = toRDFValue(entry.getValue(), context);
-                        recordAddStatement(subject, predicate, object, context);
-                    }
-                }
-            }
-        }
+        serializer.toRDF(beanMap, subject, parentContext, mappedClass, current, update);
+        snapshots.put(beanMap.getBean(), new Snapshot(subject, mappedClass, current));
     }
 
     private ID toRDF(Object instance, @Nullable UID parentContext) {
         if (instance instanceof ID) {
             return (ID) instance;
         }
+        LazyReference reference = LazyReference.get(instance);
+        if (reference != null) {
+            if (!reference.isInitialized()) {
+                return reference.getSubject();
+            }
+            instance = reference.getTarget();
+        }
         BeanMap beanMap = toBeanMap(Assert.notNull(instance, "instance"));
         Class<?> clazz = getClass(instance);
         MappedClass mappedClass = configuration.getMappedClass(clazz);
         ID subject = resourceCache.get(instance);
         if (subject == null) {
-            subject = getId(mappedClass, beanMap);
+            subject = serializer.getId(mappedClass, beanMap);
         }
         if (mappedClass.isEnum()) {
             subject = new UID(mappedClass.getClassNs(), ((Enum<?>) instance).name());
@@ -1921,7 +2097,12 @@ public final class SessionImpl implements Session {
         } else if (seen.add(instance)) {
             UID context = getContext(clazz, subject, parentContext);
             // Update
-            boolean update = subject != null && exists(subject, mappedClass, context);
+            boolean update = false;
+            if (subject != null) {
+                Snapshot snapshot = getSnapshot(beanMap.getBean(), subject, mappedClass);
+                update = (snapshot != null && snapshot.hasType(mappedClass, context))
+                        || exists(subject, mappedClass, context);
+            }
 
             // Create
             if (subject == null) {
@@ -1940,61 +2121,36 @@ public final class SessionImpl implements Session {
         return subject;
     }
 
-    private ID toRDFContainer(Collection<?> collection, UID context, ContainerType containerType) {
-        int i = 0;
-        ID container = connection.createBNode();
-        recordAddStatement(container, RDF.type, containerType.getUID(), context);
-        for (Object o : collection) {
-            i++;
-            if (o != null) {
-                NODE value = toRDFValue(o, context);
-                recordAddStatement(container, RDF.getContainerMembershipProperty(i), value, context);
-            }
-        }
-        return container;
-    }
+    /**
+     * Snapshot holds the direct properties of an instance as they were bound
+     * or last saved
+     */
+    private static final class Snapshot {
 
-    private ID toRDFList(List<?> list, UID context) {
-        ID firstNode = null;
-        ID currentNode = null;
-        for (Object value : list) {
-            if (currentNode == null) {
-                currentNode = connection.createBNode();
-                firstNode = currentNode;
-            } else {
-                BID nextNode = connection.createBNode();
-                recordAddStatement(currentNode, RDF.rest, nextNode, context);
-                currentNode = nextNode;
-            }
-            recordAddStatement(currentNode, RDF.type, RDF.List, context);
-            recordAddStatement(currentNode, RDF.first, toRDFValue(value, context), context);
-        }
-        if (currentNode != null) {
-            recordAddStatement(currentNode, RDF.rest, RDF.nil, context);
-        }
-        return firstNode;
-    }
+        private final ID subject;
 
-    private LIT toRDFLiteral(Object o) {
-        if (o instanceof LIT) {
-            return (LIT) o;
-        }
-        UID dataType = configuration.getConverterRegistry().getDatatype(o.getClass());
-        return new LIT(configuration.getConverterRegistry().toString(o), dataType);
-    }
+        private final MappedClass mappedClass;
 
-    private NODE toRDFValue(Object o, @Nullable UID context) {
-        if (o instanceof NODE) {
-            return (NODE) o;
+        private final Multimap<UID, STMT> properties;
+
+        Snapshot(ID subject, MappedClass mappedClass, Multimap<UID, STMT> properties) {
+            this.subject = subject;
+            this.mappedClass = mappedClass;
+            this.properties = properties;
         }
-        Class<?> type = getClass(o);
-        if (configuration.isMapped(type)) {
-            return toRDF(o, context);
-        } else if (o instanceof UID) {
-            return (UID) o;
-        } else {
-            return toRDFLiteral(o);
+
+        boolean hasType(MappedClass mappedClass, @Nullable UID context) {
+            UID type = mappedClass.getUID();
+            if (type != null) {
+                for (STMT stmt : properties.get(RDF.type)) {
+                    if (stmt.getObject().equals(type) && (context == null || context.equals(stmt.getContext()))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
+
     }
 
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import com.mysema.util.BeanMap;
+
+/**
+ * SimpleBeanMap is a BeanMap which only holds the bean without introspecting
+ * its properties
+ *
+ * <p>
+ * Mapped properties access the bean via {@link PropertyAccessor} instances,
+ * so the Map view of the bean is not needed in binding and persisting.
+ * </p>
+ *
+ * @author tiwe
+ */
+final class SimpleBeanMap extends BeanMap {
+
+    private final Object bean;
+
+    SimpleBeanMap(Object bean) {
+        this.bean = bean;
+    }
+
+    @Override
+    public Object getBean() {
+        return bean;
+    }
+
+    @Override
+    public void setBean(Object bean) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import com.mysema.rdfbean.model.RDFBeanTransaction;
+
+/**
+ * SnapshotTransaction discards the property snapshots of the session when the
+ * transaction is rolled back, since they may contain statements which were
+ * never committed
+ *
+ * @author tiwe
+ */
+final class SnapshotTransaction implements RDFBeanTransaction {
+
+    private final RDFBeanTransaction transaction;
+
+    private final SessionImpl session;
+
+    SnapshotTransaction(RDFBeanTransaction transaction, SessionImpl session) {
+        this.transaction = transaction;
+        this.session = session;
+    }
+
+    @Override
+    public void prepare() {
+        transaction.prepare();
+    }
+
+    @Override
+    public void commit() {
+        boolean committed = false;
+        try {
+            transaction.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                session.discardSnapshots();
+            }
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return transaction.isActive();
+    }
+
+    @Override
+    public boolean isRollbackOnly() {
+        return transaction.isRollbackOnly();
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            transaction.rollback();
+        } finally {
+            session.discardSnapshots();
+        }
+    }
+
+    @Override
+    public void setRollbackOnly() {
+        transaction.setRollbackOnly();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.io.Closeable;
+import java.util.List;
+
+import com.mysema.rdfbean.model.ID;
+
+/**
+ * StatelessSession provides a write-only access point for bulk inserts of
+ * instances of mapped classes
+ * <p>
+ * Unlike {@link Session} a StatelessSession keeps no identity map, snapshots
+ * or other state of the written instances. Instances are converted directly
+ * into statements, which are written to the backend in batches, so the memory
+ * usage stays constant independent of the amount of inserted instances.
+ * </p>
+ * <p>
+ * Instances are always inserted as new resources, the existing statements of
+ * assigned ids are not read or removed. Referenced instances without ids are
+ * inserted together with the referencing instance, referenced instances with
+ * ids are referenced by their id only.
+ * </p>
+ *
+ * @author tiwe
+ */
+public interface StatelessSession extends Closeable {
+
+    /**
+     * Default amount of statements per batch
+     */
+    int DEFAULT_BATCH_SIZE = 5000;
+
+    /**
+     * Insert the given instance
+     *
+     * @param instance
+     * @return the id of the instance
+     */
+    ID insert(Object instance);
+
+    /**
+     * Insert the given instances
+     *
+     * @param instances
+     * @return the ids of the instances
+     */
+    List<ID> insertAll(Object... instances);
+
+    /**
+     * Write the pending statements to the backend
+     */
+    void flush();
+
+    /**
+     * Flush the pending statements and close the session
+     */
+    void close();
+
+    /**
+     * Set the amount of statements after which a batch is written. Batches
+     * are written between inserted instances, so a batch may exceed the
+     * given size by the statements of one instance.
+     *
+     * @param batchSize
+     */
+    void setBatchSize(int batchSize);
+
+    /**
+     * @return the amount of statements which are written per batch
+     */
+    int getBatchSize();
+
+    /**
+     * @return the amount of statements written so far
+     */
+    long getStatementCount();
+
+    Configuration getConfiguration();
+
+}
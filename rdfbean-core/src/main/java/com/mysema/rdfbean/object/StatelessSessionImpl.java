@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.lang.Assert;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.util.BeanMap;
+
+/**
+ * StatelessSessionImpl is the default implementation of the
+ * {@link StatelessSession} interface
+ *
+ * @author tiwe
+ */
+public class StatelessSessionImpl implements StatelessSession {
+
+    private final Configuration configuration;
+
+    private final RDFConnection connection;
+
+    private final BeanSerializer serializer;
+
+    private final Locale locale;
+
+    @Nullable
+    private EntityCache entityCache;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Set<STMT> addedStatements = new LinkedHashSet<STMT>();
+
+    /**
+     * subjects of the instances written by the current insert call
+     */
+    private Map<Object, ID> seen = new IdentityHashMap<Object, ID>();
+
+    private long statementCount;
+
+    public StatelessSessionImpl(Configuration configuration, RDFConnection connection, Iterable<Locale> locales) {
+        this.configuration = configuration;
+        this.connection = connection;
+        this.serializer = new BeanSerializer(configuration, connection, new SessionIdentityService(connection)) {
+            @Override
+            protected STMT add(ID subject, UID predicate, NODE object, @Nullable UID context) {
+                STMT stmt = new STMT(subject, predicate, object, context, true);
+                addedStatements.add(stmt);
+                return stmt;
+            }
+
+            @Override
+            protected Locale getLocale() {
+                return locale;
+            }
+
+            @Override
+            protected ID toRDF(Object instance, @Nullable UID context) {
+                return StatelessSessionImpl.this.toRDF(instance, context, false);
+            }
+
+            @Override
+            protected void toRDFMixin(Object mixin, ID subject, @Nullable UID context, MappedClass mappedClass,
+                    boolean update) {
+                toRDF(new SimpleBeanMap(mixin), subject, context, mappedClass, null, update);
+            }
+        };
+        Iterator<Locale> iterator = locales != null ? locales.iterator() : null;
+        this.locale = iterator != null && iterator.hasNext() ? iterator.next() : Locale.ROOT;
+    }
+
+    public StatelessSessionImpl(Configuration configuration, RDFConnection connection, Locale... locales) {
+        this(configuration, connection, Arrays.asList(locales));
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (!addedStatements.isEmpty()) {
+            Set<STMT> statements = addedStatements;
+            addedStatements = new LinkedHashSet<STMT>();
+            connection.update(null, statements);
+            statementCount += statements.size();
+            if (entityCache != null) {
+                Set<ID> subjects = new HashSet<ID>();
+                for (STMT stmt : statements) {
+                    subjects.add(stmt.getSubject());
+                }
+                entityCache.invalidate(subjects);
+            }
+        }
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    @Nullable
+    private UID getContext(Class<?> clazz, @Nullable UID defaultContext) {
+        UID context = configuration.getMappedClass(clazz).getContext();
+        return context != null ? context : defaultContext;
+    }
+
+    @Override
+    public long getStatementCount() {
+        return statementCount + addedStatements.size();
+    }
+
+    @Override
+    public ID insert(Object instance) {
+        return insertAll(instance).get(0);
+    }
+
+    @Override
+    public List<ID> insertAll(Object... instances) {
+        List<ID> ids = new ArrayList<ID>(instances.length);
+        try {
+            for (Object instance : instances) {
+                ids.add(toRDF(assertMapped(instance), null, true));
+                // batches are written between instances, so that the
+                // statements of an instance are written together
+                if (addedStatements.size() >= batchSize) {
+                    flush();
+                }
+            }
+        } finally {
+            seen = new IdentityHashMap<Object, ID>();
+        }
+        return ids;
+    }
+
+    private Object assertMapped(Object instance) {
+        Class<?> clazz = Assert.notNull(instance, "instance").getClass();
+        if (!configuration.isMapped(clazz)) {
+            throw new IllegalArgumentException(clazz.getName() + " is not mapped");
+        } else if (configuration.getMappedClass(clazz).getIdProperty() == null) {
+            throw new IllegalArgumentException(clazz.getName() + " has no id property");
+        }
+        return instance;
+    }
+
+    void setEntityCache(@Nullable EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize needs to be positive, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    private ID toRDF(Object instance, @Nullable UID parentContext, boolean root) {
+        if (instance instanceof ID) {
+            return (ID) instance;
+        }
+        LazyReference reference = LazyReference.get(instance);
+        if (reference != null) {
+            return reference.getSubject();
+        }
+        Class<?> clazz = instance.getClass();
+        MappedClass mappedClass = configuration.getMappedClass(clazz);
+        if (mappedClass.isEnum()) {
+            return new UID(mappedClass.getClassNs(), ((Enum<?>) instance).name());
+        }
+        ID subject = seen.get(instance);
+        if (subject != null) {
+            return subject;
+        }
+
+        BeanMap beanMap = new SimpleBeanMap(instance);
+        subject = serializer.getId(mappedClass, beanMap);
+        if (subject != null && !root) {
+            // referenced instances with ids are not written again
+            seen.put(instance, subject);
+            return subject;
+        } else if (subject == null) {
+            subject = configuration.createURI(instance);
+            if (subject == null) {
+                subject = connection.createBNode();
+            }
+            serializer.setId(mappedClass, subject, beanMap);
+        }
+        seen.put(instance, subject);
+
+        // Build-in namespaces are read-only
+        if (subject.isURI() && configuration.isRestricted((UID) subject)) {
+            return subject;
+        }
+        UID context = getContext(clazz, parentContext);
+        serializer.toRDF(beanMap, subject, context, mappedClass, null, false);
+        return subject;
+    }
+
+}
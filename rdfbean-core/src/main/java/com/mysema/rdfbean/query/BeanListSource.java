@@ -43,21 +43,44 @@ public class BeanListSource<T> {
             EntityPath<?>[] sourceArray,
             QueryMetadata metadata,
             Path<T> projection) {
+        this(sessionFactory, sourceArray, metadata, projection, null);
+    }
+
+    /**
+     * Create a new BeanListSource which takes the size from the given
+     * CountCache
+     *
+     * @param sessionFactory
+     * @param sourceArray
+     * @param metadata
+     * @param projection
+     * @param countCache
+     *            cache for the size or null to count always
+     */
+    public BeanListSource(SessionFactory sessionFactory,
+            EntityPath<?>[] sourceArray,
+            QueryMetadata metadata,
+            Path<T> projection,
+            @Nullable CountCache countCache) {
         this.sessionFactory = sessionFactory;
         this.sources = sourceArray.clone();
         this.condition = metadata.getWhere();
         this.projection = projection;
         this.order = metadata.getOrderBy().toArray(new OrderSpecifier[metadata.getOrderBy().size()]);
-        this.size = sessionFactory.execute(new SessionCallback<Long>() {
-            @Override
-            public Long doInSession(Session session) {
-                BeanQuery countQry = session.from(sources);
-                if (condition != null) {
-                    countQry.where(condition);
+        if (countCache != null) {
+            this.size = countCache.count(sessionFactory, sources, condition);
+        } else {
+            this.size = sessionFactory.execute(new SessionCallback<Long>() {
+                @Override
+                public Long doInSession(Session session) {
+                    BeanQuery countQry = session.from(sources);
+                    if (condition != null) {
+                        countQry.where(condition);
+                    }
+                    return countQry.count();
                 }
-                return countQry.count();
-            }
-        });
+            });
+        }
     }
 
     public T getResult(int index) {
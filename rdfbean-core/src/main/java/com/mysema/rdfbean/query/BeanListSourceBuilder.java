@@ -8,6 +8,8 @@ package com.mysema.rdfbean.query;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import com.mysema.query.DefaultQueryMetadata;
 import com.mysema.query.JoinType;
 import com.mysema.query.QueryMetadata;
@@ -32,6 +34,9 @@ public class BeanListSourceBuilder {
 
     private final QueryMetadata metadata = new DefaultQueryMetadata();
 
+    @Nullable
+    private CountCache countCache;
+
     public BeanListSourceBuilder(SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
     }
@@ -44,6 +49,11 @@ public class BeanListSourceBuilder {
         return this;
     }
 
+    public BeanListSourceBuilder countCache(CountCache countCache) {
+        this.countCache = countCache;
+        return this;
+    }
+
     public BeanListSourceBuilder orderBy(OrderSpecifier<?>... o) {
         for (OrderSpecifier<?> order : o) {
             metadata.addOrderBy(order);
@@ -60,7 +70,7 @@ public class BeanListSourceBuilder {
 
     public <T> BeanListSource<T> list(Path<T> projection) {
         EntityPath<?>[] sourceArray = sources.toArray(new EntityPath[sources.size()]);
-        return new BeanListSource<T>(sessionFactory, sourceArray, metadata, projection);
+        return new BeanListSource<T>(sessionFactory, sourceArray, metadata, projection, countCache);
     }
 
 }
@@ -8,8 +8,15 @@ package com.mysema.rdfbean.query;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -21,6 +28,7 @@ import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
 import com.mysema.query.QueryException;
 import com.mysema.query.QueryMetadata;
+import com.mysema.query.QueryModifiers;
 import com.mysema.query.SearchResults;
 import com.mysema.query.Tuple;
 import com.mysema.query.support.ProjectableQuery;
@@ -29,12 +37,17 @@ import com.mysema.query.types.EntityPath;
 import com.mysema.query.types.Expression;
 import com.mysema.query.types.FactoryExpression;
 import com.mysema.query.types.FactoryExpressionUtils;
+import com.mysema.query.types.Order;
+import com.mysema.query.types.OrderSpecifier;
+import com.mysema.query.types.Path;
 import com.mysema.query.types.QTuple;
 import com.mysema.rdfbean.model.BooleanQuery;
 import com.mysema.rdfbean.model.ID;
 import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.NODEComparator;
 import com.mysema.rdfbean.model.RDFConnection;
 import com.mysema.rdfbean.model.TupleQuery;
+import com.mysema.rdfbean.model.TypedNODEComparator;
 import com.mysema.rdfbean.object.BeanQuery;
 import com.mysema.rdfbean.object.Session;
 import com.mysema.rdfbean.ontology.Ontology;
@@ -48,6 +61,10 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
 
     private static final Logger logger = LoggerFactory.getLogger(BeanQueryImpl.class);
 
+    private static final NODEComparator nodeComparator = new TypedNODEComparator();
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
     private final Session session;
 
     private final Ontology ontology;
@@ -56,6 +73,8 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
 
     private final RDFConnection connection;
 
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     public BeanQueryImpl(Session session, Ontology ontology, RDFConnection connection) {
         super(new QueryMixin<BeanQueryImpl>());
         queryMixin.setSelf(this);
@@ -168,38 +187,119 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
         }
     }
 
-    @Override
-    public CloseableIterator<Tuple> iterate(final Expression<?>... args) {
-        queryMixin.addProjection(args);
-        final QTuple qTuple = new QTuple(args);
-        final TupleQuery query = createTupleQuery(false);
-        final CloseableIterator<Map<String, NODE>> results = query.getTuples();
-        return new CloseableIterator<Tuple>() {
-            @Override
-            public void close() {
-                results.close();
+    /**
+     * Get the target types of the projection variables in the order used by
+     * getAsProjectionValue
+     */
+    private List<Class<?>> getProjectionTypes(Expression<?>... exprs) {
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for (Expression<?> expr : exprs) {
+            if (expr instanceof FactoryExpression<?>) {
+                for (Expression<?> arg : ((FactoryExpression<?>) expr).getArgs()) {
+                    types.add(arg.getType());
+                }
+            } else {
+                types.add(expr.getType());
             }
+        }
+        return types;
+    }
 
-            @Override
-            public boolean hasNext() {
-                return results.hasNext();
+    /**
+     * Load the mapped instances referenced by the given rows with one getAll
+     * invocation per type, so that the following conversion of the rows is
+     * served from the session
+     */
+    @SuppressWarnings("unchecked")
+    private void preload(List<Map<String, NODE>> rows, List<String> variables, List<Class<?>> types) {
+        Map<Class<?>, Set<ID>> ids = new LinkedHashMap<Class<?>, Set<ID>>();
+        int size = Math.min(variables.size(), types.size());
+        for (int i = 0; i < size; i++) {
+            Class<?> type = types.get(i);
+            if (type.isEnum() || !session.getConfiguration().isMapped(type)) {
+                continue;
+            }
+            for (Map<String, NODE> row : rows) {
+                NODE node = row.get(variables.get(i));
+                if (node != null && node.isResource()) {
+                    Set<ID> typeIds = ids.get(type);
+                    if (typeIds == null) {
+                        typeIds = new LinkedHashSet<ID>();
+                        ids.put(type, typeIds);
+                    }
+                    typeIds.add(node.asResource());
+                }
             }
+        }
+        for (Map.Entry<Class<?>, Set<ID>> entry : ids.entrySet()) {
+            session.getAll((Class<Object>) entry.getKey(), entry.getValue().toArray(new ID[entry.getValue().size()]));
+        }
+    }
+
+    /**
+     * Iterator which reads the rows in batches and preloads the referenced
+     * instances of each batch before the rows are converted
+     */
+    private abstract class LookAheadIterator<T> implements CloseableIterator<T> {
+
+        private final LinkedList<Map<String, NODE>> buffer = new LinkedList<Map<String, NODE>>();
+
+        private final CloseableIterator<Map<String, NODE>> results;
+
+        private final List<String> variables;
 
+        private final List<Class<?>> types;
+
+        LookAheadIterator(TupleQuery query, List<Class<?>> types) {
+            this.results = query.getTuples();
+            this.variables = query.getVariables();
+            this.types = types;
+        }
+
+        @Override
+        public void close() {
+            results.close();
+        }
+
+        protected abstract T convert(Map<String, NODE> row, List<String> variables);
+
+        @Override
+        public boolean hasNext() {
+            return !buffer.isEmpty() || results.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (buffer.isEmpty()) {
+                while (buffer.size() < batchSize && results.hasNext()) {
+                    buffer.add(results.next());
+                }
+                preload(buffer, variables, types);
+            }
+            return convert(buffer.removeFirst(), variables);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    @Override
+    public CloseableIterator<Tuple> iterate(final Expression<?>... args) {
+        queryMixin.addProjection(args);
+        final QTuple qTuple = new QTuple(args);
+        return new LookAheadIterator<Tuple>(createTupleQuery(false), getProjectionTypes(args)) {
             @Override
-            public Tuple next() {
-                Map<String, NODE> row = results.next();
+            protected Tuple convert(Map<String, NODE> row, List<String> variables) {
                 Object[] rv = new Object[args.length];
                 AtomicInteger offset = new AtomicInteger();
                 for (int i = 0; i < rv.length; i++) {
-                    rv[i] = getAsProjectionValue(args[i], row, query.getVariables(), offset);
+                    rv[i] = getAsProjectionValue(args[i], row, variables, offset);
                 }
                 return qTuple.newInstance(rv);
             }
-
-            @Override
-            public void remove() {
-                results.remove();
-            }
         };
     }
 
@@ -249,29 +349,10 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
     public <RT> CloseableIterator<RT> iterate(Expression<RT> p) {
         final Expression<RT> projection = normalize(p);
         queryMixin.addProjection(projection);
-        final TupleQuery query = createTupleQuery(false);
-        final CloseableIterator<Map<String, NODE>> results = query.getTuples();
-        return new CloseableIterator<RT>() {
+        return new LookAheadIterator<RT>(createTupleQuery(false), getProjectionTypes(projection)) {
             @Override
-            public void close() {
-                results.close();
-            }
-
-            @Override
-            public boolean hasNext() {
-                return results.hasNext();
-            }
-
-            @Override
-            public RT next() {
-                Map<String, NODE> row = results.next();
-                return getAsProjectionValue(projection, row, query
-                        .getVariables(), new AtomicInteger());
-            }
-
-            @Override
-            public void remove() {
-                results.remove();
+            protected RT convert(Map<String, NODE> row, List<String> variables) {
+                return getAsProjectionValue(projection, row, variables, new AtomicInteger());
             }
         };
     }
@@ -280,6 +361,10 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
     public <RT> SearchResults<RT> listResults(Expression<RT> p) {
         Expression<RT> projection = normalize(p);
         queryMixin.addProjection(projection);
+        if (!connection.getQueryOptions().isCountViaAggregation()) {
+            // counting would iterate all the rows anyway
+            return listResultsInOnePass(projection);
+        }
         long total = count();
 
         QueryMetadata md = queryMixin.getMetadata();
@@ -291,11 +376,146 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
                 total);
     }
 
+    /**
+     * Count the rows and collect the rows of the requested window in one
+     * pass over the unrestricted results
+     *
+     * <p>
+     * Ordered queries with a limit are evaluated unordered with the order
+     * targets as additional columns, and only the first offset + limit rows
+     * are kept, so that the backend doesn't need to sort all the rows.
+     * </p>
+     */
+    private <RT> SearchResults<RT> listResultsInOnePass(Expression<RT> projection) {
+        QueryMetadata md = queryMixin.getMetadata();
+        QueryModifiers modifiers = md.getModifiers();
+        List<OrderSpecifier<?>> orderBy = new ArrayList<OrderSpecifier<?>>(md.getOrderBy());
+        long offset = modifiers.getOffset() != null ? modifiers.getOffset().longValue() : 0l;
+        long limit = modifiers.getLimit() != null ? modifiers.getLimit().longValue() : Long.MAX_VALUE;
+        boolean topK = modifiers.getLimit() != null && offset + limit < Integer.MAX_VALUE
+                && !orderBy.isEmpty() && !md.isDistinct() && isPaths(orderBy);
+
+        md.setModifiers(QueryModifiers.EMPTY);
+        if (topK) {
+            md.clearOrderBy();
+            for (OrderSpecifier<?> os : orderBy) {
+                md.addProjection(os.getTarget());
+            }
+        }
+        TupleQuery query;
+        try {
+            query = createTupleQuery(false);
+        } finally {
+            md.setModifiers(modifiers);
+            if (topK) {
+                md.clearProjection();
+                md.addProjection(projection);
+                for (OrderSpecifier<?> os : orderBy) {
+                    md.addOrderBy(os);
+                }
+            }
+        }
+        List<String> variables = query.getVariables();
+
+        List<Map<String, NODE>> rows = new ArrayList<Map<String, NODE>>();
+        long total = 0;
+        CloseableIterator<Map<String, NODE>> results = query.getTuples();
+        try {
+            if (topK) {
+                List<String> targets = variables.subList(variables.size() - orderBy.size(), variables.size());
+                Comparator<Map<String, NODE>> comparator = createOrderComparator(orderBy, targets);
+                int size = (int) (offset + limit);
+                // the head of the queue is the greatest of the kept rows
+                PriorityQueue<Map<String, NODE>> queue = new PriorityQueue<Map<String, NODE>>(
+                        Math.max(1, Math.min(size, 1024)), Collections.reverseOrder(comparator));
+                while (results.hasNext()) {
+                    Map<String, NODE> row = results.next();
+                    if (queue.size() < size) {
+                        queue.add(row);
+                    } else if (size > 0 && comparator.compare(row, queue.peek()) < 0) {
+                        queue.poll();
+                        queue.add(row);
+                    }
+                    total++;
+                }
+                rows.addAll(queue);
+                Collections.sort(rows, comparator);
+                rows = rows.subList((int) Math.min(offset, rows.size()), rows.size());
+            } else {
+                while (results.hasNext()) {
+                    Map<String, NODE> row = results.next();
+                    if (total >= offset && total - offset < limit) {
+                        rows.add(row);
+                    }
+                    total++;
+                }
+            }
+        } finally {
+            results.close();
+        }
+
+        preload(rows, variables, getProjectionTypes(projection));
+        List<RT> list = new ArrayList<RT>(rows.size());
+        for (Map<String, NODE> row : rows) {
+            list.add(getAsProjectionValue(projection, row, variables, new AtomicInteger()));
+        }
+        return new SearchResults<RT>(list, modifiers.getLimit(), modifiers.getOffset(), total);
+    }
+
+    private static boolean isPaths(List<OrderSpecifier<?>> orderBy) {
+        for (OrderSpecifier<?> os : orderBy) {
+            if (!(os.getTarget() instanceof Path<?>)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Comparator<Map<String, NODE>> createOrderComparator(List<OrderSpecifier<?>> orderBy,
+            final List<String> targets) {
+        final boolean[] descending = new boolean[orderBy.size()];
+        final OrderSpecifier.NullHandling[] nullHandling = new OrderSpecifier.NullHandling[orderBy.size()];
+        for (int i = 0; i < descending.length; i++) {
+            descending[i] = orderBy.get(i).getOrder() == Order.DESC;
+            nullHandling[i] = orderBy.get(i).getNullHandling();
+        }
+        return new Comparator<Map<String, NODE>>() {
+            @Override
+            public int compare(Map<String, NODE> r1, Map<String, NODE> r2) {
+                for (int i = 0; i < descending.length; i++) {
+                    NODE n1 = r1.get(targets.get(i));
+                    NODE n2 = r2.get(targets.get(i));
+                    if ((n1 == null) != (n2 == null) && nullHandling[i] != OrderSpecifier.NullHandling.Default) {
+                        return (n1 == null) == (nullHandling[i] == OrderSpecifier.NullHandling.NullsFirst) ? -1 : 1;
+                    }
+                    int rv = nodeComparator.compare(n1, n2);
+                    if (rv != 0) {
+                        return descending[i] ? -rv : rv;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
     @Override
     public SearchResults<Tuple> listResults(Expression<?>... args) {
         return listResults(new QTuple(args));
     }
 
+    /**
+     * Set the amount of rows which are read ahead in iterate to load the
+     * projected instances in bulk
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize needs to be positive, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> Expression<T> normalize(Expression<T> expr) {
         if (expr instanceof FactoryExpression<?>) {
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mysema.query.types.EntityPath;
+import com.mysema.query.types.Predicate;
+import com.mysema.rdfbean.object.BeanQuery;
+import com.mysema.rdfbean.object.Session;
+import com.mysema.rdfbean.object.SessionCallback;
+import com.mysema.rdfbean.object.SessionFactory;
+
+/**
+ * CountCache caches the total counts of paged queries, so that paging through
+ * the results doesn't count them again for every page
+ *
+ * <p>
+ * Counts are keyed by the SessionFactory and the fingerprint of the sources
+ * and the condition of the query and expire after the given time to live. A
+ * CountCache instance can be shared by the list sources and data sources of
+ * an application, also when they use different SessionFactories.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class CountCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+    /**
+     * Get the fingerprint of a count query
+     *
+     * @param sources
+     * @param condition
+     * @return
+     */
+    public static String fingerprint(EntityPath<?>[] sources, @Nullable Predicate condition) {
+        StringBuilder builder = new StringBuilder();
+        for (EntityPath<?> source : sources) {
+            builder.append(source.getType().getName()).append(' ').append(source).append(", ");
+        }
+        if (condition != null) {
+            builder.append("where ").append(condition);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * cache key of a count query of a SessionFactory
+     */
+    private static final class Key {
+
+        private final SessionFactory sessionFactory;
+
+        private final String fingerprint;
+
+        Key(SessionFactory sessionFactory, String fingerprint) {
+            this.sessionFactory = sessionFactory;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof Key) {
+                Key other = (Key) o;
+                return sessionFactory == other.sessionFactory && fingerprint.equals(other.fingerprint);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(sessionFactory) + fingerprint.hashCode();
+        }
+
+    }
+
+    private final Cache<Key, Long> cache;
+
+    public CountCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Create a new CountCache
+     *
+     * @param maximumSize
+     *            maximum amount of cached counts
+     * @param timeToLive
+     *            time to live of counts in milliseconds
+     */
+    public CountCache(long maximumSize, long timeToLive) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Get the cached count of the given query or count the results via the
+     * given SessionFactory
+     *
+     * @param sessionFactory
+     * @param sources
+     * @param condition
+     * @return
+     */
+    public long count(SessionFactory sessionFactory, final EntityPath<?>[] sources, @Nullable final Predicate condition) {
+        Key key = new Key(sessionFactory, fingerprint(sources, condition));
+        Long count = cache.getIfPresent(key);
+        if (count == null) {
+            count = sessionFactory.execute(new SessionCallback<Long>() {
+                @Override
+                public Long doInSession(Session session) {
+                    BeanQuery countQry = session.from(sources);
+                    if (condition != null) {
+                        countQry.where(condition);
+                    }
+                    return countQry.count();
+                }
+            });
+            cache.put(key, count);
+        }
+        return count.longValue();
+    }
+
+    @Nullable
+    public Long get(SessionFactory sessionFactory, String fingerprint) {
+        return cache.getIfPresent(new Key(sessionFactory, fingerprint));
+    }
+
+    public void put(SessionFactory sessionFactory, String fingerprint, long count) {
+        cache.put(new Key(sessionFactory, fingerprint), count);
+    }
+
+    public void invalidate(SessionFactory sessionFactory, String fingerprint) {
+        cache.invalidate(new Key(sessionFactory, fingerprint));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.base.Strings;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.object.MappingIndex;
+
+/**
+ * MappingIndexProcessor writes the {@link MappingIndex} of the
+ * &#64;ClassMapping annotated classes of the compilation to
+ * {@value MappingIndex#RESOURCE}
+ *
+ * <p>
+ * The index is read by
+ * {@link com.mysema.rdfbean.object.IndexedConfiguration}. On incremental
+ * builds the classes of the current compilation are merged into the existing
+ * index of the output directory. Entries of classes which no longer exist or
+ * are no longer mapped are dropped.
+ * </p>
+ *
+ * @author tiwe
+ */
+@SupportedAnnotationTypes("com.mysema.rdfbean.annotations.ClassMapping")
+@SupportedSourceVersion(SourceVersion.RELEASE_6)
+public class MappingIndexProcessor extends AbstractProcessor {
+
+    private final MappingIndex index = new MappingIndex();
+
+    private boolean initialized, merged;
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!initialized) {
+            initialized = true;
+            readIndex();
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(ClassMapping.class)) {
+            if (element instanceof TypeElement) {
+                index.add(createEntry((TypeElement) element));
+            }
+        }
+        if (roundEnv.processingOver() && (merged || !index.isEmpty())) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void readIndex() {
+        MappingIndex existing = new MappingIndex();
+        try {
+            FileObject file = processingEnv.getFiler().getResource(
+                    StandardLocation.CLASS_OUTPUT, "", MappingIndex.RESOURCE);
+            Reader reader = file.openReader(true);
+            try {
+                existing.read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // no previous index
+            return;
+        } catch (IllegalArgumentException e) {
+            // no previous index
+            return;
+        }
+        merged = true;
+        for (MappingIndex.Entry entry : existing.getEntries()) {
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(entry.getClassName().replace('$', '.'));
+            if (type != null && type.getAnnotation(ClassMapping.class) != null) {
+                index.add(entry);
+            }
+        }
+    }
+
+    private MappingIndex.Entry createEntry(TypeElement type) {
+        ClassMapping classMapping = type.getAnnotation(ClassMapping.class);
+        String ln = classMapping.ln();
+        if (Strings.isNullOrEmpty(ln)) {
+            ln = type.getSimpleName().toString();
+        }
+
+        List<String> superTypes = new ArrayList<String>();
+        addSuperType(superTypes, type.getSuperclass());
+        for (TypeMirror iface : type.getInterfaces()) {
+            addSuperType(superTypes, iface);
+        }
+
+        String parent = null;
+        List<String> enumConstants = new ArrayList<String>();
+        if (type.getKind() == ElementKind.ENUM) {
+            parent = getParent(classMapping);
+            for (Element element : type.getEnclosedElements()) {
+                if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+                    enumConstants.add(element.getSimpleName().toString());
+                }
+            }
+        }
+        return new MappingIndex.Entry(getName(type), classMapping.ns(), ln, superTypes, parent, enumConstants);
+    }
+
+    private void addSuperType(List<String> superTypes, TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+            // same filter as in MappedClassFactory
+            if (!packageName.startsWith("java")) {
+                superTypes.add(getName(element));
+            }
+        }
+    }
+
+    private String getName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    @Nullable
+    private String getParent(ClassMapping classMapping) {
+        TypeMirror parent;
+        try {
+            Class<?> parentClass = classMapping.parent();
+            return Object.class.equals(parentClass) ? null : parentClass.getName();
+        } catch (MirroredTypeException e) {
+            parent = e.getTypeMirror();
+        }
+        if (parent.getKind() == TypeKind.DECLARED) {
+            String name = getName((TypeElement) ((DeclaredType) parent).asElement());
+            return Object.class.getName().equals(name) ? null : name;
+        } else {
+            return null;
+        }
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "", MappingIndex.RESOURCE);
+            Writer writer = file.openWriter();
+            try {
+                index.write(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Writing of " + MappingIndex.RESOURCE + " failed : " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+
+public class ConcurrentMiniConnectionTest {
+
+    private final ConcurrentMiniRepository repository = new ConcurrentMiniRepository();
+
+    private final STMT stmt = new STMT(RDF.type, RDF.type, RDF.Property);
+
+    @Test
+    public void Update_without_Transaction() {
+        RDFConnection conn = repository.openConnection();
+        conn.update(null, Collections.singleton(stmt));
+        assertTrue(repository.exists(RDF.type, null, null, null));
+        conn.update(Collections.singleton(stmt), null);
+        assertFalse(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test
+    public void Commit() {
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.update(null, Collections.singleton(stmt));
+        assertTrue(conn.exists(RDF.type, null, null, null, false));
+        assertFalse(repository.exists(RDF.type, null, null, null));
+        tx.commit();
+        assertFalse(tx.isActive());
+        assertTrue(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test
+    public void Rollback() {
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.update(null, Collections.singleton(stmt));
+        tx.rollback();
+        assertFalse(conn.exists(RDF.type, null, null, null, false));
+        assertFalse(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test
+    public void Remove_in_Transaction() {
+        repository.add(stmt);
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.remove(RDF.type, null, null, null);
+        assertFalse(conn.exists(RDF.type, null, null, null, false));
+        assertTrue(repository.exists(RDF.type, null, null, null));
+        tx.commit();
+        assertFalse(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test
+    public void Repeatable_Reads() {
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(true, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        repository.add(stmt);
+        assertFalse(conn.exists(RDF.type, null, null, null, false));
+        tx.commit();
+        assertTrue(conn.exists(RDF.type, null, null, null, false));
+    }
+
+    @Test
+    public void Add_after_Remove_of_missing_Statement() {
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.update(Collections.singleton(stmt), null);
+        conn.update(null, Collections.singleton(stmt));
+        assertTrue(conn.exists(RDF.type, null, null, null, false));
+        tx.commit();
+        assertTrue(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test
+    public void Added_Statements_are_not_Duplicated() {
+        repository.add(stmt);
+        RDFConnection conn = repository.openConnection();
+        RDFBeanTransaction tx = conn.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.update(null, Collections.singleton(stmt));
+        assertEquals(1, IteratorAdapter.asList(conn.findStatements(RDF.type, null, null, null, false)).size());
+        tx.commit();
+    }
+
+    @Test
+    public void Last_Commit_wins() {
+        repository.add(stmt);
+        RDFConnection conn1 = repository.openConnection();
+        RDFConnection conn2 = repository.openConnection();
+        RDFBeanTransaction tx1 = conn1.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        RDFBeanTransaction tx2 = conn2.beginTransaction(false, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn1.update(Collections.singleton(stmt), null);
+        conn2.update(null, Collections.singleton(stmt));
+        tx1.commit();
+        assertFalse(repository.exists(RDF.type, null, null, null));
+        tx2.commit();
+        assertTrue(repository.exists(RDF.type, null, null, null));
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void ReadOnly() {
+        RDFConnection conn = repository.openConnection();
+        conn.beginTransaction(true, RDFBeanTransaction.TIMEOUT, RDFBeanTransaction.ISOLATION);
+        conn.update(null, Collections.singleton(stmt));
+    }
+
+}
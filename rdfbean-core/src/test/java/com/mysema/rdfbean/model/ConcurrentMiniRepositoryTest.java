@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+
+public class ConcurrentMiniRepositoryTest {
+
+    private final ConcurrentMiniRepository repository = new ConcurrentMiniRepository(4, true);
+
+    @Test
+    public void Add_and_Find() {
+        repository.add(
+                new STMT(RDF.type, RDF.type, RDF.Property),
+                new STMT(RDF.type, RDFS.label, new LIT("type")),
+                new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        assertEquals(2, IteratorAdapter.asList(repository.findStatements(RDF.type, null, null, null, false)).size());
+        assertEquals(1, IteratorAdapter.asList(repository.findStatements(null, null, RDFS.Class, null, false)).size());
+        assertEquals(2, IteratorAdapter.asList(repository.findStatements(null, RDF.type, null, null, false)).size());
+        assertTrue(repository.exists(null, RDFS.label, new LIT("type"), null));
+    }
+
+    @Test
+    public void Duplicates() {
+        repository.add(new STMT(RDF.type, RDF.type, RDF.Property), new STMT(RDF.type, RDF.type, RDF.Property));
+        repository.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        assertEquals(1, IteratorAdapter.asList(repository.findStatements(null, null, null, null, false)).size());
+    }
+
+    @Test
+    public void Load() {
+        UID context = new UID(TEST.NS, "context");
+        repository.load(Format.TURTLE, getClass().getResourceAsStream("/test.ttl"), context, false);
+        assertTrue(repository.exists(new UID(TEST.NS, "instance1"), RDF.type, new UID(TEST.NS, "TestType1"), context));
+    }
+
+    @Test
+    public void Remove() {
+        repository.add(
+                new STMT(RDF.type, RDF.type, RDF.Property),
+                new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        repository.remove(null, null, RDFS.Class, null);
+        assertFalse(repository.exists(RDFS.Resource, null, null, null));
+        assertTrue(repository.exists(RDF.type, null, null, null));
+        repository.remove(null, null, null, null);
+        assertFalse(repository.exists(null, null, null, null));
+    }
+
+    @Test
+    public void Snapshot_Isolation() {
+        repository.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        ConcurrentMiniRepository.Snapshot snapshot = repository.getSnapshot();
+        repository.update(
+                Arrays.asList(new STMT(RDF.type, RDF.type, RDF.Property)),
+                Arrays.asList(new STMT(RDFS.Resource, RDF.type, RDFS.Class)));
+        assertTrue(snapshot.iterator(RDF.type, null, null, null, false).hasNext());
+        assertFalse(snapshot.iterator(RDFS.Resource, null, null, null, false).hasNext());
+        assertFalse(repository.exists(RDF.type, null, null, null));
+        assertTrue(repository.exists(RDFS.Resource, null, null, null));
+    }
+
+    @Test
+    public void Random_Updates() {
+        Random random = new Random(42);
+        Set<STMT> expected = new HashSet<STMT>();
+        ConcurrentMiniRepository.Snapshot snapshot = repository.getSnapshot();
+        for (int i = 0; i < 2000; i++) {
+            List<STMT> added = new ArrayList<STMT>();
+            List<STMT> removed = new ArrayList<STMT>();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                STMT stmt = new STMT(new UID(TEST.NS, "s" + random.nextInt(500)), RDF.type,
+                        new UID(TEST.NS, "o" + random.nextInt(500)));
+                if (random.nextInt(3) == 0) {
+                    removed.add(stmt);
+                } else {
+                    added.add(stmt);
+                }
+            }
+            repository.update(removed, added);
+            expected.removeAll(removed);
+            expected.addAll(added);
+        }
+        assertEquals(expected, new HashSet<STMT>(
+                IteratorAdapter.asList(repository.findStatements(null, null, null, null, false))));
+        for (STMT stmt : expected) {
+            assertTrue(repository.exists(stmt.getSubject(), null, stmt.getObject(), null));
+            assertTrue(repository.exists(null, null, stmt.getObject(), null));
+        }
+        assertFalse(snapshot.iterator(null, null, null, null, false).hasNext());
+
+        repository.remove(null, RDF.type, null, null);
+        assertFalse(repository.exists(null, null, null, null));
+    }
+
+    @Test
+    public void Concurrent_Updates_are_Atomic() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int reads = 0;
+                    while (running.get()) {
+                        // each batch adds two statements per type, so the
+                        // amount of matches must always be even
+                        int count = IteratorAdapter.asList(
+                                repository.findStatements(null, RDF.type, RDFS.Class, null, false)).size();
+                        if (count % 2 != 0) {
+                            throw new IllegalStateException("Partial update visible : " + count);
+                        }
+                        reads++;
+                    }
+                    return reads;
+                }
+            }));
+        }
+        List<Future<Integer>> writers = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 2; i++) {
+            final int writer = i;
+            writers.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    for (int j = 0; j < 500; j++) {
+                        repository.add(
+                                new STMT(new UID(TEST.NS, "a" + writer + "_" + j), RDF.type, RDFS.Class),
+                                new STMT(new UID(TEST.NS, "b" + writer + "_" + j), RDF.type, RDFS.Class));
+                    }
+                    return 500;
+                }
+            }));
+        }
+        for (Future<Integer> writer : writers) {
+            writer.get();
+        }
+        running.set(false);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get() > 0);
+        }
+        executor.shutdown();
+        assertEquals(2000, IteratorAdapter.asList(repository.findStatements(null, RDF.type, null, null, false)).size());
+    }
+
+}
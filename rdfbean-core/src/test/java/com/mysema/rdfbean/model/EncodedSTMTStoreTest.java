@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+
+public class EncodedSTMTStoreTest {
+
+    private final EncodedSTMTStore store = new EncodedSTMTStore(16, true);
+
+    private final UID context = new UID(TEST.NS, "context");
+
+    @Test
+    public void Add() {
+        assertTrue(store.add(new STMT(RDF.type, RDF.type, RDF.Property)));
+        assertFalse(store.add(new STMT(RDF.type, RDF.type, RDF.Property)));
+        assertTrue(store.add(new STMT(RDF.type, RDF.type, RDF.Property, context)));
+        assertTrue(store.add(new STMT(RDF.type, RDF.type, RDF.Property, null, false)));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void Find() {
+        store.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        store.add(new STMT(RDF.type, RDFS.label, new LIT("type")));
+        store.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class, context));
+        store.add(new STMT(RDFS.Resource, RDFS.label, new LIT("Resource"), null, false));
+
+        assertEquals(2, find(RDF.type, null, null, null, false).size());
+        assertEquals(1, find(null, null, RDFS.Class, null, false).size());
+        assertEquals(1, find(null, RDFS.label, new LIT("type"), null, false).size());
+        assertEquals(2, find(null, RDF.type, null, null, false).size());
+        assertEquals(1, find(null, null, null, context, false).size());
+        assertEquals(3, find(null, null, null, null, false).size());
+        assertEquals(4, find(null, null, null, null, true).size());
+        assertEquals(0, find(RDFS.Class, null, null, null, true).size());
+
+        STMT stmt = find(RDFS.Resource, RDF.type, null, null, false).get(0);
+        assertEquals(new STMT(RDFS.Resource, RDF.type, RDFS.Class, context), stmt);
+    }
+
+    @Test
+    public void Remove() {
+        STMT stmt = new STMT(RDF.type, RDF.type, RDF.Property);
+        store.add(stmt);
+        store.add(new STMT(RDF.type, RDFS.label, new LIT("type")));
+        assertTrue(store.remove(stmt));
+        assertFalse(store.remove(stmt));
+        assertFalse(store.remove(new STMT(RDFS.Resource, RDF.type, RDFS.Class)));
+        assertEquals(1, store.size());
+        assertEquals(0, find(null, null, RDF.Property, null, false).size());
+        assertTrue(store.add(stmt));
+        assertEquals(1, find(null, null, RDF.Property, null, false).size());
+    }
+
+    @Test
+    public void Compaction() {
+        for (int i = 0; i < 5000; i++) {
+            store.add(new STMT(new UID(TEST.NS, "s" + i), RDF.type, RDFS.Resource));
+        }
+        for (int i = 0; i < 4000; i++) {
+            assertTrue(store.remove(new STMT(new UID(TEST.NS, "s" + i), RDF.type, RDFS.Resource)));
+        }
+        assertEquals(1000, store.size());
+        assertEquals(1000, find(null, null, RDFS.Resource, null, false).size());
+        assertEquals(1, find(new UID(TEST.NS, "s4999"), null, null, null, false).size());
+        assertEquals(0, find(new UID(TEST.NS, "s0"), null, null, null, false).size());
+        assertTrue(store.getDictionary().size() < 5000);
+    }
+
+    private List<STMT> find(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+            @Nullable UID context, boolean includeInferred) {
+        return IteratorAdapter.asList(store.iterator(subject, predicate, object, context, includeInferred));
+    }
+
+}
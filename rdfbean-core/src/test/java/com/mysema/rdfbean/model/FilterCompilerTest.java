@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.mysema.query.types.ConstantImpl;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Ops;
+import com.mysema.query.types.expr.BooleanExpression;
+import com.mysema.query.types.expr.BooleanOperation;
+
+public class FilterCompilerTest {
+
+    private static final QLIT label = new QLIT("label");
+
+    private final VariableSlots slots = new VariableSlots();
+
+    private final FilterCompiler compiler = new FilterCompiler(slots);
+
+    private boolean matches(Expression<?> filter, String value) {
+        Predicate<NODE[]> predicate = compiler.compilePredicate(filter);
+        NODE[] row = new NODE[slots.size()];
+        row[slots.getSlot("label")] = value != null ? new LIT(value) : null;
+        return predicate.apply(row);
+    }
+
+    @Test
+    public void Like() {
+        assertTrue(matches(label.like("abc"), "abc"));
+        assertFalse(matches(label.like("abc"), "abcd"));
+        assertTrue(matches(label.like("ab%"), "abcd"));
+        assertFalse(matches(label.like("ab%"), "xabcd"));
+        assertTrue(matches(label.like("%cd"), "abcd"));
+        assertTrue(matches(label.like("%bc%"), "abcd"));
+        assertFalse(matches(label.like("%bc%"), "acbd"));
+        assertTrue(matches(label.like("a%c%e"), "abcde"));
+        assertTrue(matches(label.like("a_c"), "abc"));
+        assertFalse(matches(label.like("a_c"), "abbc"));
+        assertFalse(matches(label.like("a%"), null));
+    }
+
+    @Test
+    public void Like_quotes_Literals() {
+        assertTrue(matches(label.like("a.c%"), "a.cd"));
+        assertFalse(matches(label.like("a.c_"), "abcd"));
+        assertFalse(matches(label.like("a.c%d"), "abcd"));
+        assertTrue(matches(label.like("(a)_"), "(a)b"));
+    }
+
+    @Test
+    public void IgnoreCase_Operations() {
+        assertTrue(matches(label.stringValue().startsWithIgnoreCase("AB"), "abc"));
+        assertFalse(matches(label.stringValue().startsWithIgnoreCase("BC"), "abc"));
+        assertTrue(matches(label.stringValue().endsWithIgnoreCase("BC"), "abc"));
+        assertFalse(matches(label.stringValue().endsWithIgnoreCase("ABCD"), "abc"));
+        assertTrue(matches(label.stringValue().containsIgnoreCase("B"), "abc"));
+        assertTrue(matches(label.stringValue().containsIgnoreCase(""), "abc"));
+        assertFalse(matches(label.stringValue().containsIgnoreCase("CB"), "abc"));
+        assertTrue(matches(label.eqIgnoreCase("ABC"), "abc"));
+        assertTrue(matches(BooleanOperation.create(Ops.MATCHES_IC, label, new ConstantImpl<String>("A.*")), "abc"));
+    }
+
+    @Test
+    public void Constants_are_Folded() {
+        BooleanExpression alwaysTrue = BooleanOperation.create(Ops.EQ, new ConstantImpl<String>("a"),
+                new ConstantImpl<String>("a"));
+        BooleanExpression alwaysFalse = BooleanOperation.create(Ops.EQ, new ConstantImpl<String>("a"),
+                new ConstantImpl<String>("b"));
+        assertSame(Predicates.alwaysTrue(), compiler.compilePredicate(alwaysTrue));
+        assertSame(Predicates.alwaysFalse(), compiler.compilePredicate(alwaysFalse));
+        assertSame(Predicates.alwaysFalse(), compiler.compilePredicate(alwaysFalse.and(label.like("a%"))));
+        assertSame(Predicates.alwaysTrue(), compiler.compilePredicate(alwaysTrue.or(label.like("a%"))));
+        assertTrue(matches(alwaysTrue.and(label.like("a%")), "ab"));
+        assertFalse(matches(alwaysTrue.and(label.like("a%")), "ba"));
+    }
+
+    @Test
+    public void In() {
+        BooleanExpression in = label.in(Arrays.asList(new LIT("a"), new LIT("b")));
+        assertTrue(matches(in, "a"));
+        assertTrue(matches(in, "b"));
+        assertFalse(matches(in, "c"));
+        assertFalse(matches(in, null));
+    }
+
+    @Test
+    public void Null_Values() {
+        assertTrue(matches(label.isNull(), null));
+        assertFalse(matches(label.isNotNull(), null));
+        assertFalse(matches(label.stringValue().startsWithIgnoreCase("a"), null));
+    }
+
+    @Test
+    public void Patterns_are_shared_by_Threads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 100; i++) {
+                final String regex = "a" + (i % 10) + ".*";
+                final String value = "a" + (i % 10) + "b";
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        FilterCompiler compiler = new FilterCompiler(new VariableSlots());
+                        return compiler.compilePredicate(label.matches(regex)).apply(new NODE[] { new LIT(value) });
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(Boolean.TRUE, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+public class IndexedEncodedMiniRepositoryTest extends MiniRepositoryTest {
+
+    @Override
+    protected MiniRepository createRepository() {
+        return new MiniRepository(1024, true, true, true, true);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+
+public class JoinPlannerTest {
+
+    private static final UID PERSON = new UID(TEST.NS, "Person");
+
+    private static final UID NAME = new UID(TEST.NS, "name");
+
+    private static final QNODE<ID> subject = new QNODE<ID>(ID.class, "s");
+
+    private static final QNODE<NODE> object = new QNODE<NODE>(NODE.class, "o");
+
+    private final MiniRepository repository = new MiniRepository(16, true, true, true, true);
+
+    private final JoinPlanner planner = new JoinPlanner(repository);
+
+    @Before
+    public void setUp() {
+        List<STMT> stmts = new ArrayList<STMT>();
+        for (int i = 0; i < 1000; i++) {
+            UID id = new UID(TEST.NS, "p" + i);
+            stmts.add(new STMT(id, RDF.type, PERSON));
+            stmts.add(new STMT(id, NAME, new LIT("name" + i)));
+        }
+        repository.add(stmts.toArray(new STMT[stmts.size()]));
+    }
+
+    @Test
+    public void Estimate() {
+        assertEquals(1000.0, planner.estimate(Blocks.pattern(subject, RDF.type, PERSON), null,
+                Collections.<String> emptySet()), 0.0);
+        assertEquals(10.0, planner.estimate(Blocks.pattern(subject, NAME, new LIT("name1")), null,
+                Collections.<String> emptySet()), 0.0);
+        assertEquals(2.0, planner.estimate(Blocks.pattern(subject, NAME, object), null,
+                Collections.singleton("s")), 0.0);
+    }
+
+    @Test
+    public void Order() {
+        PatternBlock type = Blocks.pattern(subject, RDF.type, PERSON);
+        PatternBlock name = Blocks.pattern(subject, NAME, new LIT("name1"));
+        List<Block> blocks = planner.order(Arrays.<Block> asList(type, name), Collections.<String> emptySet());
+        assertEquals(Arrays.<Block> asList(name, type), blocks);
+    }
+
+    @Test
+    public void Order_prefers_Connected_Patterns() {
+        PatternBlock type = Blocks.pattern(subject, RDF.type, PERSON);
+        PatternBlock other = Blocks.pattern(QNODE.c, RDF.type, QNODE.type);
+        PatternBlock name = Blocks.pattern(subject, NAME, object);
+        List<Block> blocks = planner.order(Arrays.<Block> asList(type, other, name), Collections.<String> emptySet());
+        assertEquals(Arrays.<Block> asList(type, name, other), blocks);
+    }
+
+    @Test
+    public void Order_keeps_Position_of_other_Blocks() {
+        PatternBlock type = Blocks.pattern(subject, RDF.type, PERSON);
+        PatternBlock name = Blocks.pattern(subject, NAME, new LIT("name1"));
+        Block optional = Blocks.optional(Blocks.pattern(subject, RDFS.label, object));
+        List<Block> blocks = planner.order(Arrays.<Block> asList(type, optional, name),
+                Collections.<String> emptySet());
+        assertEquals(Arrays.<Block> asList(type, optional, name), blocks);
+    }
+
+    @Test
+    public void IsHashJoin() {
+        PatternBlock name = Blocks.pattern(subject, NAME, object);
+        assertTrue(planner.isHashJoin(1000, name, null, Collections.singleton("s")));
+        assertFalse(planner.isHashJoin(10, name, null, Collections.singleton("s")));
+    }
+
+    @Test
+    public void Hash_Join_Results() {
+        MiniConnection connection = repository.openConnection();
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(new RDFQueryImpl(connection)
+                .where(Blocks.pattern(subject, RDF.type, PERSON), Blocks.pattern(subject, NAME, object))
+                .select(subject, object));
+        assertEquals(1000, rows.size());
+        for (Map<String, NODE> row : rows) {
+            String id = row.get("s").getValue();
+            assertEquals("name" + id.substring(id.lastIndexOf('p') + 1), row.get("o").getValue());
+        }
+    }
+
+    @Test
+    public void Hash_Join_with_Parameter() {
+        MiniConnection connection = repository.openConnection();
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(new RDFQueryImpl(connection)
+                .where(Blocks.pattern(subject, RDF.type, QNODE.type), Blocks.pattern(subject, NAME, object))
+                .set(QNODE.type, PERSON)
+                .select(subject, object));
+        assertEquals(1000, rows.size());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.rdfbean.TEST;
+
+/**
+ * Memory and throughput comparison of the PredicateCache/STMTCache based and
+ * the dictionary encoded MiniRepository layout
+ */
+public class MiniRepositoryLoadTest {
+
+    private static final int SIZE = 1000000;
+
+    @Test
+    @Ignore
+    public void test() {
+        List<STMT> stmts = new ArrayList<STMT>(SIZE);
+        UID[] predicates = new UID[] { RDFS.label, RDFS.comment, RDF.value };
+        UID[] types = new UID[] { RDFS.Class, RDFS.Resource, RDF.Property };
+        for (int i = 0; i < SIZE / 4; i++) {
+            UID subject = new UID(TEST.NS, "s" + i);
+            stmts.add(new STMT(subject, RDF.type, types[i % types.length]));
+            for (UID predicate : predicates) {
+                stmts.add(new STMT(subject, predicate, new LIT(String.valueOf(i % 1000))));
+            }
+        }
+
+        loadTest("PredicateCache/STMTCache", false, stmts);
+        loadTest("dictionary encoded", true, stmts);
+    }
+
+    private void loadTest(String label, boolean dictionaryEncoded, List<STMT> stmts) {
+        long m1 = usedMemory();
+        long t1 = System.currentTimeMillis();
+        MiniRepository repository = new MiniRepository(1024, true, dictionaryEncoded);
+        for (STMT stmt : stmts) {
+            repository.add(stmt);
+        }
+        long t2 = System.currentTimeMillis();
+        long m2 = usedMemory();
+
+        int count = 0;
+        for (int i = 0; i < SIZE / 4; i += 10) {
+            count += count(repository.findStatements(new UID(TEST.NS, "s" + i), null, null, null, false));
+        }
+        count += count(repository.findStatements(null, null, RDFS.Class, null, false));
+        long t3 = System.currentTimeMillis();
+
+        System.out.println(label + " : " + stmts.size() + " statements, "
+                + ((m2 - m1) / stmts.size()) + " bytes/stmt, "
+                + (t2 - t1) + " ms load, "
+                + (t3 - t2) + " ms for " + count + " reads");
+    }
+
+    private int count(CloseableIterator<STMT> stmts) {
+        int count = 0;
+        try {
+            while (stmts.hasNext()) {
+                stmts.next();
+                count++;
+            }
+        } finally {
+            stmts.close();
+        }
+        return count;
+    }
+
+    private long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
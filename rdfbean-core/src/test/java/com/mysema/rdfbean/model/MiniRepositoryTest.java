@@ -3,6 +3,7 @@ package com.mysema.rdfbean.model;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -15,10 +16,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.rdfbean.TEST;
 
 public class MiniRepositoryTest {
 
-    private final MiniRepository repository = new MiniRepository();
+    private final MiniRepository repository = createRepository();
+
+    protected MiniRepository createRepository() {
+        return new MiniRepository();
+    }
 
     @Before
     public void setUp() {
@@ -78,6 +84,40 @@ public class MiniRepositoryTest {
         assertFalse(exists(null, RDF.type, null, null));
     }
 
+    @Test
+    public void Find_by_Predicate_and_Literal() {
+        assertTrue(exists(null, RDFS.label, new LIT("Resource"), null));
+        assertFalse(exists(null, RDFS.label, new LIT("Class"), null));
+        assertFalse(exists(null, RDF.type, new LIT("Resource"), null));
+    }
+
+    @Test
+    public void Find_by_Context() {
+        UID context = new UID(TEST.NS, "context");
+        repository.add(new STMT(RDFS.Class, RDFS.label, new LIT("Class"), context));
+        assertTrue(exists(null, null, null, context));
+        assertTrue(exists(null, RDFS.label, null, context));
+        assertFalse(exists(null, RDF.type, null, context));
+        assertFalse(exists(RDF.type, null, null, context));
+    }
+
+    @Test
+    public void Remove_by_Context() {
+        UID context = new UID(TEST.NS, "context");
+        repository.add(new STMT(RDFS.Class, RDFS.label, new LIT("Class"), context));
+        repository.remove(null, null, null, context);
+        assertFalse(exists(null, null, null, context));
+        assertFalse(exists(RDFS.Class, null, null, null));
+        assertTrue(exists(RDFS.Resource, null, null, null));
+    }
+
+    @Test
+    public void Remove_by_Predicate_and_Literal() {
+        repository.remove(null, RDFS.label, new LIT("type"), null);
+        assertFalse(exists(null, RDFS.label, new LIT("type"), null));
+        assertTrue(exists(RDF.type, RDFS.label, null, null));
+    }
+
     @Test
     public void Remove_all() {
         repository.remove(null, null, null, null);
@@ -86,6 +126,27 @@ public class MiniRepositoryTest {
         assertFalse(exists(null, RDF.type, null, null));
     }
 
+    @Test
+    public void Load_Turtle() {
+        UID context = new UID(TEST.NS, "context");
+        repository.load(Format.TURTLE, getClass().getResourceAsStream("/test.ttl"), context, false);
+        assertTrue(exists(new UID(TEST.NS, "instance1"), RDF.type, new UID(TEST.NS, "TestType1"), context));
+    }
+
+    @Test
+    public void Load_with_Replace() throws UnsupportedEncodingException {
+        UID context = new UID(TEST.NS, "context");
+        repository.add(new STMT(RDF.type, RDFS.label, new LIT("old"), context));
+        repository.load(Format.NTRIPLES, new ByteArrayInputStream(
+                "<http://example.com/a> <http://example.com/b> \"new\" .".getBytes("UTF-8")), context, true);
+        assertFalse(exists(RDF.type, RDFS.label, new LIT("old"), context));
+        assertTrue(exists(new UID("http://example.com/a"), null, new LIT("new"), context));
+        // existing contexts are not loaded again without replace
+        repository.load(Format.NTRIPLES, new ByteArrayInputStream(
+                "<http://example.com/a> <http://example.com/b> \"newer\" .".getBytes("UTF-8")), context, false);
+        assertFalse(exists(null, null, new LIT("newer"), context));
+    }
+
     private boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
         CloseableIterator<STMT> stmts = repository.findStatements(subject, predicate, object, context, false);
         boolean rv = stmts.hasNext();
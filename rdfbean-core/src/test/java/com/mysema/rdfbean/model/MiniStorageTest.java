@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+
+public class MiniStorageTest {
+
+    private static final UID CONTEXT = new UID(TEST.NS, "context");
+
+    private File dataDir;
+
+    private MiniRepository repository;
+
+    @Before
+    public void setUp() {
+        dataDir = new File("target", "ministorage-" + System.currentTimeMillis());
+        repository = open();
+    }
+
+    @After
+    public void tearDown() {
+        repository.close();
+        delete(dataDir);
+    }
+
+    private MiniRepository open() {
+        MiniRepository repo = new MiniRepository(16, true, true);
+        repo.setDataDir(dataDir);
+        repo.initialize();
+        return repo;
+    }
+
+    private void addData() {
+        repository.add(
+                new STMT(RDF.type, RDF.type, RDF.Property),
+                new STMT(RDF.type, RDFS.label, new LIT("type"), CONTEXT),
+                new STMT(RDF.type, RDFS.label, new LIT("tyyppi", new Locale("fi"))),
+                new STMT(new BID("b1"), RDFS.label, new LIT("1", XSD.intType), null, false));
+    }
+
+    private void assertData(MiniRepository repo) {
+        assertEquals(4, IteratorAdapter.asList(repo.findStatements(null, null, null, null, true)).size());
+        assertTrue(repo.exists(RDF.type, RDFS.label, new LIT("type"), CONTEXT));
+        assertTrue(repo.exists(RDF.type, null, new LIT("tyyppi", new Locale("fi")), null));
+        assertFalse(repo.exists(new BID("b1"), null, null, null));
+        assertTrue(repo.findStatements(new BID("b1"), null, new LIT("1", XSD.intType), null, true).hasNext());
+    }
+
+    @Test
+    public void Reopen_from_Snapshot() {
+        addData();
+        repository.close();
+        assertTrue(new File(dataDir, "snapshot-1.bin").exists());
+        assertEquals(0, new File(dataDir, "log.bin").length());
+
+        repository = open();
+        assertData(repository);
+    }
+
+    @Test
+    public void Reopened_Store_is_Writable() {
+        addData();
+        repository.remove(RDF.type, RDF.type, null, null);
+        repository.close();
+
+        repository = open();
+        repository.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        repository.add(new STMT(RDF.type, RDFS.label, new LIT("type"), CONTEXT));
+        assertEquals(4, IteratorAdapter.asList(repository.findStatements(null, null, null, null, true)).size());
+        assertTrue(repository.exists(null, RDF.type, RDFS.Class, null));
+        assertTrue(repository.exists(null, null, null, CONTEXT));
+        assertTrue(repository.exists(null, RDFS.label, new LIT("tyyppi", new Locale("fi")), null));
+        assertFalse(repository.exists(RDF.type, RDF.type, null, null));
+    }
+
+    @Test
+    public void Reopen_with_other_Indexes() {
+        addData();
+        repository.close();
+
+        repository = new MiniRepository(16, true, true, true, true);
+        repository.setDataDir(dataDir);
+        repository.initialize();
+        assertData(repository);
+        assertTrue(repository.exists(null, RDFS.label, null, CONTEXT));
+    }
+
+    @Test
+    public void Incomplete_Snapshot_is_Ignored() throws IOException {
+        addData();
+        repository.checkpoint();
+        repository.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        repository.close();
+        File newest = new File(dataDir, "snapshot-0.bin");
+        RandomAccessFile file = new RandomAccessFile(newest, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        repository = open();
+        assertData(repository);
+        assertFalse(repository.exists(RDFS.Resource, null, null, null));
+    }
+
+    @Test
+    public void Reopen_from_Log() {
+        addData();
+        // reopen without closing, as after a crash
+        MiniRepository other = open();
+        assertData(other);
+        other.close();
+    }
+
+    @Test
+    public void Reopen_from_Snapshot_and_Log() {
+        addData();
+        repository.checkpoint();
+        repository.remove(RDF.type, RDF.type, null, null);
+        repository.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+
+        MiniRepository other = open();
+        assertFalse(other.exists(RDF.type, RDF.type, null, null));
+        assertTrue(other.exists(RDFS.Resource, RDF.type, RDFS.Class, null));
+        assertTrue(other.exists(RDF.type, RDFS.label, new LIT("type"), CONTEXT));
+        other.close();
+    }
+
+    @Test
+    public void Clear() {
+        addData();
+        repository.clear();
+        repository.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+
+        MiniRepository other = open();
+        assertEquals(1, IteratorAdapter.asList(other.findStatements(null, null, null, null, true)).size());
+        other.close();
+    }
+
+    @Test
+    public void Incomplete_Record_is_Ignored() throws IOException {
+        addData();
+        repository.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        File log = new File(dataDir, "log.bin");
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        MiniRepository other = open();
+        assertData(other);
+        assertFalse(other.exists(RDFS.Resource, null, null, null));
+        // further changes are appended after the last complete record
+        other.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        MiniRepository third = open();
+        assertTrue(third.exists(RDFS.Resource, null, null, null));
+        third.close();
+        other.close();
+    }
+
+    @Test
+    public void Snapshot_Threshold() {
+        repository.setSnapshotThreshold(1);
+        addData();
+        assertEquals(0, new File(dataDir, "log.bin").length());
+        MiniRepository other = open();
+        assertData(other);
+        other.close();
+    }
+
+    @Test
+    public void Local_Ids_are_Preserved() {
+        repository.getNextLocalId();
+        long id = repository.getNextLocalId();
+        addData();
+        repository.close();
+        repository = open();
+        assertTrue(repository.getNextLocalId() > id);
+    }
+
+    @Test
+    public void Local_Ids_after_last_Write_are_Preserved() {
+        addData();
+        repository.checkpoint();
+        long id = repository.getNextLocalId();
+        repository.close();
+        repository = open();
+        assertTrue(repository.getNextLocalId() > id);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void Persistence_requires_Encoding() {
+        MiniRepository repo = new MiniRepository();
+        repo.setDataDir(dataDir);
+        repo.initialize();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
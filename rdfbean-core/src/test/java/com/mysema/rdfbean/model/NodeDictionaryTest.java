@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+
+public class NodeDictionaryTest {
+
+    private final NodeDictionary dictionary = new NodeDictionary(4);
+
+    @Test
+    public void Intern() {
+        int type = dictionary.intern(RDF.type);
+        assertTrue(type > NodeDictionary.NONE);
+        assertEquals(type, dictionary.intern(new UID(RDF.type.getId())));
+        assertEquals(type, dictionary.getId(RDF.type));
+        assertEquals(RDF.type, dictionary.getNode(type));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void Literals() {
+        int lit1 = dictionary.intern(new LIT("1"));
+        int lit2 = dictionary.intern(new LIT("1", XSD.intType));
+        int lit3 = dictionary.intern(new LIT("1", Locale.ENGLISH));
+        assertTrue(lit1 != lit2);
+        assertTrue(lit2 != lit3);
+        assertEquals(lit2, dictionary.getId(new LIT("1", XSD.intType)));
+    }
+
+    @Test
+    public void Unknown() {
+        assertEquals(NodeDictionary.NONE, dictionary.getId(RDF.type));
+    }
+
+    @Test
+    public void Growth() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, dictionary.intern(new UID(TEST.NS, "n" + i)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(new UID(TEST.NS, "n" + i), dictionary.getNode(dictionary.getId(new UID(TEST.NS, "n" + i))));
+        }
+        dictionary.clear();
+        assertEquals(0, dictionary.size());
+        assertEquals(NodeDictionary.NONE, dictionary.getId(new UID(TEST.NS, "n0")));
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+
+public class ObjectCacheTest {
+
+    private final ObjectCache cache = new ObjectCache();
+
+    @Test
+    public void Iterator() {
+        cache.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        cache.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        cache.add(new STMT(RDFS.Class, RDF.type, RDFS.Class));
+        assertEquals(3, IteratorAdapter.asList(cache.iterator(null)).size());
+        assertEquals(2, IteratorAdapter.asList(cache.iterator(RDFS.Class)).size());
+        assertEquals(0, IteratorAdapter.asList(cache.iterator(RDFS.Resource)).size());
+    }
+
+    @Test
+    public void Remove() {
+        STMT stmt = new STMT(RDF.type, RDF.type, RDF.Property);
+        cache.add(stmt);
+        assertTrue(cache.remove(stmt));
+        assertFalse(cache.remove(stmt));
+        assertFalse(cache.iterator(RDF.Property).hasNext());
+    }
+
+}
@@ -2,6 +2,7 @@ package com.mysema.rdfbean.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.List;
@@ -18,10 +19,6 @@ public class QueryRDFVisitorTest {
 
     private ID id = new BID();
 
-    private QueryRDFVisitor visitor = new QueryRDFVisitor(connection);
-
-    private Bindings context = new Bindings(new Bindings());
-
     @Before
     public void setUp() {
         connection.addStatements(
@@ -29,34 +26,57 @@ public class QueryRDFVisitorTest {
                 new STMT(id, RDFS.label, new LIT("id")));
     }
 
+    private RDFQuery query() {
+        return new RDFQueryImpl(connection);
+    }
+
     @Test
     public void PatternBlock() {
-        Iterable<Bindings> iterable = visitor.visit((PatternBlock) Blocks.SPO, context).getFirst();
-        List<Bindings> rows = IteratorAdapter.asList(iterable.iterator());
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query().where(Blocks.SPO).selectAll());
         assertEquals(2, rows.size());
-        assertEquals(3, rows.get(0).toMap().size());
-        assertEquals(3, rows.get(1).toMap().size());
+        assertEquals(3, rows.get(0).size());
+        assertEquals(3, rows.get(1).size());
         assertEquals(id, rows.get(0).get("s"));
         assertEquals(id, rows.get(1).get("s"));
     }
 
     @Test
     public void PatternBlock_with_unmatching_Filter() {
-        GroupBlock block = (GroupBlock) Blocks.filter(Blocks.SPO, QNODE.p.eq(RDF.predicate));
-        Iterable<Bindings> iterable = visitor.visit(block, context).getFirst();
-        List<Bindings> rows = IteratorAdapter.asList(iterable.iterator());
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query().where(Blocks.SPO, QNODE.p.eq(RDF.predicate))
+                .selectAll());
         assertEquals(0, rows.size());
     }
 
     @Test
     public void PatternBlock_with_Filter() {
-        GroupBlock block = (GroupBlock) Blocks.filter(Blocks.SPO, QNODE.p.eq(RDF.type));
-        Iterator<Bindings> iterator = visitor.visit(block, context).getFirst().iterator();
-        Map<String, NODE> row = iterator.next().toMap();
+        Iterator<Map<String, NODE>> iterator = query().where(Blocks.SPO, QNODE.p.eq(RDF.type)).selectAll();
+        Map<String, NODE> row = iterator.next();
         assertFalse(iterator.hasNext());
         assertEquals(3, row.size());
         assertEquals(id, row.get("s"));
         assertEquals(RDF.type, row.get("p"));
     }
 
+    @Test
+    public void Rows_are_Independent() {
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query().where(Blocks.SPO).select(QNODE.p));
+        assertEquals(2, rows.size());
+        assertTrue(!rows.get(0).equals(rows.get(1)));
+        assertEquals(1, rows.get(0).size());
+    }
+
+    @Test
+    public void Optional_clears_Bindings() {
+        ID other = new BID();
+        connection.addStatements(new STMT(other, RDF.type, RDFS.Resource));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query().where(
+                Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                Blocks.optional(Blocks.pattern(QNODE.s, RDFS.label, QNODE.o)))
+                .select(QNODE.s, QNODE.o));
+        assertEquals(2, rows.size());
+        for (Map<String, NODE> row : rows) {
+            assertEquals(row.get("s").equals(id), row.containsKey("o"));
+        }
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.QueryModifiers;
+import com.mysema.rdfbean.TEST;
+
+public class SortingIterableTest {
+
+    private static final QNODE<ID> subject = new QNODE<ID>(ID.class, "s");
+
+    private static final QNODE<NODE> object = new QNODE<NODE>(NODE.class, "o");
+
+    private static final Comparator<NODE[]> byObject = new Comparator<NODE[]>() {
+        private final NODEComparator comparator = new NODEComparator();
+
+        @Override
+        public int compare(NODE[] r1, NODE[] r2) {
+            return comparator.compare(r1[1], r2[1]);
+        }
+    };
+
+    private final List<NODE[]> rows = new ArrayList<NODE[]>();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            NODE[] row = new NODE[3];
+            row[0] = new UID(TEST.NS, "s" + i);
+            row[1] = new LIT("value" + (1000 + random.nextInt(1000)));
+            if (i % 2 == 0) {
+                row[2] = new LIT("label", Locale.ENGLISH);
+            }
+            rows.add(row);
+        }
+    }
+
+    private List<NODE> sort(QueryModifiers modifiers, long memoryBudget) {
+        SortingIterable iterable = new SortingIterable(rows, byObject, modifiers, memoryBudget);
+        List<NODE> rv = new ArrayList<NODE>();
+        for (NODE[] row : iterable) {
+            rv.add(row[1]);
+        }
+        return rv;
+    }
+
+    private List<NODE> expected(int offset, int limit) {
+        List<NODE> nodes = new ArrayList<NODE>();
+        for (NODE[] row : rows) {
+            nodes.add(row[1]);
+        }
+        Collections.sort(nodes, new NODEComparator());
+        return nodes.subList(offset, Math.min(nodes.size(), offset + limit));
+    }
+
+    @Test
+    public void Sort_in_Memory() {
+        assertEquals(expected(0, 500), sort(new QueryModifiers(null, null), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void Sort_with_Offset() {
+        assertEquals(expected(490, 10), sort(new QueryModifiers(null, 490l), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void TopK() {
+        assertEquals(expected(0, 10), sort(new QueryModifiers(10l, null), Long.MAX_VALUE));
+        assertEquals(expected(100, 10), sort(new QueryModifiers(10l, 100l), Long.MAX_VALUE));
+        assertEquals(expected(495, 5), sort(new QueryModifiers(10l, 495l), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void External_Sort() {
+        assertEquals(expected(0, 500), sort(new QueryModifiers(null, null), 4096));
+        assertEquals(expected(250, 250), sort(new QueryModifiers(null, 250l), 4096));
+    }
+
+    @Test
+    public void External_Sort_preserves_Rows() {
+        SortingIterable iterable = new SortingIterable(rows, byObject, new QueryModifiers(null, null), 4096);
+        int labels = 0;
+        for (NODE[] row : iterable) {
+            if (row[2] != null) {
+                assertEquals(new LIT("label", Locale.ENGLISH), row[2]);
+                labels++;
+            }
+        }
+        assertEquals(250, labels);
+    }
+
+    @Test
+    public void Runs_are_deleted_after_Merge() {
+        int runs = countRuns();
+        assertEquals(expected(0, 500), sort(new QueryModifiers(null, null), 4096));
+        assertEquals(runs, countRuns());
+    }
+
+    @Test
+    public void Runs_are_deleted_on_Close() {
+        int runs = countRuns();
+        SortingIterable iterable = new SortingIterable(rows, byObject, new QueryModifiers(null, null), 4096);
+        CloseableIterator<NODE[]> iterator = iterable.iterator();
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        assertTrue(countRuns() > runs);
+        iterator.close();
+        assertEquals(runs, countRuns());
+        assertFalse(iterator.hasNext());
+    }
+
+    private static int countRuns() {
+        String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("rdfbean-sort") && name.endsWith(".run");
+            }
+        });
+        return files != null ? files.length : 0;
+    }
+
+    @Test
+    public void OrderBy_in_Query() {
+        MiniRepository repository = new MiniRepository();
+        for (int i = 0; i < 20; i++) {
+            repository.add(new STMT(new UID(TEST.NS, "s" + i), RDFS.label, new LIT("label" + (char) ('a' + i))));
+        }
+        MiniConnection connection = repository.openConnection();
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(new RDFQueryImpl(connection)
+                .where(Blocks.pattern(subject, RDFS.label, object))
+                .orderBy(object.desc())
+                .limit(3).offset(1)
+                .select(subject, object));
+        assertEquals(3, rows.size());
+        assertEquals(new LIT("labels"), rows.get(0).get("o"));
+        assertEquals(new LIT("labelq"), rows.get(2).get("o"));
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+
+public class TypedNODEComparatorTest {
+
+    private static final TypedNODEComparator comparator = new TypedNODEComparator();
+
+    @Test
+    public void Integers() {
+        LIT nine = new LIT("9", XSD.intType);
+        LIT ten = new LIT("10", XSD.intType);
+        assertTrue(comparator.compare(nine, ten) < 0);
+        assertTrue(comparator.compare(ten, nine) > 0);
+        assertTrue(comparator.compare(new LIT("-1", XSD.longType), new LIT("-10", XSD.longType)) > 0);
+    }
+
+    @Test
+    public void Mixed_Numbers() {
+        assertTrue(comparator.compare(new LIT("9", XSD.intType), new LIT("9.5", XSD.doubleType)) < 0);
+        assertTrue(comparator.compare(new LIT("10.5", XSD.decimalType), new LIT("9", XSD.integerType)) > 0);
+        assertTrue(comparator.compare(new LIT("100000000000000000000", XSD.integerType),
+                new LIT("99", XSD.longType)) > 0);
+    }
+
+    @Test
+    public void Equal_Values_are_ordered_Lexically() {
+        LIT one = new LIT("1", XSD.intType);
+        LIT paddedOne = new LIT("01", XSD.intType);
+        assertTrue(comparator.compare(paddedOne, one) < 0);
+        assertEquals(0, comparator.compare(one, new LIT("1", XSD.intType)));
+    }
+
+    @Test
+    public void DateTimes() {
+        LIT earlier = new LIT("2010-01-01T10:00:00.000+02:00", XSD.dateTime);
+        LIT later = new LIT("2010-01-01T09:00:00.000Z", XSD.dateTime);
+        assertTrue(comparator.compare(earlier, later) < 0);
+        assertTrue(comparator.compare(new LIT("2009-12-31", XSD.date), new LIT("2010-01-01", XSD.date)) < 0);
+    }
+
+    @Test
+    public void Malformed_Literals_are_compared_Lexically() {
+        LIT malformed = new LIT("abc", XSD.intType);
+        LIT number = new LIT("10", XSD.intType);
+        assertTrue(comparator.compare(number, malformed) < 0);
+        assertTrue(comparator.compare(malformed, number) > 0);
+    }
+
+    @Test
+    public void Sort() {
+        List<NODE> nodes = Arrays.<NODE> asList(new LIT("10", XSD.intType), new UID(TEST.NS, "a"),
+                new LIT("9", XSD.intType), new LIT("100", XSD.intType));
+        Collections.sort(nodes, comparator);
+        assertEquals(Arrays.<NODE> asList(new UID(TEST.NS, "a"), new LIT("9", XSD.intType),
+                new LIT("10", XSD.intType), new LIT("100", XSD.intType)), nodes);
+    }
+
+    @Test
+    public void Categories() {
+        LIT nine = new LIT("9", XSD.intType);
+        LIT ten = new LIT("10", XSD.intType);
+        LIT five = new LIT("5");
+        assertTrue(comparator.compare(nine, ten) < 0);
+        assertTrue(comparator.compare(ten, five) < 0);
+        assertTrue(comparator.compare(nine, five) < 0);
+        assertTrue(comparator.compare(new LIT("2010-01-01", XSD.date), new LIT("1", XSD.intType)) > 0);
+        assertTrue(comparator.compare(new LIT("2010-01-01", XSD.date), five) < 0);
+    }
+
+    @Test
+    public void Mixed_Numbers_are_compared_Exactly() {
+        LIT big = new LIT("9007199254740993", XSD.longType);
+        LIT bigDouble = new LIT("9007199254740992", XSD.doubleType);
+        LIT smaller = new LIT("9007199254740992", XSD.longType);
+        assertTrue(comparator.compare(bigDouble, big) < 0);
+        assertTrue(comparator.compare(smaller, big) < 0);
+        assertTrue(comparator.compare(new LIT("NaN", XSD.doubleType), new LIT("100", XSD.decimalType)) > 0);
+        assertTrue(comparator.compare(new LIT("NaN", XSD.doubleType), new LIT("100", XSD.doubleType)) > 0);
+    }
+
+    @Test
+    public void Sort_Mixed_Literals() {
+        Random random = new Random(42);
+        UID[] numericTypes = { XSD.intType, XSD.longType, XSD.integerType, XSD.doubleType, XSD.decimalType };
+        List<NODE> nodes = new ArrayList<NODE>();
+        for (int i = 0; i < 2000; i++) {
+            String number = String.valueOf(random.nextInt(200) - 100);
+            switch (random.nextInt(6)) {
+            case 0:
+                nodes.add(new LIT(number, numericTypes[random.nextInt(numericTypes.length)]));
+                break;
+            case 1:
+                nodes.add(new LIT(number + ".5", XSD.doubleType));
+                break;
+            case 2:
+                nodes.add(new LIT(number));
+                break;
+            case 3:
+                nodes.add(new LIT(number, Locale.ENGLISH));
+                break;
+            case 4:
+                nodes.add(new LIT("20" + (10 + random.nextInt(10)) + "-01-01", XSD.date));
+                break;
+            default:
+                nodes.add(new LIT(number + "x", XSD.intType));
+            }
+        }
+        Collections.sort(nodes, comparator);
+
+        for (int i = 1; i < nodes.size(); i++) {
+            assertTrue(comparator.compare(nodes.get(i - 1), nodes.get(i)) <= 0);
+            assertTrue(comparator.compare(nodes.get(0), nodes.get(i)) <= 0);
+        }
+        for (int i = 0; i < 1000; i++) {
+            NODE a = nodes.get(random.nextInt(nodes.size()));
+            NODE b = nodes.get(random.nextInt(nodes.size()));
+            assertEquals(Integer.signum(comparator.compare(a, b)), -Integer.signum(comparator.compare(b, a)));
+        }
+    }
+
+    @Test
+    public void Range_Filter_in_Query() {
+        MiniRepository repository = new MiniRepository();
+        for (int i = 0; i < 20; i++) {
+            repository.add(new STMT(new UID(TEST.NS, "s" + i), RDF.value, new LIT(String.valueOf(i), XSD.intType)));
+        }
+        QLIT value = new QLIT("value");
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(new RDFQueryImpl(repository.openConnection())
+                .where(Blocks.pattern(QNODE.s, RDF.value, value), value.goe(new LIT("9", XSD.intType)))
+                .orderBy(value.asc())
+                .select(value));
+        assertEquals(11, rows.size());
+        assertEquals(new LIT("9", XSD.intType), rows.get(0).get("value"));
+        assertEquals(new LIT("19", XSD.intType), rows.get(10).get("value"));
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+public class TurtleParserTest {
+
+    private static final String NS = "http://example.com/";
+
+    private final List<STMT> stmts = new ArrayList<STMT>();
+
+    private final STMTHandler handler = new STMTHandler() {
+        @Override
+        public void handle(List<STMT> batch) {
+            stmts.addAll(batch);
+        }
+    };
+
+    private List<STMT> parse(String content) throws IOException {
+        return parse(new TurtleParser(), content);
+    }
+
+    private List<STMT> parse(TurtleParser parser, String content) throws IOException {
+        stmts.clear();
+        parser.parse(new StringReader(content), null, NS, 2, handler);
+        return stmts;
+    }
+
+    private List<STMT> parse(Format format, String resource) throws IOException {
+        stmts.clear();
+        InputStream in = getClass().getResourceAsStream(resource);
+        try {
+            ParserUtils.parse(format, in, null, NS, handler);
+        } finally {
+            in.close();
+        }
+        return stmts;
+    }
+
+    @Test
+    public void Turtle_and_NTriples_Match() throws IOException {
+        Set<STMT> turtle = withoutBlankNodes(parse(Format.TURTLE, "/test.ttl"));
+        int turtleSize = stmts.size();
+        Set<STMT> ntriples = withoutBlankNodes(parse(Format.NTRIPLES, "/test.nt"));
+        assertEquals(ntriples.size(), turtle.size());
+        assertEquals(ntriples, turtle);
+        assertEquals(stmts.size(), turtleSize);
+    }
+
+    @Test
+    public void Prefixes_and_Abbreviations() throws IOException {
+        parse("@prefix ex: <http://example.com/> .\n"
+                + "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n"
+                + "ex:a a foaf:Person ; foaf:name \"A\", \"B\" ;\n"
+                + "  foaf:knows [ foaf:name \"C\" ] ; .\n");
+        assertEquals(5, stmts.size());
+        UID a = new UID(NS, "a");
+        assertEquals(new STMT(a, RDF.type, new UID("http://xmlns.com/foaf/0.1/", "Person")), stmts.get(0));
+        assertEquals(new STMT(a, new UID("http://xmlns.com/foaf/0.1/", "name"), new LIT("B")), stmts.get(2));
+        assertTrue(stmts.get(3).getSubject() instanceof BID);
+        assertEquals(stmts.get(3).getSubject(), stmts.get(4).getObject());
+    }
+
+    @Test
+    public void Literals() throws IOException {
+        parse("<a> <p> \"x\\ty\\u00e4\"@en-US , 'single' , \"\"\"long \"quoted\"\n text\"\"\" , \"\" , "
+                + "\"1\"^^<http://www.w3.org/2001/XMLSchema#int> , 12 , -1.5 , 1e10 , true , false .");
+        UID s = new UID(NS, "a");
+        UID p = new UID(NS, "p");
+        assertEquals(new STMT(s, p, new LIT("x\ty\u00e4", new Locale("en", "US"))), stmts.get(0));
+        assertEquals(new LIT("single"), stmts.get(1).getObject());
+        assertEquals(new LIT("long \"quoted\"\n text"), stmts.get(2).getObject());
+        assertEquals(new LIT(""), stmts.get(3).getObject());
+        assertEquals(new LIT("1", XSD.intType), stmts.get(4).getObject());
+        assertEquals(new LIT("12", XSD.integerType), stmts.get(5).getObject());
+        assertEquals(new LIT("-1.5", XSD.decimalType), stmts.get(6).getObject());
+        assertEquals(new LIT("1e10", XSD.doubleType), stmts.get(7).getObject());
+        assertEquals(new LIT("true", XSD.booleanType), stmts.get(8).getObject());
+        assertEquals(new LIT("false", XSD.booleanType), stmts.get(9).getObject());
+    }
+
+    @Test
+    public void Collections() throws IOException {
+        parse("<a> <p> ( 1 2 ) ; <q> () .");
+        assertEquals(6, stmts.size());
+        assertEquals(RDF.first, stmts.get(0).getPredicate());
+        assertEquals(RDF.rest, stmts.get(3).getPredicate());
+        assertEquals(RDF.nil, stmts.get(3).getObject());
+        assertEquals(stmts.get(0).getSubject(), stmts.get(4).getObject());
+        assertEquals(new STMT(new UID(NS, "a"), new UID(NS, "q"), RDF.nil), stmts.get(5));
+    }
+
+    @Test
+    public void Blank_Node_Labels() throws IOException {
+        parse("_:x <p> _:y . _:y <p> _:x .");
+        assertEquals(stmts.get(0).getSubject(), stmts.get(1).getObject());
+        assertEquals(stmts.get(0).getObject(), stmts.get(1).getSubject());
+        // labels are scoped to the document
+        BID first = stmts.get(0).getSubject().asBNode();
+        parse("_:x <p> _:y .");
+        assertTrue(!first.equals(stmts.get(0).getSubject()));
+    }
+
+    @Test
+    public void Base_and_Relative_URIs() throws IOException {
+        parse("@base <http://example.org/dir/> . <a> <#p> <../b> .");
+        assertEquals(new STMT(new UID("http://example.org/dir/a"), new UID("http://example.org/dir/#p"),
+                new UID("http://example.org/b")), stmts.get(0));
+    }
+
+    @Test
+    public void NQuads() throws IOException {
+        parse(new TurtleParser(true), "<a> <p> <o> <http://example.com/g> .\n<a> <p> \"o\" .\n");
+        assertEquals(new UID(NS, "g"), stmts.get(0).getContext());
+        assertEquals(null, stmts.get(1).getContext());
+    }
+
+    @Test
+    public void URIs_are_Reused() throws IOException {
+        parse("<a> <p> <a> .");
+        assertTrue(stmts.get(0).getSubject() == stmts.get(0).getObject());
+    }
+
+    @Test
+    public void Batches() throws IOException {
+        final List<Integer> sizes = new ArrayList<Integer>();
+        new TurtleParser().parse(new StringReader("<a> <p> 1, 2, 3, 4, 5 ."), null, NS, 2, new STMTHandler() {
+            @Override
+            public void handle(List<STMT> batch) {
+                sizes.add(batch.size());
+            }
+        });
+        assertEquals("[2, 2, 1]", sizes.toString());
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void Unknown_Prefix() throws IOException {
+        parse("ex:a ex:b ex:c .");
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void Missing_Dot() throws IOException {
+        parse("<a> <b> <c>");
+    }
+
+    @Test
+    public void Directives_are_Case_Insensitive() throws IOException {
+        parse("prefix ex: <http://example.com/>\nBase <http://example.org/>\nex:a <p> ex:c .");
+        assertEquals(new STMT(new UID("http://example.com/a"), new UID("http://example.org/p"),
+                new UID("http://example.com/c")), stmts.get(0));
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void Booleans_are_Case_Sensitive() throws IOException {
+        parse("<a> <p> TRUE .");
+    }
+
+    private static Set<STMT> withoutBlankNodes(List<STMT> stmts) {
+        Set<STMT> rv = new HashSet<STMT>();
+        for (STMT stmt : stmts) {
+            if (stmt.getSubject().isURI() && !stmt.getObject().isBNode()) {
+                rv.add(stmt);
+            }
+        }
+        return rv;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Container;
+import com.mysema.rdfbean.annotations.ContainerType;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.MiniRepository;
+
+public class CollectionLoadingTest {
+
+    private static final int SIZE = 50;
+
+    @ClassMapping
+    public static class Playlist {
+
+        @Id
+        ID id;
+
+        @Predicate
+        List<String> tracks = new ArrayList<String>();
+
+        @Predicate
+        @Container(ContainerType.SEQ)
+        List<String> tags = new ArrayList<String>();
+
+    }
+
+    private final MiniRepository repository = new MiniRepository();
+
+    private final Configuration configuration = new DefaultConfiguration(TEST.NS, Playlist.class);
+
+    private CountingConnection counter;
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+        Session session = SessionUtil.openSession(repository, Playlist.class);
+        for (int i = 0; i < 3; i++) {
+            Playlist playlist = new Playlist();
+            for (int j = 0; j < SIZE; j++) {
+                playlist.tracks.add(i + "-" + j);
+                playlist.tags.add("tag" + j);
+            }
+            session.save(playlist);
+        }
+        session.close();
+
+        counter = new CountingConnection(repository.openConnection());
+        this.session = SessionUtil.openSession(counter.getConnection(), configuration, Locale.ENGLISH);
+    }
+
+    private void assertPlaylists(List<Playlist> playlists) {
+        assertEquals(3, playlists.size());
+        List<String> prefixes = new ArrayList<String>();
+        for (Playlist playlist : playlists) {
+            assertEquals(SIZE, playlist.tracks.size());
+            assertEquals(SIZE, playlist.tags.size());
+            String prefix = playlist.tracks.get(0).substring(0, 2);
+            for (int j = 0; j < SIZE; j++) {
+                assertEquals(prefix + j, playlist.tracks.get(j));
+                assertEquals("tag" + j, playlist.tags.get(j));
+            }
+            prefixes.add(prefix);
+        }
+        assertTrue(prefixes.containsAll(Arrays.asList("0-", "1-", "2-")));
+    }
+
+    @Test
+    public void FindInstances() {
+        assertPlaylists(session.findInstances(Playlist.class));
+        // one query per list depth instead of one per list cell
+        assertTrue("queries : " + counter.getQueries(), counter.getQueries() < SIZE + 10);
+    }
+
+    @Test
+    public void GetAll() {
+        List<ID> ids = new ArrayList<ID>();
+        for (Playlist playlist : session.findInstances(Playlist.class)) {
+            ids.add(playlist.id);
+        }
+        session.clear();
+        counter.reset();
+
+        assertPlaylists(session.getAll(Playlist.class, ids.toArray(new ID[ids.size()])));
+        assertTrue("queries : " + counter.getQueries(), counter.getQueries() < SIZE + 10);
+    }
+
+    @Test
+    public void Lists_are_reloaded_after_Update() {
+        List<Playlist> playlists = session.findInstances(Playlist.class);
+        Playlist playlist = playlists.get(0);
+        playlist.tracks = new ArrayList<String>(Arrays.asList("a", "b"));
+        playlist.tags = new ArrayList<String>(Arrays.asList("c"));
+        session.save(playlist);
+        session.clear();
+
+        Playlist loaded = session.get(Playlist.class, playlist.id);
+        assertEquals(Arrays.asList("a", "b"), loaded.tracks);
+        assertEquals(Arrays.asList("c"), loaded.tags);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.STMT;
+
+/**
+ * CountingConnection counts the queries and updates issued via the wrapped
+ * connection
+ *
+ * @author tiwe
+ */
+public final class CountingConnection implements InvocationHandler {
+
+    private final RDFConnection connection;
+
+    private final RDFConnection proxy;
+
+    private final List<Collection<STMT>> batches = new ArrayList<Collection<STMT>>();
+
+    private int queries;
+
+    public CountingConnection(RDFConnection connection) {
+        this.connection = connection;
+        this.proxy = (RDFConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { RDFConnection.class }, this);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("createQuery") || name.equals("findStatements") || name.equals("exists")) {
+            queries++;
+        } else if (name.equals("update")) {
+            Collection<STMT> added = (Collection<STMT>) args[1];
+            batches.add(added != null ? new ArrayList<STMT>(added) : Collections.<STMT> emptyList());
+        }
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the counting connection
+     */
+    public RDFConnection getConnection() {
+        return proxy;
+    }
+
+    /**
+     * @return the amount of createQuery, findStatements and exists invocations
+     */
+    public int getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return the amount of update invocations
+     */
+    public int getUpdates() {
+        return batches.size();
+    }
+
+    /**
+     * @return the added statements of each update invocation
+     */
+    public List<Collection<STMT>> getBatches() {
+        return batches;
+    }
+
+    public void reset() {
+        queries = 0;
+        batches.clear();
+    }
+
+}
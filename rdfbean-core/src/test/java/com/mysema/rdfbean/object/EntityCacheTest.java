@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.Cacheable;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ConcurrentMiniRepository;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.RDFBeanTransaction;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+public class EntityCacheTest {
+
+    @ClassMapping
+    @Cacheable
+    public static class Category {
+
+        @Id
+        public ID id;
+
+        @Predicate
+        public String label;
+
+    }
+
+    @ClassMapping
+    public static class Document {
+
+        @Id
+        public ID id;
+
+        @Predicate
+        public String label;
+
+        @Predicate
+        public Category category;
+
+    }
+
+    private final ConcurrentMiniRepository repository = new ConcurrentMiniRepository();
+
+    private SessionFactoryImpl sessionFactory;
+
+    private ID categoryId, documentId;
+
+    @Before
+    public void setUp() {
+        sessionFactory = new SessionFactoryImpl();
+        sessionFactory.setConfiguration(new DefaultConfiguration(TEST.NS, Category.class, Document.class));
+        sessionFactory.setRepository(repository);
+        sessionFactory.initialize();
+
+        Session session = sessionFactory.openSession();
+        Category category = new Category();
+        category.label = "category";
+        Document document = new Document();
+        document.label = "document";
+        document.category = category;
+        session.saveAll(category, document);
+        categoryId = category.id;
+        documentId = document.id;
+        session.close();
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    private Category getCategory() {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.get(Category.class, categoryId);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * change the label in the repository without notifying the session
+     * factory
+     */
+    private void setLabelDirectly(ID subject, String oldLabel, String newLabel) {
+        UID label = new UID(TEST.NS, "label");
+        RDFConnection connection = repository.openConnection();
+        try {
+            connection.update(
+                    Collections.singleton(new STMT(subject, label, new LIT(oldLabel))),
+                    Collections.singleton(new STMT(subject, label, new LIT(newLabel))));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void Get_is_served_from_Cache() {
+        assertEquals("category", getCategory().label);
+        setLabelDirectly(categoryId, "category", "changed");
+        assertEquals("category", getCategory().label);
+
+        sessionFactory.clearEntityCache();
+        assertEquals("changed", getCategory().label);
+    }
+
+    @Test
+    public void References_are_served_from_Cache() {
+        assertEquals("category", getCategory().label);
+        setLabelDirectly(categoryId, "category", "changed");
+
+        Session session = sessionFactory.openSession();
+        List<Document> documents = session.getAll(Document.class, documentId);
+        assertEquals("category", documents.get(0).category.label);
+        session.close();
+    }
+
+    @Test
+    public void Uncached_Classes_are_not_Cached() {
+        Session session = sessionFactory.openSession();
+        assertEquals("document", session.get(Document.class, documentId).label);
+        session.close();
+        setLabelDirectly(documentId, "document", "changed");
+
+        session = sessionFactory.openSession();
+        assertEquals("changed", session.get(Document.class, documentId).label);
+        session.close();
+    }
+
+    @Test
+    public void Flush_invalidates() {
+        assertEquals("category", getCategory().label);
+
+        Session session = sessionFactory.openSession();
+        Category category = session.get(Category.class, categoryId);
+        category.label = "updated";
+        session.save(category);
+        session.close();
+
+        assertEquals("updated", getCategory().label);
+    }
+
+    @Test
+    public void Commit_invalidates() {
+        Session session = sessionFactory.openSession();
+        RDFBeanTransaction tx = session.beginTransaction();
+        session.setFlushMode(FlushMode.COMMIT);
+        Category category = session.get(Category.class, categoryId);
+        category.label = "updated";
+        session.save(category);
+        session.flush();
+        // another session caches the committed state
+        assertEquals("category", getCategory().label);
+        tx.commit();
+        session.close();
+
+        assertEquals("updated", getCategory().label);
+    }
+
+    @Test
+    public void Delete_invalidates() {
+        assertEquals("category", getCategory().label);
+
+        Session session = sessionFactory.openSession();
+        session.delete(session.get(Category.class, categoryId));
+        session.close();
+
+        assertNull(getCategory());
+    }
+
+    @Test
+    public void Time_to_Live() throws InterruptedException {
+        sessionFactory.setEntityCacheTimeToLive(1);
+        assertEquals("category", getCategory().label);
+        setLabelDirectly(categoryId, "category", "changed");
+        Thread.sleep(20);
+        assertEquals("changed", getCategory().label);
+    }
+
+}
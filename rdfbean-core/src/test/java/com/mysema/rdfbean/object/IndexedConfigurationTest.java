@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.domains.InferenceDomain.Entity1;
+import com.mysema.rdfbean.domains.InferenceDomain.Entity2;
+import com.mysema.rdfbean.domains.InferenceDomain.Entity3;
+import com.mysema.rdfbean.domains.NoteTypeDomain.Note;
+import com.mysema.rdfbean.domains.NoteTypeDomain.NoteType;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.ontology.Ontology;
+
+public class IndexedConfigurationTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    private MappingIndex index;
+
+    private IndexedConfiguration configuration;
+
+    private DefaultConfiguration defaultConfiguration;
+
+    @Before
+    public void setUp() {
+        index = new MappingIndex();
+        index.add(new MappingIndex.Entry(Entity1.class.getName(), "", "Entity1", NONE, null, NONE));
+        index.add(new MappingIndex.Entry(Entity2.class.getName(), "", "Entity2",
+                Collections.singletonList(Entity1.class.getName()), null, NONE));
+        index.add(new MappingIndex.Entry(Entity3.class.getName(), "", "Entity3",
+                Collections.singletonList(Entity2.class.getName()), null, NONE));
+        index.add(new MappingIndex.Entry(Note.class.getName(), "", "Note", NONE, null, NONE));
+        index.add(new MappingIndex.Entry(NoteType.class.getName(), "", "NoteType", NONE, null,
+                Arrays.asList("TYPE1", "TYPE2", "A", "B")));
+        configuration = new IndexedConfiguration(TEST.NS, index, getClass().getClassLoader());
+        defaultConfiguration = new DefaultConfiguration(TEST.NS,
+                Entity1.class, Entity2.class, Entity3.class, Note.class, NoteType.class);
+    }
+
+    @Test
+    public void MappedClasses_are_the_same() {
+        for (MappedClass mappedClass : defaultConfiguration.getMappedClasses()) {
+            UID uid = mappedClass.getUID();
+            assertEquals(uid.toString(), defaultConfiguration.getMappedClasses(uid), configuration.getMappedClasses(uid));
+        }
+        assertEquals(new HashSet<MappedClass>(defaultConfiguration.getMappedClasses()),
+                new HashSet<MappedClass>(configuration.getMappedClasses()));
+    }
+
+    @Test
+    public void IsPolymorphic() {
+        for (Class<?> cl : Arrays.asList(Entity1.class, Entity2.class, Entity3.class, Note.class, NoteType.class)) {
+            assertEquals(cl.getName(), defaultConfiguration.isPolymorphic(cl), configuration.isPolymorphic(cl));
+        }
+        assertTrue(configuration.isPolymorphic(Entity1.class));
+        assertFalse(configuration.isPolymorphic(Entity3.class));
+    }
+
+    @Test
+    public void Ontology_is_the_same() {
+        Ontology ontology = new ConfigurationOntology(configuration);
+        Ontology defaultOntology = new ConfigurationOntology(defaultConfiguration);
+        for (MappedClass mappedClass : defaultConfiguration.getMappedClasses()) {
+            UID uid = mappedClass.getUID();
+            assertEquals(defaultOntology.getSubtypes(uid), ontology.getSubtypes(uid));
+            assertEquals(defaultOntology.getSupertypes(uid), ontology.getSupertypes(uid));
+        }
+    }
+
+    @Test
+    public void MappedClasses_are_created_lazily() {
+        configuration.getMappedClasses(new UID(TEST.NS, "Entity1"));
+        assertEquals(Collections.singletonList(configuration.getMappedClass(Entity1.class)),
+                configuration.getMappedClasses(new UID(TEST.NS, "Entity1")));
+    }
+
+    @Test
+    public void Added_Classes_are_merged() {
+        configuration.addClasses(Entity1.class);
+        assertEquals(1, configuration.getMappedClasses(new UID(TEST.NS, "Entity1")).size());
+    }
+
+    @Test
+    public void Session() {
+        Session session = SessionUtil.openSession(new MiniRepository(), Collections.<Locale> emptySet(), configuration);
+        session.save(new Entity1());
+        session.save(new Entity2());
+        session.save(new Entity3());
+        session.save(new Note(NoteType.A));
+        session.clear();
+        assertEquals(3, session.findInstances(Entity1.class).size());
+        assertEquals(2, session.findInstances(Entity2.class).size());
+        assertEquals(1, session.findInstances(Entity3.class).size());
+        assertEquals(NoteType.A, session.findInstances(Note.class).get(0).getType());
+    }
+
+    @Test
+    public void Write_and_Read() throws IOException {
+        StringWriter writer = new StringWriter();
+        index.write(writer);
+        MappingIndex read = new MappingIndex();
+        read.read(new StringReader(writer.toString()));
+        assertEquals(5, read.getEntries().size());
+        MappingIndex.Entry entry = read.getEntry(NoteType.class.getName());
+        assertEquals(Arrays.asList("TYPE1", "TYPE2", "A", "B"), entry.getEnumConstants());
+        assertEquals(Collections.singletonList(Entity2.class.getName()),
+                read.getEntry(Entity3.class.getName()).getSuperTypes());
+    }
+
+}
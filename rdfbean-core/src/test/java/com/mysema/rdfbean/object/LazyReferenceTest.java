@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Lazy;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.MiniRepository;
+
+public class LazyReferenceTest {
+
+    @ClassMapping
+    public static class Company {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+    }
+
+    @ClassMapping
+    @Lazy
+    public static class Department {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    @ClassMapping
+    public static class Employee {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Predicate
+        @Lazy
+        Company employer;
+
+        @Predicate
+        Department department;
+
+        @Predicate
+        @Lazy
+        Set<Company> clients = new HashSet<Company>();
+
+    }
+
+    private final MiniRepository repository = new MiniRepository();
+
+    private final Configuration configuration = new DefaultConfiguration(TEST.NS,
+            Company.class, Department.class, Employee.class);
+
+    private CountingConnection counter;
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+        Session session = SessionUtil.openSession(repository, Company.class, Department.class, Employee.class);
+        Department department = new Department();
+        department.name = "sales";
+        for (int i = 0; i < 3; i++) {
+            Company company = new Company();
+            company.name = "company" + i;
+            Employee employee = new Employee();
+            employee.name = "employee" + i;
+            employee.employer = company;
+            employee.department = department;
+            employee.clients.add(company);
+            session.saveAll(company, employee);
+        }
+        session.close();
+
+        counter = new CountingConnection(repository.openConnection());
+        this.session = SessionUtil.openSession(counter.getConnection(), configuration, Locale.ENGLISH);
+    }
+
+    private static boolean isInitialized(Object proxy) {
+        LazyReference reference = LazyReference.get(proxy);
+        assertNotNull(reference);
+        return reference.isInitialized();
+    }
+
+    @Test
+    public void References_are_loaded_on_Access() {
+        List<Employee> employees = session.findInstances(Employee.class);
+        assertEquals(3, employees.size());
+        for (Employee employee : employees) {
+            assertFalse(isInitialized(employee.employer));
+            assertFalse(isInitialized(employee.department));
+        }
+
+        Employee employee = employees.get(0);
+        assertEquals("company" + employee.name.substring(8), employee.employer.getName());
+        assertTrue(isInitialized(employee.employer));
+        assertEquals("sales", employee.department.getName());
+    }
+
+    @Test
+    public void Siblings_are_loaded_together() {
+        List<Employee> employees = session.findInstances(Employee.class);
+        employees.get(0).employer.getName();
+        int queries = counter.getQueries();
+
+        for (Employee employee : employees) {
+            assertEquals("company" + employee.name.substring(8), employee.employer.getName());
+        }
+        assertEquals(queries, counter.getQueries());
+    }
+
+    @Test
+    public void Proxies_are_shared() {
+        List<Employee> employees = session.findInstances(Employee.class);
+        assertSame(employees.get(0).department, employees.get(1).department);
+        for (Employee employee : employees) {
+            Company client = employee.clients.iterator().next();
+            assertSame(employee.employer, client);
+        }
+    }
+
+    @Test
+    public void Unloaded_References_are_kept_on_Save() {
+        Employee employee = session.findInstances(Employee.class).get(0);
+        ID employerId = session.getId(employee.employer);
+        employee.name = "changed";
+        session.save(employee);
+        assertFalse(isInitialized(employee.employer));
+        session.clear();
+
+        Employee loaded = session.get(Employee.class, employee.id);
+        assertEquals("changed", loaded.name);
+        assertEquals(employerId, session.getId(loaded.employer));
+        assertEquals(1, loaded.clients.size());
+    }
+
+    @Test
+    public void Loaded_References_are_saved() {
+        Employee employee = session.findInstances(Employee.class).get(0);
+        employee.employer.setName("renamed");
+        session.save(employee);
+        session.clear();
+
+        Employee loaded = session.get(Employee.class, employee.id);
+        assertEquals("renamed", loaded.employer.getName());
+    }
+
+    @Test
+    public void Save_Proxy() {
+        Employee employee = session.findInstances(Employee.class).get(0);
+        ID employerId = session.getId(employee.employer);
+        assertEquals(employerId, session.save(employee.employer));
+        assertFalse(isInitialized(employee.employer));
+
+        employee.employer.setName("renamed");
+        assertEquals(employerId, session.save(employee.employer));
+        session.clear();
+
+        assertEquals("renamed", session.get(Company.class, employerId).getName());
+    }
+
+    @Test
+    public void Delete_Proxy() {
+        Employee employee = session.findInstances(Employee.class).get(0);
+        ID employerId = session.getId(employee.employer);
+        session.delete(employee.employer);
+        assertFalse(isInitialized(employee.employer));
+        session.clear();
+
+        assertNull(session.get(Company.class, employerId));
+    }
+
+    @Test
+    public void Delete_loaded_Proxy() {
+        Employee employee = session.findInstances(Employee.class).get(0);
+        ID departmentId = session.getId(employee.department);
+        assertEquals("sales", employee.department.getName());
+        session.deleteAll(employee.department);
+        session.clear();
+
+        assertNull(session.get(Department.class, departmentId));
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.domains.CompanyDepartmentEmployeeDomain;
+import com.mysema.rdfbean.domains.EntityRevisionTermDomain;
+import com.mysema.rdfbean.domains.InferenceDomain;
+import com.mysema.rdfbean.domains.NoteTypeDomain;
+import com.mysema.rdfbean.domains.SimpleDomain;
+import com.mysema.rdfbean.domains.UserDepartmentCompanyDomain;
+
+public class MappedClassFactoryTest {
+
+    private static final int THREADS = 16;
+
+    private static final int ROUNDS = 20;
+
+    private static List<Class<?>> getMappedClasses() {
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Class<?> domain : new Class<?>[] {
+                CompanyDepartmentEmployeeDomain.class,
+                EntityRevisionTermDomain.class,
+                InferenceDomain.class,
+                NoteTypeDomain.class,
+                SimpleDomain.class,
+                UserDepartmentCompanyDomain.class }) {
+            for (Class<?> cl : domain.getClasses()) {
+                if (cl.isAnnotationPresent(ClassMapping.class)) {
+                    classes.add(cl);
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static <T> List<T> runConcurrently(final Callable<T> task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        start.await();
+                        return task.call();
+                    }
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<T>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void GetMappedClass_is_Thread_safe() throws Exception {
+        final List<Class<?>> classes = getMappedClasses();
+        assertFalse(classes.isEmpty());
+        for (int round = 0; round < ROUNDS; round++) {
+            final MappedClassFactory factory = new MappedClassFactory(TEST.NS);
+            List<List<MappedClass>> results = runConcurrently(new Callable<List<MappedClass>>() {
+                @Override
+                public List<MappedClass> call() {
+                    List<MappedClass> mappedClasses = new ArrayList<MappedClass>();
+                    for (Class<?> cl : classes) {
+                        mappedClasses.add(factory.getMappedClass(cl));
+                    }
+                    return mappedClasses;
+                }
+            });
+            // all threads see the same completed instances
+            MappedClassFactory reference = new MappedClassFactory(TEST.NS);
+            for (int i = 0; i < classes.size(); i++) {
+                MappedClass expected = factory.getMappedClass(classes.get(i));
+                for (List<MappedClass> result : results) {
+                    assertSame(expected, result.get(i));
+                }
+                assertEquals(reference.getMappedClass(classes.get(i)).getProperties().size(),
+                        expected.getProperties().size());
+            }
+        }
+    }
+
+    @Test
+    public void Configuration_is_Thread_safe() throws Exception {
+        final List<Class<?>> classes = getMappedClasses();
+        final DefaultConfiguration configuration = new DefaultConfiguration(TEST.NS);
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (Class<?> cl : classes) {
+                    configuration.addClasses(cl);
+                    MappedClass mappedClass = configuration.getMappedClass(cl);
+                    configuration.getMappedClasses(mappedClass.getUID());
+                    configuration.isPolymorphic(cl);
+                }
+                configuration.warmUp();
+                return null;
+            }
+        });
+        DefaultConfiguration reference = new DefaultConfiguration(TEST.NS, classes.toArray(new Class<?>[classes.size()]));
+        assertEquals(reference.getMappedClasses(), configuration.getMappedClasses());
+        for (Class<?> cl : classes) {
+            assertEquals(reference.isPolymorphic(cl), configuration.isPolymorphic(cl));
+        }
+    }
+
+}
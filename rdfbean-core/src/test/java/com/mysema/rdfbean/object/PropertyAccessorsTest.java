@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PropertyAccessorsTest {
+
+    public static class Base {
+
+        String label;
+
+        public String getLabel() {
+            return label;
+        }
+
+    }
+
+    public static class ExtendedBase extends Base {
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+    }
+
+    public static class Bean {
+
+        String name;
+
+        int count;
+
+        private String secret;
+
+        private long size;
+
+        private boolean active;
+
+        List<String> tags;
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public Bean setActive(boolean active) {
+            this.active = active;
+            return this;
+        }
+
+    }
+
+    private static boolean isGenerated(PropertyAccessor accessor) {
+        return !(accessor instanceof PropertyAccessors.FieldAccessor)
+                && !(accessor instanceof PropertyAccessors.MethodAccessor);
+    }
+
+    @Test
+    public void Fields() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor name = PropertyAccessors.forField(Bean.class.getDeclaredField("name"));
+        PropertyAccessor count = PropertyAccessors.forField(Bean.class.getDeclaredField("count"));
+        PropertyAccessor tags = PropertyAccessors.forField(Bean.class.getDeclaredField("tags"));
+        assertTrue(isGenerated(name));
+        assertTrue(isGenerated(count));
+        assertTrue(isGenerated(tags));
+
+        name.setValue(bean, "John");
+        count.setValue(bean, 5);
+        tags.setValue(bean, Arrays.asList("a", "b"));
+        assertEquals("John", bean.name);
+        assertEquals(5, bean.count);
+        assertEquals("John", name.getValue(bean));
+        assertEquals(Integer.valueOf(5), count.getValue(bean));
+        assertEquals(Arrays.asList("a", "b"), tags.getValue(bean));
+
+        // null values of primitive properties are ignored
+        count.setValue(bean, null);
+        assertEquals(5, bean.count);
+        name.setValue(bean, null);
+        assertNull(bean.name);
+    }
+
+    @Test
+    public void Private_Fields_use_Reflection() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor secret = PropertyAccessors.forField(Bean.class.getDeclaredField("secret"));
+        assertFalse(isGenerated(secret));
+        secret.setValue(bean, "x");
+        assertEquals("x", secret.getValue(bean));
+    }
+
+    @Test
+    public void Methods() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor size = PropertyAccessors.forMethods(Bean.class.getMethod("getSize"),
+                Bean.class.getMethod("setSize", long.class));
+        PropertyAccessor active = PropertyAccessors.forMethods(Bean.class.getMethod("isActive"),
+                Bean.class.getMethod("setActive", boolean.class));
+        assertTrue(isGenerated(size));
+        assertTrue(isGenerated(active));
+
+        size.setValue(bean, 10l);
+        active.setValue(bean, true);
+        assertEquals(10l, bean.getSize());
+        assertTrue(bean.isActive());
+        assertEquals(Long.valueOf(10l), size.getValue(bean));
+        assertEquals(Boolean.TRUE, active.getValue(bean));
+        size.setValue(bean, null);
+        assertEquals(10l, bean.getSize());
+    }
+
+    @Test
+    public void Read_only_Methods() throws Exception {
+        PropertyAccessor size = PropertyAccessors.forMethods(Bean.class.getMethod("getSize"), null);
+        assertEquals(Long.valueOf(0l), size.getValue(new Bean()));
+        try {
+            size.setValue(new Bean(), 1l);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("expected IllegalArgumentException");
+    }
+
+    @Test
+    public void MethodProperty_with_Setter_in_Subclass() throws Exception {
+        MappedClass mappedClass = new MappedClass(ExtendedBase.class, null, null, Collections.<MappedClass> emptyList());
+        ExtendedBase bean = new ExtendedBase();
+        MethodProperty label = new MethodProperty(Base.class.getMethod("getLabel"), mappedClass);
+        label.setValue(new SimpleBeanMap(bean), "label");
+        assertEquals("label", bean.getLabel());
+        assertEquals("label", label.getValue(new SimpleBeanMap(bean)));
+    }
+
+    @Test
+    public void MethodProperty_and_FieldProperty() throws Exception {
+        MappedClass mappedClass = new MappedClass(Bean.class, null, null, Collections.<MappedClass> emptyList());
+        Bean bean = new Bean();
+        SimpleBeanMap beanMap = new SimpleBeanMap(bean);
+        MethodProperty size = new MethodProperty(Bean.class.getMethod("getSize"), mappedClass);
+        FieldProperty name = new FieldProperty(Bean.class.getDeclaredField("name"), mappedClass);
+        size.setValue(beanMap, 3l);
+        name.setValue(beanMap, "Anna");
+        assertEquals(Long.valueOf(3l), size.getValue(beanMap));
+        assertEquals("Anna", name.getValue(beanMap));
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ConcurrentMiniRepository;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RDFBeanTransaction;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.Repository;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+public class SessionSnapshotTest {
+
+    private static final UID NAME = new UID(TEST.NS, "name");
+
+    @ClassMapping
+    public static class Person {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Predicate
+        Set<String> nickNames = new HashSet<String>();
+
+    }
+
+    private Repository repository = new MiniRepository();
+
+    private Session session;
+
+    private ID id;
+
+    @Before
+    public void setUp() {
+        session = SessionUtil.openSession(repository, Locale.ENGLISH, Person.class);
+        Person person = new Person();
+        person.name = "John";
+        person.nickNames.add("Johnny");
+        id = session.save(person);
+        session.clear();
+    }
+
+    private void addDirectly(STMT stmt) {
+        RDFConnection connection = repository.openConnection();
+        try {
+            connection.update(null, Collections.singleton(stmt));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private Set<NODE> getNames() {
+        Set<NODE> names = new HashSet<NODE>();
+        RDFConnection connection = repository.openConnection();
+        try {
+            for (STMT stmt : IteratorAdapter.asList(connection.findStatements(id, NAME, null, null, false))) {
+                names.add(stmt.getObject());
+            }
+        } finally {
+            connection.close();
+        }
+        return names;
+    }
+
+    @Test
+    public void Update_uses_Snapshot_of_loaded_Instance() {
+        Person person = session.get(Person.class, id);
+        // statements added after loading are not seen by the save
+        addDirectly(new STMT(id, NAME, new LIT("Unknown")));
+        person.name = "Jack";
+        session.save(person);
+
+        Set<NODE> names = getNames();
+        assertEquals(2, names.size());
+        assertTrue(names.contains(new LIT("Jack")));
+        assertTrue(names.contains(new LIT("Unknown")));
+    }
+
+    @Test
+    public void Detached_Instance_is_read_from_Repository() {
+        Person person = session.get(Person.class, id);
+        session.clear();
+        addDirectly(new STMT(id, NAME, new LIT("Unknown")));
+        person.name = "Jack";
+        session.save(person);
+
+        assertEquals(Collections.singleton(new LIT("Jack")), getNames());
+    }
+
+    @Test
+    public void Repeated_Saves() {
+        session.setFlushMode(FlushMode.COMMIT);
+        Person person = session.get(Person.class, id);
+        person.name = "Jack";
+        person.nickNames.add("J");
+        session.save(person);
+        person.name = "Jim";
+        person.nickNames.remove("Johnny");
+        session.save(person);
+        session.flush();
+        session.clear();
+
+        Person loaded = session.get(Person.class, id);
+        assertEquals("Jim", loaded.name);
+        assertEquals(Collections.singleton("J"), loaded.nickNames);
+    }
+
+    @Test
+    public void Snapshots_are_discarded_on_Rollback() {
+        // MiniRepository doesn't support rollbacks
+        repository = new ConcurrentMiniRepository();
+        setUp();
+
+        Person person = session.get(Person.class, id);
+        RDFBeanTransaction tx = session.beginTransaction();
+        person.name = "Jack";
+        session.save(person);
+        session.flush();
+        tx.rollback();
+        assertEquals(Collections.singleton(new LIT("John")), getNames());
+
+        person.name = "Jim";
+        session.save(person);
+        session.flush();
+        assertEquals(Collections.singleton(new LIT("Jim")), getNames());
+    }
+
+    @Test
+    public void New_Instance_saved_twice() {
+        Person person = new Person();
+        person.name = "Anna";
+        ID annaId = session.save(person);
+        person.name = "Anne";
+        session.save(person);
+        session.clear();
+
+        List<Person> persons = session.getAll(Person.class, annaId);
+        assertEquals("Anne", persons.get(0).name);
+    }
+
+}
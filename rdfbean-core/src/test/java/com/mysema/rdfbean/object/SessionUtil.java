@@ -13,6 +13,7 @@ import javax.annotation.Nullable;
 
 import com.mysema.rdfbean.TEST;
 import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.RDFConnection;
 import com.mysema.rdfbean.model.Repository;
 
 public final class SessionUtil {
@@ -48,6 +49,10 @@ public final class SessionUtil {
         return openSession(repository, locales, new DefaultConfiguration(TEST.NS, packages));
     }
 
+    public static Session openSession(RDFConnection connection, Configuration configuration, Locale... locales) {
+        return new SessionImpl(configuration, new ConfigurationOntology(configuration), connection, locales);
+    }
+
     public static Session openSession(Repository repository, Iterable<Locale> locales, Configuration configuration) {
         SessionFactoryImpl sessionFactory = new SessionFactoryImpl(locales);
         sessionFactory.setConfiguration(configuration);
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.STMT;
+
+public class StatelessSessionTest {
+
+    @ClassMapping
+    public static class Company {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+    }
+
+    @ClassMapping
+    public static class Person {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Predicate
+        Company company;
+
+        @Predicate
+        List<String> nicknames;
+
+        @Predicate
+        Set<String> tags;
+
+    }
+
+    private final MiniRepository repository = new MiniRepository();
+
+    private final Configuration configuration = new DefaultConfiguration(TEST.NS, Company.class, Person.class);
+
+    private CountingConnection counter;
+
+    private StatelessSession statelessSession;
+
+    @Before
+    public void setUp() {
+        counter = new CountingConnection(repository.openConnection());
+        statelessSession = new StatelessSessionImpl(configuration, counter.getConnection(), Locale.ENGLISH);
+    }
+
+    private Person createPerson(int i, Company company) {
+        Person person = new Person();
+        person.name = "person" + i;
+        person.company = company;
+        person.nicknames = Arrays.asList("a" + i, "b" + i);
+        person.tags = new HashSet<String>(Arrays.asList("x", "y"));
+        return person;
+    }
+
+    @Test
+    public void Insert_and_Read() {
+        Company company = new Company();
+        company.name = "company";
+        ID companyId = statelessSession.insert(company);
+        assertNotNull(company.id);
+        assertEquals(companyId, company.id);
+
+        List<ID> ids = new ArrayList<ID>();
+        for (int i = 0; i < 100; i++) {
+            Person person = createPerson(i, company);
+            ids.add(statelessSession.insert(person));
+            assertEquals(ids.get(i), person.id);
+        }
+        statelessSession.close();
+        assertEquals(0, counter.getQueries());
+
+        Session session = SessionUtil.openSession(repository, Company.class, Person.class);
+        assertEquals(1, session.findInstances(Company.class).size());
+        List<Person> persons = session.getAll(Person.class, ids.toArray(new ID[ids.size()]));
+        assertEquals(100, persons.size());
+        for (int i = 0; i < persons.size(); i++) {
+            Person person = persons.get(i);
+            assertEquals("person" + i, person.name);
+            assertEquals("company", person.company.name);
+            assertEquals(Arrays.asList("a" + i, "b" + i), person.nicknames);
+            assertEquals(new HashSet<String>(Arrays.asList("x", "y")), person.tags);
+        }
+        assertSame(persons.get(0).company, persons.get(1).company);
+        session.close();
+    }
+
+    @Test
+    public void Statements_are_written_in_Batches() {
+        statelessSession.setBatchSize(50);
+        Company company = new Company();
+        company.name = "company";
+        statelessSession.insert(company);
+        for (int i = 0; i < 100; i++) {
+            statelessSession.insert(createPerson(i, company));
+        }
+        statelessSession.flush();
+        long statements = statelessSession.getStatementCount();
+        assertTrue(statements > 100);
+        assertTrue(counter.getUpdates() > 1);
+        assertTrue(counter.getUpdates() <= (statements + 49) / 50);
+        for (Collection<STMT> batch : counter.getBatches().subList(0, counter.getUpdates() - 1)) {
+            assertTrue(batch.size() >= 50);
+        }
+        assertEquals(statements, IteratorAdapter.asList(repository.findStatements(null, null, null, null, false)).size());
+    }
+
+    @Test
+    public void Instances_are_not_split_across_Batches() {
+        statelessSession.setBatchSize(1);
+        Company company = new Company();
+        company.name = "company";
+        List<ID> ids = statelessSession.insertAll(createPerson(1, company), createPerson(2, company));
+        statelessSession.close();
+        assertEquals(2, counter.getUpdates());
+
+        Set<ID> first = new HashSet<ID>(), second = new HashSet<ID>();
+        for (STMT stmt : counter.getBatches().get(0)) {
+            first.add(stmt.getSubject());
+        }
+        for (STMT stmt : counter.getBatches().get(1)) {
+            second.add(stmt.getSubject());
+        }
+        assertTrue(first.contains(ids.get(0)));
+        assertTrue(first.contains(company.id));
+        assertTrue(second.contains(ids.get(1)));
+        assertTrue(Collections.disjoint(first, second));
+    }
+
+    @Test
+    public void Referenced_Instances_without_Ids_are_inserted() {
+        Company company = new Company();
+        company.name = "company";
+        statelessSession.insertAll(createPerson(1, company), createPerson(2, company));
+        statelessSession.close();
+        assertNotNull(company.id);
+
+        Session session = SessionUtil.openSession(repository, Company.class, Person.class);
+        assertEquals(1, session.findInstances(Company.class).size());
+        assertEquals(2, session.findInstances(Person.class).size());
+        session.close();
+    }
+
+}
@@ -30,6 +30,8 @@ public abstract class AbstractProcessorTest {
         List<String> options = new ArrayList<String>(classes.size() + 3);
         options.add("-s");
         options.add("target/" + target);
+        options.add("-d");
+        options.add("target/" + target);
         options.add("-proc:only");
         options.add("-processor");
         options.add(processorClass.getName());
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import static com.mysema.query.alias.Alias.$;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.query.SearchResults;
+import com.mysema.query.alias.Alias;
+import com.mysema.query.types.EntityPath;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.object.DefaultConfiguration;
+import com.mysema.rdfbean.object.Session;
+import com.mysema.rdfbean.object.SessionFactoryImpl;
+
+public class CountCacheTest {
+
+    private SessionFactoryImpl sessionFactory;
+
+    private User user = Alias.alias(User.class);
+
+    @Before
+    public void setUp() {
+        sessionFactory = new SessionFactoryImpl();
+        sessionFactory.setConfiguration(new DefaultConfiguration(User.class));
+        sessionFactory.setRepository(new MiniRepository());
+        sessionFactory.initialize();
+
+        Session session = sessionFactory.openSession();
+        session.save(new User("Anton", "Bruxner"));
+        session.save(new User("John", "Smith"));
+        session.save(new User("Zoe", "Ark"));
+        session.save(new User("Chris", "Rock"));
+        session.save(new User("Bernard", "Shaw"));
+        session.close();
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    private void addUser() {
+        Session session = sessionFactory.openSession();
+        session.save(new User("Mary", "Jones"));
+        session.close();
+    }
+
+    private BeanListSource<User> createListSource(CountCache countCache) {
+        return new BeanListSourceBuilder(sessionFactory).countCache(countCache).from($(user)).list($(user));
+    }
+
+    @Test
+    public void Count_is_cached() {
+        CountCache countCache = new CountCache();
+        assertEquals(5, createListSource(countCache).size());
+        addUser();
+        assertEquals(5, createListSource(countCache).size());
+        countCache.invalidateAll();
+        assertEquals(6, createListSource(countCache).size());
+    }
+
+    @Test
+    public void Count_expires() throws InterruptedException {
+        CountCache countCache = new CountCache(10, 1);
+        assertEquals(5, createListSource(countCache).size());
+        addUser();
+        Thread.sleep(20);
+        assertEquals(6, createListSource(countCache).size());
+    }
+
+    @Test
+    public void Fingerprint() {
+        String fingerprint = CountCache.fingerprint(new EntityPath<?>[] { $(user) }, null);
+        CountCache countCache = new CountCache();
+        assertNull(countCache.get(sessionFactory, fingerprint));
+        createListSource(countCache);
+        assertEquals(Long.valueOf(5), countCache.get(sessionFactory, fingerprint));
+        assertEquals(fingerprint, CountCache.fingerprint(new EntityPath<?>[] { $(user) }, null));
+        assertEquals(false, fingerprint.equals(
+                CountCache.fingerprint(new EntityPath<?>[] { $(user) }, $(user.getFirstName()).eq("Anton"))));
+    }
+
+    @Test
+    public void Counts_are_scoped_by_SessionFactory() {
+        SessionFactoryImpl other = new SessionFactoryImpl();
+        other.setConfiguration(new DefaultConfiguration(User.class));
+        other.setRepository(new MiniRepository());
+        other.initialize();
+        try {
+            CountCache countCache = new CountCache();
+            assertEquals(5, createListSource(countCache).size());
+            assertEquals(0, new BeanListSourceBuilder(other).countCache(countCache).from($(user)).list($(user)).size());
+            String fingerprint = CountCache.fingerprint(new EntityPath<?>[] { $(user) }, null);
+            assertEquals(Long.valueOf(5), countCache.get(sessionFactory, fingerprint));
+            assertEquals(Long.valueOf(0), countCache.get(other, fingerprint));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void ListResults_with_Order() {
+        Session session = sessionFactory.openSession();
+        try {
+            SearchResults<String> results = session.from($(user))
+                    .orderBy($(user.getLastName()).desc())
+                    .offset(1).limit(3)
+                    .listResults($(user.getFirstName()));
+            assertEquals(5, results.getTotal());
+            assertEquals(Arrays.asList("Bernard", "Chris", "Anton"), results.getResults());
+
+            results = session.from($(user))
+                    .orderBy($(user.getLastName()).asc())
+                    .offset(5).limit(3)
+                    .listResults($(user.getFirstName()));
+            assertEquals(5, results.getTotal());
+            assertEquals(0, results.getResults().size());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void ListResults() {
+        Session session = sessionFactory.openSession();
+        try {
+            SearchResults<String> results = session.from($(user))
+                    .orderBy($(user.getFirstName()).asc())
+                    .offset(1).limit(2)
+                    .listResults($(user.getFirstName()));
+            assertEquals(5, results.getTotal());
+            assertEquals(Arrays.asList("Bernard", "Chris"), results.getResults());
+
+            SearchResults<User> users = session.from($(user))
+                    .orderBy($(user.getFirstName()).asc())
+                    .offset(4).limit(2)
+                    .listResults($(user));
+            assertEquals(5, users.getTotal());
+            assertEquals(1, users.getResults().size());
+            assertEquals("Zoe", users.getResults().get(0).getFirstName());
+        } finally {
+            session.close();
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import static com.mysema.query.alias.Alias.$;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.Tuple;
+import com.mysema.query.alias.Alias;
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.object.Configuration;
+import com.mysema.rdfbean.object.CountingConnection;
+import com.mysema.rdfbean.object.DefaultConfiguration;
+import com.mysema.rdfbean.object.Session;
+import com.mysema.rdfbean.object.SessionUtil;
+
+public class LookAheadIterateTest {
+
+    private static final int SIZE = 30;
+
+    @ClassMapping
+    public static class Company {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    @ClassMapping
+    public static class Person {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Predicate
+        Company company;
+
+        public String getName() {
+            return name;
+        }
+
+        public Company getCompany() {
+            return company;
+        }
+
+    }
+
+    private final MiniRepository repository = new MiniRepository();
+
+    private final Configuration configuration = new DefaultConfiguration(TEST.NS, Company.class, Person.class);
+
+    private CountingConnection counter;
+
+    private Session session;
+
+    private Person person = Alias.alias(Person.class);
+
+    @Before
+    public void setUp() {
+        Session session = SessionUtil.openSession(repository, Company.class, Person.class);
+        for (int i = 0; i < SIZE; i++) {
+            Company company = new Company();
+            company.name = "company" + i;
+            Person person = new Person();
+            person.name = "person" + i;
+            person.company = company;
+            session.save(company);
+            session.save(person);
+        }
+        session.close();
+
+        counter = new CountingConnection(repository.openConnection());
+        this.session = SessionUtil.openSession(counter.getConnection(), configuration, Locale.ENGLISH);
+    }
+
+    private void assertPersons(List<Person> persons) {
+        assertEquals(SIZE, persons.size());
+        for (Person p : persons) {
+            assertNotNull(p.company);
+            assertEquals(p.name.substring("person".length()), p.company.name.substring("company".length()));
+        }
+    }
+
+    @Test
+    public void Iterate_Entities() {
+        CloseableIterator<Person> iterator = session.from($(person)).iterate($(person));
+        List<Person> persons = IteratorAdapter.asList(iterator);
+        assertPersons(persons);
+        assertTrue("too many queries : " + counter.getQueries(), counter.getQueries() < SIZE);
+    }
+
+    @Test
+    public void Iterate_Tuples() {
+        CloseableIterator<Tuple> iterator = session.from($(person)).iterate($(person), $(person.getCompany()), $(person.getName()));
+        List<Tuple> tuples = IteratorAdapter.asList(iterator);
+        assertEquals(SIZE, tuples.size());
+        for (Tuple tuple : tuples) {
+            Person p = tuple.get($(person));
+            assertEquals(p.company, tuple.get($(person.getCompany())));
+            assertEquals(p.name, tuple.get($(person.getName())));
+        }
+        assertTrue("too many queries : " + counter.getQueries(), counter.getQueries() < SIZE);
+    }
+
+    @Test
+    public void Iterate_in_small_Batches() {
+        BeanQueryImpl query = (BeanQueryImpl) session.from($(person));
+        query.setBatchSize(7);
+        assertPersons(IteratorAdapter.asList(query.iterate($(person))));
+    }
+
+}
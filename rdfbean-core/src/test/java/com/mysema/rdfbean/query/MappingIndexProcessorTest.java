@@ -0,0 +1,97 @@
+package com.mysema.rdfbean.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.domains.InferenceDomain.Entity1;
+import com.mysema.rdfbean.domains.InferenceDomain.Entity2;
+import com.mysema.rdfbean.domains.InferenceDomain.Entity3;
+import com.mysema.rdfbean.domains.NoteTypeDomain.NoteType;
+import com.mysema.rdfbean.object.MappingIndex;
+import com.mysema.rdfbean.owl.OWL;
+import com.mysema.rdfbean.rdfs.RDFProperty;
+import com.mysema.rdfbean.rdfs.RDFPropertyFeature;
+
+public class MappingIndexProcessorTest extends AbstractProcessorTest {
+
+    private static MappingIndex readIndex(String target) throws IOException {
+        File file = new File("target/" + target + "/" + MappingIndex.RESOURCE);
+        assertTrue(file.exists());
+        MappingIndex index = new MappingIndex();
+        Reader reader = new FileReader(file);
+        try {
+            index.read(reader);
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    @Test
+    public void Process() throws IOException {
+        process(MappingIndexProcessor.class, Arrays.asList(
+                "src/test/java/com/mysema/rdfbean/domains/InferenceDomain.java",
+                "src/test/java/com/mysema/rdfbean/domains/NoteTypeDomain.java",
+                "src/main/java/com/mysema/rdfbean/rdfs/RDFPropertyFeature.java"), "mappingindex");
+
+        MappingIndex index = readIndex("mappingindex");
+
+        MappingIndex.Entry entity1 = index.getEntry(Entity1.class.getName());
+        assertNotNull(entity1);
+        assertEquals("", entity1.getNs());
+        assertEquals("Entity1", entity1.getLn());
+        assertEquals(Collections.emptyList(), entity1.getSuperTypes());
+
+        MappingIndex.Entry entity3 = index.getEntry(Entity3.class.getName());
+        assertEquals(Collections.singletonList(Entity2.class.getName()), entity3.getSuperTypes());
+
+        MappingIndex.Entry noteType = index.getEntry(NoteType.class.getName());
+        assertNull(noteType.getParent());
+        assertEquals(Arrays.asList("TYPE1", "TYPE2", "A", "B"), noteType.getEnumConstants());
+
+        MappingIndex.Entry feature = index.getEntry(RDFPropertyFeature.class.getName());
+        assertEquals(OWL.NS, feature.getNs());
+        assertEquals(RDFProperty.class.getName(), feature.getParent());
+        assertEquals(4, feature.getEnumConstants().size());
+    }
+
+    @Test
+    public void Incremental_Process() throws IOException {
+        process(MappingIndexProcessor.class, Arrays.asList(
+                "src/test/java/com/mysema/rdfbean/domains/InferenceDomain.java"), "mappingindex_incremental");
+
+        // stale entry of a removed class
+        MappingIndex index = readIndex("mappingindex_incremental");
+        index.add(new MappingIndex.Entry("com.example.Removed", "", "Removed",
+                Collections.<String> emptyList(), null, Collections.<String> emptyList()));
+        Writer writer = new FileWriter("target/mappingindex_incremental/" + MappingIndex.RESOURCE);
+        try {
+            index.write(writer);
+        } finally {
+            writer.close();
+        }
+
+        compile(MappingIndexProcessor.class, Arrays.asList(
+                "src/test/java/com/mysema/rdfbean/domains/NoteTypeDomain.java"), "mappingindex_incremental");
+
+        index = readIndex("mappingindex_incremental");
+        assertNotNull(index.getEntry(Entity1.class.getName()));
+        assertNotNull(index.getEntry(Entity3.class.getName()));
+        assertNotNull(index.getEntry(NoteType.class.getName()));
+        assertNull(index.getEntry("com.example.Removed"));
+    }
+
+}
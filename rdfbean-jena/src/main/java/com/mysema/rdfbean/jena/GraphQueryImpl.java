@@ -69,7 +69,7 @@ public class GraphQueryImpl extends AbstractQueryImpl {
         } else if (format == Format.TURTLE || format == Format.N3) {
             writer = new N3TurtleJenaWriter();
         } else {
-            throw new IllegalArgumentException(format.toString());
+            throw new IllegalArgumentException("Unsupported format : " + format);
         }
 
         QueryExecution exec = createExecution();
@@ -98,7 +98,8 @@ public class JenaRepository implements Repository {
         } else if (format == Format.TURTLE || format == Format.N3) {
             writer = new N3TurtleJenaWriter();
         } else {
-            throw new IllegalArgumentException(format.toString());
+            // no writers for N-Quads, TriG and RDFa
+            throw new IllegalArgumentException("Unsupported format : " + format);
         }
 
         if (context != null) {
@@ -139,7 +140,8 @@ public class JenaRepository implements Repository {
         } else if (format == Format.TURTLE || format == Format.NTRIPLES) {
             reader = new TurtleReader();
         } else {
-            throw new IllegalArgumentException(format.toString());
+            // no readers for N-Quads, TriG and RDFa
+            throw new IllegalArgumentException("Unsupported format : " + format);
         }
         Model model = context == null ? dataset.getDefaultModel() : dataset.getNamedModel(context.getId());
         Assert.notNull(model, "model");
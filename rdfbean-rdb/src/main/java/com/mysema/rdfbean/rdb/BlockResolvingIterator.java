@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.FactoryExpression;
+
+/**
+ * BlockResolvingIterator reads the result rows in blocks, resolves the symbol
+ * ids of each block with a single batch lookup and creates the result
+ * instances only after that
+ * 
+ * <p>
+ * The amount of symbol queries scales with the amount of blocks instead of the
+ * amount of distinct symbols in the result.
+ * </p>
+ * 
+ * @author tiwe
+ * 
+ * @param <T>
+ */
+public class BlockResolvingIterator<T> implements CloseableIterator<T> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    private final CloseableIterator<Object[]> rows;
+
+    private final FactoryExpression<T> factory;
+
+    private final NodeResolver resolver;
+
+    private final boolean[] symbolColumns;
+
+    private final int blockSize;
+
+    private final Queue<Object[]> block = new LinkedList<Object[]>();
+
+    public BlockResolvingIterator(CloseableIterator<Object[]> rows, FactoryExpression<T> factory, NodeResolver resolver) {
+        this(rows, factory, resolver, DEFAULT_BLOCK_SIZE);
+    }
+
+    public BlockResolvingIterator(CloseableIterator<Object[]> rows, FactoryExpression<T> factory, NodeResolver resolver,
+            int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size needs to be positive, was " + blockSize);
+        }
+        this.rows = rows;
+        this.factory = factory;
+        this.resolver = resolver;
+        this.blockSize = blockSize;
+        List<Expression<?>> args = factory.getArgs();
+        this.symbolColumns = new boolean[args.size()];
+        for (int i = 0; i < symbolColumns.length; i++) {
+            symbolColumns[i] = TupleFactoryExpression.isSymbolColumn(args.get(i));
+        }
+    }
+
+    private void readBlock() {
+        Set<Long> ids = new HashSet<Long>();
+        while (block.size() < blockSize && rows.hasNext()) {
+            Object[] row = rows.next();
+            for (int i = 0; i < row.length && i < symbolColumns.length; i++) {
+                if (symbolColumns[i] && row[i] instanceof Long) {
+                    ids.add((Long) row[i]);
+                }
+            }
+            block.add(row);
+        }
+        if (!ids.isEmpty()) {
+            resolver.resolve(ids);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (block.isEmpty()) {
+            readBlock();
+        }
+        return !block.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (hasNext()) {
+            return factory.newInstance(block.poll());
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        block.clear();
+        rows.close();
+    }
+
+}
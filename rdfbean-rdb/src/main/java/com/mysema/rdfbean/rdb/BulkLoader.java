@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.io.ParserUtils;
+import com.mysema.rdfbean.model.io.STMTHandler;
+import com.mysema.rdfbean.rdb.support.SesameDialect;
+import com.mysema.rdfbean.xsd.ConverterRegistry;
+
+/**
+ * BulkLoader loads large RDF files into the RDB schema in parallel
+ *
+ * <p>
+ * The calling thread parses the input into batches of statements. Hasher
+ * threads compute the symbol ids and drop recently seen symbols, and writer
+ * threads insert the rows via plain JDBC batches into staging tables without
+ * keys or indexes. The stages are connected via bounded queues. When the input
+ * has been written, the staging tables are merged into the symbol and
+ * statement tables with set-based statements and dropped. Each load uses
+ * its own staging tables, so loads may run in parallel.
+ * </p>
+ *
+ * <p>
+ * The loaded statements are not visible before the final merge, and a failed
+ * load leaves the symbol and statement tables untouched. The merges of the
+ * loaders of one JVM are serialized, since concurrent merges of the same new
+ * symbols or statements would violate the primary keys.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class BulkLoader {
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private static final int QUEUE_SIZE = 16;
+
+    private static final long SEEN_SYMBOLS = 1000000;
+
+    // serializes the merges of the loaders of this JVM
+    private static final Object MERGE_LOCK = new Object();
+
+    private static final String SELECT_LANGUAGE = "SELECT id FROM language WHERE id = ?";
+
+    private static final String INSERT_LANGUAGE = "INSERT INTO language(id, text) VALUES (?, ?)";
+
+    private static final Timestamp DEFAULT_TIMESTAMP = new Timestamp(0);
+
+    /**
+     * Staging tables and statements of a single load
+     */
+    private static final class Staging {
+
+        private final String[] create, merge, drop;
+
+        private final String insertSymbol, insertStatement;
+
+        Staging() {
+            UUID uuid = UUID.randomUUID();
+            String suffix = Long.toString(uuid.getMostSignificantBits() & Long.MAX_VALUE, 36);
+            String symbols = "sym_stage_" + suffix;
+            String statements = "stmt_stage_" + suffix;
+            create = new String[] {
+                    "CREATE TABLE " + symbols + "(id BIGINT NOT NULL, resource BOOLEAN NOT NULL, "
+                            + "lexical VARCHAR(1024) NOT NULL, datatype BIGINT NULL, lang INT NULL, "
+                            + "floatval DOUBLE NULL, datetimeval TIMESTAMP NULL)",
+                    "CREATE TABLE " + statements + "(model BIGINT NOT NULL, subject BIGINT NOT NULL, "
+                            + "predicate BIGINT NOT NULL, object BIGINT NOT NULL)" };
+            merge = new String[] {
+                    "INSERT INTO symbol(id, resource, lexical, datatype, lang, floatval, datetimeval) "
+                            + "SELECT DISTINCT s.id, s.resource, s.lexical, s.datatype, s.lang, s.floatval, s.datetimeval "
+                            + "FROM " + symbols + " s "
+                            + "WHERE NOT EXISTS (SELECT 1 FROM symbol t WHERE t.id = s.id)",
+                    "INSERT INTO statement(model, subject, predicate, object) "
+                            + "SELECT DISTINCT s.model, s.subject, s.predicate, s.object "
+                            + "FROM " + statements + " s "
+                            + "WHERE NOT EXISTS (SELECT 1 FROM statement t WHERE t.model = s.model "
+                            + "AND t.subject = s.subject AND t.predicate = s.predicate AND t.object = s.object)" };
+            drop = new String[] {
+                    "DROP TABLE IF EXISTS " + symbols,
+                    "DROP TABLE IF EXISTS " + statements };
+            insertSymbol = "INSERT INTO " + symbols + " VALUES (?, ?, ?, ?, ?, ?, ?)";
+            insertStatement = "INSERT INTO " + statements + " VALUES (?, ?, ?, ?)";
+        }
+
+    }
+
+    /**
+     * Rows of a statement batch
+     */
+    private static class Rows {
+
+        private final List<Object[]> symbols = new ArrayList<Object[]>();
+
+        private final List<long[]> statements = new ArrayList<long[]>();
+
+    }
+
+    /**
+     * Stage is a pipeline task which fails the whole load on errors
+     */
+    private abstract class Stage implements Callable<Void> {
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                run();
+                return null;
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+
+        protected abstract void run() throws Exception;
+
+    }
+
+    private static final List<STMT> NO_MORE_STMTS = new ArrayList<STMT>(0);
+
+    private static final Rows NO_MORE_ROWS = new Rows();
+
+    private final DataSource dataSource;
+
+    private final IdFactory idFactory;
+
+    private final ConverterRegistry converters;
+
+    private final int writers;
+
+    private final long defaultDatatypeId;
+
+    private final int defaultLocaleId;
+
+    private final long nullContextId;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private final Set<Locale> locales = Collections.newSetFromMap(new ConcurrentHashMap<Locale, Boolean>());
+
+    private final Cache<Long, Boolean> seenSymbols = CacheBuilder.newBuilder().maximumSize(SEEN_SYMBOLS).build();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    private final AtomicLong statementCount = new AtomicLong();
+
+    /**
+     * Create a new BulkLoader
+     *
+     * @param dataSource data source of the RDB schema
+     * @param idFactory id factory of the repository
+     * @param converters converters of the repository
+     * @param writers amount of hasher and writer threads
+     */
+    public BulkLoader(DataSource dataSource, IdFactory idFactory, ConverterRegistry converters, int writers) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("Amount of writers needs to be positive, was " + writers);
+        }
+        this.dataSource = dataSource;
+        this.idFactory = idFactory;
+        this.converters = converters;
+        this.writers = writers;
+        this.defaultDatatypeId = idFactory.getId(new UID("default:default"));
+        this.defaultLocaleId = idFactory.getId(new Locale(""));
+        this.nullContextId = idFactory.getId(RDB.nullContext);
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size needs to be positive, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Load the statements of the given input into the given context
+     *
+     * @param format format of the input
+     * @param in input stream
+     * @param context context of the statements or null for the default context
+     * @return the amount of parsed statements
+     */
+    public synchronized long load(Format format, InputStream in, @Nullable UID context) {
+        failure.set(null);
+        statementCount.set(0);
+        locales.clear();
+        seenSymbols.invalidateAll();
+        Staging staging = new Staging();
+        executeAll(staging.create);
+        try {
+            runPipeline(staging, format, in, context);
+            synchronized (MERGE_LOCK) {
+                addLocales();
+                executeAll(staging.merge);
+            }
+            return statementCount.get();
+        } finally {
+            executeAll(staging.drop);
+        }
+    }
+
+    private void runPipeline(final Staging staging, Format format, InputStream in, @Nullable UID context) {
+        final BlockingQueue<List<STMT>> stmtQueue = new ArrayBlockingQueue<List<STMT>>(QUEUE_SIZE);
+        final BlockingQueue<Rows> rowQueue = new ArrayBlockingQueue<Rows>(QUEUE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(2 * writers);
+        try {
+            List<Future<?>> hashers = new ArrayList<Future<?>>(writers);
+            List<Future<?>> jdbcWriters = new ArrayList<Future<?>>(writers);
+            for (int i = 0; i < writers; i++) {
+                hashers.add(executor.submit(new Stage() {
+                    @Override
+                    protected void run() throws Exception {
+                        hash(stmtQueue, rowQueue);
+                    }
+                }));
+                jdbcWriters.add(executor.submit(new Stage() {
+                    @Override
+                    protected void run() throws Exception {
+                        write(staging, rowQueue);
+                    }
+                }));
+            }
+
+            parse(format, in, context, stmtQueue);
+            for (int i = 0; i < writers; i++) {
+                put(stmtQueue, NO_MORE_STMTS);
+            }
+            await(hashers);
+            for (int i = 0; i < writers; i++) {
+                put(rowQueue, NO_MORE_ROWS);
+            }
+            await(jdbcWriters);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void parse(Format format, InputStream in, @Nullable final UID context,
+            final BlockingQueue<List<STMT>> queue) throws InterruptedException {
+        String baseURI = context != null ? context.getValue() : TEST.NS;
+        final STMTHandler handler = new STMTHandler() {
+            @Override
+            public void handle(List<STMT> stmts) {
+                try {
+                    statementCount.addAndGet(stmts.size());
+                    put(queue, stmts);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RepositoryException(e);
+                }
+            }
+        };
+        if (ParserUtils.isSupported(format)) {
+            ParserUtils.parse(format, in, context, baseURI, batchSize, handler);
+        } else {
+            final SesameDialect dialect = new SesameDialect(new ValueFactoryImpl());
+            RDFParser parser = Rio.createParser(RDBRepository.getRioFormat(format));
+            parser.setRDFHandler(new RDFHandlerBase() {
+                private List<STMT> stmts = new ArrayList<STMT>(batchSize);
+
+                @Override
+                public void handleStatement(Statement stmt) {
+                    stmts.add(new STMT(
+                            dialect.getID(stmt.getSubject()),
+                            dialect.getUID(stmt.getPredicate()),
+                            dialect.getNODE(stmt.getObject()),
+                            context));
+                    if (stmts.size() == batchSize) {
+                        handler.handle(stmts);
+                        stmts = new ArrayList<STMT>(batchSize);
+                    }
+                }
+
+                @Override
+                public void endRDF() {
+                    if (!stmts.isEmpty()) {
+                        handler.handle(stmts);
+                    }
+                }
+            });
+            try {
+                parser.parse(in, baseURI);
+            } catch (RDFParseException e) {
+                throw new RepositoryException(e);
+            } catch (RDFHandlerException e) {
+                throw new RepositoryException(e);
+            } catch (IOException e) {
+                throw new RepositoryException(e);
+            }
+        }
+    }
+
+    private void hash(BlockingQueue<List<STMT>> in, BlockingQueue<Rows> out) throws InterruptedException {
+        List<STMT> stmts = in.take();
+        while (stmts != NO_MORE_STMTS) {
+            Rows rows = new Rows();
+            Set<Long> symbols = new HashSet<Long>();
+            for (STMT stmt : stmts) {
+                long model = stmt.getContext() != null ? addSymbol(rows, symbols, stmt.getContext()) : nullContextId;
+                long subject = addSymbol(rows, symbols, stmt.getSubject());
+                long predicate = addSymbol(rows, symbols, stmt.getPredicate());
+                long object = addSymbol(rows, symbols, stmt.getObject());
+                rows.statements.add(new long[] { model, subject, predicate, object });
+            }
+            put(out, rows);
+            stmts = in.take();
+        }
+    }
+
+    private long addSymbol(Rows rows, Set<Long> symbols, NODE node) {
+        Long id = idFactory.getId(node);
+        if (symbols.add(id) && seenSymbols.asMap().putIfAbsent(id, Boolean.TRUE) == null) {
+            long datatypeId = defaultDatatypeId;
+            int langId = defaultLocaleId;
+            double floatVal = 0.0;
+            Timestamp datetimeVal = DEFAULT_TIMESTAMP;
+            if (node.isLiteral()) {
+                LIT literal = node.asLiteral();
+                datatypeId = addSymbol(rows, symbols, literal.getDatatype());
+                if (literal.getLang() != null) {
+                    locales.add(literal.getLang());
+                    langId = idFactory.getId(literal.getLang());
+                } else if (Constants.integerTypes.contains(literal.getDatatype())
+                        || Constants.decimalTypes.contains(literal.getDatatype())) {
+                    floatVal = Double.valueOf(literal.getValue());
+                } else if (Constants.dateTypes.contains(literal.getDatatype())) {
+                    datetimeVal = new Timestamp(converters.fromString(literal.getValue(), java.sql.Date.class).getTime());
+                    floatVal = datetimeVal.getTime();
+                } else if (Constants.dateTimeTypes.contains(literal.getDatatype())) {
+                    datetimeVal = converters.fromString(literal.getValue(), Timestamp.class);
+                    floatVal = datetimeVal.getTime();
+                }
+            }
+            rows.symbols.add(new Object[] { id, node.isResource(), node.getValue(),
+                    datatypeId, langId, floatVal, datetimeVal });
+        }
+        return id;
+    }
+
+    private void write(Staging staging, BlockingQueue<Rows> in) throws InterruptedException, SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement symbols = connection.prepareStatement(staging.insertSymbol);
+            PreparedStatement statements = connection.prepareStatement(staging.insertStatement);
+            try {
+                Rows rows = in.take();
+                while (rows != NO_MORE_ROWS) {
+                    for (Object[] row : rows.symbols) {
+                        symbols.setLong(1, (Long) row[0]);
+                        symbols.setBoolean(2, (Boolean) row[1]);
+                        symbols.setString(3, (String) row[2]);
+                        symbols.setLong(4, (Long) row[3]);
+                        symbols.setInt(5, (Integer) row[4]);
+                        symbols.setDouble(6, (Double) row[5]);
+                        if (row[6] != null) {
+                            symbols.setTimestamp(7, (Timestamp) row[6]);
+                        } else {
+                            symbols.setNull(7, Types.TIMESTAMP);
+                        }
+                        symbols.addBatch();
+                    }
+                    for (long[] row : rows.statements) {
+                        statements.setLong(1, row[0]);
+                        statements.setLong(2, row[1]);
+                        statements.setLong(3, row[2]);
+                        statements.setLong(4, row[3]);
+                        statements.addBatch();
+                    }
+                    if (!rows.symbols.isEmpty()) {
+                        symbols.executeBatch();
+                    }
+                    statements.executeBatch();
+                    connection.commit();
+                    rows = in.take();
+                }
+            } finally {
+                symbols.close();
+                statements.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T element) throws InterruptedException {
+        while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw new RepositoryException("Bulk load failed", failure.get());
+            }
+        }
+    }
+
+    private void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+                throw new RepositoryException("Bulk load failed", e.getCause());
+            }
+        }
+    }
+
+    private void addLocales() {
+        // the locales need to exist before the symbols refer to them
+        Connection connection = getConnection();
+        try {
+            PreparedStatement select = connection.prepareStatement(SELECT_LANGUAGE);
+            PreparedStatement insert = connection.prepareStatement(INSERT_LANGUAGE);
+            try {
+                for (Locale locale : locales) {
+                    Integer id = idFactory.getId(locale);
+                    select.setInt(1, id);
+                    ResultSet rs = select.executeQuery();
+                    try {
+                        if (!rs.next()) {
+                            insert.setInt(1, id);
+                            insert.setString(2, LocaleUtil.toLang(locale));
+                            insert.executeUpdate();
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                }
+            } finally {
+                select.close();
+                insert.close();
+            }
+        } catch (SQLException e) {
+            throw new RepositoryException(e);
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void executeAll(String[] sqls) {
+        Connection connection = getConnection();
+        try {
+            connection.setAutoCommit(false);
+            java.sql.Statement stmt = connection.createStatement();
+            try {
+                for (String sql : sqls) {
+                    stmt.execute(sql);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            throw new RepositoryException(e);
+        } finally {
+            close(connection);
+        }
+    }
+
+    private Connection getConnection() {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+}
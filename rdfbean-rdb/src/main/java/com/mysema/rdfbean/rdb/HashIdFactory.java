@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.Locale;
+
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+
+/**
+ * HashIdFactory is an IdFactory implementation which uses a 64-bit
+ * MurmurHash2 variant computed directly over the characters of the node
+ * values
+ *
+ * <p>
+ * The node kind is stored in the two lowest bits of the highest byte of the
+ * id like in {@link MD5IdFactory}. Locale ids are the same as in MD5IdFactory,
+ * so the language table stays valid, but node ids are different, so databases
+ * created with MD5IdFactory need to be migrated via {@link IdMigration}.
+ * </p>
+ *
+ * @author tiwe
+ */
+public class HashIdFactory implements IdFactory {
+
+    private static final long SEED = 0x5bd1e9955bd1e995L;
+
+    private static final long M = 0xc6a4a7935bd1e995L;
+
+    private static final int R = 47;
+
+    private static final long KIND_MASK = 3l << 56;
+
+    static long hash(long h, String str) {
+        int length = str.length();
+        // the length separates consecutive parts
+        h ^= length * M;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = str.charAt(i)
+                    | ((long) str.charAt(i + 1) << 16)
+                    | ((long) str.charAt(i + 2) << 32)
+                    | ((long) str.charAt(i + 3) << 48);
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+        if (i < length) {
+            long k = 0;
+            for (int shift = 0; i < length; i++, shift += 16) {
+                k |= (long) str.charAt(i) << shift;
+            }
+            h ^= k;
+            h *= M;
+        }
+        return h;
+    }
+
+    static long finish(long h) {
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+
+    /**
+     * @param id node id
+     * @return the node kind of the given id, 0 for language literals, 1 for
+     *         typed literals, 2 for blank nodes and 3 for URIs
+     */
+    public static int getKind(long id) {
+        return (int) ((id & KIND_MASK) >>> 56);
+    }
+
+    private final IdFactory localeIds = new MD5IdFactory();
+
+    @Override
+    public Long getId(NODE node) {
+        long kind;
+        long h;
+        if (node.isLiteral()) {
+            LIT literal = node.asLiteral();
+            if (literal.getLang() != null) {
+                kind = 0;
+                Locale lang = literal.getLang();
+                h = hash(SEED, literal.getValue());
+                h = hash(h, lang.getLanguage());
+                h = hash(h, lang.getCountry());
+                h = hash(h, lang.getVariant());
+            } else {
+                kind = 1;
+                h = hash(hash(SEED, literal.getValue()), literal.getDatatype().getId());
+            }
+        } else if (node.isBNode()) {
+            kind = 2;
+            h = hash(SEED, node.getValue());
+        } else {
+            kind = 3;
+            h = hash(SEED, node.asURI().getId());
+        }
+        return (finish(h) & ~KIND_MASK) | (kind << 56);
+    }
+
+    @Override
+    public Integer getId(Locale locale) {
+        return localeIds.getId(locale);
+    }
+
+}
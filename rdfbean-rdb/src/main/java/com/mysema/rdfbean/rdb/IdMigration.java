@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static com.mysema.rdfbean.rdb.QLanguage.language;
+import static com.mysema.rdfbean.rdb.QStatement.statement;
+import static com.mysema.rdfbean.rdb.QSymbol.symbol;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.query.Tuple;
+import com.mysema.query.sql.Configuration;
+import com.mysema.query.sql.SQLQuery;
+import com.mysema.query.sql.SQLTemplates;
+import com.mysema.query.sql.dml.SQLMergeClause;
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * IdMigration copies the contents of a RDB database to another one and
+ * replaces the ids of the source IdFactory with the ids of the target
+ * IdFactory
+ *
+ * <p>
+ * The schema of the target database needs to exist, e.g. by initializing a
+ * {@link RDBRepository} with the target IdFactory. The mapping from old to new
+ * symbol ids is kept in memory during the migration. Transactions are left to
+ * the caller.
+ * </p>
+ *
+ * <pre>
+ * IdMigration migration = new IdMigration(new MD5IdFactory(), new HashIdFactory(), templates);
+ * migration.migrate(oldConnection, newConnection);
+ * </pre>
+ *
+ * @author tiwe
+ */
+public class IdMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final IdFactory source, target;
+
+    private final SQLTemplates templates;
+
+    private final Configuration configuration;
+
+    private final Integer sourceDefaultLocale;
+
+    private final Long sourceDefaultDatatype;
+
+    public IdMigration(IdFactory source, IdFactory target, SQLTemplates templates) {
+        this.source = source;
+        this.target = target;
+        this.templates = templates;
+        this.configuration = new Configuration(templates);
+        this.sourceDefaultLocale = source.getId(new Locale(""));
+        this.sourceDefaultDatatype = source.getId(new UID("default:default"));
+    }
+
+    /**
+     * Copy the languages, symbols and statements from the given source
+     * connection to the given target connection
+     *
+     * @param from connection to the database with source ids
+     * @param to connection to the database with target ids
+     * @return the amount of migrated symbols
+     */
+    public long migrate(Connection from, Connection to) {
+        Map<Integer, Locale> locales = copyLanguages(from, to);
+        Map<Long, UID> datatypes = getDatatypes(from);
+        Map<Long, Long> ids = copySymbols(from, to, locales, datatypes);
+        copyStatements(from, to, ids);
+        return ids.size();
+    }
+
+    private Map<Integer, Locale> copyLanguages(Connection from, Connection to) {
+        Map<Integer, Locale> locales = new HashMap<Integer, Locale>();
+        SQLMergeClause merge = new SQLMergeClause(to, configuration, language);
+        merge.keys(language.id);
+        for (Tuple row : new SQLQuery(from, templates).from(language).list(language.id, language.text)) {
+            Locale locale = LocaleUtil.parseLocale(row.get(language.text));
+            locales.put(row.get(language.id), locale);
+            merge.set(language.id, target.getId(locale));
+            merge.set(language.text, row.get(language.text));
+            merge.addBatch();
+        }
+        if (!locales.isEmpty()) {
+            merge.execute();
+        }
+        return locales;
+    }
+
+    private Map<Long, UID> getDatatypes(Connection from) {
+        Map<Long, UID> datatypes = new HashMap<Long, UID>();
+        List<Long> ids = new SQLQuery(from, templates).from(symbol).listDistinct(symbol.datatype);
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            List<Long> batch = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+            for (Tuple row : new SQLQuery(from, templates)
+                    .from(symbol)
+                    .where(symbol.id.in(batch))
+                    .list(symbol.id, symbol.lexical)) {
+                datatypes.put(row.get(symbol.id), new UID(row.get(symbol.lexical)));
+            }
+        }
+        return datatypes;
+    }
+
+    private Map<Long, Long> copySymbols(Connection from, Connection to,
+            Map<Integer, Locale> locales, Map<Long, UID> datatypes) {
+        Map<Long, Long> ids = new HashMap<Long, Long>();
+        SQLMergeClause merge = new SQLMergeClause(to, configuration, symbol);
+        int batched = 0;
+        CloseableIterator<Tuple> rows = new SQLQuery(from, templates).from(symbol).iterate(
+                symbol.id, symbol.resource, symbol.lexical, symbol.datatype, symbol.lang,
+                symbol.floatval, symbol.datetimeval);
+        try {
+            while (rows.hasNext()) {
+                Tuple row = rows.next();
+                Long id = row.get(symbol.id);
+                Long datatype = row.get(symbol.datatype);
+                Integer lang = row.get(symbol.lang);
+                UID datatypeUid = datatypes.get(datatype);
+                Locale locale = lang != null ? locales.get(lang) : null;
+                NODE node = getNode(row.get(symbol.resource), row.get(symbol.lexical), datatypeUid, locale);
+                if (!id.equals(source.getId(node))) {
+                    throw new RepositoryException("Symbol " + id + " doesn't match the source id of " + node);
+                }
+                Long newId = target.getId(node);
+                ids.put(id, newId);
+
+                merge.set(symbol.id, newId);
+                merge.set(symbol.resource, row.get(symbol.resource));
+                merge.set(symbol.lexical, row.get(symbol.lexical));
+                merge.set(symbol.datatype, datatypeUid != null ? target.getId(datatypeUid) : null);
+                merge.set(symbol.lang, locale != null ? target.getId(locale) : null);
+                merge.set(symbol.floatval, row.get(symbol.floatval));
+                merge.set(symbol.datetimeval, row.get(symbol.datetimeval));
+                merge.addBatch();
+                if (++batched == BATCH_SIZE) {
+                    merge.execute();
+                    merge = new SQLMergeClause(to, configuration, symbol);
+                    batched = 0;
+                }
+            }
+        } finally {
+            rows.close();
+        }
+        if (batched > 0) {
+            merge.execute();
+        }
+        return ids;
+    }
+
+    private void copyStatements(Connection from, Connection to, Map<Long, Long> ids) {
+        SQLMergeClause merge = new SQLMergeClause(to, configuration, statement);
+        int batched = 0;
+        CloseableIterator<Tuple> rows = new SQLQuery(from, templates).from(statement).iterate(
+                statement.model, statement.subject, statement.predicate, statement.object);
+        try {
+            while (rows.hasNext()) {
+                Tuple row = rows.next();
+                Long model = row.get(statement.model);
+                merge.set(statement.model, model != null ? getId(ids, model) : null);
+                merge.set(statement.subject, getId(ids, row.get(statement.subject)));
+                merge.set(statement.predicate, getId(ids, row.get(statement.predicate)));
+                merge.set(statement.object, getId(ids, row.get(statement.object)));
+                merge.addBatch();
+                if (++batched == BATCH_SIZE) {
+                    merge.execute();
+                    merge = new SQLMergeClause(to, configuration, statement);
+                    batched = 0;
+                }
+            }
+        } finally {
+            rows.close();
+        }
+        if (batched > 0) {
+            merge.execute();
+        }
+    }
+
+    private Long getId(Map<Long, Long> ids, Long id) {
+        Long newId = ids.get(id);
+        if (newId == null) {
+            throw new RepositoryException("Found no symbol for id " + id);
+        }
+        return newId;
+    }
+
+    private NODE getNode(boolean resource, String lexical, @Nullable UID datatype, @Nullable Locale locale) {
+        if (resource) {
+            return lexical.contains(":") ? new UID(lexical) : new BID(lexical);
+        } else if (locale != null && !sourceDefaultLocale.equals(source.getId(locale))) {
+            return new LIT(lexical, locale);
+        } else if (datatype != null && !sourceDefaultDatatype.equals(source.getId(datatype))) {
+            return new LIT(lexical, datatype);
+        } else {
+            return new LIT(lexical);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * IndexLayout defines the secondary indexes of the statement table
+ *
+ * <p>
+ * The primary key of the statement table is (model, subject, predicate,
+ * object), so lookups with a bound model are always supported. The presets
+ * differ in how lookups with an unbound model are served.
+ * </p>
+ *
+ * @author tiwe
+ */
+@Immutable
+public final class IndexLayout {
+
+    /**
+     * Index is a single index of the statement table
+     */
+    @Immutable
+    public static final class Index {
+
+        private final String name;
+
+        private final List<String> columns;
+
+        public Index(String name, String... columns) {
+            if (columns.length == 0) {
+                throw new IllegalArgumentException("Index " + name + " has no columns");
+            }
+            for (String column : columns) {
+                if (!COLUMNS.contains(column)) {
+                    throw new IllegalArgumentException("Unknown column " + column);
+                }
+            }
+            this.name = name;
+            this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getCreateStatement() {
+            StringBuilder builder = new StringBuilder();
+            for (String column : columns) {
+                if (builder.length() > 0) {
+                    builder.append(", ");
+                }
+                builder.append(column);
+            }
+            return "CREATE INDEX " + name + " ON statement(" + builder + ")";
+        }
+
+        public String getDropStatement() {
+            return "DROP INDEX " + name;
+        }
+
+    }
+
+    /**
+     * Columns in the order of {@link WorkloadAnalyzer} patterns
+     */
+    static final List<String> COLUMNS = Arrays.asList("subject", "predicate", "object", "model");
+
+    private static final Index PRIMARY_KEY = new Index("primary_key", "model", "subject", "predicate", "object");
+
+    /**
+     * Model first indexes, which support lookups with a bound model
+     */
+    public static final IndexLayout MODEL_FIRST = new IndexLayout(
+            new Index("statement_mpo", "model", "predicate", "object"),
+            new Index("statement_mo", "model", "object"));
+
+    /**
+     * Covering SPOC, POSC and OSPC indexes, which support lookups with an
+     * unbound model
+     */
+    public static final IndexLayout COVERING = new IndexLayout(
+            new Index("statement_spoc", "subject", "predicate", "object", "model"),
+            new Index("statement_posc", "predicate", "object", "subject", "model"),
+            new Index("statement_ospc", "object", "subject", "predicate", "model"));
+
+    public static final IndexLayout DEFAULT = MODEL_FIRST;
+
+    private final List<Index> indexes;
+
+    public IndexLayout(Index... indexes) {
+        this.indexes = Collections.unmodifiableList(Arrays.asList(indexes));
+    }
+
+    public List<Index> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return the CREATE INDEX statements of this layout
+     */
+    public List<String> getCreateStatements() {
+        List<String> statements = new ArrayList<String>(indexes.size());
+        for (Index index : indexes) {
+            statements.add(index.getCreateStatement());
+        }
+        return statements;
+    }
+
+    /**
+     * Get whether the primary key or an index of this layout starts with a
+     * bound column of the given pattern
+     *
+     * @param pattern pattern in the format of {@link WorkloadAnalyzer}
+     * @return
+     */
+    public boolean supports(String pattern) {
+        if (isBound(pattern, PRIMARY_KEY)) {
+            return true;
+        }
+        for (Index index : indexes) {
+            if (isBound(pattern, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBound(String pattern, Index index) {
+        return WorkloadAnalyzer.isBound(pattern, COLUMNS.indexOf(index.getColumns().get(0)));
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mysema.rdfbean.model.NODE;
+
+/**
+ * NodeCache is a thread-safe and size-bounded two-way cache between NODE
+ * instances and their symbol ids, which is shared by the connections of a
+ * {@link RDBRepository}
+ *
+ * <p>
+ * Preset nodes are the nodes which are persisted when the repository is
+ * initialized. They are never evicted. All other mappings are held in caches
+ * with least-recently-used eviction, which are bounded to the given maximum
+ * size per direction.
+ * </p>
+ *
+ * @author tiwe
+ */
+@ThreadSafe
+public class NodeCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000;
+
+    private final Map<NODE, Long> presetIds = new ConcurrentHashMap<NODE, Long>();
+
+    private final Map<Long, NODE> presetNodes = new ConcurrentHashMap<Long, NODE>();
+
+    private final Cache<NODE, Long> ids;
+
+    private final Cache<Long, NODE> nodes;
+
+    private final Cache<Object, Long> constantIds;
+
+    private final AtomicLong idHits = new AtomicLong(), idMisses = new AtomicLong();
+
+    private final AtomicLong nodeHits = new AtomicLong(), nodeMisses = new AtomicLong();
+
+    public NodeCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a new NodeCache
+     *
+     * @param maximumSize
+     *            maximum amount of cached mappings per direction in addition
+     *            to the preset nodes
+     */
+    public NodeCache(long maximumSize) {
+        ids = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        nodes = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        constantIds = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Add a persisted node which is never evicted
+     *
+     * @param node
+     * @param id
+     */
+    public void addPreset(NODE node, Long id) {
+        presetIds.put(node, id);
+        presetNodes.put(id, node);
+    }
+
+    /**
+     * @return the persisted nodes added via {@link #addPreset(NODE, Long)}
+     */
+    public Set<NODE> getPresets() {
+        return Collections.unmodifiableSet(presetIds.keySet());
+    }
+
+    /**
+     * Add the mapping between the given node and id
+     *
+     * @param node
+     * @param id
+     */
+    public void put(NODE node, Long id) {
+        if (!presetIds.containsKey(node)) {
+            ids.put(node, id);
+            nodes.put(id, node);
+        }
+    }
+
+    @Nullable
+    public Long getId(NODE node) {
+        Long id = presetIds.get(node);
+        if (id == null) {
+            id = ids.getIfPresent(node);
+        }
+        if (id != null) {
+            idHits.incrementAndGet();
+        } else {
+            idMisses.incrementAndGet();
+        }
+        return id;
+    }
+
+    @Nullable
+    public NODE getNode(long id) {
+        NODE node = presetNodes.get(id);
+        if (node == null) {
+            node = nodes.getIfPresent(id);
+        }
+        if (node != null) {
+            nodeHits.incrementAndGet();
+        } else {
+            nodeMisses.incrementAndGet();
+        }
+        return node;
+    }
+
+    /**
+     * Check whether the node of the given id is cached without affecting the
+     * statistics
+     *
+     * @param id
+     * @return
+     */
+    public boolean containsNode(long id) {
+        return presetNodes.containsKey(id) || nodes.asMap().containsKey(id);
+    }
+
+    @Nullable
+    public Long getConstantId(Object constant) {
+        return constantIds.getIfPresent(constant);
+    }
+
+    public void putConstantId(Object constant, Long id) {
+        constantIds.put(constant, id);
+    }
+
+    /**
+     * @return statistics of the node to id lookups
+     */
+    public CacheStats getIdStats() {
+        return new CacheStats(idHits.get(), idMisses.get(), 0, 0, 0, ids.stats().evictionCount());
+    }
+
+    /**
+     * @return statistics of the id to node lookups
+     */
+    public CacheStats getNodeStats() {
+        return new CacheStats(nodeHits.get(), nodeMisses.get(), 0, 0, 0, nodes.stats().evictionCount());
+    }
+
+    /**
+     * @return the amount of cached nodes including the preset nodes
+     */
+    public long size() {
+        return presetNodes.size() + nodes.size();
+    }
+
+    /**
+     * Remove all mappings except the preset nodes and reset the statistics
+     */
+    public void invalidateAll() {
+        ids.invalidateAll();
+        nodes.invalidateAll();
+        constantIds.invalidateAll();
+        idHits.set(0);
+        idMisses.set(0);
+        nodeHits.set(0);
+        nodeMisses.set(0);
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.Collection;
+
+import com.google.common.base.Function;
+import com.mysema.rdfbean.model.NODE;
+
+/**
+ * NodeResolver resolves symbol ids to NODE instances
+ * 
+ * @author tiwe
+ */
+public interface NodeResolver extends Function<Long, NODE> {
+
+    /**
+     * Resolve the given ids in batches, so that the following single id
+     * lookups can be served from the cache
+     * 
+     * @param ids
+     */
+    void resolve(Collection<Long> ids);
+
+}
@@ -12,10 +12,12 @@ import static com.mysema.rdfbean.rdb.QSymbol.symbol;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -46,6 +48,7 @@ import com.mysema.rdfbean.model.QueryLanguage;
 import com.mysema.rdfbean.model.QueryOptions;
 import com.mysema.rdfbean.model.RDFBeanTransaction;
 import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.RepositoryException;
 import com.mysema.rdfbean.model.STMT;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.model.UpdateLanguage;
@@ -62,6 +65,8 @@ public class RDBConnection implements RDFConnection {
 
     private static final int DELETE_BATCH = 1000;
 
+    private static final int RESOLVE_BATCH = 1000;
+
     private static final Timestamp DEFAULT_TIMESTAMP = new Timestamp(0);
 
     public static final QSymbol con = new QSymbol("context");
@@ -100,11 +105,16 @@ public class RDBConnection implements RDFConnection {
         }
     };
 
-    private final Function<Long, NODE> cachingNodeTransformer = new Function<Long, NODE>() {
+    private final NodeResolver cachingNodeTransformer = new NodeResolver() {
         @Override
         public NODE apply(Long input) {
             return context.getNode(input, nodeTransformer);
         }
+
+        @Override
+        public void resolve(Collection<Long> ids) {
+            resolveNodes(ids);
+        }
     };
 
     public RDBConnection(RDBContext context) {
@@ -156,10 +166,15 @@ public class RDBConnection implements RDFConnection {
     }
 
     private void addNodes(List<Long> ids, List<NODE> nodes) {
-        Set<Long> persisted = new HashSet<Long>(context.createQuery()
-                .from(symbol)
-                .where(symbol.id.in(ids))
-                .list(symbol.id));
+        Set<Long> persisted;
+        if (context.isCheckCollisions()) {
+            persisted = checkCollisions(ids, nodes);
+        } else {
+            persisted = new HashSet<Long>(context.createQuery()
+                    .from(symbol)
+                    .where(symbol.id.in(ids))
+                    .list(symbol.id));
+        }
 
         if (persisted.size() < ids.size()) {
             SQLMergeClause merge = context.createMerge(symbol);
@@ -175,7 +190,37 @@ public class RDBConnection implements RDFConnection {
         nodes.clear();
     }
 
-    public void addNodes(Set<NODE> n, @Nullable BiMap<NODE, Long> cache) {
+    private Set<Long> checkCollisions(List<Long> ids, List<NODE> nodes) {
+        Map<Long, NODE> id2node = new HashMap<Long, NODE>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            id2node.put(ids.get(i), nodes.get(i));
+        }
+        Set<Long> persisted = new HashSet<Long>();
+        List<Tuple> results = context.createQuery()
+                .from(symbol)
+                .where(symbol.id.in(ids))
+                .list(symbol.id, symbol.resource, symbol.lexical, symbol.datatype, symbol.lang);
+        for (Tuple result : results) {
+            Long id = result.get(symbol.id);
+            NODE node = id2node.get(id);
+            boolean equal = result.get(symbol.resource).booleanValue() == node.isResource()
+                    && result.get(symbol.lexical).equals(node.getValue());
+            if (equal && node.isLiteral()) {
+                LIT literal = node.asLiteral();
+                Integer langId = literal.getLang() != null ? getLangId(literal.getLang()) : Integer.valueOf(defaultLocaleId);
+                equal = getId(literal.getDatatype()).equals(result.get(symbol.datatype))
+                        && langId.equals(result.get(symbol.lang));
+            }
+            if (!equal) {
+                throw new RepositoryException("Id collision for " + id + " : "
+                        + node + " and persisted symbol " + result.get(symbol.lexical));
+            }
+            persisted.add(id);
+        }
+        return persisted;
+    }
+
+    public void addNodes(Set<NODE> n, @Nullable NodeCache cache) {
         List<Long> ids = new ArrayList<Long>(ADD_BATCH);
         List<NODE> nodes = new ArrayList<NODE>(ADD_BATCH);
         for (NODE node : n) {
@@ -183,7 +228,7 @@ public class RDBConnection implements RDFConnection {
             ids.add(nodeId);
             nodes.add(node);
             if (cache != null) {
-                cache.put(node, nodeId);
+                cache.addPreset(node, nodeId);
             }
             if (ids.size() == ADD_BATCH) {
                 addNodes(ids, nodes);
@@ -282,6 +327,10 @@ public class RDBConnection implements RDFConnection {
             exprs.add(statement.model);
         }
 
+        if (context.getWorkloadAnalyzer() != null) {
+            context.getWorkloadAnalyzer().record(subject != null, predicate != null, object != null, model != null);
+        }
+
         // return ordered result, if all triples are queried
         if (subject == null && predicate == null && object == null && model == null) {
             query.orderBy(statement.model.asc());
@@ -391,6 +440,33 @@ public class RDBConnection implements RDFConnection {
         return context.getNode(id, nodeTransformer);
     }
 
+    private void resolveNodes(Collection<Long> ids) {
+        List<Long> unresolved = new ArrayList<Long>(ids.size());
+        for (Long id : ids) {
+            if (!context.isCached(id)) {
+                unresolved.add(id);
+            }
+        }
+        for (int i = 0; i < unresolved.size(); i += RESOLVE_BATCH) {
+            List<Long> batch = unresolved.subList(i, Math.min(i + RESOLVE_BATCH, unresolved.size()));
+            SQLQuery query = context.createQuery();
+            query.from(symbol);
+            query.where(symbol.id.in(batch));
+            List<Tuple> results = query.list(symbol.id,
+                    symbol.resource,
+                    symbol.lexical,
+                    symbol.datatype,
+                    symbol.lang);
+            for (Tuple result : results) {
+                context.cache(result.get(symbol.id), getNode(
+                        result.get(symbol.resource),
+                        result.get(symbol.lexical),
+                        result.get(symbol.datatype),
+                        result.get(symbol.lang)));
+            }
+        }
+    }
+
     private <C extends StoreClause<C>> C populate(C clause, QStatement statement, STMT stmt) {
         Long c = stmt.getContext() != null ? getId(stmt.getContext()) : getId(RDB.nullContext);
         Long s = getId(stmt.getSubject());
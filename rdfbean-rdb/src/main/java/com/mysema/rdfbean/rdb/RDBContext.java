@@ -9,15 +9,12 @@ import java.io.Closeable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Function;
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.mysema.query.sql.Configuration;
 import com.mysema.query.sql.RelationalPath;
 import com.mysema.query.sql.SQLQuery;
@@ -55,22 +52,36 @@ public final class RDBContext implements Closeable {
 
     private final BiMap<Locale, Integer> langCache;
 
-    private final Map<Object, Long> idCache = new HashMap<Object, Long>(1000);
+    private final NodeCache nodeCache;
 
-    private final BiMap<NODE, Long> nodeCache;
+    private final Configuration configuration;
 
-    private final BiMap<NODE, Long> localNodeCache = HashBiMap.create();
+    private final boolean checkCollisions;
 
-    private final Configuration configuration;
+    @Nullable
+    private final WorkloadAnalyzer workloadAnalyzer;
 
     public RDBContext(
             ConverterRegistry converterRegistry,
             IdFactory idFactory,
-            BiMap<NODE, Long> nodeCache,
+            NodeCache nodeCache,
             BiMap<Locale, Integer> langCache,
             IdSequence idSequence,
             Connection connection,
             SQLTemplates templates) {
+        this(converterRegistry, idFactory, nodeCache, langCache, idSequence, connection, templates, false, null);
+    }
+
+    public RDBContext(
+            ConverterRegistry converterRegistry,
+            IdFactory idFactory,
+            NodeCache nodeCache,
+            BiMap<Locale, Integer> langCache,
+            IdSequence idSequence,
+            Connection connection,
+            SQLTemplates templates,
+            boolean checkCollisions,
+            @Nullable WorkloadAnalyzer workloadAnalyzer) {
         this.converterRegistry = converterRegistry;
         this.idFactory = idFactory;
         this.idSequence = idSequence;
@@ -78,6 +89,8 @@ public final class RDBContext implements Closeable {
         this.langCache = langCache;
         this.connection = connection;
         this.configuration = new Configuration(templates);
+        this.checkCollisions = checkCollisions;
+        this.workloadAnalyzer = workloadAnalyzer;
     }
 
     public RDFBeanTransaction beginTransaction(boolean readOnly, int txTimeout, int isolationLevel) {
@@ -96,7 +109,7 @@ public final class RDBContext implements Closeable {
     }
 
     public void clear() {
-        localNodeCache.clear();
+        // nothing to clear, the node cache is shared and bounded
     }
 
     @Override
@@ -125,14 +138,14 @@ public final class RDBContext implements Closeable {
     }
 
     public Long getId(Object constant) {
-        Long id = idCache.get(constant);
+        Long id = nodeCache.getConstantId(constant);
         if (id == null) {
             UID type = converterRegistry.getDatatype(constant.getClass());
             String lexical = converterRegistry.toString(constant);
             id = getNodeId(new LIT(lexical, type));
             // Date is not immutable, so it can't be cached safely
             if (!java.util.Date.class.isAssignableFrom(constant.getClass())) {
-                idCache.put(constant, id);
+                nodeCache.putConstantId(constant, id);
             }
         }
         return id;
@@ -166,31 +179,46 @@ public final class RDBContext implements Closeable {
 
     @Nullable
     public NODE getNode(long id, Function<Long, NODE> t) {
-        NODE node = nodeCache.inverse().get(id);
+        NODE node = nodeCache.getNode(id);
         if (node == null) {
-            node = localNodeCache.inverse().get(id);
-            if (node == null) {
-                node = t.apply(id);
-                localNodeCache.put(node, id);
-            }
+            node = t.apply(id);
+            nodeCache.put(node, id);
         }
         return node;
     }
 
+    /**
+     * @return true, if the persisted symbols are compared to the inserted
+     *         nodes of the same id
+     */
+    public boolean isCheckCollisions() {
+        return checkCollisions;
+    }
+
+    @Nullable
+    public WorkloadAnalyzer getWorkloadAnalyzer() {
+        return workloadAnalyzer;
+    }
+
+    public boolean isCached(long id) {
+        return nodeCache.containsNode(id);
+    }
+
+    public void cache(long id, NODE node) {
+        nodeCache.put(node, id);
+    }
+
     public Long getNodeId(NODE node) {
-        Long id = nodeCache.get(node);
+        Long id = nodeCache.getId(node);
         if (id == null) {
-            id = localNodeCache.get(node);
-            if (id == null) {
-                id = idFactory.getId(node);
-                localNodeCache.put(node, id);
-            }
+            id = idFactory.getId(node);
+            nodeCache.put(node, id);
         }
         return id;
     }
 
     public Collection<NODE> getNodes() {
-        return nodeCache.keySet();
+        return nodeCache.getPresets();
     }
 
     public <T> T convert(String value, Class<T> requiredType) {
@@ -12,7 +12,6 @@ import java.util.Stack;
 
 import javax.annotation.Nullable;
 
-import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.mysema.query.BooleanBuilder;
 import com.mysema.query.QueryMetadata;
@@ -88,7 +87,7 @@ public class RDBRDFVisitor implements RDFVisitor<Object, QueryMetadata> {
 
     private final Stack<Operator<?>> operators = new Stack<Operator<?>>();
 
-    private final Function<Long, NODE> transformer;
+    private final NodeResolver transformer;
 
     private final VarNameIterator stmts = new VarNameIterator("stmts");
 
@@ -102,7 +101,7 @@ public class RDBRDFVisitor implements RDFVisitor<Object, QueryMetadata> {
 
     private boolean asLiteral = false;
 
-    public RDBRDFVisitor(RDBContext context, Function<Long, NODE> transformer) {
+    public RDBRDFVisitor(RDBContext context, NodeResolver transformer) {
         this.context = context;
         this.transformer = transformer;
     }
@@ -433,15 +432,20 @@ public class RDBRDFVisitor implements RDFVisitor<Object, QueryMetadata> {
         if (isNamed(expr.getContext())) {
             namedExpressions.add(expr.getContext());
         }
-        filters.and(visitPatternElement(context, stmt.subject, expr.getSubject()));
-        filters.and(visitPatternElement(context, stmt.predicate, expr.getPredicate()));
-        filters.and(visitPatternElement(context, stmt.object, expr.getObject()));
+        Predicate s = visitPatternElement(context, stmt.subject, expr.getSubject());
+        Predicate p = visitPatternElement(context, stmt.predicate, expr.getPredicate());
+        Predicate o = visitPatternElement(context, stmt.object, expr.getObject());
+        Predicate m = null;
         Expression<UID> c = expr.getContext();
         if (c == null && !graphs.isEmpty()) {
             c = graphs.peek();
         }
         if (c != null) {
-            filters.and(visitPatternElement(context, stmt.model, c));
+            m = visitPatternElement(context, stmt.model, c);
+        }
+        filters.and(s).and(p).and(o).and(m);
+        if (this.context.getWorkloadAnalyzer() != null) {
+            this.context.getWorkloadAnalyzer().record(s != null, p != null, o != null, m != null);
         }
 
         if (firstSource) {
@@ -14,6 +14,7 @@ import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +37,7 @@ import org.openrdf.rio.helpers.RDFHandlerBase;
 import com.google.common.base.Charsets;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.mysema.commons.lang.Assert;
 import com.mysema.commons.lang.CloseableIterator;
@@ -58,8 +60,10 @@ import com.mysema.rdfbean.model.RepositoryException;
 import com.mysema.rdfbean.model.STMT;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.model.XSD;
+import com.mysema.rdfbean.model.io.ParserUtils;
 import com.mysema.rdfbean.model.io.RDFSource;
 import com.mysema.rdfbean.model.io.RDFWriter;
+import com.mysema.rdfbean.model.io.STMTHandler;
 import com.mysema.rdfbean.model.io.WriterUtils;
 import com.mysema.rdfbean.object.Configuration;
 import com.mysema.rdfbean.object.MappedClass;
@@ -79,7 +83,7 @@ import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
 @Immutable
 public class RDBRepository implements Repository {
 
-    private static RDFFormat getRioFormat(Format format) {
+    static RDFFormat getRioFormat(Format format) {
         switch (format) {
         case N3:
             return RDFFormat.N3;
@@ -93,6 +97,9 @@ public class RDBRepository implements Repository {
             return RDFFormat.TRIG;
         case TURTLE:
             return RDFFormat.TURTLE;
+        case NQUADS:
+            // parsed via ParserUtils, Rio of Sesame 3.0-alpha1 has no N-Quads support
+            break;
         }
         throw new IllegalArgumentException("Unsupported format : " + format);
     }
@@ -101,11 +108,18 @@ public class RDBRepository implements Repository {
 
     private final ConverterRegistry converterRegistry = new ConverterRegistryImpl();
 
-    private final IdFactory idFactory = new MD5IdFactory();
+    private final IdFactory idFactory;
 
-    private final BiMap<NODE, Long> nodeCache = HashBiMap.create();
+    private final BiMap<Locale, Integer> langCache = Maps.synchronizedBiMap(HashBiMap.<Locale, Integer> create());
 
-    private final BiMap<Locale, Integer> langCache = HashBiMap.create();
+    private final NodeCache nodeCache;
+
+    private final boolean checkCollisions;
+
+    private final IndexLayout indexLayout;
+
+    @Nullable
+    private final WorkloadAnalyzer workloadAnalyzer;
 
     private final Configuration configuration;
 
@@ -123,10 +137,84 @@ public class RDBRepository implements Repository {
             SQLTemplates templates,
             IdSequence idSequence,
             RDFSource... sources) {
+        this(configuration, dataSource, templates, idSequence, new NodeCache(), sources);
+    }
+
+    public RDBRepository(
+            Configuration configuration,
+            DataSource dataSource,
+            SQLTemplates templates,
+            IdSequence idSequence,
+            NodeCache nodeCache,
+            RDFSource... sources) {
+        this(configuration, dataSource, templates, idSequence, new MD5IdFactory(), nodeCache, false, sources);
+    }
+
+    /**
+     * Create a new RDBRepository
+     * 
+     * @param configuration
+     * @param dataSource
+     * @param templates
+     * @param idSequence
+     * @param idFactory id factory for nodes and locales, databases created
+     *            with another id factory need to be migrated via
+     *            {@link IdMigration}
+     * @param nodeCache node cache shared by the connections
+     * @param checkCollisions true, to compare inserted nodes to persisted
+     *            symbols of the same id
+     * @param sources
+     */
+    public RDBRepository(
+            Configuration configuration,
+            DataSource dataSource,
+            SQLTemplates templates,
+            IdSequence idSequence,
+            IdFactory idFactory,
+            NodeCache nodeCache,
+            boolean checkCollisions,
+            RDFSource... sources) {
+        this(configuration, dataSource, templates, idSequence, idFactory, nodeCache, checkCollisions,
+                IndexLayout.DEFAULT, null, sources);
+    }
+
+    /**
+     * Create a new RDBRepository
+     * 
+     * @param configuration
+     * @param dataSource
+     * @param templates
+     * @param idSequence
+     * @param idFactory id factory for nodes and locales
+     * @param nodeCache node cache shared by the connections
+     * @param checkCollisions true, to compare inserted nodes to persisted
+     *            symbols of the same id
+     * @param indexLayout indexes of the statement table, which are created
+     *            together with the schema
+     * @param workloadAnalyzer analyzer for the statement table access
+     *            patterns or null
+     * @param sources
+     */
+    public RDBRepository(
+            Configuration configuration,
+            DataSource dataSource,
+            SQLTemplates templates,
+            IdSequence idSequence,
+            IdFactory idFactory,
+            NodeCache nodeCache,
+            boolean checkCollisions,
+            IndexLayout indexLayout,
+            @Nullable WorkloadAnalyzer workloadAnalyzer,
+            RDFSource... sources) {
         this.configuration = Assert.notNull(configuration, "configuration");
         this.dataSource = Assert.notNull(dataSource, "dataSource");
         this.templates = Assert.notNull(templates, "templates");
         this.idSequence = Assert.notNull(idSequence, "idSequence");
+        this.idFactory = Assert.notNull(idFactory, "idFactory");
+        this.nodeCache = Assert.notNull(nodeCache, "nodeCache");
+        this.checkCollisions = checkCollisions;
+        this.indexLayout = Assert.notNull(indexLayout, "indexLayout");
+        this.workloadAnalyzer = workloadAnalyzer;
         this.sources = Assert.notNull(sources, "sources");
     }
 
@@ -186,8 +274,6 @@ public class RDBRepository implements Repository {
 
     @Override
     public void load(Format format, InputStream is, @Nullable UID context, boolean replace) {
-        ValueFactory valueFactory = new ValueFactoryImpl();
-        SesameDialect dialect = new SesameDialect(valueFactory);
         RDBConnection connection = openConnection();
         try {
             if (!replace && context != null) {
@@ -198,11 +284,17 @@ public class RDBRepository implements Repository {
             if (context != null && replace) {
                 connection.deleteFromContext(context);
             }
-            Set<STMT> stmts = new HashSet<STMT>(LOAD_BATCH_SIZE);
-            RDFParser parser = Rio.createParser(getRioFormat(format));
-            parser.setRDFHandler(createHandler(dialect, connection, stmts, context));
-            parser.parse(is, context != null ? context.getValue() : TEST.NS);
-            connection.update(Collections.<STMT> emptySet(), stmts);
+            String baseURI = context != null ? context.getValue() : TEST.NS;
+            if (ParserUtils.isSupported(format)) {
+                ParserUtils.parse(format, is, context, baseURI, LOAD_BATCH_SIZE, createHandler(connection));
+            } else {
+                SesameDialect dialect = new SesameDialect(new ValueFactoryImpl());
+                Set<STMT> stmts = new HashSet<STMT>(LOAD_BATCH_SIZE);
+                RDFParser parser = Rio.createParser(getRioFormat(format));
+                parser.setRDFHandler(createHandler(dialect, connection, stmts, context));
+                parser.parse(is, baseURI);
+                connection.update(Collections.<STMT> emptySet(), stmts);
+            }
         } catch (RDFParseException e) {
             throw new RepositoryException(e);
         } catch (RDFHandlerException e) {
@@ -226,14 +318,17 @@ public class RDBRepository implements Repository {
                     ValueFactory valueFactory = new ValueFactoryImpl();
                     SesameDialect dialect = new SesameDialect(valueFactory);
                     for (RDFSource source : sources) {
-                        Set<STMT> stmts = new HashSet<STMT>(LOAD_BATCH_SIZE);
-                        RDFFormat format = getRioFormat(source.getFormat());
-                        RDFParser parser = Rio.createParser(format);
                         UID context = new UID(source.getContext());
                         connection.deleteFromContext(context);
-                        parser.setRDFHandler(createHandler(dialect, connection, stmts, context));
-                        parser.parse(source.openStream(), source.getContext());
-                        connection.update(Collections.<STMT> emptySet(), stmts);
+                        if (ParserUtils.isSupported(source.getFormat())) {
+                            source.parse(LOAD_BATCH_SIZE, createHandler(connection));
+                        } else {
+                            Set<STMT> stmts = new HashSet<STMT>(LOAD_BATCH_SIZE);
+                            RDFParser parser = Rio.createParser(getRioFormat(source.getFormat()));
+                            parser.setRDFHandler(createHandler(dialect, connection, stmts, context));
+                            parser.parse(source.openStream(), source.getContext());
+                            connection.update(Collections.<STMT> emptySet(), stmts);
+                        }
                     }
                 } catch (RDFParseException e) {
                     throw new RepositoryException(e);
@@ -250,6 +345,15 @@ public class RDBRepository implements Repository {
         }
     }
 
+    private STMTHandler createHandler(final RDBConnection connection) {
+        return new STMTHandler() {
+            @Override
+            public void handle(List<STMT> stmts) {
+                connection.update(Collections.<STMT> emptySet(), new HashSet<STMT>(stmts));
+            }
+        };
+    }
+
     private RDFHandler createHandler(
             final SesameDialect dialect,
             final RDBConnection connection, final Set<STMT> stmts, @Nullable final UID context) {
@@ -285,6 +389,9 @@ public class RDBRepository implements Repository {
                         stmt.execute(clause.trim());
                     }
                 }
+                for (String clause : indexLayout.getCreateStatements()) {
+                    stmt.execute(clause);
+                }
             } finally {
                 stmt.close();
             }
@@ -380,6 +487,32 @@ public class RDBRepository implements Repository {
         }
     }
 
+    /**
+     * Create a BulkLoader for parallel loading of large inputs
+     * 
+     * @param writers amount of hasher and writer threads
+     * @return
+     */
+    public BulkLoader createBulkLoader(int writers) {
+        return new BulkLoader(dataSource, idFactory, converterRegistry, writers);
+    }
+
+    public IndexLayout getIndexLayout() {
+        return indexLayout;
+    }
+
+    @Nullable
+    public WorkloadAnalyzer getWorkloadAnalyzer() {
+        return workloadAnalyzer;
+    }
+
+    /**
+     * @return the node cache shared by the connections of this repository
+     */
+    public NodeCache getNodeCache() {
+        return nodeCache;
+    }
+
     @Override
     public RDBConnection openConnection() {
         try {
@@ -390,7 +523,9 @@ public class RDBRepository implements Repository {
                     nodeCache, langCache,
                     idSequence,
                     connection,
-                    templates);
+                    templates,
+                    checkCollisions,
+                    workloadAnalyzer);
             return new RDBConnection(context);
         } catch (SQLException e) {
             throw new RepositoryException(e);
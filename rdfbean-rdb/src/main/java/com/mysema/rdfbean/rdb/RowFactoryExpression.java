@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.List;
+
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.FactoryExpression;
+import com.mysema.query.types.Visitor;
+
+/**
+ * RowFactoryExpression returns the raw column values of a result row
+ * 
+ * @author tiwe
+ */
+public class RowFactoryExpression implements FactoryExpression<Object[]> {
+
+    private static final long serialVersionUID = -4516512034927512316L;
+
+    private final List<Expression<?>> args;
+
+    public RowFactoryExpression(List<Expression<?>> args) {
+        this.args = args;
+    }
+
+    @Override
+    public List<Expression<?>> getArgs() {
+        return args;
+    }
+
+    @Override
+    public Object[] newInstance(Object... args) {
+        return args.clone();
+    }
+
+    @Override
+    public <R, C> R accept(Visitor<R, C> v, C context) {
+        return v.visit(this, context);
+    }
+
+    @Override
+    public Class<? extends Object[]> getType() {
+        return Object[].class;
+    }
+
+}
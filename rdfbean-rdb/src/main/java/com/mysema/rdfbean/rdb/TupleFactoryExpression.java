@@ -59,8 +59,7 @@ public class TupleFactoryExpression extends ExpressionBase<Map<String, NODE>> im
         Map<String, NODE> rv = new HashMap<String, NODE>(args.length);
         for (int i = 0; i < args.length; i++) {
             if (args[i] != null) {
-                if (projection.get(i) instanceof Operation<?>
-                        || projection.get(i) instanceof TemplateExpression<?>) {
+                if (!isSymbolColumn(projection.get(i))) {
                     String val = converters.toString(args[i]);
                     UID dtype = converters.getDatatype(args[i].getClass());
                     rv.put(variables.get(i), new LIT(val, dtype));
@@ -75,6 +74,14 @@ public class TupleFactoryExpression extends ExpressionBase<Map<String, NODE>> im
         return rv;
     }
 
+    /**
+     * @param expr projection element
+     * @return true, if the column holds symbol ids or resource names
+     */
+    static boolean isSymbolColumn(Expression<?> expr) {
+        return !(expr instanceof Operation<?> || expr instanceof TemplateExpression<?>);
+    }
+
     @Override
     public <R, C> R accept(Visitor<R, C> v, C context) {
         return v.visit(this, context);
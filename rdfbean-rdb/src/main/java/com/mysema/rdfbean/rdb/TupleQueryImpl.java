@@ -3,7 +3,6 @@ package com.mysema.rdfbean.rdb;
 import java.util.List;
 import java.util.Map;
 
-import com.google.common.base.Function;
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.query.sql.SQLQuery;
 import com.mysema.query.types.Expression;
@@ -21,24 +20,27 @@ public class TupleQueryImpl implements TupleQuery {
 
     private final List<Expression<?>> projection;
 
-    private final Function<Long, NODE> function;
+    private final NodeResolver resolver;
 
     public TupleQueryImpl(
             SQLQuery query,
             ConverterRegistry converters,
             List<String> variables,
             List<Expression<?>> pr,
-            Function<Long, NODE> function) {
+            NodeResolver resolver) {
         this.query = query;
         this.converters = converters;
         this.variables = variables;
         this.projection = pr;
-        this.function = function;
+        this.resolver = resolver;
     }
 
     @Override
     public CloseableIterator<Map<String, NODE>> getTuples() {
-        return query.iterate(new TupleFactoryExpression(converters, variables, projection, function));
+        return new BlockResolvingIterator<Map<String, NODE>>(
+                query.iterate(new RowFactoryExpression(projection)),
+                new TupleFactoryExpression(converters, variables, projection, resolver),
+                resolver);
     }
 
     @Override
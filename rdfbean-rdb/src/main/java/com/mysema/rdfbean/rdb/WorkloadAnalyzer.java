@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WorkloadAnalyzer counts the statement table access patterns of the queries
+ * of a {@link RDBRepository}
+ *
+ * <p>
+ * A pattern has one character per statement column in the order subject,
+ * predicate, object and model. Bound columns are marked with the column
+ * initial, unbound ones with '?', e.g. "?P?M" for a lookup by predicate and
+ * model. Bound columns are compared to constants, parameters or columns of
+ * previously joined statements.
+ * </p>
+ *
+ * @author tiwe
+ */
+@ThreadSafe
+public class WorkloadAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadAnalyzer.class);
+
+    private static final char[] INITIALS = { 'S', 'P', 'O', 'M' };
+
+    public static String getPattern(boolean subject, boolean predicate, boolean object, boolean model) {
+        boolean[] bound = { subject, predicate, object, model };
+        char[] chars = new char[bound.length];
+        for (int i = 0; i < bound.length; i++) {
+            chars[i] = bound[i] ? INITIALS[i] : '?';
+        }
+        return new String(chars);
+    }
+
+    static boolean isBound(String pattern, int column) {
+        return pattern.charAt(column) != '?';
+    }
+
+    private final ConcurrentMap<String, AtomicLong> patterns = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Record a statement table access
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param model
+     */
+    public void record(boolean subject, boolean predicate, boolean object, boolean model) {
+        String pattern = getPattern(subject, predicate, object, model);
+        AtomicLong count = patterns.get(pattern);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = patterns.putIfAbsent(pattern, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+        logger.debug("statement access {}", pattern);
+    }
+
+    /**
+     * @return the recorded patterns and their counts, most frequent first
+     */
+    public Map<String, Long> getPatterns() {
+        List<Map.Entry<String, AtomicLong>> entries = new ArrayList<Map.Entry<String, AtomicLong>>(patterns.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong> o1, Map.Entry<String, AtomicLong> o2) {
+                long c1 = o1.getValue().get(), c2 = o2.getValue().get();
+                return c1 > c2 ? -1 : (c1 == c2 ? o1.getKey().compareTo(o2.getKey()) : 1);
+            }
+        });
+        Map<String, Long> rv = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : entries) {
+            rv.put(entry.getKey(), entry.getValue().get());
+        }
+        return rv;
+    }
+
+    /**
+     * @param layout
+     * @return the recorded patterns which are not supported by the given
+     *         index layout, most frequent first
+     */
+    public Map<String, Long> getUnsupportedPatterns(IndexLayout layout) {
+        Map<String, Long> rv = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : getPatterns().entrySet()) {
+            if (!layout.supports(entry.getKey())) {
+                rv.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return rv;
+    }
+
+    /**
+     * Log the recorded patterns and whether the given index layout supports
+     * them
+     *
+     * @param layout
+     */
+    public void log(IndexLayout layout) {
+        for (Map.Entry<String, Long> entry : getPatterns().entrySet()) {
+            if (layout.supports(entry.getKey())) {
+                logger.info("{} : {}", entry.getKey(), entry.getValue());
+            } else {
+                logger.warn("{} : {} (not supported by index)", entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public void reset() {
+        patterns.clear();
+    }
+
+}
@@ -33,10 +33,4 @@ CREATE TABLE statement(
 );
 
 
-CREATE INDEX statement_mspo ON statement(model, subject, predicate, object);
-
-CREATE INDEX statement_mpo ON statement(model, predicate, object);
-
-CREATE INDEX statement_mo  ON statement(model, object);
-
 
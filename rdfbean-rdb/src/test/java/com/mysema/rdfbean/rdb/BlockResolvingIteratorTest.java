@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.types.Expression;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.PatternBlock;
+import com.mysema.rdfbean.model.QNODE;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+public class BlockResolvingIteratorTest {
+
+    private static class CountingResolver implements NodeResolver {
+
+        private final Set<Long> resolved = new HashSet<Long>();
+
+        private final List<Collection<Long>> batches = new ArrayList<Collection<Long>>();
+
+        private int lookups;
+
+        @Override
+        public NODE apply(Long id) {
+            if (!resolved.contains(id)) {
+                lookups++;
+            }
+            return new UID("test:", "n" + id);
+        }
+
+        @Override
+        public void resolve(Collection<Long> ids) {
+            batches.add(new ArrayList<Long>(ids));
+            resolved.addAll(ids);
+        }
+
+    }
+
+    private final CountingResolver resolver = new CountingResolver();
+
+    private STMTFactoryExpression createFactory() {
+        PatternBlock pattern = new PatternBlock(QNODE.s, QNODE.p, QNODE.o);
+        return new STMTFactoryExpression(pattern, Arrays.<Expression<?>> asList(
+                RDBConnection.sub.id, RDBConnection.pre.id, RDBConnection.obj.id), resolver);
+    }
+
+    private CloseableIterator<Object[]> createRows(int size) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (long i = 0; i < size; i++) {
+            rows.add(new Object[] { i, 1000l, i + 1 });
+        }
+        return new IteratorAdapter<Object[]>(rows.iterator());
+    }
+
+    @Test
+    public void Ids_Are_Resolved_Per_Block() {
+        CloseableIterator<STMT> stmts = new BlockResolvingIterator<STMT>(createRows(250), createFactory(), resolver, 100);
+        int count = 0;
+        try {
+            while (stmts.hasNext()) {
+                STMT stmt = stmts.next();
+                assertEquals(new UID("test:", "n1000"), stmt.getPredicate());
+                count++;
+            }
+        } finally {
+            stmts.close();
+        }
+        assertEquals(250, count);
+        assertEquals(3, resolver.batches.size());
+        assertEquals(0, resolver.lookups);
+    }
+
+    @Test
+    public void Empty_Result() {
+        CloseableIterator<STMT> stmts = new BlockResolvingIterator<STMT>(createRows(0), createFactory(), resolver);
+        assertFalse(stmts.hasNext());
+        stmts.close();
+        assertEquals(0, resolver.batches.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Invalid_Block_Size() {
+        new BlockResolvingIterator<STMT>(createRows(0), createFactory(), resolver, 0);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.UID;
+
+public class BulkLoaderTest extends AbstractRDBTest {
+
+    private static final UID BULK = new UID("http://www.example.com/bulk");
+
+    private static final UID DEFAULT = new UID("http://www.example.com/default");
+
+    private static final UID TWICE = new UID("http://www.example.com/twice");
+
+    private static final UID FOAF = new UID("http://www.example.com/foaf");
+
+    @Before
+    public void setUp() {
+        RDFConnection connection = repository.openConnection();
+        try {
+            for (UID context : new UID[] { BULK, DEFAULT, TWICE, FOAF }) {
+                connection.remove(null, null, null, context);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private int count(UID context) {
+        RDFConnection connection = repository.openConnection();
+        try {
+            return IteratorAdapter.asList(connection.findStatements(null, null, null, context, false)).size();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void Load() {
+        BulkLoader loader = repository.createBulkLoader(4);
+        loader.setBatchSize(10);
+        long parsed = loader.load(Format.TURTLE, getClass().getResourceAsStream("/test.ttl"), BULK);
+        assertTrue(parsed > 0);
+
+        repository.load(Format.TURTLE, getClass().getResourceAsStream("/test.ttl"), DEFAULT, true);
+        assertEquals(count(DEFAULT), count(BULK));
+    }
+
+    @Test
+    public void Load_Twice() {
+        // no blank nodes, since they get new ids on each parse
+        String ntriples =
+            "<http://www.example.com/a> <http://www.example.com/p> <http://www.example.com/b> .\n" +
+            "<http://www.example.com/a> <http://www.example.com/p> \"b\"@en .\n" +
+            "<http://www.example.com/b> <http://www.example.com/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#int> .\n";
+        BulkLoader loader = repository.createBulkLoader(2);
+        loader.load(Format.NTRIPLES, new ByteArrayInputStream(ntriples.getBytes()), TWICE);
+        assertEquals(3, count(TWICE));
+        loader.load(Format.NTRIPLES, new ByteArrayInputStream(ntriples.getBytes()), TWICE);
+        assertEquals(3, count(TWICE));
+    }
+
+    @Test
+    public void Parallel_Loads() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (final UID context : new UID[] { BULK, TWICE }) {
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return repository.createBulkLoader(2).load(Format.TURTLE,
+                                getClass().getResourceAsStream("/test.ttl"), context);
+                    }
+                }));
+            }
+            for (Future<Long> result : results) {
+                assertTrue(result.get() > 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        repository.load(Format.TURTLE, getClass().getResourceAsStream("/test.ttl"), DEFAULT, true);
+        assertEquals(count(DEFAULT), count(BULK));
+        assertEquals(count(DEFAULT), count(TWICE));
+    }
+
+    @Test
+    public void Load_RDFXML() {
+        InputStream in = getClass().getResourceAsStream("/foaf.rdf");
+        long parsed = repository.createBulkLoader(2).load(Format.RDFXML, in, FOAF);
+        assertTrue(parsed > 0);
+
+        repository.load(Format.RDFXML, getClass().getResourceAsStream("/foaf.rdf"), DEFAULT, true);
+        assertEquals(count(DEFAULT), count(FOAF));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.Nodes;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.XSD;
+
+public class HashIdFactoryTest {
+
+    private final IdFactory idFactory = new HashIdFactory();
+
+    @Test
+    public void Node() {
+        Map<Long, NODE> seen = new HashMap<Long, NODE>();
+        Set<NODE> nodes = new HashSet<NODE>();
+        // UID
+        nodes.addAll(Nodes.all);
+        // BID
+        nodes.add(new BID(RDF.type.getValue()));
+        nodes.add(new BID("1"));
+        // LIT
+        nodes.add(new LIT(RDF.type.getValue()));
+        nodes.add(new LIT("1", Locale.ENGLISH));
+        nodes.add(new LIT("1", XSD.stringType));
+        nodes.add(new LIT("1", XSD.integerType));
+        nodes.add(new LIT("1" + Locale.ENGLISH));
+        nodes.add(new LIT("1" + XSD.stringType));
+        nodes.add(new LIT("1e", new Locale("n")));
+        nodes.add(new LIT("1", new Locale("en")));
+
+        for (int i = 0; i < 10000; i++) {
+            String str = String.valueOf(i);
+            nodes.add(new LIT(str, XSD.intType));
+            nodes.add(new LIT("-" + str, XSD.intType));
+            nodes.add(new LIT(str, XSD.longType));
+            nodes.add(new LIT("-" + str, XSD.longType));
+
+            for (int j = 0; j < 10; j++) {
+                nodes.add(new LIT(str + "." + j, XSD.doubleType));
+                nodes.add(new LIT("-" + str + "." + j, XSD.doubleType));
+                nodes.add(new LIT(str + "." + j, XSD.floatType));
+                nodes.add(new LIT("-" + str + "." + j, XSD.floatType));
+            }
+        }
+
+        for (NODE node : nodes) {
+            Long id = idFactory.getId(node);
+            if (seen.containsKey(id)) {
+                throw new IllegalStateException("Clash : " + node + " and " + seen.get(id));
+            }
+            seen.put(id, node);
+        }
+    }
+
+    @Test
+    public void Kind() {
+        assertEquals(0, HashIdFactory.getKind(idFactory.getId(new LIT("a", Locale.ENGLISH))));
+        assertEquals(1, HashIdFactory.getKind(idFactory.getId(new LIT("a", XSD.stringType))));
+        assertEquals(2, HashIdFactory.getKind(idFactory.getId(new BID("a"))));
+        assertEquals(3, HashIdFactory.getKind(idFactory.getId(RDF.type)));
+    }
+
+    @Test
+    public void Kind_Is_Compatible_With_MD5() {
+        IdFactory md5 = new MD5IdFactory();
+        for (NODE node : new NODE[] { new LIT("a", Locale.ENGLISH), new LIT("a"), new BID("a"), RDF.type }) {
+            assertEquals(HashIdFactory.getKind(md5.getId(node)), HashIdFactory.getKind(idFactory.getId(node)));
+        }
+    }
+
+    @Test
+    public void Lang_Is_Compatible_With_MD5() {
+        IdFactory md5 = new MD5IdFactory();
+        for (Locale locale : Locale.getAvailableLocales()) {
+            assertEquals(md5.getId(locale), idFactory.getId(locale));
+        }
+    }
+
+}
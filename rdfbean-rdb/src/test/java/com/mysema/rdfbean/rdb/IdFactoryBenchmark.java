@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.Nodes;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+@Ignore
+public class IdFactoryBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    private final List<NODE> nodes = new ArrayList<NODE>();
+
+    public IdFactoryBenchmark() {
+        nodes.addAll(Nodes.all);
+        for (int i = 0; i < 20000; i++) {
+            String str = String.valueOf(i);
+            nodes.add(new LIT(str, XSD.intType));
+            nodes.add(new LIT("Some longer literal value " + str, Locale.ENGLISH));
+            nodes.add(new UID("http://www.example.com/resources#", "resource" + str));
+            nodes.add(new BID("b" + str));
+        }
+    }
+
+    private long run(IdFactory idFactory) {
+        long sum = 0;
+        for (NODE node : nodes) {
+            sum += idFactory.getId(node);
+        }
+        return sum;
+    }
+
+    private void benchmark(IdFactory idFactory) {
+        // warm up
+        long sum = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            sum += run(idFactory);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sum += run(idFactory);
+        }
+        long duration = System.nanoTime() - start;
+        System.out.println(idFactory.getClass().getSimpleName() + " : "
+                + (duration / ((long) ROUNDS * nodes.size())) + " ns per id (" + sum + ")");
+    }
+
+    @Test
+    public void MD5IdFactory() {
+        benchmark(new MD5IdFactory());
+    }
+
+    @Test
+    public void HashIdFactory() {
+        benchmark(new HashIdFactory());
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class IndexLayoutTest {
+
+    @Test
+    public void Create_Statements() {
+        assertEquals(Arrays.asList(
+                "CREATE INDEX statement_mpo ON statement(model, predicate, object)",
+                "CREATE INDEX statement_mo ON statement(model, object)"),
+                IndexLayout.MODEL_FIRST.getCreateStatements());
+    }
+
+    @Test
+    public void Model_First() {
+        assertTrue(IndexLayout.MODEL_FIRST.supports("SPOM"));
+        assertTrue(IndexLayout.MODEL_FIRST.supports("?P?M"));
+        assertFalse(IndexLayout.MODEL_FIRST.supports("SPO?"));
+        assertFalse(IndexLayout.MODEL_FIRST.supports("?P??"));
+        assertFalse(IndexLayout.MODEL_FIRST.supports("??O?"));
+    }
+
+    @Test
+    public void Covering() {
+        assertTrue(IndexLayout.COVERING.supports("S???"));
+        assertTrue(IndexLayout.COVERING.supports("?P??"));
+        assertTrue(IndexLayout.COVERING.supports("??O?"));
+        assertTrue(IndexLayout.COVERING.supports("???M"));
+        assertFalse(IndexLayout.COVERING.supports("????"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Unknown_Column() {
+        new IndexLayout.Index("statement_x", "context");
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RDF;
+
+public class NodeCacheTest {
+
+    private final IdFactory idFactory = new MD5IdFactory();
+
+    private final NodeCache cache = new NodeCache(100);
+
+    @Test
+    public void Two_Way_Lookup() {
+        NODE node = new LIT("abc");
+        Long id = idFactory.getId(node);
+        cache.put(node, id);
+        assertEquals(id, cache.getId(node));
+        assertEquals(node, cache.getNode(id));
+        assertTrue(cache.containsNode(id));
+    }
+
+    @Test
+    public void Stats() {
+        NODE node = new LIT("abc");
+        Long id = idFactory.getId(node);
+        assertNull(cache.getId(node));
+        cache.put(node, id);
+        cache.getId(node);
+        cache.getNode(id);
+        assertEquals(1, cache.getIdStats().hitCount());
+        assertEquals(1, cache.getIdStats().missCount());
+        assertEquals(1, cache.getNodeStats().hitCount());
+        assertEquals(0, cache.getNodeStats().missCount());
+    }
+
+    @Test
+    public void Size_Is_Bounded() {
+        for (int i = 0; i < 1000; i++) {
+            NODE node = new LIT(String.valueOf(i));
+            cache.put(node, idFactory.getId(node));
+        }
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getNodeStats().evictionCount() >= 900);
+    }
+
+    @Test
+    public void Presets_Are_Not_Evicted() {
+        cache.addPreset(RDF.type, idFactory.getId(RDF.type));
+        for (int i = 0; i < 1000; i++) {
+            NODE node = new LIT(String.valueOf(i));
+            cache.put(node, idFactory.getId(node));
+        }
+        assertEquals(RDF.type, cache.getNode(idFactory.getId(RDF.type)));
+        assertTrue(cache.getPresets().contains(RDF.type));
+        cache.invalidateAll();
+        assertTrue(cache.containsNode(idFactory.getId(RDF.type)));
+        assertFalse(cache.containsNode(idFactory.getId(new LIT("999"))));
+    }
+
+    @Test
+    public void Concurrent_Access() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 2000; i++) {
+                            NODE node = new LIT(String.valueOf(i % 300));
+                            Long id = idFactory.getId(node);
+                            cache.put(node, id);
+                            NODE cached = cache.getNode(id);
+                            if (cached != null && !cached.equals(node)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertTrue(cache.size() <= 100);
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.rdb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class WorkloadAnalyzerTest {
+
+    private final WorkloadAnalyzer analyzer = new WorkloadAnalyzer();
+
+    @Test
+    public void Pattern() {
+        assertEquals("SPOM", WorkloadAnalyzer.getPattern(true, true, true, true));
+        assertEquals("?P?M", WorkloadAnalyzer.getPattern(false, true, false, true));
+        assertEquals("????", WorkloadAnalyzer.getPattern(false, false, false, false));
+    }
+
+    @Test
+    public void Patterns() {
+        analyzer.record(false, true, false, false);
+        analyzer.record(false, true, false, false);
+        analyzer.record(true, true, false, true);
+        assertEquals(Arrays.asList("?P??", "SP?M"), new ArrayList<String>(analyzer.getPatterns().keySet()));
+        assertEquals(Long.valueOf(2), analyzer.getPatterns().get("?P??"));
+    }
+
+    @Test
+    public void Unsupported_Patterns() {
+        analyzer.record(false, true, false, false);
+        analyzer.record(true, true, false, true);
+        assertEquals(Arrays.asList("?P??"), new ArrayList<String>(
+                analyzer.getUnsupportedPatterns(IndexLayout.MODEL_FIRST).keySet()));
+        assertEquals(0, analyzer.getUnsupportedPatterns(IndexLayout.COVERING).size());
+        analyzer.log(IndexLayout.MODEL_FIRST);
+    }
+
+    @Test
+    public void Reset() {
+        analyzer.record(false, true, false, false);
+        analyzer.reset();
+        assertEquals(0, analyzer.getPatterns().size());
+    }
+
+}
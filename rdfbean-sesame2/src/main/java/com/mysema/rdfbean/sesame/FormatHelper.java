@@ -24,6 +24,8 @@ final class FormatHelper {
         switch (format) {
         case N3:
             return RDFFormat.N3;
+        case NQUADS:
+            return RDFFormat.NQUADS;
         case NTRIPLES:
             return RDFFormat.NTRIPLES;
         case RDFXML:
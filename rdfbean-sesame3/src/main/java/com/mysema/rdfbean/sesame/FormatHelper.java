@@ -34,6 +34,9 @@ final class FormatHelper {
             return RDFFormat.TRIG;
         case TURTLE:
             return RDFFormat.TURTLE;
+        case NQUADS:
+            // Rio of Sesame 3.0-alpha1 has no N-Quads support
+            break;
         }
         throw new IllegalArgumentException("Unsupported format : " + format);
     }
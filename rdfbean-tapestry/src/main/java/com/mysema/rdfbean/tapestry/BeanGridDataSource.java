@@ -24,6 +24,7 @@ import com.mysema.rdfbean.object.BeanQuery;
 import com.mysema.rdfbean.object.Session;
 import com.mysema.rdfbean.object.SessionCallback;
 import com.mysema.rdfbean.object.SessionFactory;
+import com.mysema.rdfbean.query.CountCache;
 
 /**
  * BeanGridDataSource provides an implementation of the GridDataSource interface
@@ -52,6 +53,9 @@ public class BeanGridDataSource<T> implements GridDataSource {
 
     private final boolean caseSensitive;
 
+    @Nullable
+    private final CountCache countCache;
+
     /**
      * Create a new BeanGridDataSource instance with no filter conditions
      * 
@@ -80,18 +84,43 @@ public class BeanGridDataSource<T> implements GridDataSource {
      * @param conditions
      *            filter conditions
      */
-    @SuppressWarnings("unchecked")
     public BeanGridDataSource(SessionFactory sessionFactory, EntityPath<T> entity, OrderSpecifier<?> defaultOrder, boolean caseSensitive, @Nullable Predicate conditions) {
+        this(sessionFactory, entity, defaultOrder, caseSensitive, conditions, null);
+    }
+
+    /**
+     * Create a new BeanGridDataSource instance with filter conditions and a
+     * cache for the row count
+     * 
+     * @param sessionFactory
+     * @param entity
+     *            root entity of the query
+     * @param defaultOrder
+     *            default order for queries, if no order is specified
+     * @param caseSensitive
+     *            case sensitive ordering
+     * @param conditions
+     *            filter conditions
+     * @param countCache
+     *            cache for the available rows or null to count always
+     */
+    @SuppressWarnings("unchecked")
+    public BeanGridDataSource(SessionFactory sessionFactory, EntityPath<T> entity, OrderSpecifier<?> defaultOrder, boolean caseSensitive,
+            @Nullable Predicate conditions, @Nullable CountCache countCache) {
         this.sessionFactory = Assert.notNull(sessionFactory, "sessionFactory");
         this.entityType = (Class<T>) Assert.notNull(entity.getType(), "entity has no type");
         this.entityPath = new PathBuilder<T>(entity.getType(), entity.getMetadata());
         this.defaultOrder = Assert.notNull(defaultOrder, "defaultOrder");
         this.conditions = conditions;
         this.caseSensitive = caseSensitive;
+        this.countCache = countCache;
     }
 
     @Override
     public int getAvailableRows() {
+        if (countCache != null) {
+            return (int) countCache.count(sessionFactory, new EntityPath<?>[] { entityPath }, conditions);
+        }
         return sessionFactory.execute(new SessionCallback<Integer>() {
             @Override
             public Integer doInSession(Session session) {
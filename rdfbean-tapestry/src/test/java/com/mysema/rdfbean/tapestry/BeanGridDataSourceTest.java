@@ -21,6 +21,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.mysema.query.alias.Alias;
+import com.mysema.query.types.EntityPath;
 import com.mysema.rdfbean.TEST;
 import com.mysema.rdfbean.annotations.ClassMapping;
 import com.mysema.rdfbean.annotations.Id;
@@ -28,6 +29,7 @@ import com.mysema.rdfbean.annotations.Predicate;
 import com.mysema.rdfbean.object.DefaultConfiguration;
 import com.mysema.rdfbean.object.Session;
 import com.mysema.rdfbean.object.SessionFactoryImpl;
+import com.mysema.rdfbean.query.CountCache;
 import com.mysema.rdfbean.sesame.MemoryRepository;
 
 public class BeanGridDataSourceTest {
@@ -107,6 +109,17 @@ public class BeanGridDataSourceTest {
         assertEquals(250, dataSource.getAvailableRows());
     }
 
+    @Test
+    public void GetAvailableRows_with_CountCache() {
+        User user = Alias.alias(User.class);
+        CountCache countCache = new CountCache();
+        GridDataSource cached = new BeanGridDataSource<User>(sessionFactory, $(user), $(user.getFirstName()).asc(), true,
+                null, countCache);
+        assertEquals(250, cached.getAvailableRows());
+        assertEquals(Long.valueOf(250), countCache.get(sessionFactory, CountCache.fingerprint(new EntityPath<?>[] { $(user) }, null)));
+        assertEquals(250, cached.getAvailableRows());
+    }
+
     @Test
     public void Prepare() {
         dataSource.prepare(0, 10, Collections.<SortConstraint> emptyList());